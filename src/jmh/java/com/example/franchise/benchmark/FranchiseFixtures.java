@@ -0,0 +1,34 @@
+package com.example.franchise.benchmark;
+
+import com.example.franchise.domain.model.Branch;
+import com.example.franchise.domain.model.Franchise;
+import com.example.franchise.domain.model.Product;
+
+import java.util.ArrayList;
+import java.util.List;
+
+final class FranchiseFixtures {
+
+	private FranchiseFixtures() {
+	}
+
+	static Franchise franchise(String id, int branchCount, int productsPerBranch) {
+		List<Branch> branches = new ArrayList<>(branchCount);
+		for (int b = 0; b < branchCount; b++) {
+			List<Product> products = new ArrayList<>(productsPerBranch);
+			for (int p = 0; p < productsPerBranch; p++) {
+				products.add(new Product(productName(p), (b * 31 + p * 17) % 1000));
+			}
+			branches.add(new Branch(branchName(b), products));
+		}
+		return Franchise.builder().id(id).name("Franquicia " + id).branches(branches).version(0L).build();
+	}
+
+	static String branchName(int index) {
+		return "Sucursal " + index;
+	}
+
+	static String productName(int index) {
+		return "Producto " + index;
+	}
+}
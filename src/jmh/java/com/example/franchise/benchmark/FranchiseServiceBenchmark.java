@@ -0,0 +1,113 @@
+package com.example.franchise.benchmark;
+
+import com.example.franchise.config.FranchiseCacheProperties;
+import com.example.franchise.config.RetryProperties;
+import com.example.franchise.config.StockAlertProperties;
+import com.example.franchise.config.StockCoalescingProperties;
+import com.example.franchise.config.StockEventProperties;
+import com.example.franchise.config.StockHistoryProperties;
+import com.example.franchise.config.StockProperties;
+import com.example.franchise.domain.dto.HighestStockProductDTO;
+import com.example.franchise.domain.dto.ProductStockDTO;
+import com.example.franchise.domain.dto.StockDeltaMode;
+import com.example.franchise.domain.model.Franchise;
+import com.example.franchise.domain.model.Product;
+import com.example.franchise.service.ConflictRetryPolicy;
+import com.example.franchise.service.FranchiseCache;
+import com.example.franchise.repository.FranchiseRepository;
+import com.example.franchise.repository.FranchiseStore;
+import com.example.franchise.service.EmbeddedFranchiseStore;
+import com.example.franchise.service.FranchiseService;
+import com.example.franchise.service.StockAlertEvaluator;
+import com.example.franchise.service.StockAlertRules;
+import com.example.franchise.service.StockEventPublisher;
+import com.example.franchise.service.StockHistoryRecorder;
+import com.example.franchise.service.StockWriteCoalescer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FranchiseServiceBenchmark {
+
+	private static final String FRANCHISE_ID = "bench";
+
+	@Param({"10", "100"})
+	int branchCount;
+
+	@Param({"10", "1000"})
+	int productsPerBranch;
+
+	private FranchiseService service;
+	private Franchise franchise;
+	private ObjectMapper objectMapper;
+
+	@Setup
+	public void setUp() {
+		franchise = FranchiseFixtures.franchise(FRANCHISE_ID, branchCount, productsPerBranch);
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		FranchiseRepository repository = InMemoryFranchiseRepository.create(franchise);
+		FranchiseStore store = new EmbeddedFranchiseStore(
+				repository,
+				new ConflictRetryPolicy(new RetryProperties(3, Duration.ofMillis(1), Duration.ofMillis(5), 0.5), registry)
+		);
+		StockAlertProperties alertProperties = new StockAlertProperties(16, Duration.ofMinutes(1), 16,
+				Duration.ofSeconds(10));
+		service = new FranchiseService(
+				store,
+				new FranchiseCache(new FranchiseCacheProperties(100, Duration.ofMinutes(1)), registry),
+				new StockEventPublisher(store, new StockEventProperties(16, Duration.ofSeconds(1)), registry),
+				// No alert rules are registered, so the rule repository is never used.
+				new StockAlertEvaluator(new StockAlertRules(null, store, alertProperties), alertProperties, registry),
+				// History is written off the request path and there is no Mongo behind the in-memory repository.
+				new StockHistoryRecorder(null,
+						new StockHistoryProperties(false, 16, 16, Duration.ofMillis(10), Duration.ofDays(365)), registry),
+				// Each call blocks on its own result, so there is nothing to combine and the window would only add latency.
+				new StockWriteCoalescer(store, new StockCoalescingProperties(false, Duration.ofMillis(2), 100), registry),
+				new StockProperties(StockDeltaMode.REJECT)
+		);
+		objectMapper = new ObjectMapper();
+	}
+
+	@Benchmark
+	public ProductStockDTO updateProductStock() {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		return service.updateProductStock(
+				FRANCHISE_ID,
+				FranchiseFixtures.branchName(random.nextInt(branchCount)),
+				FranchiseFixtures.productName(random.nextInt(productsPerBranch)),
+				random.nextInt(1000)
+		).block();
+	}
+
+	@Benchmark
+	public Throwable addProductDuplicateCheck() {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		Product duplicate = new Product(FranchiseFixtures.productName(random.nextInt(productsPerBranch)), 1);
+		return service.addProduct(FRANCHISE_ID, FranchiseFixtures.branchName(random.nextInt(branchCount)), duplicate, null)
+				.then(Mono.<Throwable>empty())
+				.onErrorResume(Mono::just)
+				.block();
+	}
+
+	@Benchmark
+	public List<HighestStockProductDTO> getHighestStockProducts() {
+		return service.getHighestStockProducts(FRANCHISE_ID, 1).collectList().block();
+	}
+
+	@Benchmark
+	public byte[] serializeFranchise() throws Exception {
+		return objectMapper.writeValueAsBytes(franchise);
+	}
+}
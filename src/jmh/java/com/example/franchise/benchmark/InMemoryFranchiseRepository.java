@@ -0,0 +1,83 @@
+package com.example.franchise.benchmark;
+
+import com.example.franchise.domain.dto.HighestStockProductDTO;
+import com.example.franchise.domain.dto.ProductStockDTO;
+import com.example.franchise.domain.model.Branch;
+import com.example.franchise.domain.model.Franchise;
+import com.example.franchise.domain.model.Product;
+import com.example.franchise.exception.ResourceNotFoundException;
+import com.example.franchise.repository.FranchiseRepository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.lang.reflect.Proxy;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Map-backed stand-in for {@link FranchiseRepository}, so benchmarks measure the service and domain code rather
+ * than the Mongo driver. Only the methods {@code FranchiseService} calls on its hot paths are implemented.
+ */
+final class InMemoryFranchiseRepository {
+
+	private final Map<String, Franchise> store = new ConcurrentHashMap<>();
+
+	static FranchiseRepository create(Franchise... franchises) {
+		InMemoryFranchiseRepository repository = new InMemoryFranchiseRepository();
+		for (Franchise franchise : franchises) {
+			repository.store.put(franchise.getId(), franchise);
+		}
+		return (FranchiseRepository) Proxy.newProxyInstance(
+				FranchiseRepository.class.getClassLoader(),
+				new Class<?>[]{FranchiseRepository.class},
+				(proxy, method, args) -> switch (method.getName()) {
+					case "findById" -> Mono.justOrEmpty(repository.store.get((String) args[0]));
+					case "existsById" -> Mono.just(repository.store.containsKey((String) args[0]));
+					case "save" -> repository.save((Franchise) args[0]);
+					case "updateProductStock" -> repository.updateProductStock(
+							(String) args[0], (String) args[1], (String) args[2], (Integer) args[3]);
+					case "findHighestStockProducts" -> repository.findHighestStockProducts(
+							(String) args[0], (Integer) args[1]);
+					case "hashCode" -> System.identityHashCode(proxy);
+					case "equals" -> proxy == args[0];
+					case "toString" -> "InMemoryFranchiseRepository";
+					default -> throw new UnsupportedOperationException(method.getName());
+				}
+		);
+	}
+
+	private Mono<Franchise> save(Franchise franchise) {
+		store.put(franchise.getId(), franchise);
+		return Mono.just(franchise);
+	}
+
+	private Mono<ProductStockDTO> updateProductStock(String franchiseId, String branchName, String productName, int stock) {
+		Franchise franchise = store.get(franchiseId);
+		if (franchise == null) {
+			return Mono.error(new ResourceNotFoundException("Franquicia no encontrada"));
+		}
+		return Mono.justOrEmpty(franchise.findBranch(branchName).flatMap(b -> b.findProduct(productName)))
+				.switchIfEmpty(Mono.error(new ResourceNotFoundException("Producto no encontrado")))
+				.map(product -> {
+					product.setStock(stock);
+					return new ProductStockDTO(franchiseId, branchName, productName, stock);
+				});
+	}
+
+	private Flux<HighestStockProductDTO> findHighestStockProducts(String franchiseId, int limit) {
+		Franchise franchise = store.get(franchiseId);
+		if (franchise == null) {
+			return Flux.empty();
+		}
+		return Flux.fromIterable(franchise.getBranches())
+				.concatMap(branch -> Flux.fromStream(branch.getProducts().stream()
+						.sorted(Comparator.comparingInt(Product::getStock).reversed())
+						.limit(limit)
+						.map(product -> toDto(branch, product))));
+	}
+
+	private static HighestStockProductDTO toDto(Branch branch, Product product) {
+		return new HighestStockProductDTO(branch.getName(), product.getName(), product.getStock());
+	}
+}
@@ -0,0 +1,66 @@
+package com.example.franchise.benchmark;
+
+import com.example.franchise.domain.model.Franchise;
+import com.example.franchise.repository.DomainConverters;
+import org.bson.Document;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding and decoding of a franchise document with Spring Data's reflective mapping versus the hand-written
+ * converters in {@link DomainConverters}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MongoMappingBenchmark {
+
+	@Param({"10", "100"})
+	int branchCount;
+
+	@Param({"10", "1000"})
+	int productsPerBranch;
+
+	@Param({"reflective", "converters"})
+	String mapping;
+
+	private MappingMongoConverter converter;
+	private Franchise franchise;
+	private Document document;
+
+	@Setup
+	public void setUp() {
+		MongoCustomConversions conversions = new MongoCustomConversions(
+				mapping.equals("converters") ? DomainConverters.converters() : List.of());
+		MongoMappingContext context = new MongoMappingContext();
+		context.setSimpleTypeHolder(conversions.getSimpleTypeHolder());
+		context.afterPropertiesSet();
+		converter = new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, context);
+		converter.setCustomConversions(conversions);
+		converter.afterPropertiesSet();
+
+		franchise = FranchiseFixtures.franchise("6650f0c2a1b2c3d4e5f60718", branchCount, productsPerBranch);
+		document = write();
+	}
+
+	@Benchmark
+	public Document write() {
+		Document target = new Document();
+		converter.write(franchise, target);
+		return target;
+	}
+
+	@Benchmark
+	public Franchise read() {
+		return converter.read(Franchise.class, document);
+	}
+}
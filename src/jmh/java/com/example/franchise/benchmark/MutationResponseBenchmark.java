@@ -0,0 +1,69 @@
+package com.example.franchise.benchmark;
+
+import com.example.franchise.domain.dto.MutationAckDTO;
+import com.example.franchise.domain.dto.MutationResponse;
+import com.example.franchise.domain.model.Franchise;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialization of the body an {@code addProduct} call returns for each {@link MutationResponse} and wire format.
+ * The payload size of every combination is printed once per trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MutationResponseBenchmark {
+
+	@Param({"10", "100"})
+	int branchCount;
+
+	@Param({"10", "1000"})
+	int productsPerBranch;
+
+	@Param({"FULL", "ENTITY", "ACK"})
+	MutationResponse response;
+
+	@Param({"json", "cbor", "smile"})
+	String format;
+
+	private ObjectMapper mapper;
+	private Franchise franchise;
+	private String branchName;
+	private String productName;
+
+	@Setup
+	public void setUp() throws Exception {
+		JsonFactory factory = switch (format) {
+			case "cbor" -> new CBORFactory();
+			case "smile" -> new SmileFactory();
+			default -> new JsonFactory();
+		};
+		mapper = new ObjectMapper(factory);
+		franchise = FranchiseFixtures.franchise("6650f0c2a1b2c3d4e5f60718", branchCount, productsPerBranch);
+		branchName = FranchiseFixtures.branchName(branchCount / 2);
+		productName = FranchiseFixtures.productName(productsPerBranch / 2);
+
+		System.out.printf("%n%s %s payload: %d bytes%n", response, format, serialize().length);
+	}
+
+	@Benchmark
+	public byte[] serialize() throws Exception {
+		Object body = switch (response) {
+			case FULL -> franchise;
+			case ENTITY -> franchise.findBranch(branchName)
+					.flatMap(b -> b.findProduct(productName))
+					.orElseThrow();
+			case ACK -> MutationAckDTO.of(franchise);
+		};
+		return mapper.writeValueAsBytes(body);
+	}
+}
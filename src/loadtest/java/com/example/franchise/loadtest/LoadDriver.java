@@ -0,0 +1,136 @@
+package com.example.franchise.loadtest;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * Closed-loop driver: {@code concurrency} virtual users each send the next request as soon as the previous one
+ * finishes, picking the operation by the weights in the mix and the target uniformly over the seeded data.
+ */
+class LoadDriver {
+
+	private final LoadTestConfig config;
+	private final WebClient client;
+	private final List<String> franchiseIds = new ArrayList<>();
+	private final AtomicLong created = new AtomicLong();
+	private final Operation[] weightedOperations;
+
+	LoadDriver(LoadTestConfig config, WebClient client) {
+		this.config = config;
+		this.client = client;
+		this.weightedOperations = config.mix().entrySet().stream()
+				.flatMap(e -> Stream.generate(e::getKey).limit(e.getValue()))
+				.toArray(Operation[]::new);
+		if (weightedOperations.length == 0) {
+			throw new IllegalArgumentException("The mix needs at least one operation with a positive weight");
+		}
+	}
+
+	void seed() {
+		franchiseIds.addAll(Flux.range(0, config.franchises())
+				.flatMapSequential(i -> client.post()
+						.uri("/api/franchise")
+						.bodyValue(franchise(i))
+						.retrieve()
+						.bodyToMono(Map.class)
+						.map(body -> (String) body.get("id")), 4)
+				.collectList()
+				.block());
+	}
+
+	LoadReport run(Duration duration) {
+		Map<Operation, Recorder> latencies = new EnumMap<>(Operation.class);
+		Map<Operation, LongAdder> errors = new EnumMap<>(Operation.class);
+		for (Operation operation : config.mix().keySet()) {
+			latencies.put(operation, new Recorder(3));
+			errors.put(operation, new LongAdder());
+		}
+
+		long start = System.nanoTime();
+		long deadline = start + duration.toNanos();
+		Flux.range(0, config.concurrency())
+				.flatMap(user -> Mono.defer(() -> request(latencies, errors))
+						.repeat(() -> System.nanoTime() < deadline), config.concurrency())
+				.blockLast();
+		double seconds = (System.nanoTime() - start) / 1e9;
+
+		Map<Operation, LoadReport.OperationStats> operations = new EnumMap<>(Operation.class);
+		latencies.forEach((operation, recorder) -> {
+			Histogram histogram = recorder.getIntervalHistogram();
+			operations.put(operation, LoadReport.OperationStats.of(histogram, errors.get(operation).sum(), seconds));
+		});
+		long requests = operations.values().stream().mapToLong(LoadReport.OperationStats::requests).sum();
+		long failed = operations.values().stream().mapToLong(LoadReport.OperationStats::errors).sum();
+
+		Map<String, Object> settings = new LinkedHashMap<>();
+		settings.put("franchises", config.franchises());
+		settings.put("branches", config.branches());
+		settings.put("products", config.products());
+		settings.put("concurrency", config.concurrency());
+		settings.put("storage", config.storageMode());
+		settings.put("coalescing", config.coalescing());
+		settings.put("inventory", config.inventory());
+		settings.put("admission", config.admission());
+		settings.put("mix", config.mix());
+		return new LoadReport(settings, seconds, requests, failed, requests / seconds, operations);
+	}
+
+	private Mono<Void> request(Map<Operation, Recorder> latencies, Map<Operation, LongAdder> errors) {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		Operation operation = weightedOperations[random.nextInt(weightedOperations.length)];
+		String franchiseId = franchiseIds.get(random.nextInt(franchiseIds.size()));
+		String branch = branchName(random.nextInt(config.branches()));
+
+		WebClient.RequestHeadersSpec<?> call = switch (operation) {
+			case STOCK_UPDATE -> client.put().uri("/api/franchise/{id}/branch/{branch}/product/{product}/stock/{stock}",
+					franchiseId, branch, productName(random.nextInt(config.products())), random.nextInt(1000));
+			case HIGHEST_STOCK -> client.get().uri("/api/franchise/{id}/highest-stock-products", franchiseId);
+			case ADD_PRODUCT -> client.post().uri("/api/franchise/{id}/branch/{branch}/product", franchiseId, branch)
+					.bodyValue(Map.of("name", "Carga " + created.incrementAndGet(), "stock", random.nextInt(1000)));
+			case ADD_BRANCH -> client.post().uri("/api/franchise/{id}/branch", franchiseId)
+					.bodyValue(Map.of("name", "Carga " + created.incrementAndGet(), "products", List.of()));
+		};
+
+		long start = System.nanoTime();
+		return call.retrieve()
+				.toBodilessEntity()
+				.doOnError(e -> errors.get(operation).increment())
+				.onErrorComplete()
+				.doFinally(signal -> latencies.get(operation).recordValue((System.nanoTime() - start) / 1000))
+				.then();
+	}
+
+	private Map<String, Object> franchise(int index) {
+		List<Map<String, Object>> branches = new ArrayList<>(config.branches());
+		for (int b = 0; b < config.branches(); b++) {
+			List<Map<String, Object>> products = new ArrayList<>(config.products());
+			for (int p = 0; p < config.products(); p++) {
+				products.add(Map.of("name", productName(p), "stock", (b * 31 + p * 17) % 1000));
+			}
+			branches.add(Map.of("name", branchName(b), "products", products));
+		}
+		return Map.of("name", "Franquicia " + index, "branches", branches);
+	}
+
+	private static String branchName(int index) {
+		return "Sucursal " + index;
+	}
+
+	private static String productName(int index) {
+		return "Producto " + index;
+	}
+}
@@ -0,0 +1,95 @@
+package com.example.franchise.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * Throughput and latency of one measured run. Latencies are in milliseconds; the JSON layout is stable so two reports
+ * can be compared with {@code baseline=} or any diff tool.
+ */
+record LoadReport(
+		Map<String, Object> config,
+		double durationSeconds,
+		long requests,
+		long errors,
+		double throughput,
+		Map<Operation, OperationStats> operations
+) {
+
+	private static final ObjectMapper MAPPER = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+	record OperationStats(
+			long requests,
+			long errors,
+			double throughput,
+			double p50,
+			double p90,
+			double p99,
+			double p999,
+			double max
+	) {
+
+		static OperationStats of(Histogram latenciesMicros, long errors, double seconds) {
+			return new OperationStats(
+					latenciesMicros.getTotalCount(),
+					errors,
+					latenciesMicros.getTotalCount() / seconds,
+					millis(latenciesMicros.getValueAtPercentile(50)),
+					millis(latenciesMicros.getValueAtPercentile(90)),
+					millis(latenciesMicros.getValueAtPercentile(99)),
+					millis(latenciesMicros.getValueAtPercentile(99.9)),
+					millis(latenciesMicros.getMaxValue())
+			);
+		}
+
+		private static double millis(long micros) {
+			return micros / 1000.0;
+		}
+	}
+
+	void write(Path path) throws IOException {
+		if (path.getParent() != null) {
+			Files.createDirectories(path.getParent());
+		}
+		MAPPER.writeValue(path.toFile(), this);
+	}
+
+	static LoadReport read(Path path) throws IOException {
+		return MAPPER.readValue(path.toFile(), LoadReport.class);
+	}
+
+	void print(PrintStream out) {
+		out.printf("%-14s %10s %8s %10s %9s %9s %9s %9s %9s%n",
+				"operation", "requests", "errors", "req/s", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+		operations.forEach((operation, stats) -> out.printf("%-14s %10d %8d %10.1f %9.2f %9.2f %9.2f %9.2f %9.2f%n",
+				operation, stats.requests(), stats.errors(), stats.throughput(),
+				stats.p50(), stats.p90(), stats.p99(), stats.p999(), stats.max()));
+		out.printf("%-14s %10d %8d %10.1f%n", "total", requests, errors, throughput);
+	}
+
+	void printComparison(LoadReport baseline, PrintStream out) {
+		out.printf("%-14s %12s %10s %12s %10s%n", "operation", "req/s", "change", "p99 ms", "change");
+		operations.forEach((operation, stats) -> {
+			OperationStats before = baseline.operations().get(operation);
+			if (before == null) {
+				out.printf("%-14s %12.1f %10s %12.2f %10s%n", operation, stats.throughput(), "new", stats.p99(), "new");
+				return;
+			}
+			out.printf("%-14s %12.1f %+9.1f%% %12.2f %+9.1f%%%n",
+					operation, stats.throughput(), change(before.throughput(), stats.throughput()),
+					stats.p99(), change(before.p99(), stats.p99()));
+		});
+		out.printf("%-14s %12.1f %+9.1f%%%n", "total", throughput, change(baseline.throughput(), throughput));
+	}
+
+	private static double change(double before, double after) {
+		return before == 0 ? 0 : (after - before) * 100 / before;
+	}
+}
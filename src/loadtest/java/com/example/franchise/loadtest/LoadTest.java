@@ -0,0 +1,80 @@
+package com.example.franchise.loadtest;
+
+import com.example.franchise.FranchiseApiApplication;
+import de.bwaldvogel.mongo.MongoServer;
+import de.bwaldvogel.mongo.backend.memory.MemoryBackend;
+import org.springframework.boot.Banner;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+/**
+ * Boots the API against an in-process mongo-java-server on a random local port, seeds it and replays the configured
+ * mix. Nothing leaves the loopback interface, so the numbers describe the application rather than a real cluster:
+ * use them to compare releases, not to size MongoDB.
+ *
+ * <pre>
+ * mvn -P loadtest -DskipTests test-compile exec:exec -Dloadtest.args="franchises=20 duration=60s"
+ * </pre>
+ */
+public final class LoadTest {
+
+	private LoadTest() {
+	}
+
+	public static void main(String[] args) throws Exception {
+		LoadTestConfig config = LoadTestConfig.parse(args);
+		System.setProperty("spring.devtools.restart.enabled", "false");
+
+		MongoServer mongo = new MongoServer(new MemoryBackend());
+		ConnectionProvider connections = ConnectionProvider.builder("loadtest")
+				.maxConnections(config.concurrency())
+				.pendingAcquireMaxCount(-1)
+				.build();
+
+		// Passed as arguments so they take precedence over application.properties.
+		try (ConfigurableApplicationContext app = new SpringApplicationBuilder(FranchiseApiApplication.class)
+				.bannerMode(Banner.Mode.OFF)
+				.run(
+						"--spring.data.mongodb.uri=" + mongo.bindAndGetConnectionString() + "/franchise-loadtest",
+						"--server.port=0",
+						"--franchise.storage.mode=" + config.storageMode(),
+						"--franchise.stock-coalescing.enabled=" + config.coalescing(),
+						"--franchise.inventory.enabled=" + config.inventory(),
+						"--franchise.inventory.log-directory=target/loadtest/inventory-log",
+						"--franchise.admission.enabled=" + config.admission(),
+						"--franchise.indexes.explain-on-startup=false",
+						"--logging.level.root=WARN",
+						"--logging.level.de.bwaldvogel=ERROR")) {
+			int port = ((WebServerApplicationContext) app).getWebServer().getPort();
+			WebClient client = WebClient.builder()
+					.baseUrl("http://localhost:" + port)
+					.clientConnector(new ReactorClientHttpConnector(HttpClient.create(connections)))
+					.codecs(codecs -> codecs.defaultCodecs().maxInMemorySize(64 * 1024 * 1024))
+					.build();
+			LoadDriver driver = new LoadDriver(config, client);
+
+			System.out.printf("Seeding %d franchises x %d branches x %d products (%s)%n",
+					config.franchises(), config.branches(), config.products(), config.storageMode());
+			driver.seed();
+			System.out.printf("Warming up for %s with %d users%n", config.warmup(), config.concurrency());
+			driver.run(config.warmup());
+			System.out.printf("Measuring for %s%n", config.duration());
+			LoadReport report = driver.run(config.duration());
+
+			report.print(System.out);
+			report.write(config.report());
+			System.out.printf("Report written to %s%n", config.report().toAbsolutePath());
+			if (config.baseline() != null) {
+				report.printComparison(LoadReport.read(config.baseline()), System.out);
+			}
+		} finally {
+			connections.dispose();
+			mongo.shutdown();
+		}
+	}
+}
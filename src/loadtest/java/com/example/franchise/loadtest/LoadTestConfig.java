@@ -0,0 +1,71 @@
+package com.example.franchise.loadtest;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Options are passed as {@code name=value}, e.g. {@code franchises=20 mix=STOCK_UPDATE:90,HIGHEST_STOCK:10}.
+ */
+record LoadTestConfig(
+		int franchises,
+		int branches,
+		int products,
+		int concurrency,
+		Duration warmup,
+		Duration duration,
+		Map<Operation, Integer> mix,
+		String storageMode,
+		boolean coalescing,
+		boolean inventory,
+		boolean admission,
+		Path report,
+		Path baseline
+) {
+
+	private static final Set<String> OPTIONS = Set.of("franchises", "branches", "products", "concurrency", "warmup",
+			"duration", "mix", "storage", "coalescing", "inventory", "admission", "report", "baseline");
+
+	static LoadTestConfig parse(String[] args) {
+		Map<String, String> options = new HashMap<>();
+		for (String arg : args) {
+			int separator = arg.indexOf('=');
+			if (separator < 1) {
+				throw new IllegalArgumentException("Expected name=value but got " + arg);
+			}
+			options.put(arg.substring(0, separator), arg.substring(separator + 1));
+		}
+
+		if (!OPTIONS.containsAll(options.keySet())) {
+			throw new IllegalArgumentException("Unknown options " + options.keySet() + ", expected " + OPTIONS);
+		}
+
+		return new LoadTestConfig(
+				Integer.parseInt(options.getOrDefault("franchises", "10")),
+				Integer.parseInt(options.getOrDefault("branches", "20")),
+				Integer.parseInt(options.getOrDefault("products", "50")),
+				Integer.parseInt(options.getOrDefault("concurrency", "64")),
+				Duration.parse("PT" + options.getOrDefault("warmup", "10s")),
+				Duration.parse("PT" + options.getOrDefault("duration", "30s")),
+				parseMix(options.getOrDefault("mix", "STOCK_UPDATE:75,HIGHEST_STOCK:20,ADD_PRODUCT:3,ADD_BRANCH:2")),
+				options.getOrDefault("storage", "EMBEDDED"),
+				Boolean.parseBoolean(options.getOrDefault("coalescing", "true")),
+				Boolean.parseBoolean(options.getOrDefault("inventory", "false")),
+				Boolean.parseBoolean(options.getOrDefault("admission", "false")),
+				Path.of(options.getOrDefault("report", "target/loadtest/report.json")),
+				options.containsKey("baseline") ? Path.of(options.get("baseline")) : null
+		);
+	}
+
+	private static Map<Operation, Integer> parseMix(String mix) {
+		Map<Operation, Integer> weights = new EnumMap<>(Operation.class);
+		for (String entry : mix.split(",")) {
+			String[] parts = entry.split(":");
+			weights.put(Operation.valueOf(parts[0].trim()), Integer.parseInt(parts[1].trim()));
+		}
+		return weights;
+	}
+}
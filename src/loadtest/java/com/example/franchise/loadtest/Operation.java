@@ -0,0 +1,8 @@
+package com.example.franchise.loadtest;
+
+enum Operation {
+	STOCK_UPDATE,
+	HIGHEST_STOCK,
+	ADD_PRODUCT,
+	ADD_BRANCH
+}
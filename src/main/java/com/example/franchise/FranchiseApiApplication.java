@@ -2,8 +2,10 @@ package com.example.franchise;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.properties.ConfigurationPropertiesScan;
 
 @SpringBootApplication
+@ConfigurationPropertiesScan
 public class FranchiseApiApplication {
 	public static void main(String[] args) {
 		SpringApplication.run(FranchiseApiApplication.class, args);
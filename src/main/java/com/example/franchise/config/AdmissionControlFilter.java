@@ -0,0 +1,257 @@
+package com.example.franchise.config;
+
+import com.example.franchise.repository.FranchiseStore;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import org.springframework.web.util.pattern.PathPattern;
+import org.springframework.web.util.pattern.PathPatternParser;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Admission control in front of the franchise endpoints. Each franchise gets a token bucket ({@code rate} requests
+ * per second, up to {@code burst}) and a concurrency limit that adapts to latency: it grows by one per round of
+ * requests answered within {@code latency-threshold} and shrinks by {@code backoff-ratio} when they are slower. A
+ * request over either limit is answered with {@code 429} and {@code Retry-After} before it reaches the controller,
+ * so one franchise's burst cannot take the Mongo pool from the others.
+ * <p>
+ * Requests that are not about a single franchise, and the long-lived SSE streams, are not limited.
+ * <p>
+ * The id comes from the path before anything checked it, so meters are only tagged with it once the store confirms
+ * the franchise exists, which is checked once per limiter; rejections of franchises not (yet) known are counted under
+ * {@code franchise=unknown}. An evicted limiter takes its meters along. A limiter evicted while requests are still
+ * in flight is replaced by a fresh one, whose concurrency limit starts over at {@code initial-limit}, so
+ * {@code max-franchises} should stay well above the number of franchises active within {@code idle-timeout}.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "franchise.admission", name = "enabled", havingValue = "true")
+public class AdmissionControlFilter implements WebFilter, Ordered {
+
+    static final String REJECTED = "franchise.admission.rejected";
+    static final String UNKNOWN = "unknown";
+
+    private static final PathPattern FRANCHISE_PATH = PathPatternParser.defaultInstance.parse("/api/franchise/{id}/**");
+    private static final Set<String> NOT_FRANCHISE_IDS = Set.of("stock", "export", "import", "analytics");
+    private static final List<String> STREAM_SUFFIXES = List.of("/stock-events", "/alerts");
+
+    private final AdmissionControlProperties properties;
+    private final FranchiseStore store;
+    private final MeterRegistry registry;
+    private final ObjectMapper mapper;
+    private final Cache<String, FranchiseLimiter> limiters;
+
+    public AdmissionControlFilter(AdmissionControlProperties properties, FranchiseStore store, MeterRegistry registry,
+                                  ObjectMapper mapper) {
+        this.properties = properties;
+        this.store = store;
+        this.registry = registry;
+        this.mapper = mapper;
+        this.limiters = Caffeine.newBuilder()
+                .maximumSize(properties.maxFranchises())
+                .expireAfterAccess(properties.idleTimeout())
+                // Runs as part of the eviction, so it cannot remove the meters of a limiter created after it.
+                .<String, FranchiseLimiter>evictionListener((id, limiter, cause) -> {
+                    if (limiter != null) {
+                        limiter.meters.forEach(registry::remove);
+                    }
+                })
+                .build();
+    }
+
+    /**
+     * After the observation filter, so rejected requests still show up in {@code http.server.requests}.
+     */
+    @Override
+    public int getOrder() {
+        return 0;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        String franchiseId = franchiseId(exchange.getRequest());
+        if (franchiseId == null) {
+            return chain.filter(exchange);
+        }
+
+        FranchiseLimiter limiter = limiters.get(franchiseId, id -> new FranchiseLimiter(properties, System.nanoTime()));
+        if (limiter.checked.compareAndSet(false, true)) {
+            check(franchiseId, limiter);
+        }
+        long start = System.nanoTime();
+        Rejection rejection = limiter.tryAcquire(start);
+        if (rejection != null) {
+            return reject(exchange, franchiseId, limiter, rejection);
+        }
+        return chain.filter(exchange)
+                .doFinally(signal -> limiter.release(start, System.nanoTime()));
+    }
+
+    /**
+     * Runs in the background; until it confirms the franchise the limiter has no meters of its own. A failed check
+     * leaves it that way until the limiter is evicted and created again.
+     */
+    private void check(String franchiseId, FranchiseLimiter limiter) {
+        store.existsById(franchiseId)
+                .filter(Boolean::booleanValue)
+                .subscribe(exists -> known(franchiseId, limiter), e -> log.debug("Could not check franchise {}: {}",
+                        franchiseId, e.getMessage()));
+    }
+
+    /**
+     * Registers the gauges of a franchise once it is known to exist, unless its limiter was evicted meanwhile.
+     */
+    private void known(String franchiseId, FranchiseLimiter limiter) {
+        synchronized (limiter) {
+            if (limiters.asMap().get(franchiseId) != limiter) {
+                return;
+            }
+            limiter.meters.add(Gauge.builder("franchise.admission.limit", limiter, FranchiseLimiter::limit)
+                    .tag("franchise", franchiseId)
+                    .register(registry));
+            limiter.meters.add(Gauge.builder("franchise.admission.in-flight", limiter, FranchiseLimiter::inFlight)
+                    .tag("franchise", franchiseId)
+                    .register(registry));
+            limiter.known = true;
+        }
+    }
+
+    private Mono<Void> reject(ServerWebExchange exchange, String franchiseId, FranchiseLimiter limiter,
+                              Rejection rejection) {
+        if (limiter.known) {
+            Counter rejected = registry.counter(REJECTED, "franchise", franchiseId, "reason", rejection.reason());
+            limiter.meters.add(rejected);
+            rejected.increment();
+        } else {
+            registry.counter(REJECTED, "franchise", UNKNOWN, "reason", rejection.reason()).increment();
+        }
+
+        ServerHttpResponse response = exchange.getResponse();
+        response.setStatusCode(HttpStatus.TOO_MANY_REQUESTS);
+        response.getHeaders().set(HttpHeaders.RETRY_AFTER, Long.toString(rejection.retryAfterSeconds()));
+        response.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+        return Mono.fromCallable(() -> mapper.writeValueAsBytes(Map.of(
+                        "timestamp", Instant.now(),
+                        "status", HttpStatus.TOO_MANY_REQUESTS.value(),
+                        "error", "Demasiadas solicitudes para la franquicia, intente más tarde"
+                )))
+                .flatMap(body -> response.writeWith(Mono.just(response.bufferFactory().wrap(body))));
+    }
+
+    private static String franchiseId(ServerHttpRequest request) {
+        PathPattern.PathMatchInfo match = FRANCHISE_PATH.matchAndExtract(request.getPath().pathWithinApplication());
+        if (match == null) {
+            return null;
+        }
+        String path = request.getPath().value();
+        if (STREAM_SUFFIXES.stream().anyMatch(path::endsWith)) {
+            return null;
+        }
+        String id = match.getUriVariables().get("id");
+        return NOT_FRANCHISE_IDS.contains(id) ? null : id;
+    }
+
+    record Rejection(String reason, long retryAfterSeconds) {
+    }
+
+    /**
+     * Limiter state of one franchise. Times are {@link System#nanoTime()} values passed in by the caller.
+     */
+    static final class FranchiseLimiter {
+
+        private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+        private final double rate;
+        private final int burst;
+        private final int minLimit;
+        private final int maxLimit;
+        private final long latencyThreshold;
+        private final double backoffRatio;
+        private final Set<Meter> meters = ConcurrentHashMap.newKeySet();
+        private final AtomicBoolean checked = new AtomicBoolean();
+        private volatile boolean known;
+        private double tokens;
+        private long refilledAt;
+        private double limit;
+        private int inFlight;
+        private long decreasedAt;
+
+        FranchiseLimiter(AdmissionControlProperties properties, long now) {
+            this.rate = properties.rate();
+            this.burst = properties.burst();
+            this.minLimit = properties.minLimit();
+            this.maxLimit = properties.maxLimit();
+            this.latencyThreshold = properties.latencyThreshold().toNanos();
+            this.backoffRatio = properties.backoffRatio();
+            this.tokens = burst;
+            this.refilledAt = now;
+            this.limit = properties.initialLimit();
+            this.decreasedAt = now;
+        }
+
+        /**
+         * Admits the request, or tells why not. A request rejected for concurrency does not use up a token.
+         */
+        synchronized Rejection tryAcquire(long now) {
+            if (inFlight >= (int) limit) {
+                return new Rejection("concurrency", 1);
+            }
+
+            tokens = Math.min(burst, tokens + (now - refilledAt) * rate / SECOND);
+            refilledAt = now;
+            if (tokens < 1) {
+                return new Rejection("rate", Math.max(1, (long) Math.ceil((1 - tokens) / rate)));
+            }
+
+            tokens--;
+            inFlight++;
+            return null;
+        }
+
+        synchronized void release(long startedAt, long now) {
+            inFlight--;
+            if (now - startedAt > latencyThreshold) {
+                // Only requests admitted after the last decrease count, so one slow round shrinks the limit once.
+                if (startedAt >= decreasedAt) {
+                    limit = Math.max(minLimit, limit * backoffRatio);
+                    decreasedAt = now;
+                }
+            } else if (inFlight + 1 >= limit / 2) {
+                // Grows only while the limit is actually in use: by one after a full limit's worth of fast answers.
+                limit = Math.min(maxLimit, limit + 1 / limit);
+            }
+        }
+
+        synchronized double limit() {
+            return limit;
+        }
+
+        synchronized int inFlight() {
+            return inFlight;
+        }
+    }
+}
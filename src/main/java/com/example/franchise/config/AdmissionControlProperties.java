@@ -0,0 +1,21 @@
+package com.example.franchise.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+@ConfigurationProperties(prefix = "franchise.admission")
+public record AdmissionControlProperties(
+        @DefaultValue("false") boolean enabled,
+        @DefaultValue("200") double rate,
+        @DefaultValue("400") int burst,
+        @DefaultValue("32") int initialLimit,
+        @DefaultValue("4") int minLimit,
+        @DefaultValue("256") int maxLimit,
+        @DefaultValue("200ms") Duration latencyThreshold,
+        @DefaultValue("0.9") double backoffRatio,
+        @DefaultValue("10m") Duration idleTimeout,
+        @DefaultValue("100000") int maxFranchises
+) {
+}
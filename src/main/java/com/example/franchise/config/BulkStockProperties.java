@@ -0,0 +1,13 @@
+package com.example.franchise.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+@ConfigurationProperties(prefix = "franchise.bulk-stock")
+public record BulkStockProperties(
+        @DefaultValue("500") int batchSize,
+        @DefaultValue("200ms") Duration window
+) {
+}
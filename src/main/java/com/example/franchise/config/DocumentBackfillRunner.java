@@ -0,0 +1,61 @@
+package com.example.franchise.config;
+
+import com.example.franchise.domain.model.Franchise;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class DocumentBackfillRunner implements ApplicationRunner {
+
+    private final ReactiveMongoTemplate template;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        backfillVersions().then(backfillNameKeys()).block();
+    }
+
+    private Mono<Void> backfillVersions() {
+        // Documents written before @Version existed would otherwise be treated as new and re-inserted on save.
+        return template.updateMulti(
+                        Query.query(Criteria.where("version").exists(false)),
+                        new Update().set("version", 0L),
+                        Franchise.class
+                )
+                .doOnNext(result -> {
+                    if (result.getModifiedCount() > 0) {
+                        log.info("Initialized version on {} franchise documents", result.getModifiedCount());
+                    }
+                })
+                .then();
+    }
+
+    private Mono<Void> backfillNameKeys() {
+        // Stock updates match branches and products by nameKey; re-saving fills it in from the name.
+        Query missingKeys = Query.query(new Criteria().orOperator(
+                Criteria.where("branches").elemMatch(Criteria.where("nameKey").exists(false)),
+                Criteria.where("branches.products").elemMatch(Criteria.where("nameKey").exists(false))
+        ));
+
+        return template.find(missingKeys, Franchise.class)
+                .flatMap(franchise -> template.save(franchise)
+                        .onErrorResume(OptimisticLockingFailureException.class, e -> Mono.empty()), 4)
+                .count()
+                .doOnNext(count -> {
+                    if (count > 0) {
+                        log.info("Initialized name keys on {} franchise documents", count);
+                    }
+                })
+                .then();
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.franchise.config;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import org.bson.Document;
+import org.bson.types.Binary;
+import org.bson.types.Decimal128;
+import org.bson.types.ObjectId;
+import org.springframework.data.mongodb.core.mapping.event.AbstractMongoEventListener;
+import org.springframework.data.mongodb.core.mapping.event.BeforeSaveEvent;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Map;
+
+/**
+ * Records the BSON size of every document written through save or insert, per collection. Embedded franchises grow
+ * with their branches and products, so this is where an approaching 16 MB limit shows up first.
+ * <p>
+ * The size is added up from the converted document rather than by encoding it, which the driver does anyway when it
+ * sends the write.
+ */
+@Component
+@RequiredArgsConstructor
+public class DocumentSizeMetrics extends AbstractMongoEventListener<Object> {
+
+    private final MeterRegistry registry;
+
+    @Override
+    public void onBeforeSave(BeforeSaveEvent<Object> event) {
+        Document document = event.getDocument();
+        if (document == null) {
+            return;
+        }
+        DistributionSummary.builder("mongodb.document.size")
+                .baseUnit("bytes")
+                .tag("collection", event.getCollectionName())
+                .register(registry)
+                .record(bsonSize(document));
+    }
+
+    /**
+     * Length prefix, elements and terminator. Values of a type the converter does not produce count as empty.
+     */
+    static int bsonSize(Map<?, ?> document) {
+        int size = 4 + 1;
+        for (Map.Entry<?, ?> entry : document.entrySet()) {
+            size += 1 + utf8Length(entry.getKey().toString()) + 1 + valueSize(entry.getValue());
+        }
+        return size;
+    }
+
+    private static int arraySize(Collection<?> values) {
+        int size = 4 + 1;
+        int index = 0;
+        for (Object value : values) {
+            size += 1 + digits(index++) + 1 + valueSize(value);
+        }
+        return size;
+    }
+
+    private static int valueSize(Object value) {
+        return switch (value) {
+            case null -> 0;
+            case String string -> 4 + utf8Length(string) + 1;
+            case Integer ignored -> 4;
+            case Long ignored -> 8;
+            case Double ignored -> 8;
+            case Boolean ignored -> 1;
+            case Date ignored -> 8;
+            case Instant ignored -> 8;
+            case ObjectId ignored -> 12;
+            case Decimal128 ignored -> 16;
+            case Binary binary -> 4 + 1 + binary.length();
+            case byte[] bytes -> 4 + 1 + bytes.length;
+            case Map<?, ?> map -> bsonSize(map);
+            case Collection<?> collection -> arraySize(collection);
+            default -> 0;
+        };
+    }
+
+    private static int utf8Length(String value) {
+        int length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    private static int digits(int index) {
+        int digits = 1;
+        while (index >= 10) {
+            index /= 10;
+            digits++;
+        }
+        return digits;
+    }
+}
@@ -0,0 +1,10 @@
+package com.example.franchise.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+@ConfigurationProperties(prefix = "franchise.metrics")
+public record FranchiseMetricsProperties(
+        @DefaultValue("500") int maxTrackedFranchises
+) {
+}
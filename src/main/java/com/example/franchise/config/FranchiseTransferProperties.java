@@ -0,0 +1,11 @@
+package com.example.franchise.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+@ConfigurationProperties(prefix = "franchise.transfer")
+public record FranchiseTransferProperties(
+        @DefaultValue("500") int batchSize,
+        @DefaultValue("4") int parallelism
+) {
+}
@@ -0,0 +1,161 @@
+package com.example.franchise.config;
+
+import com.example.franchise.domain.dto.ImportProgressDTO;
+import com.example.franchise.domain.model.Franchise;
+import com.example.franchise.service.FranchiseTransferService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Exports or imports franchises as NDJSON when the application is started with {@code --export-franchises=<file>}
+ * or {@code --import-franchises=<file>}, then exits. Progress is saved to {@code <file>.checkpoint} after every batch;
+ * running the same command after a failure resumes from it, and a finished run deletes it.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class FranchiseTransferRunner implements ApplicationRunner {
+
+    static final String EXPORT_OPTION = "export-franchises";
+    static final String IMPORT_OPTION = "import-franchises";
+
+    private final FranchiseTransferService transferService;
+    private final FranchiseTransferProperties properties;
+    private final ObjectMapper objectMapper;
+    private final ConfigurableApplicationContext context;
+
+    @Override
+    public void run(ApplicationArguments args) throws IOException {
+        boolean succeeded;
+        if (args.containsOption(EXPORT_OPTION)) {
+            long exported = exportTo(Path.of(args.getOptionValues(EXPORT_OPTION).get(0)));
+            log.info("Exported {} franchises", exported);
+            succeeded = true;
+        } else if (args.containsOption(IMPORT_OPTION)) {
+            ImportProgressDTO progress = importFrom(Path.of(args.getOptionValues(IMPORT_OPTION).get(0)));
+            if (progress.error() == null) {
+                log.info("Imported {} franchises", progress.imported());
+            } else {
+                log.error("Import stopped after {} franchises at checkpoint {}: {}",
+                        progress.imported(), progress.checkpoint(), progress.error());
+            }
+            succeeded = progress.error() == null;
+        } else {
+            return;
+        }
+        System.exit(SpringApplication.exit(context, () -> succeeded ? 0 : 1));
+    }
+
+    /**
+     * The checkpoint holds the byte offset and id of the last franchise flushed to the file. Resuming truncates
+     * whatever was written after it, so an interrupted line is never left behind.
+     */
+    long exportTo(Path file) throws IOException {
+        Path checkpoint = checkpointOf(file);
+        long offset = 0;
+        String afterId = null;
+        if (Files.exists(checkpoint)) {
+            String[] saved = Files.readString(checkpoint).trim().split(" ", 2);
+            offset = Long.parseLong(saved[0]);
+            afterId = saved[1];
+        }
+
+        long exported = 0;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            channel.truncate(offset);
+            channel.position(offset);
+            BufferedWriter writer = new BufferedWriter(Channels.newWriter(channel, StandardCharsets.UTF_8));
+            String lastId = afterId;
+            for (Franchise franchise : transferService.exportFranchises(afterId).toIterable(properties.batchSize())) {
+                writer.write(objectMapper.writeValueAsString(franchise));
+                writer.write('\n');
+                lastId = franchise.getId();
+                if (++exported % properties.batchSize() == 0) {
+                    writer.flush();
+                    saveCheckpoint(checkpoint, channel.position() + " " + lastId);
+                }
+            }
+            writer.flush();
+        }
+        Files.deleteIfExists(checkpoint);
+        return exported;
+    }
+
+    /**
+     * The checkpoint holds the number of lines already written, which are skipped unparsed when resuming.
+     */
+    ImportProgressDTO importFrom(Path file) throws IOException {
+        Path checkpoint = checkpointOf(file);
+        long skip = Files.exists(checkpoint) ? Long.parseLong(Files.readString(checkpoint).trim()) : 0;
+
+        Flux<Franchise> franchises = Flux.using(
+                        () -> Files.newBufferedReader(file, StandardCharsets.UTF_8),
+                        reader -> Flux.fromStream(reader.lines()),
+                        FranchiseTransferRunner::closeQuietly)
+                .skip(skip)
+                .map(this::readFranchise)
+                .subscribeOn(Schedulers.boundedElastic());
+
+        ImportProgressDTO last = transferService.importFranchises(franchises, 0)
+                .map(progress -> new ImportProgressDTO(
+                        skip + progress.checkpoint(), progress.imported(), progress.error()))
+                .doOnNext(progress -> saveCheckpoint(checkpoint, String.valueOf(progress.checkpoint())))
+                .last(new ImportProgressDTO(skip, 0, null))
+                .block();
+
+        if (last.error() == null) {
+            Files.deleteIfExists(checkpoint);
+        }
+        return last;
+    }
+
+    private Franchise readFranchise(String line) {
+        try {
+            return objectMapper.readValue(line, Franchise.class);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void saveCheckpoint(Path checkpoint, String content) {
+        try {
+            Path pending = checkpoint.resolveSibling(checkpoint.getFileName() + ".tmp");
+            Files.writeString(pending, content);
+            Files.move(pending, checkpoint, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static Path checkpointOf(Path file) {
+        return file.resolveSibling(file.getFileName() + ".checkpoint");
+    }
+
+    private static void closeQuietly(BufferedReader reader) {
+        try {
+            reader.close();
+        } catch (IOException e) {
+            log.warn("Could not close the import file: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.example.franchise.config;
+
+import com.example.franchise.repository.FranchiseStore;
+import com.example.franchise.service.InventoryEngine;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnProperty(prefix = "franchise.inventory", name = "enabled", havingValue = "true")
+public class InventoryEngineConfig {
+
+    /**
+     * Puts the {@link InventoryEngine} in front of whichever store {@code franchise.storage.mode} selected, so every
+     * service reading or writing stock goes through it.
+     */
+    @Bean
+    static BeanPostProcessor inventoryEngineStore(ObjectProvider<InventoryEngine> engine) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                return bean instanceof FranchiseStore store ? engine.getObject().decorate(store) : bean;
+            }
+        };
+    }
+}
@@ -0,0 +1,23 @@
+package com.example.franchise.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Set;
+
+@ConfigurationProperties(prefix = "franchise.inventory")
+public record InventoryEngineProperties(
+        @DefaultValue("false") boolean enabled,
+        @DefaultValue Set<String> franchiseIds,
+        @DefaultValue("100ms") Duration flushInterval,
+        @DefaultValue("500") int flushBatchSize,
+        @DefaultValue("100000") int maxDirty,
+        @DefaultValue("inventory-log") Path logDirectory,
+        @DefaultValue("16MB") DataSize logSegmentSize,
+        @DefaultValue("false") boolean logSync,
+        @DefaultValue("30s") Duration leaseDuration
+) {
+}
@@ -0,0 +1,26 @@
+package com.example.franchise.config;
+
+import com.example.franchise.repository.FranchiseStore;
+import com.example.franchise.service.InventoryLeaseGuard;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration(proxyBeanMethods = false)
+public class InventoryLeaseConfig {
+
+    /**
+     * Active whether or not this instance runs the inventory engine: an instance without it is exactly the one that
+     * would otherwise write franchises hosted elsewhere.
+     */
+    @Bean
+    static BeanPostProcessor inventoryLeaseGuardStore(ObjectProvider<InventoryLeaseGuard> guard) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                return bean instanceof FranchiseStore store ? guard.getObject().guard(store) : bean;
+            }
+        };
+    }
+}
@@ -0,0 +1,124 @@
+package com.example.franchise.config;
+
+import com.example.franchise.repository.FranchiseStore;
+import com.example.franchise.service.ConflictRetryPolicy;
+import com.example.franchise.service.FranchiseService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import io.micrometer.core.instrument.config.MeterFilter;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.web.embedded.netty.NettyServerCustomizer;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.NativeDetector;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Configuration(proxyBeanMethods = false)
+public class MetricsConfig {
+
+    private static final String SCHEDULER_DECORATOR = "franchise-metrics";
+
+    /**
+     * Per-method timers on the service and the persistence port. Both return cold publishers, so the timing is done
+     * on subscription rather than with {@code @Timed}, which would only measure assembly.
+     * <p>
+     * A native image cannot define the service's class-based proxy at runtime, so there only the store is timed.
+     */
+    @Bean
+    static BeanPostProcessor reactiveTimers(ObjectProvider<MeterRegistry> registry) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof FranchiseService && !NativeDetector.inNativeImage()) {
+                    ProxyFactory proxy = new ProxyFactory(bean);
+                    proxy.setProxyTargetClass(true);
+                    proxy.addAdvice(new ReactiveTimingInterceptor(registry.getObject(), "franchise.service", true));
+                    return proxy.getProxy();
+                }
+                if (bean instanceof FranchiseStore) {
+                    ProxyFactory proxy = new ProxyFactory(bean);
+                    proxy.addAdvice(new ReactiveTimingInterceptor(registry.getObject(), "franchise.store", false));
+                    return proxy.getProxy();
+                }
+                return bean;
+            }
+        };
+    }
+
+    /**
+     * Franchise ids are unbounded; once the limit is reached new franchises are no longer counted.
+     */
+    @Bean
+    MeterFilter trackedFranchisesLimit(FranchiseMetricsProperties properties) {
+        return MeterFilter.maximumAllowableTags(ReactiveTimingInterceptor.FRANCHISE_REQUESTS, "franchise",
+                properties.maxTrackedFranchises(), MeterFilter.deny());
+    }
+
+    /**
+     * Same limit for the per-franchise conflict and retry counters.
+     */
+    @Bean
+    MeterFilter mutationTrackedFranchisesLimit(FranchiseMetricsProperties properties) {
+        return MeterFilter.maximumAllowableTags(ConflictRetryPolicy.METRIC_PREFIX, "franchise",
+                properties.maxTrackedFranchises(), MeterFilter.deny());
+    }
+
+    /**
+     * Same limit for the per-franchise admission control meters.
+     */
+    @Bean
+    MeterFilter admissionTrackedFranchisesLimit(FranchiseMetricsProperties properties) {
+        return MeterFilter.maximumAllowableTags("franchise.admission", "franchise",
+                properties.maxTrackedFranchises(), MeterFilter.deny());
+    }
+
+    /**
+     * Turns on Reactor Netty's connection and event-loop meters ({@code reactor.netty.eventloop.pending.tasks}).
+     * Route latencies already come from {@code http.server.requests}, so the URI tag is collapsed.
+     */
+    @Bean
+    NettyServerCustomizer nettyMetrics() {
+        return server -> server.metrics(true, uri -> "*");
+    }
+
+    /**
+     * Active, queued and completed task gauges for the parallel scheduler behind the retry back-off, the bulk window
+     * and the highest-stock sampling. Bounded-elastic workers come and go, so they are left out rather than leaving
+     * stale gauges behind.
+     */
+    @Bean
+    SmartLifecycle schedulerMetrics(MeterRegistry registry) {
+        return new SmartLifecycle() {
+            private volatile boolean running;
+
+            @Override
+            public void start() {
+                AtomicInteger executors = new AtomicInteger();
+                Schedulers.addExecutorServiceDecorator(SCHEDULER_DECORATOR, (scheduler, executor) -> {
+                    if (!scheduler.toString().startsWith("parallel")) {
+                        return executor;
+                    }
+                    return ExecutorServiceMetrics.monitor(registry, executor,
+                            "parallel-" + executors.incrementAndGet(), "reactor.scheduler");
+                });
+                running = true;
+            }
+
+            @Override
+            public void stop() {
+                Schedulers.removeExecutorServiceDecorator(SCHEDULER_DECORATOR);
+                running = false;
+            }
+
+            @Override
+            public boolean isRunning() {
+                return running;
+            }
+        };
+    }
+}
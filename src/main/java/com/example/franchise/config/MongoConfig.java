@@ -0,0 +1,29 @@
+package com.example.franchise.config;
+
+import com.example.franchise.repository.DomainConverters;
+import org.springframework.boot.autoconfigure.mongo.MongoClientSettingsBuilderCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
+
+import java.util.concurrent.TimeUnit;
+
+@Configuration(proxyBeanMethods = false)
+public class MongoConfig {
+
+    @Bean
+    MongoClientSettingsBuilderCustomizer connectionPool(MongoPoolProperties pool) {
+        return settings -> settings.applyToConnectionPoolSettings(builder -> builder
+                .maxSize(pool.maxSize())
+                .minSize(pool.minSize())
+                .maxConnecting(pool.maxConnecting())
+                .maxWaitTime(pool.maxWaitTime().toMillis(), TimeUnit.MILLISECONDS)
+                .maxConnectionIdleTime(pool.maxConnectionIdleTime().toMillis(), TimeUnit.MILLISECONDS)
+                .maxConnectionLifeTime(pool.maxConnectionLifeTime().toMillis(), TimeUnit.MILLISECONDS));
+    }
+
+    @Bean
+    MongoCustomConversions mongoCustomConversions() {
+        return new MongoCustomConversions(DomainConverters.converters());
+    }
+}
@@ -0,0 +1,265 @@
+package com.example.franchise.config;
+
+import com.example.franchise.domain.model.BranchDocument;
+import com.example.franchise.domain.model.Franchise;
+import com.example.franchise.domain.model.ProductDocument;
+import com.example.franchise.domain.model.StockAlertRule;
+import com.example.franchise.domain.model.StockMovement;
+import com.example.franchise.repository.FranchiseRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.CollectionOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.IndexDefinition;
+import org.springframework.data.mongodb.core.index.IndexInfo;
+import org.springframework.data.mongodb.core.query.Collation;
+import org.springframework.data.mongodb.core.timeseries.Granularity;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Owns every index the application relies on. They are created while the context starts, before the web server
+ * accepts requests and before any runner, so no write goes through without the unique indexes and a failure stops
+ * the application before it has served anything. With {@code franchise.indexes.explain-on-startup} it also logs the
+ * winning plan of the hot queries and warns when one of them falls back to a collection scan.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class MongoIndexManager implements InitializingBean {
+
+    private static final String LEGACY_BRANCH_NAME_KEY = "branches.name";
+
+    private final ReactiveMongoTemplate template;
+    private final StorageProperties storageProperties;
+    private final IndexProperties indexProperties;
+    private final StockHistoryProperties stockHistoryProperties;
+
+    @Override
+    public void afterPropertiesSet() {
+        ensureIndexes()
+                .then(indexProperties.explainOnStartup() ? explainHotQueries() : Mono.empty())
+                .block();
+    }
+
+    public Mono<Void> ensureIndexes() {
+        return dropLegacyBranchNameIndex()
+                .then(ensureStockHistoryCollection())
+                .then(require(Franchise.class, new Index()
+                        .on("name", Sort.Direction.ASC)
+                        .unique()
+                        .named("franchise_name_ci")
+                        .collation(Collation.from(Document.parse(FranchiseRepository.NAME_COLLATION)))))
+                .then(require(BranchDocument.class, new Index()
+                        .on("franchiseId", Sort.Direction.ASC)
+                        .on("nameKey", Sort.Direction.ASC)
+                        .unique()
+                        .named("franchise_branch_key")))
+                .then(require(ProductDocument.class, new Index()
+                        .on("branchId", Sort.Direction.ASC)
+                        .on("nameKey", Sort.Direction.ASC)
+                        .unique()
+                        .named("branch_product_key")))
+                .then(require(StockAlertRule.class, new Index()
+                        .on("franchiseId", Sort.Direction.ASC)
+                        .on("branchKey", Sort.Direction.ASC)
+                        .on("productKey", Sort.Direction.ASC)
+                        .unique()
+                        .named("franchise_branch_product_rule")))
+                .then(ensure(ProductDocument.class, new Index()
+                        .on("franchiseId", Sort.Direction.ASC)
+                        .on("branchId", Sort.Direction.ASC)
+                        .on("stock", Sort.Direction.DESC)
+                        .named("franchise_branch_stock")))
+                .then(ensure(ProductDocument.class, new Index()
+                        .on("franchiseId", Sort.Direction.ASC)
+                        .on("stock", Sort.Direction.ASC)
+                        .named("franchise_stock")))
+                .then(ensure(ProductDocument.class, new Index()
+                        .on("stock", Sort.Direction.ASC)
+                        .named("stock")))
+                .then(ensure(StockMovement.class, new Index()
+                        .on("meta.franchiseId", Sort.Direction.ASC)
+                        .on("meta.branchKey", Sort.Direction.ASC)
+                        .on("meta.productKey", Sort.Direction.ASC)
+                        .on("timestamp", Sort.Direction.ASC)
+                        .named("franchise_branch_product_time")));
+    }
+
+    /**
+     * The stock history has to be created as a time-series collection up front; an insert would create a regular one.
+     */
+    private Mono<Void> ensureStockHistoryCollection() {
+        String name = template.getCollectionName(StockMovement.class);
+        CollectionOptions options = CollectionOptions.timeSeries("timestamp", timeSeries -> timeSeries
+                .metaField("meta")
+                .granularity(Granularity.MINUTES)
+                .expireAfter(stockHistoryProperties.retention()));
+
+        return template.collectionExists(StockMovement.class)
+                .flatMap(exists -> exists
+                        ? checkTimeSeries(name)
+                        : template.createCollection(StockMovement.class, options)
+                                .doOnSuccess(ignored -> log.info("Created time-series collection {}", name))
+                                .then()
+                                // Another instance may have created it in the meantime.
+                                .onErrorResume(e -> template.collectionExists(StockMovement.class)
+                                        .flatMap(created -> created
+                                                ? checkTimeSeries(name)
+                                                : Mono.error(new IllegalStateException(
+                                                        "Could not create time-series collection %s: %s"
+                                                                .formatted(name, e.getMessage()), e)))));
+    }
+
+    /**
+     * A collection left behind by an older version, or by an insert that ran before it was created here, is a
+     * regular one: movements are still recorded, but stored as full documents and never expired.
+     */
+    private Mono<Void> checkTimeSeries(String name) {
+        return template.getMongoDatabase()
+                .flatMap(database -> Mono.from(database.listCollections().filter(new Document("name", name)).first()))
+                .filter(info -> !"timeseries".equals(info.getString("type")))
+                .doOnNext(info -> log.warn("Collection {} is not a time-series collection, so stock movements are "
+                        + "never expired; rename or drop it to have it recreated on the next start", name))
+                .then();
+    }
+
+    /**
+     * {@code @Indexed(unique = true)} on the embedded {@code Branch.name} produced a unique index on
+     * {@code branches.name} across the whole collection, so two franchises could not share a branch name.
+     */
+    private Mono<Void> dropLegacyBranchNameIndex() {
+        return template.indexOps(Franchise.class).getIndexInfo()
+                .filter(info -> info.getIndexFields().size() == 1
+                        && info.isIndexForFields(List.of(LEGACY_BRANCH_NAME_KEY)))
+                .map(IndexInfo::getName)
+                .concatMap(name -> template.indexOps(Franchise.class).dropIndex(name)
+                        .doOnSuccess(ignored -> log.info("Dropped legacy index {} on franchises", name)))
+                .then();
+    }
+
+    /**
+     * The unique indexes are what keeps names from being duplicated under concurrent writes, so startup fails when
+     * one of them cannot be created, e.g. because the collection already holds duplicates.
+     */
+    private Mono<Void> require(Class<?> type, IndexDefinition index) {
+        return template.indexOps(type).createIndex(index)
+                .onErrorMap(e -> new IllegalStateException("Could not create required index %s on %s: %s".formatted(
+                        index.getIndexOptions().get("name"), template.getCollectionName(type), e.getMessage()), e))
+                .then();
+    }
+
+    /**
+     * The remaining indexes only speed queries up; without them the application still behaves correctly.
+     */
+    private Mono<Void> ensure(Class<?> type, IndexDefinition index) {
+        return template.indexOps(type).createIndex(index)
+                .doOnError(e -> log.warn("Could not create index {} on {}: {}",
+                        index.getIndexOptions().get("name"), template.getCollectionName(type), e.getMessage()))
+                .onErrorResume(e -> Mono.empty())
+                .then();
+    }
+
+    Mono<Void> explainHotQueries() {
+        String sampleId = new ObjectId().toHexString();
+        List<HotQuery> queries = new ArrayList<>(List.of(
+                new HotQuery("existsByName", "franchises",
+                        new Document("name", "sample"), null, Document.parse(FranchiseRepository.NAME_COLLATION)),
+                new HotQuery("findPage", "franchises",
+                        new Document("_id", new Document("$gt", new ObjectId(sampleId))), new Document("_id", 1), null)
+        ));
+
+        if (storageProperties.mode() == StorageProperties.Mode.NORMALIZED) {
+            queries.add(new HotQuery("findBranch", "branches",
+                    new Document("franchiseId", sampleId).append("nameKey", "sample"), null, null));
+            queries.add(new HotQuery("findProduct", "products",
+                    new Document("branchId", sampleId).append("nameKey", "sample"), null, null));
+            queries.add(new HotQuery("findHighestStockProducts", "products",
+                    new Document("franchiseId", sampleId),
+                    new Document("branchId", 1).append("stock", -1).append("_id", 1), null));
+            queries.add(new HotQuery("findLowStockProducts", "products",
+                    new Document("franchiseId", sampleId).append("stock", new Document("$lt", 10)),
+                    new Document("stock", 1).append("_id", 1), null));
+        } else {
+            queries.add(new HotQuery("updateProductStock", "franchises",
+                    new Document("_id", new ObjectId(sampleId)).append("branches", new Document("$elemMatch",
+                            new Document("nameKey", "sample").append("products",
+                                    new Document("$elemMatch", new Document("nameKey", "sample"))))),
+                    null, null));
+        }
+        queries.add(new HotQuery("findStockMovements", "stock_movements",
+                new Document("meta.franchiseId", sampleId).append("meta.branchKey", "sample")
+                        .append("meta.productKey", "sample")
+                        .append("timestamp", new Document("$gte", new Date(0))),
+                new Document("timestamp", 1), null));
+
+        return Flux.fromIterable(queries)
+                .concatMap(this::explain)
+                .then();
+    }
+
+    private Mono<Void> explain(HotQuery query) {
+        Document command = new Document("find", query.collection()).append("filter", query.filter());
+        if (query.sort() != null) {
+            command.append("sort", query.sort());
+        }
+        if (query.collation() != null) {
+            command.append("collation", query.collation());
+        }
+
+        return template.executeCommand(new Document("explain", command).append("verbosity", "queryPlanner"))
+                .doOnNext(explain -> {
+                    List<String> stages = planStages(explain);
+                    if (stages.contains("COLLSCAN")) {
+                        log.warn("Query {} on {} uses a collection scan: {}", query.name(), query.collection(), stages);
+                    } else {
+                        log.info("Query {} on {} plan: {}", query.name(), query.collection(), stages);
+                    }
+                })
+                .doOnError(e -> log.info("Could not explain query {} on {}: {}",
+                        query.name(), query.collection(), e.getMessage()))
+                .onErrorResume(e -> Mono.empty())
+                .then();
+    }
+
+    /**
+     * Stage names of the winning plan, outermost first, e.g. {@code [FETCH, IXSCAN]}.
+     */
+    static List<String> planStages(Document explain) {
+        List<String> stages = new ArrayList<>();
+        Document queryPlanner = explain.get("queryPlanner", Document.class);
+        Document plan = queryPlanner == null ? null : queryPlanner.get("winningPlan", Document.class);
+        if (plan != null && plan.containsKey("queryPlan")) {
+            plan = plan.get("queryPlan", Document.class);
+        }
+
+        List<Document> pending = new ArrayList<>();
+        if (plan != null) {
+            pending.add(plan);
+        }
+        while (!pending.isEmpty()) {
+            Document stage = pending.remove(0);
+            stages.add(stage.getString("stage"));
+            if (stage.containsKey("inputStage")) {
+                pending.add(stage.get("inputStage", Document.class));
+            }
+            if (stage.containsKey("inputStages")) {
+                pending.addAll(stage.getList("inputStages", Document.class));
+            }
+        }
+        return stages;
+    }
+
+    private record HotQuery(String name, String collection, Document filter, Document sort, Document collation) {
+    }
+}
@@ -0,0 +1,17 @@
+package com.example.franchise.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+@ConfigurationProperties(prefix = "franchise.mongo.pool")
+public record MongoPoolProperties(
+        @DefaultValue("100") int maxSize,
+        @DefaultValue("10") int minSize,
+        @DefaultValue("2") int maxConnecting,
+        @DefaultValue("2s") Duration maxWaitTime,
+        @DefaultValue("5m") Duration maxConnectionIdleTime,
+        @DefaultValue("0s") Duration maxConnectionLifeTime
+) {
+}
@@ -0,0 +1,46 @@
+package com.example.franchise.config;
+
+import com.example.franchise.domain.dto.FranchiseSummaryDTO;
+import com.example.franchise.domain.dto.HighestStockProductDTO;
+import com.example.franchise.domain.dto.MutationAckDTO;
+import com.example.franchise.domain.model.Branch;
+import com.example.franchise.domain.model.Franchise;
+import com.example.franchise.domain.model.Product;
+import com.example.franchise.repository.FranchiseStore;
+import org.springframework.aop.framework.AopProxyUtils;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+import org.springframework.aot.hint.annotation.RegisterReflectionForBinding;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.ImportRuntimeHints;
+
+/**
+ * Hints for the native image ({@code mvn -Pnative native:compile}) that the AOT pass cannot infer on its own.
+ * <p>
+ * The mutation endpoints return {@code ResponseEntity<?>}, so the bodies they may serialize are registered for
+ * binding explicitly. The Mongo driver, {@code bson} and Netty ship their own native-image metadata, and the reactive
+ * streams client does no reflection of its own, so nothing is added for them here.
+ */
+@Configuration(proxyBeanMethods = false)
+@ImportRuntimeHints(NativeConfig.Hints.class)
+@RegisterReflectionForBinding({
+        Franchise.class,
+        Branch.class,
+        Product.class,
+        HighestStockProductDTO.class,
+        FranchiseSummaryDTO.class,
+        MutationAckDTO.class
+})
+public class NativeConfig {
+
+    static class Hints implements RuntimeHintsRegistrar {
+
+        /**
+         * {@link MetricsConfig} wraps the store in a JDK proxy after the AOT pass, so its interfaces are declared here.
+         */
+        @Override
+        public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
+            hints.proxies().registerJdkProxy(AopProxyUtils.completeJdkProxyInterfaces(FranchiseStore.class));
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.example.franchise.config;
+
+import org.springframework.boot.autoconfigure.reactor.netty.ReactorNettyProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.ReactorResourceFactory;
+import reactor.netty.resources.LoopResources;
+
+@Configuration(proxyBeanMethods = false)
+public class NettyConfig {
+
+    /**
+     * Replaces Boot's factory so the server and the WebClient run on dedicated, sized event loops instead of the
+     * global ones.
+     */
+    @Bean
+    ReactorResourceFactory reactorResourceFactory(NettyProperties properties, ReactorNettyProperties reactorNetty) {
+        int workers = properties.workerThreads() != null
+                ? properties.workerThreads()
+                : LoopResources.DEFAULT_IO_WORKER_COUNT;
+
+        ReactorResourceFactory factory = new ReactorResourceFactory();
+        factory.setUseGlobalResources(false);
+        factory.setLoopResourcesSupplier(() ->
+                LoopResources.create("franchise-http", properties.selectThreads(), workers, true));
+        if (reactorNetty.getShutdownQuietPeriod() != null) {
+            factory.setShutdownQuietPeriod(reactorNetty.getShutdownQuietPeriod());
+        }
+        return factory;
+    }
+}
@@ -0,0 +1,15 @@
+package com.example.franchise.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * Event-loop sizing for the HTTP server and the shared WebClient resources. {@code workerThreads} unset keeps Reactor
+ * Netty's default of one loop per core (minimum four).
+ */
+@ConfigurationProperties(prefix = "franchise.netty")
+public record NettyProperties(
+        @DefaultValue("1") int selectThreads,
+        Integer workerThreads
+) {
+}
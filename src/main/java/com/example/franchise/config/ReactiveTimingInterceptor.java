@@ -0,0 +1,83 @@
+package com.example.franchise.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.lang.reflect.Parameter;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Times every {@link Mono} or {@link Flux} returned by the advised bean from subscription to termination, tagged by
+ * method, outcome and exception. When {@code countFranchises} is set it also counts calls per franchise id in
+ * {@value #FRANCHISE_REQUESTS} so the hot franchises stand out.
+ */
+@RequiredArgsConstructor
+class ReactiveTimingInterceptor implements MethodInterceptor {
+
+    static final String FRANCHISE_REQUESTS = "franchise.requests";
+
+    private static final Set<String> FRANCHISE_ID_PARAMETERS = Set.of("franchiseId", "id");
+
+    private final MeterRegistry registry;
+    private final String timerName;
+    private final boolean countFranchises;
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        String method = invocation.getMethod().getName();
+        if (countFranchises) {
+            countFranchise(method, invocation);
+        }
+
+        Object result = invocation.proceed();
+        if (result instanceof Mono<?> mono) {
+            return Mono.defer(() -> {
+                Timer.Sample sample = Timer.start(registry);
+                AtomicReference<Throwable> error = new AtomicReference<>();
+                return mono
+                        .doOnError(error::set)
+                        .doFinally(signal -> stop(sample, method, signal, error.get()));
+            });
+        }
+        if (result instanceof Flux<?> flux) {
+            return Flux.defer(() -> {
+                Timer.Sample sample = Timer.start(registry);
+                AtomicReference<Throwable> error = new AtomicReference<>();
+                return flux
+                        .doOnError(error::set)
+                        .doFinally(signal -> stop(sample, method, signal, error.get()));
+            });
+        }
+        return result;
+    }
+
+    private void stop(Timer.Sample sample, String method, SignalType signal, Throwable error) {
+        sample.stop(Timer.builder(timerName)
+                .tag("method", method)
+                .tag("outcome", switch (signal) {
+                    case ON_ERROR -> "error";
+                    case CANCEL -> "cancel";
+                    default -> "success";
+                })
+                .tag("exception", error == null ? "none" : error.getClass().getSimpleName())
+                .register(registry));
+    }
+
+    private void countFranchise(String method, MethodInvocation invocation) {
+        Parameter[] parameters = invocation.getMethod().getParameters();
+        Object[] arguments = invocation.getArguments();
+        for (int i = 0; i < parameters.length; i++) {
+            if (FRANCHISE_ID_PARAMETERS.contains(parameters[i].getName()) && arguments[i] instanceof String id) {
+                registry.counter(FRANCHISE_REQUESTS, "franchise", id, "method", method).increment();
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.example.franchise.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+@ConfigurationProperties(prefix = "franchise.retry")
+public record RetryProperties(
+        @DefaultValue("8") int maxAttempts,
+        @DefaultValue("10ms") Duration minBackoff,
+        @DefaultValue("500ms") Duration maxBackoff,
+        @DefaultValue("0.5") double jitter
+) {
+}
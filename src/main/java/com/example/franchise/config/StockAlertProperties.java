@@ -0,0 +1,15 @@
+package com.example.franchise.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+@ConfigurationProperties(prefix = "franchise.stock-alerts")
+public record StockAlertProperties(
+        @DefaultValue("4096") int queueSize,
+        @DefaultValue("1m") Duration minInterval,
+        @DefaultValue("256") int bufferSize,
+        @DefaultValue("10s") Duration refreshInterval
+) {
+}
@@ -0,0 +1,13 @@
+package com.example.franchise.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+@ConfigurationProperties(prefix = "franchise.stock-events")
+public record StockEventProperties(
+        @DefaultValue("256") int bufferSize,
+        @DefaultValue("1s") Duration highestStockInterval
+) {
+}
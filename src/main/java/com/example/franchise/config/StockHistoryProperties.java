@@ -0,0 +1,16 @@
+package com.example.franchise.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+@ConfigurationProperties(prefix = "franchise.stock-history")
+public record StockHistoryProperties(
+        @DefaultValue("true") boolean enabled,
+        @DefaultValue("8192") int queueSize,
+        @DefaultValue("500") int batchSize,
+        @DefaultValue("200ms") Duration window,
+        @DefaultValue("365d") Duration retention
+) {
+}
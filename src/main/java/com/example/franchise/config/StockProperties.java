@@ -0,0 +1,11 @@
+package com.example.franchise.config;
+
+import com.example.franchise.domain.dto.StockDeltaMode;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+@ConfigurationProperties(prefix = "franchise.stock")
+public record StockProperties(
+        @DefaultValue("REJECT") StockDeltaMode negativePolicy
+) {
+}
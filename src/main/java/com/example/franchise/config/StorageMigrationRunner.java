@@ -0,0 +1,29 @@
+package com.example.franchise.config;
+
+import com.example.franchise.repository.NormalizedStorageMigration;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.stereotype.Component;
+
+/**
+ * Runs the normalized storage migration when the application is started with {@code --migrate-storage}, then exits.
+ */
+@Component
+@RequiredArgsConstructor
+public class StorageMigrationRunner implements ApplicationRunner {
+
+    private final NormalizedStorageMigration migration;
+    private final ConfigurableApplicationContext context;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!args.containsOption("migrate-storage")) {
+            return;
+        }
+        migration.migrate().block();
+        System.exit(SpringApplication.exit(context, () -> 0));
+    }
+}
@@ -0,0 +1,16 @@
+package com.example.franchise.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+@ConfigurationProperties(prefix = "franchise.storage")
+public record StorageProperties(
+        @DefaultValue("EMBEDDED") Mode mode,
+        @DefaultValue("500") int migrationBatchSize
+) {
+
+    public enum Mode {
+        EMBEDDED,
+        NORMALIZED
+    }
+}
@@ -3,80 +3,376 @@ package com.example.franchise.controller;
 import com.example.franchise.domain.model.Branch;
 import com.example.franchise.domain.model.Franchise;
 import com.example.franchise.domain.model.Product;
+import com.example.franchise.domain.model.StockAlertRule;
+import com.example.franchise.domain.dto.BranchStockDTO;
+import com.example.franchise.domain.dto.FranchiseSummaryDTO;
+import com.example.franchise.domain.dto.FranchiseView;
 import com.example.franchise.domain.dto.HighestStockProductDTO;
+import com.example.franchise.domain.dto.ImportProgressDTO;
+import com.example.franchise.domain.dto.MutationAckDTO;
+import com.example.franchise.domain.dto.MutationResponse;
+import com.example.franchise.domain.dto.ProductStockDTO;
+import com.example.franchise.domain.dto.StockAlert;
+import com.example.franchise.domain.dto.StockAlertRuleRequest;
+import com.example.franchise.domain.dto.StockDelta;
+import com.example.franchise.domain.dto.StockDeltaMode;
+import com.example.franchise.domain.dto.StockEvent;
+import com.example.franchise.domain.dto.StockHistoryBucketDTO;
+import com.example.franchise.domain.dto.StockHistoryResolution;
+import com.example.franchise.domain.dto.StockUpdateRequest;
+import com.example.franchise.domain.dto.StockUpdateResultDTO;
+import com.example.franchise.exception.PreconditionFailedException;
+import com.example.franchise.service.BulkStockService;
 import com.example.franchise.service.FranchiseService;
+import com.example.franchise.service.FranchiseTransferService;
+import com.example.franchise.service.StockAlertRules;
+import com.example.franchise.service.StockEventPublisher;
+import com.example.franchise.service.StockHistoryService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ServerWebExchange;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
 @RestController
 @RequestMapping("/api/franchise")
 @RequiredArgsConstructor
 public class FranchiseController {
 
+    private static final Duration SSE_HEARTBEAT = Duration.ofSeconds(15);
+
     private final FranchiseService service;
+    private final BulkStockService bulkStockService;
+    private final StockAlertRules stockAlertRules;
+    private final FranchiseTransferService transferService;
+    private final StockHistoryService stockHistoryService;
 
     @PostMapping
     public Mono<Franchise> createFranchise(@RequestBody Franchise franchise) {
         return service.addFranchise(franchise);
     }
 
+    @GetMapping("/{id}")
+    public Mono<ResponseEntity<Franchise>> getFranchise(@PathVariable String id, ServerWebExchange exchange) {
+        return service.getFranchiseVersion(id)
+                .flatMap(version -> exchange.checkNotModified(etag(version))
+                        ? Mono.just(ResponseEntity.status(HttpStatus.NOT_MODIFIED).<Franchise>build())
+                        : service.getFranchise(id).map(franchise -> versioned(franchise.getVersion()).body(franchise)));
+    }
+
     @PostMapping("/{id}/branch")
-    public Mono<Franchise> addBranch(@PathVariable String id, @RequestBody Branch branch) {
-        return service.addBranch(id, branch);
+    public Mono<ResponseEntity<?>> addBranch(
+            @PathVariable String id,
+            @RequestBody Branch branch,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+            @RequestParam(defaultValue = "FULL") MutationResponse response) {
+        return respond(service.addBranch(id, branch, expectedVersion(ifMatch)), response,
+                franchise -> franchise.findBranch(branch.getName()).orElse(null));
     }
 
     @PostMapping("/{id}/branch/{branchName}/product")
-    public Mono<Franchise> addProduct(@PathVariable String id,
-                                      @PathVariable String branchName,
-                                      @RequestBody Product product) {
-        return service.addProduct(id, branchName, product);
+    public Mono<ResponseEntity<?>> addProduct(
+            @PathVariable String id,
+            @PathVariable String branchName,
+            @RequestBody Product product,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+            @RequestParam(defaultValue = "FULL") MutationResponse response) {
+        return respond(service.addProduct(id, branchName, product, expectedVersion(ifMatch)), response,
+                franchise -> franchise.findBranch(branchName)
+                        .flatMap(b -> b.findProduct(product.getName()))
+                        .orElse(null));
     }
 
     @DeleteMapping("/{id}/branch/{branchName}/product/{productName}")
-    public Mono<Franchise> removeProduct(@PathVariable String id,
-                                         @PathVariable String branchName,
-                                         @PathVariable String productName) {
-        return service.removeProduct(id, branchName, productName);
+    public Mono<ResponseEntity<?>> removeProduct(
+            @PathVariable String id,
+            @PathVariable String branchName,
+            @PathVariable String productName,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+            @RequestParam(defaultValue = "FULL") MutationResponse response) {
+        return respond(service.removeProduct(id, branchName, productName, expectedVersion(ifMatch)), response,
+                franchise -> franchise.findBranch(branchName).orElse(null));
     }
 
     @PutMapping("/{id}/branch/{branchName}/product/{productName}/stock/{newStock}")
-    public Mono<Franchise> updateStock(@PathVariable String id,
-                                       @PathVariable String branchName,
-                                       @PathVariable String productName,
-                                       @PathVariable int newStock) {
+    public Mono<ProductStockDTO> updateStock(@PathVariable String id,
+                                             @PathVariable String branchName,
+                                             @PathVariable String productName,
+                                             @PathVariable int newStock) {
         return service.updateProductStock(id, branchName, productName, newStock);
     }
 
+    @PostMapping("/{id}/branch/{branchName}/product/{productName}/stock/adjust")
+    public Mono<ProductStockDTO> adjustStock(@PathVariable String id,
+                                             @PathVariable String branchName,
+                                             @PathVariable String productName,
+                                             @RequestParam int delta,
+                                             @RequestParam(required = false) StockDeltaMode mode) {
+        return service.adjustProductStock(id, branchName, productName, delta, mode);
+    }
+
+    @PostMapping("/{id}/stock/adjust")
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public Mono<Void> adjustStocks(@PathVariable String id,
+                                   @RequestBody List<StockDelta> deltas,
+                                   @RequestParam(required = false) StockDeltaMode mode) {
+        return service.applyStockDeltas(id, deltas, mode);
+    }
+
+    @PostMapping(value = "/stock/bulk",
+            consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE},
+            produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<StockUpdateResultDTO> bulkUpdateStock(@RequestBody Flux<StockUpdateRequest> updates) {
+        return bulkStockService.ingest(updates);
+    }
+
+    @GetMapping(value = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<Franchise> exportFranchises(@RequestParam(required = false) String after) {
+        return transferService.exportFranchises(after);
+    }
+
+    @PostMapping(value = "/import",
+            consumes = MediaType.APPLICATION_NDJSON_VALUE,
+            produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<ImportProgressDTO> importFranchises(@RequestBody Flux<Franchise> franchises,
+                                                    @RequestParam(defaultValue = "0") long skip) {
+        return transferService.importFranchises(franchises, skip);
+    }
+
     @GetMapping("/{id}/highest-stock-products")
-    public Flux<HighestStockProductDTO> getHighestStockProducts(@PathVariable String id) {
-        return service.getHighestStockProducts(id);
+    public Mono<ResponseEntity<Flux<HighestStockProductDTO>>> getHighestStockProducts(
+            @PathVariable String id,
+            @RequestParam(defaultValue = "1") int limit,
+            ServerWebExchange exchange) {
+        return conditional(id, exchange, () -> service.getHighestStockProducts(id, limit));
+    }
+
+    @GetMapping(value = "/{id}/analytics/branch-stock",
+            produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public Mono<ResponseEntity<Flux<BranchStockDTO>>> getBranchStockTotals(@PathVariable String id,
+                                                                           ServerWebExchange exchange) {
+        return conditional(id, exchange, () -> service.getBranchStockTotals(id));
+    }
+
+    @GetMapping(value = "/{id}/analytics/low-stock",
+            produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public Mono<ResponseEntity<Flux<ProductStockDTO>>> getLowStockProducts(
+            @PathVariable String id,
+            @RequestParam(defaultValue = "10") int threshold,
+            @RequestParam(defaultValue = "100") int limit,
+            ServerWebExchange exchange) {
+        return conditional(id, exchange, () -> service.getLowStockProducts(id, threshold, limit));
+    }
+
+    @GetMapping(value = "/{id}/analytics/top-products",
+            produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public Mono<ResponseEntity<Flux<ProductStockDTO>>> getTopStockProducts(@PathVariable String id,
+                                                                           @RequestParam(defaultValue = "10") int limit,
+                                                                           ServerWebExchange exchange) {
+        return conditional(id, exchange, () -> service.getTopStockProducts(id, limit));
+    }
+
+    @GetMapping(value = "/analytics/low-stock",
+            produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public Flux<ProductStockDTO> getLowStockProductsAcrossFranchises(@RequestParam(defaultValue = "10") int threshold,
+                                                                     @RequestParam(defaultValue = "100") int limit) {
+        return service.getLowStockProducts(null, threshold, limit);
+    }
+
+    @GetMapping(value = "/analytics/top-products",
+            produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public Flux<ProductStockDTO> getTopStockProductsAcrossFranchises(@RequestParam(defaultValue = "10") int limit) {
+        return service.getTopStockProducts(null, limit);
+    }
+
+    @GetMapping(value = "/{id}/branch/{branchName}/product/{productName}/stock/history",
+            produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public Flux<StockEvent> getProductStockHistory(@PathVariable String id,
+                                                   @PathVariable String branchName,
+                                                   @PathVariable String productName,
+                                                   @RequestParam(required = false) Instant from,
+                                                   @RequestParam(required = false) Instant to,
+                                                   @RequestParam(defaultValue = "1000") int limit) {
+        return stockHistoryService.getMovements(id, branchName, productName, from, to, limit);
+    }
+
+    @GetMapping(value = "/{id}/branch/{branchName}/product/{productName}/stock/history/buckets",
+            produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public Flux<StockHistoryBucketDTO> getProductStockHistoryBuckets(
+            @PathVariable String id,
+            @PathVariable String branchName,
+            @PathVariable String productName,
+            @RequestParam(required = false) Instant from,
+            @RequestParam(required = false) Instant to,
+            @RequestParam(defaultValue = "HOUR") StockHistoryResolution resolution) {
+        return stockHistoryService.getBuckets(id, branchName, productName, from, to, resolution);
+    }
+
+    @GetMapping(value = "/{id}/branch/{branchName}/stock/history",
+            produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public Flux<StockEvent> getBranchStockHistory(@PathVariable String id,
+                                                  @PathVariable String branchName,
+                                                  @RequestParam(required = false) Instant from,
+                                                  @RequestParam(required = false) Instant to,
+                                                  @RequestParam(defaultValue = "1000") int limit) {
+        return stockHistoryService.getMovements(id, branchName, null, from, to, limit);
+    }
+
+    @GetMapping(value = "/{id}/branch/{branchName}/stock/history/buckets",
+            produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public Flux<StockHistoryBucketDTO> getBranchStockHistoryBuckets(
+            @PathVariable String id,
+            @PathVariable String branchName,
+            @RequestParam(required = false) Instant from,
+            @RequestParam(required = false) Instant to,
+            @RequestParam(defaultValue = "HOUR") StockHistoryResolution resolution) {
+        return stockHistoryService.getBuckets(id, branchName, null, from, to, resolution);
+    }
+
+    @GetMapping(value = "/{id}/stock-events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<StockEvent>> streamStockEvents(
+            @PathVariable String id,
+            @RequestParam(defaultValue = "DROP_OLDEST") StockEventPublisher.OverflowPolicy overflow) {
+        Flux<ServerSentEvent<StockEvent>> events = service.streamStockEvents(id, overflow)
+                .map(event -> ServerSentEvent.builder(event).event(event.type().name()).build());
+        Flux<ServerSentEvent<StockEvent>> heartbeats = Flux.interval(SSE_HEARTBEAT)
+                .onBackpressureDrop()
+                .map(tick -> ServerSentEvent.<StockEvent>builder().comment("keep-alive").build());
+
+        return Flux.merge(events, heartbeats);
+    }
+
+    @PostMapping("/{id}/alerts/rules")
+    public Mono<StockAlertRule> createStockAlertRule(@PathVariable String id,
+                                                     @RequestBody StockAlertRuleRequest request) {
+        return stockAlertRules.create(id, request);
+    }
+
+    @GetMapping("/{id}/alerts/rules")
+    public Flux<StockAlertRule> getStockAlertRules(@PathVariable String id) {
+        return stockAlertRules.list(id);
+    }
+
+    @DeleteMapping("/{id}/alerts/rules/{ruleId}")
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public Mono<Void> deleteStockAlertRule(@PathVariable String id, @PathVariable String ruleId) {
+        return stockAlertRules.delete(id, ruleId);
+    }
+
+    @GetMapping(value = "/{id}/alerts", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<StockAlert>> streamStockAlerts(@PathVariable String id) {
+        Flux<ServerSentEvent<StockAlert>> alerts = service.streamStockAlerts(id)
+                .map(alert -> ServerSentEvent.builder(alert).event("LOW_STOCK").build());
+        Flux<ServerSentEvent<StockAlert>> heartbeats = Flux.interval(SSE_HEARTBEAT)
+                .onBackpressureDrop()
+                .map(tick -> ServerSentEvent.<StockAlert>builder().comment("keep-alive").build());
+
+        return Flux.merge(alerts, heartbeats);
     }
 
     @PutMapping("/{id}/name")
-    public Mono<Franchise> updateFranchiseName(@PathVariable String id, @RequestBody String newName) {
-        return service.updateFranchiseName(id, newName);
+    public Mono<ResponseEntity<?>> updateFranchiseName(
+            @PathVariable String id,
+            @RequestBody String newName,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+            @RequestParam(defaultValue = "FULL") MutationResponse response) {
+        return respond(service.updateFranchiseName(id, newName, expectedVersion(ifMatch)), response,
+                franchise -> new FranchiseSummaryDTO(franchise.getId(), franchise.getName(), null));
     }
 
     @PutMapping("/{id}/branch/name")
-    public Mono<Franchise> updateBranchName(@PathVariable String id,
-                                            @RequestParam String oldName,
-                                            @RequestParam String newName) {
-        return service.updateBranchName(id, oldName, newName);
+    public Mono<ResponseEntity<?>> updateBranchName(
+            @PathVariable String id,
+            @RequestParam String oldName,
+            @RequestParam String newName,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+            @RequestParam(defaultValue = "FULL") MutationResponse response) {
+        return respond(service.updateBranchName(id, oldName, newName, expectedVersion(ifMatch)), response,
+                franchise -> franchise.findBranch(newName).orElse(null));
     }
 
     @PutMapping("/{id}/branch/{branchName}/product/name")
-    public Mono<Franchise> updateProductName(@PathVariable String id,
-                                             @PathVariable String branchName,
-                                             @RequestParam String oldName,
-                                             @RequestParam String newName) {
-        return service.updateProductName(id, branchName, oldName, newName);
+    public Mono<ResponseEntity<?>> updateProductName(
+            @PathVariable String id,
+            @PathVariable String branchName,
+            @RequestParam String oldName,
+            @RequestParam String newName,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+            @RequestParam(defaultValue = "FULL") MutationResponse response) {
+        return respond(service.updateProductName(id, branchName, oldName, newName, expectedVersion(ifMatch)), response,
+                franchise -> franchise.findBranch(branchName)
+                        .flatMap(b -> b.findProduct(newName))
+                        .orElse(null));
+    }
+
+    @GetMapping(produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public Flux<?> getAllFranchises(@RequestParam(required = false) String after,
+                                    @RequestParam(defaultValue = "100") int limit,
+                                    @RequestParam(defaultValue = "FULL") FranchiseView view) {
+        return switch (view) {
+            case FULL -> service.getFranchises(after, limit);
+            case SUMMARY -> service.getFranchiseSummaries(after, limit, true);
+            case NAMES -> service.getFranchiseSummaries(after, limit, false);
+        };
     }
 
-    @GetMapping
-    public Flux<Franchise> getAllFranchises() {
-        return service.getAllFranchises();
+    private static Mono<ResponseEntity<?>> respond(Mono<Franchise> result,
+                                                   MutationResponse response,
+                                                   Function<Franchise, ?> entity) {
+        return result.map(franchise -> versioned(franchise.getVersion()).body(switch (response) {
+            case FULL -> franchise;
+            case ENTITY -> entity.apply(franchise);
+            case ACK -> MutationAckDTO.of(franchise);
+        }));
     }
 
+    /**
+     * Franchise-scoped reads only change when the franchise version does, so the version alone decides whether the
+     * client's copy is still current; the body is not even queried for a {@code 304}.
+     */
+    private <T> Mono<ResponseEntity<Flux<T>>> conditional(String id, ServerWebExchange exchange, Supplier<Flux<T>> body) {
+        return service.getFranchiseVersion(id)
+                .map(version -> exchange.checkNotModified(etag(version))
+                        ? ResponseEntity.status(HttpStatus.NOT_MODIFIED).<Flux<T>>build()
+                        : versioned(version).body(body.get()));
+    }
+
+    private static ResponseEntity.BodyBuilder versioned(Long version) {
+        ResponseEntity.BodyBuilder builder = ResponseEntity.ok().varyBy(HttpHeaders.ACCEPT);
+        return version == null ? builder : builder.eTag(etag(version));
+    }
+
+    private static String etag(long version) {
+        return "\"" + version + "\"";
+    }
+
+    /**
+     * {@code If-Match: *} or no header leaves the mutation unconditional. Anything other than a single strong tag can
+     * never match a version.
+     */
+    private static Long expectedVersion(String ifMatch) {
+        if (ifMatch == null || ifMatch.isBlank() || ifMatch.trim().equals("*")) {
+            return null;
+        }
+        String tag = ifMatch.trim();
+        try {
+            if (tag.length() > 2 && tag.startsWith("\"") && tag.endsWith("\"")) {
+                return Long.parseLong(tag.substring(1, tag.length() - 1));
+            }
+        } catch (NumberFormatException ignored) {
+            // Falls through to the failed precondition.
+        }
+        throw new PreconditionFailedException("La versión de la franquicia no coincide");
+    }
 }
@@ -0,0 +1,8 @@
+package com.example.franchise.domain.dto;
+
+public record BranchStockDTO(
+        String branchName,
+        int productCount,
+        long totalStock
+) {
+}
@@ -0,0 +1,11 @@
+package com.example.franchise.domain.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record FranchiseSummaryDTO(
+        String id,
+        String name,
+        Integer branchCount
+) {
+}
@@ -0,0 +1,7 @@
+package com.example.franchise.domain.dto;
+
+public enum FranchiseView {
+    FULL,
+    SUMMARY,
+    NAMES
+}
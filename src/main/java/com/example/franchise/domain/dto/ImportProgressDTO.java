@@ -0,0 +1,15 @@
+package com.example.franchise.domain.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * {@code checkpoint} counts the input documents, skipped ones included, that are known to be written. Passing it back
+ * as {@code skip} resumes the import.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record ImportProgressDTO(
+        long checkpoint,
+        long imported,
+        String error
+) {
+}
@@ -0,0 +1,13 @@
+package com.example.franchise.domain.dto;
+
+import com.example.franchise.domain.model.Franchise;
+
+public record MutationAckDTO(
+        String id,
+        Long version
+) {
+
+    public static MutationAckDTO of(Franchise franchise) {
+        return new MutationAckDTO(franchise.getId(), franchise.getVersion());
+    }
+}
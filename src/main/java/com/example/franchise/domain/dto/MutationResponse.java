@@ -0,0 +1,10 @@
+package com.example.franchise.domain.dto;
+
+/**
+ * What a mutation returns: the whole franchise, only the branch or product it touched, or just the new version.
+ */
+public enum MutationResponse {
+    FULL,
+    ENTITY,
+    ACK
+}
@@ -0,0 +1,9 @@
+package com.example.franchise.domain.dto;
+
+public record ProductStockDTO(
+        String franchiseId,
+        String branchName,
+        String productName,
+        int stock
+) {
+}
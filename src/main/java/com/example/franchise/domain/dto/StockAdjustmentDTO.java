@@ -0,0 +1,13 @@
+package com.example.franchise.domain.dto;
+
+/**
+ * One product of a batch of stock deltas: the amount actually applied, which is less than requested when it was
+ * clamped at zero, and the stock it left.
+ */
+public record StockAdjustmentDTO(
+        String branchName,
+        String productName,
+        int delta,
+        int stock
+) {
+}
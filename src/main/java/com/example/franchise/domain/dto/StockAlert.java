@@ -0,0 +1,14 @@
+package com.example.franchise.domain.dto;
+
+import java.time.Instant;
+
+public record StockAlert(
+        String ruleId,
+        String franchiseId,
+        String branchName,
+        String productName,
+        int stock,
+        int threshold,
+        Instant timestamp
+) {
+}
@@ -0,0 +1,8 @@
+package com.example.franchise.domain.dto;
+
+public record StockAlertRuleRequest(
+        String branchName,
+        String productName,
+        Integer threshold
+) {
+}
@@ -0,0 +1,8 @@
+package com.example.franchise.domain.dto;
+
+public record StockDelta(
+        String branch,
+        String product,
+        Integer delta
+) {
+}
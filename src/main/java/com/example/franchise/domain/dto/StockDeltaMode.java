@@ -0,0 +1,6 @@
+package com.example.franchise.domain.dto;
+
+public enum StockDeltaMode {
+    REJECT,
+    CLAMP
+}
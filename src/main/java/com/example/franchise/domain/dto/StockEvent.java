@@ -0,0 +1,32 @@
+package com.example.franchise.domain.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.time.Instant;
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record StockEvent(
+        Type type,
+        String franchiseId,
+        String branchName,
+        String productName,
+        Integer stock,
+        Integer delta,
+        Instant timestamp
+) {
+
+    public enum Type {
+        PRODUCT_STOCK,
+        PRODUCT_STOCK_ADJUSTED,
+        PRODUCT_REMOVED,
+        HIGHEST_STOCK
+    }
+
+    public static StockEvent of(Type type, String franchiseId, String branchName, String productName, Integer stock) {
+        return new StockEvent(type, franchiseId, branchName, productName, stock, null, Instant.now());
+    }
+
+    public static StockEvent adjusted(String franchiseId, String branchName, String productName, int delta, int stock) {
+        return new StockEvent(Type.PRODUCT_STOCK_ADJUSTED, franchiseId, branchName, productName, stock, delta, Instant.now());
+    }
+}
@@ -0,0 +1,18 @@
+package com.example.franchise.domain.dto;
+
+import java.time.Instant;
+
+/**
+ * Stock of one product within one hour or day: first and last known stock, range and number of movements.
+ */
+public record StockHistoryBucketDTO(
+        Instant start,
+        String branchName,
+        String productName,
+        int movements,
+        int open,
+        int close,
+        int min,
+        int max
+) {
+}
@@ -0,0 +1,18 @@
+package com.example.franchise.domain.dto;
+
+import java.time.Duration;
+
+public enum StockHistoryResolution {
+    HOUR(Duration.ofHours(1)),
+    DAY(Duration.ofDays(1));
+
+    private final Duration bucket;
+
+    StockHistoryResolution(Duration bucket) {
+        this.bucket = bucket;
+    }
+
+    public Duration bucket() {
+        return bucket;
+    }
+}
@@ -0,0 +1,9 @@
+package com.example.franchise.domain.dto;
+
+public record StockUpdateRequest(
+        String franchiseId,
+        String branch,
+        String product,
+        Integer stock
+) {
+}
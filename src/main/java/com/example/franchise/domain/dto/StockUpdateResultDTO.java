@@ -0,0 +1,28 @@
+package com.example.franchise.domain.dto;
+
+public record StockUpdateResultDTO(
+        String franchiseId,
+        String branch,
+        String product,
+        Integer stock,
+        Status status,
+        String error
+) {
+
+    public enum Status {
+        APPLIED,
+        COALESCED,
+        FAILED
+    }
+
+    public static StockUpdateResultDTO of(StockUpdateRequest request, Status status, String error) {
+        return new StockUpdateResultDTO(
+                request.franchiseId(),
+                request.branch(),
+                request.product(),
+                request.stock(),
+                status,
+                error
+        );
+    }
+}
@@ -1,18 +1,99 @@
 package com.example.franchise.domain.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.*;
-import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.annotation.AccessType;
+import org.springframework.data.annotation.Transient;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 
 @Data
 @NoArgsConstructor
-@AllArgsConstructor
-@Builder
 public class Branch {
 
-    @Indexed(unique = true)
     private String name;
+    @JsonIgnore
+    @AccessType(AccessType.Type.PROPERTY)
+    private String nameKey;
     private List<Product> products = new ArrayList<>();
-}
\ No newline at end of file
+
+    @Transient
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private Map<String, Product> productIndex;
+
+    @Builder
+    public Branch(String name, List<Product> products) {
+        this.name = name;
+        this.nameKey = NameKey.of(name);
+        this.products = products;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+        this.nameKey = NameKey.of(name);
+    }
+
+    public String getNameKey() {
+        if (nameKey == null) {
+            nameKey = NameKey.of(name);
+        }
+        return nameKey;
+    }
+
+    /**
+     * Read-only view, so every change goes through the methods below and the name index cannot go stale.
+     */
+    public List<Product> getProducts() {
+        return products == null ? null : Collections.unmodifiableList(products);
+    }
+
+    public void setProducts(List<Product> products) {
+        this.products = products;
+        this.productIndex = null;
+    }
+
+    public Optional<Product> findProduct(String productName) {
+        return Optional.ofNullable(productIndex().get(NameKey.of(productName)));
+    }
+
+    public void addProduct(Product product) {
+        if (products == null) {
+            products = new ArrayList<>();
+        }
+        Map<String, Product> index = productIndex();
+        products.add(product);
+        index.putIfAbsent(product.getNameKey(), product);
+    }
+
+    /**
+     * Removing or renaming drops the index rather than patching it: with legacy duplicate names another product may
+     * now be the one a name resolves to.
+     */
+    public boolean removeProduct(String productName) {
+        Product product = productIndex().get(NameKey.of(productName));
+        productIndex = null;
+        return product != null && products.remove(product);
+    }
+
+    public void renameProduct(Product product, String newName) {
+        product.setName(newName);
+        productIndex = null;
+    }
+
+    private Map<String, Product> productIndex() {
+        if (productIndex == null) {
+            List<Product> current = products == null ? List.of() : products;
+            productIndex = new HashMap<>(current.size() * 2);
+            current.forEach(p -> productIndex.putIfAbsent(p.getNameKey(), p));
+        }
+        return productIndex;
+    }
+}
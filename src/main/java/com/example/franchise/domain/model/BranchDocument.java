@@ -0,0 +1,24 @@
+package com.example.franchise.domain.model;
+
+import lombok.*;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+@Document(collection = "branches")
+@Data
+@NoArgsConstructor
+public class BranchDocument {
+    @Id
+    private String id;
+    private String franchiseId;
+    private String name;
+    private String nameKey;
+
+    @Builder
+    public BranchDocument(String id, String franchiseId, String name) {
+        this.id = id;
+        this.franchiseId = franchiseId;
+        this.name = name;
+        this.nameKey = NameKey.of(name);
+    }
+}
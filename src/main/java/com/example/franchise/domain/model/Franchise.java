@@ -2,19 +2,82 @@ package com.example.franchise.domain.model;
 
 import lombok.*;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Transient;
+import org.springframework.data.annotation.Version;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 
 @Document(collection = "franchises")
 @Data
 @NoArgsConstructor
-@AllArgsConstructor
-@Builder
 public class Franchise {
     @Id
     private String id;
     private String name;
     private List<Branch> branches = new ArrayList<>();
+    @Version
+    private Long version;
+
+    @Transient
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private Map<String, Branch> branchIndex;
+
+    @Builder
+    public Franchise(String id, String name, List<Branch> branches, Long version) {
+        this.id = id;
+        this.name = name;
+        this.branches = branches;
+        this.version = version;
+    }
+
+    /**
+     * Read-only view, so every change goes through the methods below and the name index cannot go stale.
+     */
+    public List<Branch> getBranches() {
+        return branches == null ? null : Collections.unmodifiableList(branches);
+    }
+
+    public void setBranches(List<Branch> branches) {
+        this.branches = branches;
+        this.branchIndex = null;
+    }
+
+    public Optional<Branch> findBranch(String branchName) {
+        return Optional.ofNullable(branchIndex().get(NameKey.of(branchName)));
+    }
+
+    public void addBranch(Branch branch) {
+        if (branches == null) {
+            branches = new ArrayList<>();
+        }
+        Map<String, Branch> index = branchIndex();
+        branches.add(branch);
+        index.putIfAbsent(branch.getNameKey(), branch);
+    }
+
+    /**
+     * Drops the index rather than patching it: with legacy duplicate names another branch may now own the old name.
+     */
+    public void renameBranch(Branch branch, String newName) {
+        branch.setName(newName);
+        branchIndex = null;
+    }
+
+    private Map<String, Branch> branchIndex() {
+        if (branchIndex == null) {
+            List<Branch> current = branches == null ? List.of() : branches;
+            branchIndex = new HashMap<>(current.size() * 2);
+            current.forEach(b -> branchIndex.putIfAbsent(b.getNameKey(), b));
+        }
+        return branchIndex;
+    }
 }
@@ -0,0 +1,13 @@
+package com.example.franchise.domain.model;
+
+import java.util.Locale;
+
+public final class NameKey {
+
+    private NameKey() {
+    }
+
+    public static String of(String name) {
+        return name == null ? null : name.toLowerCase(Locale.ROOT);
+    }
+}
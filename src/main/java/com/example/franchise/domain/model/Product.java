@@ -1,12 +1,34 @@
 package com.example.franchise.domain.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.*;
+import org.springframework.data.annotation.AccessType;
 
 @Data
 @NoArgsConstructor
-@AllArgsConstructor
-@Builder
 public class Product {
     private String name;
+    @JsonIgnore
+    @AccessType(AccessType.Type.PROPERTY)
+    private String nameKey;
     private int stock;
+
+    @Builder
+    public Product(String name, int stock) {
+        this.name = name;
+        this.nameKey = NameKey.of(name);
+        this.stock = stock;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+        this.nameKey = NameKey.of(name);
+    }
+
+    public String getNameKey() {
+        if (nameKey == null) {
+            nameKey = NameKey.of(name);
+        }
+        return nameKey;
+    }
 }
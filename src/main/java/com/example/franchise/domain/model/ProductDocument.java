@@ -0,0 +1,28 @@
+package com.example.franchise.domain.model;
+
+import lombok.*;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+@Document(collection = "products")
+@Data
+@NoArgsConstructor
+public class ProductDocument {
+    @Id
+    private String id;
+    private String franchiseId;
+    private String branchId;
+    private String name;
+    private String nameKey;
+    private int stock;
+
+    @Builder
+    public ProductDocument(String id, String franchiseId, String branchId, String name, int stock) {
+        this.id = id;
+        this.franchiseId = franchiseId;
+        this.branchId = branchId;
+        this.name = name;
+        this.nameKey = NameKey.of(name);
+        this.stock = stock;
+    }
+}
@@ -0,0 +1,41 @@
+package com.example.franchise.domain.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.*;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/**
+ * Alerts when the stock of a product falls below {@code threshold}. Without a product name the rule covers every
+ * product of the branch.
+ */
+@Document(collection = "stock_alert_rules")
+@Data
+@NoArgsConstructor
+public class StockAlertRule {
+    @Id
+    private String id;
+    private String franchiseId;
+    private String branchName;
+    @JsonIgnore
+    private String branchKey;
+    private String productName;
+    @JsonIgnore
+    private String productKey;
+    private int threshold;
+
+    @Builder
+    public StockAlertRule(String id, String franchiseId, String branchName, String productName, int threshold) {
+        this.id = id;
+        this.franchiseId = franchiseId;
+        this.branchName = branchName;
+        this.branchKey = NameKey.of(branchName);
+        this.productName = productName;
+        this.productKey = NameKey.of(productName);
+        this.threshold = threshold;
+    }
+
+    public boolean appliesTo(String productKey) {
+        return this.productKey == null || this.productKey.equals(productKey);
+    }
+}
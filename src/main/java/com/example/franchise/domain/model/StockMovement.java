@@ -0,0 +1,49 @@
+package com.example.franchise.domain.model;
+
+import com.example.franchise.domain.dto.StockEvent;
+import lombok.*;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+/**
+ * One entry of the append-only stock history, stored in the {@code stock_movements} time-series collection with
+ * {@code meta} as its meta field. {@code stock} is the resulting stock, absent only for removals; adjustments also
+ * carry the {@code delta} that was applied.
+ */
+@Document(collection = "stock_movements")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class StockMovement {
+    @Id
+    private String id;
+    private Instant timestamp;
+    private Meta meta;
+    private String branchName;
+    private String productName;
+    private StockEvent.Type type;
+    private Integer stock;
+    private Integer delta;
+
+    public static StockMovement of(StockEvent event) {
+        return StockMovement.builder()
+                .timestamp(event.timestamp())
+                .meta(new Meta(event.franchiseId(), NameKey.of(event.branchName()), NameKey.of(event.productName())))
+                .branchName(event.branchName())
+                .productName(event.productName())
+                .type(event.type())
+                .stock(event.stock())
+                .delta(event.delta())
+                .build();
+    }
+
+    public StockEvent toEvent() {
+        return new StockEvent(type, meta.franchiseId(), branchName, productName, stock, delta, timestamp);
+    }
+
+    public record Meta(String franchiseId, String branchKey, String productKey) {
+    }
+}
@@ -2,6 +2,7 @@ package com.example.franchise.exception;
 
 import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
 import reactor.core.publisher.Mono;
 
@@ -28,4 +29,24 @@ public class GlobalExceptionHandler {
                 "error", ex.getMessage()
         ));
     }
+
+    @ExceptionHandler(ConflictException.class)
+    @ResponseStatus(HttpStatus.CONFLICT)
+    public Mono<Map<String, Object>> handleConflict(ConflictException ex) {
+        return Mono.just(Map.of(
+                "timestamp", Instant.now(),
+                "status", HttpStatus.CONFLICT.value(),
+                "error", ex.getMessage()
+        ));
+    }
+
+    @ExceptionHandler(PreconditionFailedException.class)
+    @ResponseStatus(HttpStatus.PRECONDITION_FAILED)
+    public Mono<Map<String, Object>> handlePreconditionFailed(PreconditionFailedException ex) {
+        return Mono.just(Map.of(
+                "timestamp", Instant.now(),
+                "status", HttpStatus.PRECONDITION_FAILED.value(),
+                "error", ex.getMessage()
+        ));
+    }
 }
@@ -0,0 +1,8 @@
+package com.example.franchise.exception;
+
+public class InsufficientStockException extends BusinessException {
+
+    public InsufficientStockException(String message) {
+        super(message);
+    }
+}
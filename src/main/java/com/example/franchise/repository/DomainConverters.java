@@ -0,0 +1,100 @@
+package com.example.franchise.repository;
+
+import com.example.franchise.domain.model.Branch;
+import com.example.franchise.domain.model.Product;
+import org.bson.Document;
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.data.convert.ReadingConverter;
+import org.springframework.data.convert.WritingConverter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hand-written mapping for the embedded {@link Branch} and {@link Product}, which make up almost all of a franchise
+ * document. They produce the same fields as the reflective mapping, so stored data and update paths are unchanged.
+ */
+public final class DomainConverters {
+
+    private DomainConverters() {
+    }
+
+    public static List<Converter<?, ?>> converters() {
+        return List.of(
+                BranchWriter.INSTANCE,
+                BranchReader.INSTANCE,
+                ProductWriter.INSTANCE,
+                ProductReader.INSTANCE
+        );
+    }
+
+    @WritingConverter
+    enum BranchWriter implements Converter<Branch, Document> {
+        INSTANCE;
+
+        @Override
+        public Document convert(Branch branch) {
+            List<Document> products = null;
+            if (branch.getProducts() != null) {
+                products = new ArrayList<>(branch.getProducts().size());
+                for (Product product : branch.getProducts()) {
+                    products.add(ProductWriter.INSTANCE.convert(product));
+                }
+            }
+
+            Document document = new Document();
+            putIfNotNull(document, "name", branch.getName());
+            putIfNotNull(document, "nameKey", branch.getNameKey());
+            putIfNotNull(document, "products", products);
+            return document;
+        }
+    }
+
+    @ReadingConverter
+    enum BranchReader implements Converter<Document, Branch> {
+        INSTANCE;
+
+        @Override
+        public Branch convert(Document document) {
+            List<?> stored = document.get("products", List.class);
+            List<Product> products = new ArrayList<>(stored == null ? 0 : stored.size());
+            if (stored != null) {
+                for (Object product : stored) {
+                    products.add(ProductReader.INSTANCE.convert((Document) product));
+                }
+            }
+            return new Branch(document.getString("name"), products);
+        }
+    }
+
+    @WritingConverter
+    enum ProductWriter implements Converter<Product, Document> {
+        INSTANCE;
+
+        @Override
+        public Document convert(Product product) {
+            Document document = new Document();
+            putIfNotNull(document, "name", product.getName());
+            putIfNotNull(document, "nameKey", product.getNameKey());
+            document.put("stock", product.getStock());
+            return document;
+        }
+    }
+
+    @ReadingConverter
+    enum ProductReader implements Converter<Document, Product> {
+        INSTANCE;
+
+        @Override
+        public Product convert(Document document) {
+            Object stock = document.get("stock");
+            return new Product(document.getString("name"), stock instanceof Number n ? n.intValue() : 0);
+        }
+    }
+
+    private static void putIfNotNull(Document document, String key, Object value) {
+        if (value != null) {
+            document.put(key, value);
+        }
+    }
+}
@@ -1,9 +1,17 @@
 package com.example.franchise.repository;
 
 import com.example.franchise.domain.model.Franchise;
+import org.springframework.data.mongodb.repository.Query;
 import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
 import reactor.core.publisher.Mono;
 
-public interface FranchiseRepository extends ReactiveMongoRepository<Franchise, String> {
+public interface FranchiseRepository extends ReactiveMongoRepository<Franchise, String>, FranchiseRepositoryCustom {
+
+    /**
+     * Collation of the unique franchise name index. Queries must use the same collation to be served by it.
+     */
+    String NAME_COLLATION = "{ 'locale': 'es', 'strength': 2 }";
+
+    @Query(value = "{ 'name': ?0 }", exists = true, collation = NAME_COLLATION)
     Mono<Boolean> existsByNameIgnoreCase(String name);
-}
\ No newline at end of file
+}
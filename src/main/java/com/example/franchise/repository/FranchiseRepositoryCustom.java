@@ -0,0 +1,77 @@
+package com.example.franchise.repository;
+
+import com.example.franchise.domain.dto.BranchStockDTO;
+import com.example.franchise.domain.dto.FranchiseSummaryDTO;
+import com.example.franchise.domain.dto.HighestStockProductDTO;
+import com.example.franchise.domain.dto.ProductStockDTO;
+import com.example.franchise.domain.dto.StockAdjustmentDTO;
+import com.example.franchise.domain.dto.StockDelta;
+import com.example.franchise.domain.dto.StockDeltaMode;
+import com.example.franchise.domain.dto.StockUpdateRequest;
+import com.example.franchise.domain.model.Franchise;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+public interface FranchiseRepositoryCustom {
+
+    Mono<ProductStockDTO> updateProductStock(String franchiseId, String branchName, String productName, int stock);
+
+    Mono<Integer> updateProductStocks(List<StockUpdateRequest> updates);
+
+    /**
+     * Sets the stock of several distinct products of one franchise with a single write. Emits {@code false} when
+     * some product does not exist; the updates then have to be retried one by one to tell which.
+     */
+    Mono<Boolean> setProductStocks(String franchiseId, List<StockUpdateRequest> updates);
+
+    Mono<ProductStockDTO> incrementProductStock(
+            String franchiseId,
+            String branchName,
+            String productName,
+            int delta,
+            StockDeltaMode mode
+    );
+
+    /**
+     * Applies every delta or none of them, one per product. Under {@link StockDeltaMode#CLAMP} a decrement larger
+     * than the stock takes it to zero; under {@link StockDeltaMode#REJECT} it fails the batch. Emits what was actually
+     * applied to each product and the stock it left.
+     */
+    Flux<StockAdjustmentDTO> applyStockDeltas(String franchiseId, List<StockDelta> deltas, StockDeltaMode mode);
+
+    Flux<HighestStockProductDTO> findHighestStockProducts(String franchiseId, int limit);
+
+    Flux<BranchStockDTO> findBranchStockTotals(String franchiseId);
+
+    /**
+     * Products below {@code threshold}, lowest stock first. A {@code null} franchise id searches every franchise.
+     */
+    Flux<ProductStockDTO> findLowStockProducts(String franchiseId, int threshold, int limit);
+
+    /**
+     * Products with the most stock, highest first. A {@code null} franchise id searches every franchise.
+     */
+    Flux<ProductStockDTO> findTopStockProducts(String franchiseId, int limit);
+
+    /**
+     * Reads only the {@code version} of a franchise, so conditional requests can be answered without loading it.
+     */
+    Mono<Long> findVersion(String franchiseId);
+
+    /**
+     * Raises the {@code version} of a franchise to at least {@code version}, leaving a higher one untouched.
+     */
+    Mono<Void> advanceVersion(String franchiseId, long version);
+
+    Flux<Franchise> findPage(String afterId, int limit);
+
+    Flux<FranchiseSummaryDTO> findSummaryPage(String afterId, int limit, boolean withBranchCount);
+
+    /**
+     * Inserts or replaces whole franchises by id in one bulk write, so re-running a batch is idempotent. Emits the
+     * number of franchises written.
+     */
+    Mono<Integer> upsertAll(List<Franchise> franchises);
+}
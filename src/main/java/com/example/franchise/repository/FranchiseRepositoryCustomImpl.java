@@ -0,0 +1,518 @@
+package com.example.franchise.repository;
+
+import com.example.franchise.domain.dto.BranchStockDTO;
+import com.example.franchise.domain.dto.FranchiseSummaryDTO;
+import com.example.franchise.domain.dto.HighestStockProductDTO;
+import com.example.franchise.domain.dto.ProductStockDTO;
+import com.example.franchise.domain.dto.StockAdjustmentDTO;
+import com.example.franchise.domain.dto.StockDelta;
+import com.example.franchise.domain.dto.StockDeltaMode;
+import com.example.franchise.domain.dto.StockUpdateRequest;
+import com.example.franchise.domain.model.Branch;
+import com.example.franchise.domain.model.Franchise;
+import com.example.franchise.domain.model.NameKey;
+import com.example.franchise.domain.model.Product;
+import com.example.franchise.exception.ConflictException;
+import com.example.franchise.exception.InsufficientStockException;
+import com.example.franchise.exception.ResourceNotFoundException;
+import lombok.RequiredArgsConstructor;
+import org.bson.Document;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveBulkOperations;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.AccumulatorOperators;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOptions;
+import org.springframework.data.mongodb.core.aggregation.ArrayOperators;
+import org.springframework.data.mongodb.core.aggregation.ConditionalOperators;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+@RequiredArgsConstructor
+public class FranchiseRepositoryCustomImpl implements FranchiseRepositoryCustom {
+
+    private static final int MAX_CLAMP_ATTEMPTS = 3;
+
+    private final ReactiveMongoTemplate template;
+
+    @Override
+    public Mono<ProductStockDTO> updateProductStock(
+            String franchiseId,
+            String branchName,
+            String productName,
+            int stock
+    ) {
+        return template.updateFirst(
+                        productQuery(franchiseId, branchName, productName, null),
+                        stockUpdate(branchName, productName, stock),
+                        Franchise.class
+                )
+                .flatMap(result -> result.getMatchedCount() > 0
+                        ? Mono.just(new ProductStockDTO(franchiseId, branchName, productName, stock))
+                        : missingTarget(franchiseId, branchName));
+    }
+
+    @Override
+    public Mono<Integer> updateProductStocks(List<StockUpdateRequest> updates) {
+        if (updates.isEmpty()) {
+            return Mono.just(0);
+        }
+
+        ReactiveBulkOperations bulk = template.bulkOps(BulkOperations.BulkMode.UNORDERED, Franchise.class);
+        updates.forEach(u -> bulk.updateOne(
+                productQuery(u.franchiseId(), u.branch(), u.product(), null),
+                stockUpdate(u.branch(), u.product(), u.stock())
+        ));
+
+        return bulk.execute().map(result -> result.getMatchedCount());
+    }
+
+    @Override
+    public Mono<Boolean> setProductStocks(String franchiseId, List<StockUpdateRequest> updates) {
+        Map<String, String> branchFilters = new LinkedHashMap<>();
+        List<Criteria> guards = new ArrayList<>();
+        Update update = new Update().inc("version", 1);
+
+        for (int i = 0; i < updates.size(); i++) {
+            StockUpdateRequest u = updates.get(i);
+            String branchKey = NameKey.of(u.branch());
+            String branchFilter = branchFilters.computeIfAbsent(branchKey, key -> "b" + branchFilters.size());
+            String productFilter = "p" + i;
+
+            guards.add(Criteria.where("branches").elemMatch(Criteria.where("nameKey").is(branchKey)
+                    .and("products").elemMatch(Criteria.where("nameKey").is(NameKey.of(u.product())))));
+            update.set("branches.$[" + branchFilter + "].products.$[" + productFilter + "].stock", u.stock())
+                    .filterArray(Criteria.where(productFilter + ".nameKey").is(NameKey.of(u.product())));
+        }
+        branchFilters.forEach((branchKey, filter) ->
+                update.filterArray(Criteria.where(filter + ".nameKey").is(branchKey)));
+
+        Query query = Query.query(Criteria.where("_id").is(franchiseId).andOperator(guards));
+
+        return template.updateFirst(query, update, Franchise.class)
+                .map(result -> result.getMatchedCount() > 0);
+    }
+
+    @Override
+    public Mono<ProductStockDTO> incrementProductStock(
+            String franchiseId,
+            String branchName,
+            String productName,
+            int delta,
+            StockDeltaMode mode
+    ) {
+        return incrementProductStock(franchiseId, branchName, productName, delta, mode, MAX_CLAMP_ATTEMPTS);
+    }
+
+    private Mono<ProductStockDTO> incrementProductStock(
+            String franchiseId,
+            String branchName,
+            String productName,
+            int delta,
+            StockDeltaMode mode,
+            int attemptsLeft
+    ) {
+        Criteria guard = delta < 0 ? Criteria.where("stock").gte(-delta) : null;
+        Update update = new Update()
+                .inc("branches.$[b].products.$[p].stock", delta)
+                .inc("version", 1);
+
+        return modifyProductStock(franchiseId, branchName, productName, guard, update)
+                .switchIfEmpty(Mono.defer(() -> template.exists(productQuery(franchiseId, branchName, productName, null), Franchise.class)
+                        .flatMap(productExists -> {
+                            if (!productExists) {
+                                return missingTarget(franchiseId, branchName);
+                            }
+                            if (mode == StockDeltaMode.REJECT) {
+                                return Mono.error(new InsufficientStockException("Stock insuficiente"));
+                            }
+                            if (attemptsLeft == 0) {
+                                return Mono.error(new ConflictException("El stock cambió concurrentemente, intente de nuevo"));
+                            }
+                            // Not enough stock for the decrement: clamp to zero, unless a concurrent write already refilled it.
+                            return modifyProductStock(franchiseId, branchName, productName,
+                                    Criteria.where("stock").lt(-delta),
+                                    new Update().set("branches.$[b].products.$[p].stock", 0).inc("version", 1))
+                                    .switchIfEmpty(Mono.defer(() -> incrementProductStock(
+                                            franchiseId, branchName, productName, delta, mode, attemptsLeft - 1)));
+                        })));
+    }
+
+    private Mono<ProductStockDTO> modifyProductStock(
+            String franchiseId,
+            String branchName,
+            String productName,
+            Criteria stockGuard,
+            Update update
+    ) {
+        Query query = productQuery(franchiseId, branchName, productName, stockGuard);
+        query.fields().elemMatch("branches", Criteria.where("nameKey").is(NameKey.of(branchName)));
+        update.filterArray(Criteria.where("b.nameKey").is(NameKey.of(branchName)))
+                .filterArray(Criteria.where("p.nameKey").is(NameKey.of(productName)));
+
+        return template.findAndModify(query, update, FindAndModifyOptions.options().returnNew(true), Franchise.class)
+                .flatMap(franchise -> Mono.justOrEmpty(franchise.findBranch(branchName)
+                        .flatMap(branch -> branch.findProduct(productName))
+                        .map(product -> new ProductStockDTO(franchiseId, branchName, productName, product.getStock()))));
+    }
+
+    @Override
+    public Flux<StockAdjustmentDTO> applyStockDeltas(String franchiseId, List<StockDelta> deltas, StockDeltaMode mode) {
+        return applyStockDeltas(franchiseId, deltas, deltas, mode, MAX_CLAMP_ATTEMPTS);
+    }
+
+    /**
+     * Writes {@code applied} with a single update, so the batch is all or nothing in both modes. A delta clamped to
+     * the stock read last time only applies while the product still holds exactly that stock; when any guard misses,
+     * the stock is read again and the batch retried.
+     */
+    private Flux<StockAdjustmentDTO> applyStockDeltas(
+            String franchiseId,
+            List<StockDelta> requested,
+            List<StockDelta> applied,
+            StockDeltaMode mode,
+            int attemptsLeft
+    ) {
+        Map<String, String> branchFilters = new LinkedHashMap<>();
+        List<Criteria> guards = new ArrayList<>();
+        Update update = new Update().inc("version", 1);
+
+        for (int i = 0; i < applied.size(); i++) {
+            StockDelta delta = applied.get(i);
+            String branchKey = NameKey.of(delta.branch());
+            String branchFilter = branchFilters.computeIfAbsent(branchKey, key -> "b" + branchFilters.size());
+            String productFilter = "p" + i;
+
+            Criteria product = Criteria.where("nameKey").is(NameKey.of(delta.product()));
+            if (!delta.delta().equals(requested.get(i).delta())) {
+                product = product.and("stock").is(-delta.delta());
+            } else if (delta.delta() < 0) {
+                product = product.and("stock").gte(-delta.delta());
+            }
+            guards.add(Criteria.where("branches").elemMatch(Criteria.where("nameKey").is(branchKey)
+                    .and("products").elemMatch(product)));
+            update.inc("branches.$[" + branchFilter + "].products.$[" + productFilter + "].stock", delta.delta())
+                    .filterArray(Criteria.where(productFilter + ".nameKey").is(NameKey.of(delta.product())));
+        }
+        branchFilters.forEach((branchKey, filter) ->
+                update.filterArray(Criteria.where(filter + ".nameKey").is(branchKey)));
+
+        Query query = Query.query(Criteria.where("_id").is(franchiseId).andOperator(guards));
+        query.fields().include("branches.name").include("branches.products.name").include("branches.products.stock");
+
+        return template.findAndModify(query, update, FindAndModifyOptions.options().returnNew(true), Franchise.class)
+                .flatMapIterable(franchise -> applied.stream()
+                        .map(delta -> new StockAdjustmentDTO(delta.branch(), delta.product(), delta.delta(),
+                                franchise.findBranch(delta.branch())
+                                        .flatMap(branch -> branch.findProduct(delta.product()))
+                                        .map(Product::getStock)
+                                        .orElse(0)))
+                        .toList())
+                .switchIfEmpty(Flux.defer(() -> nextDeltas(franchiseId, requested, mode, attemptsLeft)
+                        .flatMapMany(next -> applyStockDeltas(franchiseId, requested, next, mode, attemptsLeft - 1))));
+    }
+
+    /**
+     * Tells why the guarded batch did not match. Under CLAMP, a decrement larger than the stock is cut down to it.
+     */
+    private Mono<List<StockDelta>> nextDeltas(
+            String franchiseId,
+            List<StockDelta> requested,
+            StockDeltaMode mode,
+            int attemptsLeft
+    ) {
+        return template.findById(franchiseId, Franchise.class)
+                .switchIfEmpty(Mono.error(new ResourceNotFoundException("Franquicia no encontrada")))
+                .flatMap(franchise -> {
+                    List<StockDelta> next = new ArrayList<>(requested.size());
+                    for (StockDelta delta : requested) {
+                        Branch branch = franchise.findBranch(delta.branch()).orElse(null);
+                        if (branch == null) {
+                            return Mono.error(new ResourceNotFoundException("Sucursal no encontrada: " + delta.branch()));
+                        }
+                        Product product = branch.findProduct(delta.product()).orElse(null);
+                        if (product == null) {
+                            return Mono.error(new ResourceNotFoundException("Producto no encontrado: " + delta.product()));
+                        }
+                        if ((long) product.getStock() + delta.delta() >= 0) {
+                            next.add(delta);
+                        } else if (mode == StockDeltaMode.REJECT) {
+                            return Mono.error(new InsufficientStockException("Stock insuficiente: " + delta.product()));
+                        } else {
+                            next.add(new StockDelta(delta.branch(), delta.product(), -product.getStock()));
+                        }
+                    }
+                    if (attemptsLeft == 0) {
+                        return Mono.error(new ConflictException("El stock cambió concurrentemente, intente de nuevo"));
+                    }
+                    return Mono.just(next);
+                });
+    }
+
+    @Override
+    public Flux<HighestStockProductDTO> findHighestStockProducts(String franchiseId, int limit) {
+        Aggregation aggregation = (limit == 1 ? topProductPerBranch(franchiseId) : topProductsPerBranch(franchiseId, limit))
+                .withOptions(AggregationOptions.builder().allowDiskUse(true).build());
+
+        return template.aggregate(aggregation, Franchise.class, Document.class)
+                .map(doc -> new HighestStockProductDTO(
+                        doc.getString("branchName"),
+                        doc.getString("productName"),
+                        doc.getInteger("stock")
+                ));
+    }
+
+    @Override
+    public Flux<BranchStockDTO> findBranchStockTotals(String franchiseId) {
+        Aggregation aggregation = Aggregation.newAggregation(
+                Aggregation.match(Criteria.where("_id").is(franchiseId)),
+                Aggregation.unwind("branches"),
+                Aggregation.project()
+                        .and("branches.name").as("branchName")
+                        .and(ArrayOperators.Size.lengthOfArray(
+                                ConditionalOperators.ifNull("branches.products").then(List.of())
+                        )).as("productCount")
+                        .and(AccumulatorOperators.Sum.sumOf("branches.products.stock")).as("totalStock")
+        );
+
+        return template.aggregate(aggregation, Franchise.class, Document.class)
+                .map(doc -> new BranchStockDTO(
+                        doc.getString("branchName"),
+                        doc.getInteger("productCount"),
+                        doc.get("totalStock", Number.class).longValue()
+                ));
+    }
+
+    @Override
+    public Flux<ProductStockDTO> findLowStockProducts(String franchiseId, int threshold, int limit) {
+        return findProducts(franchiseId, Criteria.where("branches.products.stock").lt(threshold), Sort.Direction.ASC, limit);
+    }
+
+    @Override
+    public Flux<ProductStockDTO> findTopStockProducts(String franchiseId, int limit) {
+        return findProducts(franchiseId, null, Sort.Direction.DESC, limit);
+    }
+
+    private Flux<ProductStockDTO> findProducts(String franchiseId, Criteria stock, Sort.Direction direction, int limit) {
+        List<AggregationOperation> stages = new ArrayList<>();
+        if (franchiseId != null) {
+            stages.add(Aggregation.match(Criteria.where("_id").is(franchiseId)));
+        }
+        if (stock != null) {
+            // Skips franchises without a matching product before unwinding them.
+            stages.add(Aggregation.match(stock));
+        }
+        stages.add(Aggregation.unwind("branches"));
+        stages.add(Aggregation.unwind("branches.products"));
+        if (stock != null) {
+            stages.add(Aggregation.match(stock));
+        }
+        // $sort followed by $limit keeps only the top N in memory on the server.
+        stages.add(Aggregation.sort(Sort.by(
+                new Sort.Order(direction, "branches.products.stock"),
+                Sort.Order.asc("_id"),
+                Sort.Order.asc("branches.nameKey"),
+                Sort.Order.asc("branches.products.nameKey"))));
+        stages.add(Aggregation.limit(limit));
+        stages.add(Aggregation.project()
+                .and("branches.name").as("branch")
+                .and("branches.products.name").as("product")
+                .and("branches.products.stock").as("stock"));
+
+        Aggregation aggregation = Aggregation.newAggregation(stages)
+                .withOptions(AggregationOptions.builder().allowDiskUse(true).build());
+
+        return template.aggregate(aggregation, Franchise.class, Document.class)
+                .map(doc -> new ProductStockDTO(
+                        doc.get("_id").toString(),
+                        doc.getString("branch"),
+                        doc.getString("product"),
+                        doc.getInteger("stock")
+                ));
+    }
+
+    @Override
+    public Mono<Long> findVersion(String franchiseId) {
+        Query query = Query.query(Criteria.where("_id").is(franchiseId));
+        query.fields().include("version");
+        return template.findOne(query, Franchise.class)
+                .mapNotNull(Franchise::getVersion);
+    }
+
+    @Override
+    public Mono<Void> advanceVersion(String franchiseId, long version) {
+        return template.updateFirst(
+                        Query.query(Criteria.where("_id").is(franchiseId)),
+                        new Update().max("version", version),
+                        Franchise.class
+                )
+                .then();
+    }
+
+    @Override
+    public Flux<Franchise> findPage(String afterId, int limit) {
+        return template.find(pageQuery(afterId, limit), Franchise.class);
+    }
+
+    @Override
+    public Flux<FranchiseSummaryDTO> findSummaryPage(String afterId, int limit, boolean withBranchCount) {
+        if (!withBranchCount) {
+            Query query = pageQuery(afterId, limit);
+            query.fields().include("name");
+            return template.find(query, Franchise.class)
+                    .map(franchise -> new FranchiseSummaryDTO(franchise.getId(), franchise.getName(), null));
+        }
+
+        Aggregation aggregation = Aggregation.newAggregation(
+                Aggregation.match(afterId == null ? new Criteria() : Criteria.where("_id").gt(afterId)),
+                Aggregation.sort(Sort.by("_id")),
+                Aggregation.limit(limit),
+                Aggregation.project("name")
+                        .and(ArrayOperators.Size.lengthOfArray(
+                                ConditionalOperators.ifNull("branches").then(List.of())
+                        )).as("branchCount")
+        );
+
+        return template.aggregate(aggregation, Franchise.class, Document.class)
+                .map(doc -> new FranchiseSummaryDTO(
+                        doc.get("_id").toString(),
+                        doc.getString("name"),
+                        doc.getInteger("branchCount")
+                ));
+    }
+
+    @Override
+    public Mono<Integer> upsertAll(List<Franchise> franchises) {
+        if (franchises.isEmpty()) {
+            return Mono.just(0);
+        }
+
+        ReactiveBulkOperations bulk = template.bulkOps(BulkOperations.BulkMode.ORDERED, Franchise.class);
+        franchises.forEach(franchise -> {
+            Document replacement = new Document();
+            template.getConverter().write(franchise, replacement);
+            replace(bulk, franchise.getId(), replacement);
+        });
+
+        return bulk.execute().thenReturn(franchises.size());
+    }
+
+    /**
+     * Queues the replacement of a franchise document by an imported one. The imported version is not written as is:
+     * the stored one is bumped and then raised to it, so it ends at the larger of the current version plus one and
+     * the imported one (a new franchise counts as version zero), and an ETag handed out before the import never
+     * matches the imported content. The bulk has to be ordered for the two updates to apply in that order.
+     */
+    static void replace(ReactiveBulkOperations bulk, String franchiseId, Document replacement) {
+        Query byId = Query.query(Criteria.where("_id").is(franchiseId));
+        Update update = new Update().inc("version", 1);
+        replacement.forEach((field, value) -> {
+            if (!field.equals("_id") && !field.equals("version")) {
+                update.set(field, value);
+            }
+        });
+        if (!replacement.containsKey("branches")) {
+            update.unset("branches");
+        }
+        bulk.upsert(byId, update);
+        if (replacement.get("version") != null) {
+            bulk.updateOne(byId, new Update().max("version", replacement.get("version")));
+        }
+    }
+
+    private static Query pageQuery(String afterId, int limit) {
+        Query query = afterId == null
+                ? new Query()
+                : Query.query(Criteria.where("_id").gt(afterId));
+        return query.with(Sort.by("_id")).limit(limit);
+    }
+
+    private static Aggregation topProductPerBranch(String franchiseId) {
+        // Reduces each branch to its first max-stock product on the server, so only one product per branch is sent back.
+        return Aggregation.newAggregation(
+                Aggregation.match(Criteria.where("_id").is(franchiseId)),
+                Aggregation.stage(Document.parse("""
+                        { $project: { branches: { $map: { input: "$branches", as: "branch", in: {
+                            name: "$$branch.name",
+                            top: { $reduce: { input: "$$branch.products", initialValue: null, in: {
+                                $cond: [
+                                    { $or: [ { $eq: [ "$$value", null ] }, { $gt: [ "$$this.stock", "$$value.stock" ] } ] },
+                                    "$$this",
+                                    "$$value"
+                                ]
+                            } } }
+                        } } } } }
+                        """)),
+                Aggregation.unwind("branches"),
+                Aggregation.match(Criteria.where("branches.top").ne(null)),
+                Aggregation.project()
+                        .and("branches.name").as("branchName")
+                        .and("branches.top.name").as("productName")
+                        .and("branches.top.stock").as("stock")
+        );
+    }
+
+    private static Aggregation topProductsPerBranch(String franchiseId, int limit) {
+        return Aggregation.newAggregation(
+                Aggregation.match(Criteria.where("_id").is(franchiseId)),
+                Aggregation.unwind("branches", "branchIndex"),
+                Aggregation.unwind("branches.products"),
+                Aggregation.sort(Sort.by(Sort.Order.asc("branchIndex"), Sort.Order.desc("branches.products.stock"))),
+                Aggregation.group("branchIndex")
+                        .first("branches.name").as("branchName")
+                        .push("branches.products").as("products"),
+                Aggregation.project("branchName").and("products").slice(limit),
+                Aggregation.sort(Sort.by("_id")),
+                Aggregation.unwind("products"),
+                Aggregation.project("branchName")
+                        .and("products.name").as("productName")
+                        .and("products.stock").as("stock")
+        );
+    }
+
+    private static Query productQuery(String franchiseId, String branchName, String productName, Criteria stockGuard) {
+        Criteria product = Criteria.where("nameKey").is(NameKey.of(productName));
+        if (stockGuard != null) {
+            product = product.andOperator(stockGuard);
+        }
+        return Query.query(Criteria.where("_id").is(franchiseId)
+                .and("branches").elemMatch(Criteria.where("nameKey").is(NameKey.of(branchName))
+                        .and("products").elemMatch(product)));
+    }
+
+    private static Update stockUpdate(String branchName, String productName, int stock) {
+        return new Update()
+                .set("branches.$[b].products.$[p].stock", stock)
+                .inc("version", 1)
+                .filterArray(Criteria.where("b.nameKey").is(NameKey.of(branchName)))
+                .filterArray(Criteria.where("p.nameKey").is(NameKey.of(productName)));
+    }
+
+    private <T> Mono<T> missingTarget(String franchiseId, String branchName) {
+        return template.exists(Query.query(Criteria.where("_id").is(franchiseId)), Franchise.class)
+                .flatMap(franchiseExists -> {
+                    if (!franchiseExists) {
+                        return Mono.error(new ResourceNotFoundException("Franquicia no encontrada"));
+                    }
+                    return template.exists(
+                                    Query.query(Criteria.where("_id").is(franchiseId)
+                                            .and("branches.nameKey").is(NameKey.of(branchName))),
+                                    Franchise.class
+                            )
+                            .flatMap(branchExists -> Mono.error(branchExists
+                                    ? new ResourceNotFoundException("Producto no encontrado")
+                                    : new ResourceNotFoundException("Sucursal no encontrada")));
+                });
+    }
+}
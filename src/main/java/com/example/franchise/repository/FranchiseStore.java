@@ -0,0 +1,42 @@
+package com.example.franchise.repository;
+
+import com.example.franchise.domain.model.Branch;
+import com.example.franchise.domain.model.Franchise;
+import com.example.franchise.domain.model.Product;
+import reactor.core.publisher.Mono;
+
+/**
+ * Persistence port used by the services. Selected by {@code franchise.storage.mode}: franchises either embed their
+ * branches and products in one document, or keep them in the {@code branches} and {@code products} collections.
+ * <p>
+ * Structural mutations take an optional {@code expectedVersion}; when present they fail with
+ * {@link com.example.franchise.exception.PreconditionFailedException} unless the franchise is still at that version.
+ */
+public interface FranchiseStore extends FranchiseRepositoryCustom {
+
+    Mono<Franchise> findById(String franchiseId);
+
+    Mono<Boolean> existsById(String franchiseId);
+
+    Mono<Boolean> existsByName(String name);
+
+    Mono<Franchise> insert(Franchise franchise);
+
+    Mono<Franchise> renameFranchise(String franchiseId, String newName, Long expectedVersion);
+
+    Mono<Franchise> addBranch(String franchiseId, Branch branch, Long expectedVersion);
+
+    Mono<Franchise> renameBranch(String franchiseId, String oldName, String newName, Long expectedVersion);
+
+    Mono<Franchise> addProduct(String franchiseId, String branchName, Product product, Long expectedVersion);
+
+    Mono<Franchise> removeProduct(String franchiseId, String branchName, String productName, Long expectedVersion);
+
+    Mono<Franchise> renameProduct(
+            String franchiseId,
+            String branchName,
+            String oldName,
+            String newName,
+            Long expectedVersion
+    );
+}
@@ -0,0 +1,65 @@
+package com.example.franchise.repository;
+
+import com.example.franchise.domain.model.Branch;
+import com.example.franchise.domain.model.BranchDocument;
+import com.example.franchise.domain.model.Franchise;
+import com.example.franchise.domain.model.Product;
+import com.example.franchise.domain.model.ProductDocument;
+import org.bson.types.ObjectId;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+final class NormalizedDocuments {
+
+    record Split(List<BranchDocument> branches, List<ProductDocument> products) {
+    }
+
+    private NormalizedDocuments() {
+    }
+
+    static Split split(String franchiseId, List<Branch> branches) {
+        List<BranchDocument> branchDocuments = new ArrayList<>();
+        List<ProductDocument> productDocuments = new ArrayList<>();
+        if (branches == null) {
+            return new Split(branchDocuments, productDocuments);
+        }
+
+        for (Branch branch : branches) {
+            // Ids are assigned up front so products can reference their branch without a round trip.
+            String branchId = ObjectId.get().toHexString();
+            branchDocuments.add(new BranchDocument(branchId, franchiseId, branch.getName()));
+            if (branch.getProducts() != null) {
+                for (Product product : branch.getProducts()) {
+                    productDocuments.add(new ProductDocument(
+                            ObjectId.get().toHexString(), franchiseId, branchId, product.getName(), product.getStock()));
+                }
+            }
+        }
+        return new Split(branchDocuments, productDocuments);
+    }
+
+    static List<Franchise> assemble(
+            List<Franchise> franchises,
+            List<BranchDocument> branches,
+            List<ProductDocument> products
+    ) {
+        Map<String, List<Product>> productsByBranch = new LinkedHashMap<>();
+        for (ProductDocument product : products) {
+            productsByBranch.computeIfAbsent(product.getBranchId(), id -> new ArrayList<>())
+                    .add(new Product(product.getName(), product.getStock()));
+        }
+
+        Map<String, List<Branch>> branchesByFranchise = new LinkedHashMap<>();
+        for (BranchDocument branch : branches) {
+            branchesByFranchise.computeIfAbsent(branch.getFranchiseId(), id -> new ArrayList<>())
+                    .add(new Branch(branch.getName(), productsByBranch.getOrDefault(branch.getId(), new ArrayList<>())));
+        }
+
+        franchises.forEach(franchise ->
+                franchise.setBranches(branchesByFranchise.getOrDefault(franchise.getId(), new ArrayList<>())));
+        return franchises;
+    }
+}
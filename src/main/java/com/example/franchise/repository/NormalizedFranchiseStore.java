@@ -0,0 +1,627 @@
+package com.example.franchise.repository;
+
+import com.example.franchise.domain.dto.BranchStockDTO;
+import com.example.franchise.domain.dto.FranchiseSummaryDTO;
+import com.example.franchise.domain.dto.HighestStockProductDTO;
+import com.example.franchise.domain.dto.ProductStockDTO;
+import com.example.franchise.domain.dto.StockAdjustmentDTO;
+import com.example.franchise.domain.dto.StockDelta;
+import com.example.franchise.domain.dto.StockDeltaMode;
+import com.example.franchise.domain.dto.StockUpdateRequest;
+import com.example.franchise.domain.model.Branch;
+import com.example.franchise.domain.model.BranchDocument;
+import com.example.franchise.domain.model.Franchise;
+import com.example.franchise.domain.model.NameKey;
+import com.example.franchise.domain.model.Product;
+import com.example.franchise.domain.model.ProductDocument;
+import com.example.franchise.exception.BusinessException;
+import com.example.franchise.exception.ConflictException;
+import com.example.franchise.exception.InsufficientStockException;
+import com.example.franchise.exception.PreconditionFailedException;
+import com.example.franchise.exception.ResourceNotFoundException;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveBulkOperations;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Keeps branches and products in their own collections, so a franchise document stays small and every mutation
+ * writes only the branch or product it touches. The franchise {@code version} is still bumped on each change.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "franchise.storage", name = "mode", havingValue = "NORMALIZED")
+@RequiredArgsConstructor
+public class NormalizedFranchiseStore implements FranchiseStore {
+
+    private static final int MAX_CLAMP_ATTEMPTS = 3;
+
+    private final ReactiveMongoTemplate template;
+    private final FranchiseRepository repository;
+
+    @Override
+    public Mono<Franchise> findById(String franchiseId) {
+        return template.findById(franchiseId, Franchise.class)
+                .flatMap(franchise -> assemble(List.of(franchise)).next());
+    }
+
+    @Override
+    public Mono<Boolean> existsById(String franchiseId) {
+        return template.exists(byId(franchiseId), Franchise.class);
+    }
+
+    @Override
+    public Mono<Boolean> existsByName(String name) {
+        return repository.existsByNameIgnoreCase(name);
+    }
+
+    @Override
+    public Mono<Franchise> insert(Franchise franchise) {
+        List<Branch> branches = franchise.getBranches() == null ? new ArrayList<>() : new ArrayList<>(franchise.getBranches());
+        Franchise document = Franchise.builder()
+                .id(franchise.getId())
+                .name(franchise.getName())
+                .version(franchise.getVersion())
+                .build();
+
+        return template.insert(document)
+                .flatMap(saved -> insertBranches(saved.getId(), branches)
+                        .onErrorResume(e -> template.remove(byId(saved.getId()), Franchise.class)
+                                .then(Mono.error(e)))
+                        .then(Mono.fromSupplier(() -> {
+                            saved.setBranches(branches);
+                            return saved;
+                        })));
+    }
+
+    @Override
+    public Mono<Franchise> renameFranchise(String franchiseId, String newName, Long expectedVersion) {
+        return touch(franchiseId, expectedVersion, new Update().set("name", newName))
+                .onErrorMap(DuplicateKeyException.class, e -> new BusinessException("La franquicia ya existe"))
+                .then(findById(franchiseId));
+    }
+
+    @Override
+    public Mono<Franchise> addBranch(String franchiseId, Branch branch, Long expectedVersion) {
+        Mono<Void> insert = insertBranches(franchiseId, List.of(branch));
+        return versioned(franchiseId, expectedVersion, expectedVersion == null
+                        ? existsById(franchiseId).flatMap(exists -> exists
+                                ? insert
+                                : Mono.error(new ResourceNotFoundException("Franquicia no encontrada")))
+                        : insert)
+                .then(findById(franchiseId));
+    }
+
+    @Override
+    public Mono<Franchise> renameBranch(String franchiseId, String oldName, String newName, Long expectedVersion) {
+        return versioned(franchiseId, expectedVersion, template.updateFirst(
+                                branchQuery(franchiseId, oldName),
+                                new Update().set("name", newName).set("nameKey", NameKey.of(newName)),
+                                BranchDocument.class)
+                        .onErrorMap(DuplicateKeyException.class, e -> new BusinessException("La sucursal ya existe"))
+                        .flatMap(result -> result.getMatchedCount() > 0
+                                ? Mono.just(result)
+                                : missingBranch(franchiseId, "Sucursal no encontrada")))
+                .then(findById(franchiseId));
+    }
+
+    @Override
+    public Mono<Franchise> addProduct(String franchiseId, String branchName, Product product, Long expectedVersion) {
+        return versioned(franchiseId, expectedVersion, branchId(franchiseId, branchName)
+                        .flatMap(branchId -> template.insert(new ProductDocument(
+                                null, franchiseId, branchId, product.getName(), product.getStock())))
+                        .onErrorMap(DuplicateKeyException.class, e -> new BusinessException("El producto ya existe")))
+                .then(findById(franchiseId));
+    }
+
+    @Override
+    public Mono<Franchise> removeProduct(
+            String franchiseId,
+            String branchName,
+            String productName,
+            Long expectedVersion
+    ) {
+        return versioned(franchiseId, expectedVersion, branchId(franchiseId, branchName)
+                        .flatMap(branchId -> template.remove(productQuery(branchId, productName, null), ProductDocument.class))
+                        .flatMap(result -> result.getDeletedCount() > 0
+                                ? Mono.just(result)
+                                : Mono.error(new ResourceNotFoundException("Producto no encontrado"))))
+                .then(findById(franchiseId));
+    }
+
+    @Override
+    public Mono<Franchise> renameProduct(
+            String franchiseId,
+            String branchName,
+            String oldName,
+            String newName,
+            Long expectedVersion
+    ) {
+        return versioned(franchiseId, expectedVersion, branchId(franchiseId, branchName)
+                        .flatMap(branchId -> template.updateFirst(
+                                productQuery(branchId, oldName, null),
+                                new Update().set("name", newName).set("nameKey", NameKey.of(newName)),
+                                ProductDocument.class))
+                        .onErrorMap(DuplicateKeyException.class, e -> new BusinessException("El producto ya existe"))
+                        .flatMap(result -> result.getMatchedCount() > 0
+                                ? Mono.just(result)
+                                : Mono.error(new ResourceNotFoundException("Producto no encontrado"))))
+                .then(findById(franchiseId));
+    }
+
+    @Override
+    public Mono<ProductStockDTO> updateProductStock(
+            String franchiseId,
+            String branchName,
+            String productName,
+            int stock
+    ) {
+        return branchId(franchiseId, branchName)
+                .flatMap(branchId -> template.updateFirst(
+                        productQuery(branchId, productName, null),
+                        new Update().set("stock", stock),
+                        ProductDocument.class))
+                .flatMap(result -> result.getMatchedCount() > 0
+                        ? touch(franchiseId).thenReturn(new ProductStockDTO(franchiseId, branchName, productName, stock))
+                        : Mono.error(new ResourceNotFoundException("Producto no encontrado")));
+    }
+
+    @Override
+    public Mono<Integer> updateProductStocks(List<StockUpdateRequest> updates) {
+        if (updates.isEmpty()) {
+            return Mono.just(0);
+        }
+
+        List<Criteria> branches = updates.stream()
+                .map(u -> branchKey(u.franchiseId(), u.branch()))
+                .distinct()
+                .map(key -> Criteria.where("franchiseId").is(key.franchiseId()).and("nameKey").is(key.nameKey()))
+                .toList();
+
+        return template.find(Query.query(new Criteria().orOperator(branches)), BranchDocument.class)
+                .collectMap(b -> new BranchKey(b.getFranchiseId(), b.getNameKey()), BranchDocument::getId)
+                .flatMap(branchIds -> {
+                    ReactiveBulkOperations bulk = template.bulkOps(BulkOperations.BulkMode.UNORDERED, ProductDocument.class);
+                    int writes = 0;
+                    for (StockUpdateRequest u : updates) {
+                        String branchId = branchIds.get(branchKey(u.franchiseId(), u.branch()));
+                        if (branchId != null) {
+                            bulk.updateOne(productQuery(branchId, u.product(), null), new Update().set("stock", u.stock()));
+                            writes++;
+                        }
+                    }
+                    if (writes == 0) {
+                        return Mono.just(0);
+                    }
+
+                    Set<String> franchiseIds = updates.stream().map(StockUpdateRequest::franchiseId).collect(Collectors.toSet());
+                    return bulk.execute()
+                            .flatMap(result -> template.updateMulti(
+                                            Query.query(Criteria.where("_id").in(franchiseIds)),
+                                            new Update().inc("version", 1),
+                                            Franchise.class)
+                                    .thenReturn(result.getMatchedCount()));
+                });
+    }
+
+    @Override
+    public Mono<Boolean> setProductStocks(String franchiseId, List<StockUpdateRequest> updates) {
+        return updateProductStocks(updates)
+                .map(matched -> matched == updates.size());
+    }
+
+    @Override
+    public Mono<ProductStockDTO> incrementProductStock(
+            String franchiseId,
+            String branchName,
+            String productName,
+            int delta,
+            StockDeltaMode mode
+    ) {
+        return branchId(franchiseId, branchName)
+                .flatMap(branchId -> incrementProductStock(branchId, branchName, productName, delta, mode, MAX_CLAMP_ATTEMPTS))
+                .flatMap(adjustment -> touch(franchiseId)
+                        .thenReturn(new ProductStockDTO(franchiseId, branchName, productName, adjustment.stock())));
+    }
+
+    /**
+     * A clamped decrement reads the stock it replaced, so the adjustment carries what was actually taken.
+     */
+    private Mono<StockAdjustmentDTO> incrementProductStock(
+            String branchId,
+            String branchName,
+            String productName,
+            int delta,
+            StockDeltaMode mode,
+            int attemptsLeft
+    ) {
+        Criteria guard = delta < 0 ? Criteria.where("stock").gte(-delta) : null;
+
+        return modifyStock(productQuery(branchId, productName, guard), new Update().inc("stock", delta))
+                .map(stock -> new StockAdjustmentDTO(branchName, productName, delta, stock))
+                .switchIfEmpty(Mono.defer(() -> template.exists(productQuery(branchId, productName, null), ProductDocument.class)
+                        .flatMap(productExists -> {
+                            if (!productExists) {
+                                return Mono.error(new ResourceNotFoundException("Producto no encontrado"));
+                            }
+                            if (mode == StockDeltaMode.REJECT) {
+                                return Mono.error(new InsufficientStockException("Stock insuficiente"));
+                            }
+                            if (attemptsLeft == 0) {
+                                return Mono.error(new ConflictException("El stock cambió concurrentemente, intente de nuevo"));
+                            }
+                            return template.findAndModify(
+                                            productQuery(branchId, productName, Criteria.where("stock").lt(-delta)),
+                                            new Update().set("stock", 0),
+                                            FindAndModifyOptions.options().returnNew(false),
+                                            ProductDocument.class)
+                                    .map(previous -> new StockAdjustmentDTO(branchName, productName, -previous.getStock(), 0))
+                                    .switchIfEmpty(Mono.defer(() -> incrementProductStock(
+                                            branchId, branchName, productName, delta, mode, attemptsLeft - 1)));
+                        })));
+    }
+
+    private Mono<Integer> modifyStock(Query query, Update update) {
+        return template.findAndModify(query, update, FindAndModifyOptions.options().returnNew(true), ProductDocument.class)
+                .map(ProductDocument::getStock);
+    }
+
+    @Override
+    public Flux<StockAdjustmentDTO> applyStockDeltas(String franchiseId, List<StockDelta> deltas, StockDeltaMode mode) {
+        List<String> branchKeys = deltas.stream().map(d -> NameKey.of(d.branch())).distinct().toList();
+
+        return template.find(Query.query(Criteria.where("franchiseId").is(franchiseId).and("nameKey").in(branchKeys)),
+                        BranchDocument.class)
+                .collectMap(BranchDocument::getNameKey, BranchDocument::getId)
+                .flatMap(branchIds -> {
+                    for (StockDelta delta : deltas) {
+                        if (!branchIds.containsKey(NameKey.of(delta.branch()))) {
+                            return missingBranch(franchiseId, "Sucursal no encontrada: " + delta.branch());
+                        }
+                    }
+                    return applyStockDeltas(branchIds, deltas, mode, 0);
+                })
+                .flatMap(adjustments -> touch(franchiseId).thenReturn(adjustments))
+                .flatMapIterable(adjustments -> adjustments);
+    }
+
+    /**
+     * Applies the deltas one guarded $inc at a time. Without a transaction the batch is not isolated, so a rejected
+     * delta undoes the ones already applied on the way back up, keeping the outcome all or nothing.
+     */
+    private Mono<List<StockAdjustmentDTO>> applyStockDeltas(
+            Map<String, String> branchIds,
+            List<StockDelta> deltas,
+            StockDeltaMode mode,
+            int index
+    ) {
+        if (index == deltas.size()) {
+            return Mono.just(List.of());
+        }
+
+        StockDelta delta = deltas.get(index);
+        String branchId = branchIds.get(NameKey.of(delta.branch()));
+
+        return incrementProductStock(branchId, delta.branch(), delta.product(), delta.delta(), mode, MAX_CLAMP_ATTEMPTS)
+                .onErrorMap(e -> e instanceof ResourceNotFoundException
+                        ? new ResourceNotFoundException("Producto no encontrado: " + delta.product())
+                        : e instanceof InsufficientStockException
+                                ? new InsufficientStockException("Stock insuficiente: " + delta.product())
+                                : e)
+                .flatMap(adjustment -> applyStockDeltas(branchIds, deltas, mode, index + 1)
+                        .map(rest -> Stream.concat(Stream.of(adjustment), rest.stream()).toList())
+                        .onErrorResume(e -> undo(branchId, adjustment).then(Mono.error(e))));
+    }
+
+    /**
+     * Reverts an applied delta with the same guarded $inc, so a decrement sold in the meantime cannot take the stock
+     * below zero; what cannot be taken back is logged.
+     */
+    private Mono<Void> undo(String branchId, StockAdjustmentDTO adjustment) {
+        return incrementProductStock(branchId, adjustment.branchName(), adjustment.productName(), -adjustment.delta(),
+                StockDeltaMode.CLAMP, MAX_CLAMP_ATTEMPTS)
+                .doOnNext(undone -> {
+                    if (undone.delta() != -adjustment.delta()) {
+                        log.warn("Could only partly revert the stock of {} / {}: {} of {}", adjustment.branchName(),
+                                adjustment.productName(), undone.delta(), -adjustment.delta());
+                    }
+                })
+                .then();
+    }
+
+    @Override
+    public Flux<HighestStockProductDTO> findHighestStockProducts(String franchiseId, int limit) {
+        Aggregation aggregation = Aggregation.newAggregation(
+                Aggregation.match(Criteria.where("franchiseId").is(franchiseId)),
+                Aggregation.sort(Sort.by(Sort.Order.asc("branchId"), Sort.Order.desc("stock"), Sort.Order.asc("_id"))),
+                Aggregation.group("branchId").push(new Document("name", "$name").append("stock", "$stock")).as("products"),
+                Aggregation.project().and("products").slice(limit),
+                Aggregation.sort(Sort.by("_id")),
+                Aggregation.unwind("products")
+        );
+
+        Mono<Map<String, String>> branchNames = template
+                .find(Query.query(Criteria.where("franchiseId").is(franchiseId)), BranchDocument.class)
+                .collectMap(BranchDocument::getId, BranchDocument::getName);
+
+        return branchNames.flatMapMany(names -> template.aggregate(aggregation, ProductDocument.class, Document.class)
+                .map(doc -> {
+                    Document product = doc.get("products", Document.class);
+                    return new HighestStockProductDTO(
+                            names.get(doc.getString("_id")),
+                            product.getString("name"),
+                            product.getInteger("stock")
+                    );
+                }));
+    }
+
+    @Override
+    public Flux<BranchStockDTO> findBranchStockTotals(String franchiseId) {
+        Aggregation aggregation = Aggregation.newAggregation(
+                Aggregation.match(Criteria.where("franchiseId").is(franchiseId)),
+                Aggregation.group("branchId").count().as("productCount").sum("stock").as("totalStock")
+        );
+
+        Mono<Map<String, Document>> totals = template.aggregate(aggregation, ProductDocument.class, Document.class)
+                .collectMap(doc -> doc.getString("_id"));
+
+        return totals.flatMapMany(byBranch -> template
+                .find(Query.query(Criteria.where("franchiseId").is(franchiseId)).with(Sort.by("_id")), BranchDocument.class)
+                .map(branch -> {
+                    Document total = byBranch.get(branch.getId());
+                    return total == null
+                            ? new BranchStockDTO(branch.getName(), 0, 0)
+                            : new BranchStockDTO(branch.getName(), total.getInteger("productCount"),
+                                    total.get("totalStock", Number.class).longValue());
+                }));
+    }
+
+    @Override
+    public Flux<ProductStockDTO> findLowStockProducts(String franchiseId, int threshold, int limit) {
+        return findProducts(franchiseId, Criteria.where("stock").lt(threshold), Sort.Direction.ASC, limit);
+    }
+
+    @Override
+    public Flux<ProductStockDTO> findTopStockProducts(String franchiseId, int limit) {
+        return findProducts(franchiseId, null, Sort.Direction.DESC, limit);
+    }
+
+    private Flux<ProductStockDTO> findProducts(String franchiseId, Criteria stock, Sort.Direction direction, int limit) {
+        Query query = new Query()
+                .with(Sort.by(new Sort.Order(direction, "stock"), Sort.Order.asc("_id")))
+                .limit(limit);
+        if (franchiseId != null) {
+            query.addCriteria(Criteria.where("franchiseId").is(franchiseId));
+        }
+        if (stock != null) {
+            query.addCriteria(stock);
+        }
+
+        // At most limit products come back, so their branch names are resolved in a single lookup.
+        return template.find(query, ProductDocument.class)
+                .collectList()
+                .flatMapMany(products -> {
+                    Set<String> branchIds = products.stream().map(ProductDocument::getBranchId).collect(Collectors.toSet());
+                    return template.find(Query.query(Criteria.where("_id").in(branchIds)), BranchDocument.class)
+                            .collectMap(BranchDocument::getId, BranchDocument::getName)
+                            .flatMapIterable(names -> products.stream()
+                                    .map(product -> new ProductStockDTO(product.getFranchiseId(),
+                                            names.get(product.getBranchId()), product.getName(), product.getStock()))
+                                    .toList());
+                });
+    }
+
+    @Override
+    public Mono<Long> findVersion(String franchiseId) {
+        return repository.findVersion(franchiseId);
+    }
+
+    @Override
+    public Mono<Void> advanceVersion(String franchiseId, long version) {
+        return repository.advanceVersion(franchiseId, version);
+    }
+
+    @Override
+    public Flux<Franchise> findPage(String afterId, int limit) {
+        return template.find(pageQuery(afterId, limit), Franchise.class)
+                .collectList()
+                .flatMapMany(this::assemble);
+    }
+
+    @Override
+    public Flux<FranchiseSummaryDTO> findSummaryPage(String afterId, int limit, boolean withBranchCount) {
+        Query query = pageQuery(afterId, limit);
+        query.fields().include("name");
+        Flux<Franchise> page = template.find(query, Franchise.class);
+
+        if (!withBranchCount) {
+            return page.map(franchise -> new FranchiseSummaryDTO(franchise.getId(), franchise.getName(), null));
+        }
+
+        return page.collectList().flatMapMany(franchises -> {
+            Aggregation counts = Aggregation.newAggregation(
+                    Aggregation.match(Criteria.where("franchiseId").in(franchises.stream().map(Franchise::getId).toList())),
+                    Aggregation.group("franchiseId").count().as("branchCount")
+            );
+            return template.aggregate(counts, BranchDocument.class, Document.class)
+                    .collectMap(doc -> doc.getString("_id"), doc -> doc.getInteger("branchCount"))
+                    .flatMapIterable(branchCounts -> franchises.stream()
+                            .map(franchise -> new FranchiseSummaryDTO(franchise.getId(), franchise.getName(),
+                                    branchCounts.getOrDefault(franchise.getId(), 0)))
+                            .toList());
+        });
+    }
+
+    private Flux<Franchise> assemble(List<Franchise> franchises) {
+        if (franchises.isEmpty()) {
+            return Flux.empty();
+        }
+
+        Query byFranchise = Query.query(Criteria.where("franchiseId").in(franchises.stream().map(Franchise::getId).toList()))
+                .with(Sort.by("_id"));
+
+        return Mono.zip(
+                        template.find(byFranchise, BranchDocument.class).collectList(),
+                        template.find(byFranchise, ProductDocument.class).collectList()
+                )
+                .flatMapIterable(documents -> NormalizedDocuments.assemble(franchises, documents.getT1(), documents.getT2()));
+    }
+
+    @Override
+    public Mono<Integer> upsertAll(List<Franchise> franchises) {
+        if (franchises.isEmpty()) {
+            return Mono.just(0);
+        }
+
+        List<String> ids = new ArrayList<>(franchises.size());
+        List<BranchDocument> branches = new ArrayList<>();
+        List<ProductDocument> products = new ArrayList<>();
+        ReactiveBulkOperations bulk = template.bulkOps(BulkOperations.BulkMode.ORDERED, Franchise.class);
+        for (Franchise franchise : franchises) {
+            NormalizedDocuments.Split split = NormalizedDocuments.split(franchise.getId(), franchise.getBranches());
+            ids.add(franchise.getId());
+            branches.addAll(split.branches());
+            products.addAll(split.products());
+            Document replacement = new Document();
+            template.getConverter().write(
+                    Franchise.builder().id(franchise.getId()).name(franchise.getName()).version(franchise.getVersion()).build(),
+                    replacement);
+            FranchiseRepositoryCustomImpl.replace(bulk, franchise.getId(), replacement);
+        }
+
+        // Branches and products of a replaced franchise are rewritten from scratch, as the migration does.
+        Query inBatch = Query.query(Criteria.where("franchiseId").in(ids));
+        return bulk.execute()
+                .then(template.remove(inBatch, BranchDocument.class))
+                .then(template.remove(inBatch, ProductDocument.class))
+                .then(branches.isEmpty() ? Mono.empty() : template.insertAll(branches).then())
+                .then(products.isEmpty() ? Mono.empty() : template.insertAll(products).then())
+                .thenReturn(franchises.size());
+    }
+
+    /**
+     * Inserts the branches and then their products. If either insert fails, whatever part of them was written is
+     * removed again, so no branch is left without the products it was sent with.
+     */
+    private Mono<Void> insertBranches(String franchiseId, List<Branch> branches) {
+        NormalizedDocuments.Split split = NormalizedDocuments.split(franchiseId, branches);
+        Mono<Void> insertBranches = split.branches().isEmpty()
+                ? Mono.empty()
+                : template.insertAll(split.branches())
+                        .onErrorMap(DuplicateKeyException.class, e -> new BusinessException("La sucursal ya existe"))
+                        .then();
+        Mono<Void> insertProducts = split.products().isEmpty()
+                ? Mono.empty()
+                : template.insertAll(split.products())
+                        .onErrorMap(DuplicateKeyException.class, e -> new BusinessException("El producto ya existe"))
+                        .then();
+        List<String> branchIds = split.branches().stream().map(BranchDocument::getId).toList();
+        return insertBranches.then(insertProducts)
+                .onErrorResume(e -> template.remove(Query.query(Criteria.where("branchId").in(branchIds)), ProductDocument.class)
+                        .then(template.remove(Query.query(Criteria.where("_id").in(branchIds)), BranchDocument.class))
+                        .then(Mono.error(e)));
+    }
+
+    private Mono<Void> touch(String franchiseId) {
+        return touch(franchiseId, null, new Update());
+    }
+
+    /**
+     * Runs a change to the branch or product collections and bumps the franchise version only once it succeeded.
+     * <p>
+     * With an {@code expectedVersion} the version has to be claimed first, so that of several writers holding it
+     * exactly one gets through. If the change then fails the claimed version is kept: versions only move forward, so
+     * an ETag is never reused for different content, and the cost is a spurious miss for clients holding the old one.
+     */
+    private <T> Mono<T> versioned(String franchiseId, Long expectedVersion, Mono<T> change) {
+        if (expectedVersion == null) {
+            return change.flatMap(result -> touch(franchiseId).thenReturn(result));
+        }
+        return touch(franchiseId, expectedVersion, new Update()).then(change);
+    }
+
+    /**
+     * Bumps the franchise version together with {@code update}. With an {@code expectedVersion} only that version is
+     * bumped, so of several writers holding the same version exactly one gets through.
+     */
+    private Mono<Void> touch(String franchiseId, Long expectedVersion, Update update) {
+        Query query = byId(franchiseId);
+        if (expectedVersion != null) {
+            query.addCriteria(Criteria.where("version").is(expectedVersion));
+        }
+        return template.updateFirst(query, update.inc("version", 1), Franchise.class)
+                .flatMap(result -> result.getMatchedCount() > 0
+                        ? Mono.<Void>empty()
+                        : Mono.error(new ResourceNotFoundException("Franquicia no encontrada")))
+                // The template reports a miss of an update filtered by version as an optimistic locking failure.
+                .onErrorResume(OptimisticLockingFailureException.class, e -> existsById(franchiseId)
+                        .flatMap(exists -> Mono.error(exists
+                                ? new PreconditionFailedException("La versión de la franquicia no coincide")
+                                : new ResourceNotFoundException("Franquicia no encontrada"))));
+    }
+
+    private Mono<String> branchId(String franchiseId, String branchName) {
+        Query query = branchQuery(franchiseId, branchName);
+        query.fields().include("_id");
+        return template.findOne(query, BranchDocument.class)
+                .map(BranchDocument::getId)
+                .switchIfEmpty(Mono.defer(() -> missingBranch(franchiseId, "Sucursal no encontrada")));
+    }
+
+    private <T> Mono<T> missingBranch(String franchiseId, String message) {
+        return existsById(franchiseId)
+                .flatMap(exists -> Mono.error(new ResourceNotFoundException(
+                        exists ? message : "Franquicia no encontrada")));
+    }
+
+    private static Query byId(String franchiseId) {
+        return Query.query(Criteria.where("_id").is(franchiseId));
+    }
+
+    private static Query branchQuery(String franchiseId, String branchName) {
+        return Query.query(Criteria.where("franchiseId").is(franchiseId).and("nameKey").is(NameKey.of(branchName)));
+    }
+
+    private static Query productQuery(String branchId, String productName, Criteria stockGuard) {
+        Criteria criteria = Criteria.where("branchId").is(branchId).and("nameKey").is(NameKey.of(productName));
+        if (stockGuard != null) {
+            criteria = criteria.andOperator(stockGuard);
+        }
+        return Query.query(criteria);
+    }
+
+    private static Query pageQuery(String afterId, int limit) {
+        Query query = afterId == null
+                ? new Query()
+                : Query.query(Criteria.where("_id").gt(afterId));
+        return query.with(Sort.by("_id")).limit(limit);
+    }
+
+    private static BranchKey branchKey(String franchiseId, String branchName) {
+        return new BranchKey(franchiseId, NameKey.of(branchName));
+    }
+
+    private record BranchKey(String franchiseId, String nameKey) {
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.franchise.repository;
+
+import com.example.franchise.config.StorageProperties;
+import com.example.franchise.domain.model.BranchDocument;
+import com.example.franchise.domain.model.Franchise;
+import com.example.franchise.domain.model.ProductDocument;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.ReactiveBulkOperations;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Moves embedded branches and products into the {@code branches} and {@code products} collections. Franchises are
+ * streamed from a cursor and converted {@code franchise.storage.migration-batch-size} at a time, so the collection is
+ * never held in memory. Re-running is safe: a batch first clears whatever a previous, interrupted run left behind.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class NormalizedStorageMigration {
+
+    private final ReactiveMongoTemplate template;
+    private final StorageProperties properties;
+
+    public Mono<Long> migrate() {
+        Query pending = Query.query(Criteria.where("branches").exists(true))
+                .with(Sort.by("_id"))
+                .cursorBatchSize(properties.migrationBatchSize());
+
+        return template.find(pending, Franchise.class)
+                .buffer(properties.migrationBatchSize())
+                .concatMap(this::migrateBatch)
+                .reduce(0L, Long::sum)
+                .doOnNext(count -> log.info("Migrated {} franchises to normalized storage", count));
+    }
+
+    private Mono<Long> migrateBatch(List<Franchise> batch) {
+        List<String> ids = batch.stream().map(Franchise::getId).toList();
+        List<BranchDocument> branches = new ArrayList<>();
+        List<ProductDocument> products = new ArrayList<>();
+        for (Franchise franchise : batch) {
+            NormalizedDocuments.Split split = NormalizedDocuments.split(franchise.getId(), franchise.getBranches());
+            branches.addAll(split.branches());
+            products.addAll(split.products());
+        }
+
+        // The embedded copy is only dropped if the franchise did not change while the batch was being written.
+        ReactiveBulkOperations unsetBranches = template.bulkOps(BulkOperations.BulkMode.UNORDERED, Franchise.class);
+        batch.forEach(franchise -> unsetBranches.updateOne(
+                Query.query(Criteria.where("_id").is(franchise.getId()).and("version").is(franchise.getVersion())),
+                new Update().unset("branches").inc("version", 1)
+        ));
+
+        Query inBatch = Query.query(Criteria.where("franchiseId").in(ids));
+        return template.remove(inBatch, BranchDocument.class)
+                .then(template.remove(inBatch, ProductDocument.class))
+                .then(branches.isEmpty() ? Mono.empty() : template.insertAll(branches).then())
+                .then(products.isEmpty() ? Mono.empty() : template.insertAll(products).then())
+                .then(unsetBranches.execute())
+                .map(result -> {
+                    if (result.getMatchedCount() < batch.size()) {
+                        log.warn("{} franchises changed during migration and keep their embedded branches; run it again",
+                                batch.size() - result.getMatchedCount());
+                    }
+                    return (long) result.getMatchedCount();
+                });
+    }
+}
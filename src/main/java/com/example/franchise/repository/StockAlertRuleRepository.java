@@ -0,0 +1,19 @@
+package com.example.franchise.repository;
+
+import com.example.franchise.domain.model.StockAlertRule;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+public interface StockAlertRuleRepository extends ReactiveMongoRepository<StockAlertRule, String> {
+
+    Flux<StockAlertRule> findByFranchiseId(String franchiseId);
+
+    Flux<StockAlertRule> findByFranchiseIdAndBranchKey(String franchiseId, String branchKey);
+
+    Flux<StockAlertRule> findByFranchiseIdAndBranchKeyAndProductKey(String franchiseId, String branchKey, String productKey);
+
+    Mono<Long> deleteByFranchiseIdAndBranchKey(String franchiseId, String branchKey);
+
+    Mono<Long> deleteByFranchiseIdAndBranchKeyAndProductKey(String franchiseId, String branchKey, String productKey);
+}
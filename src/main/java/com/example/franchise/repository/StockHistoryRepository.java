@@ -0,0 +1,89 @@
+package com.example.franchise.repository;
+
+import com.example.franchise.domain.dto.StockHistoryBucketDTO;
+import com.example.franchise.domain.model.StockMovement;
+import lombok.RequiredArgsConstructor;
+import org.bson.Document;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationExpression;
+import org.springframework.data.mongodb.core.aggregation.AggregationOptions;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Reads and appends stock movements. Every query is scoped by the meta field, so it is served by the time-series
+ * buckets of a single product or branch and never reads the franchise documents.
+ */
+@Component
+@RequiredArgsConstructor
+public class StockHistoryRepository {
+
+    private final ReactiveMongoTemplate template;
+
+    public Mono<Void> insertAll(List<StockMovement> movements) {
+        return template.insert(movements, StockMovement.class).then();
+    }
+
+    public Flux<StockMovement> findMovements(
+            String franchiseId, String branchKey, String productKey, Instant from, Instant to, int limit) {
+        return template.find(Query.query(criteria(franchiseId, branchKey, productKey, from, to))
+                .with(Sort.by("timestamp"))
+                .limit(limit), StockMovement.class);
+    }
+
+    /**
+     * Groups the movements that carry a resulting stock into buckets of {@code size}, aligned to the epoch in UTC.
+     * A wide range sorts and groups more than the in-memory stage limit, so the server may spill to disk.
+     */
+    public Flux<StockHistoryBucketDTO> findBuckets(
+            String franchiseId, String branchKey, String productKey, Instant from, Instant to, Duration size) {
+        Document millis = new Document("$toLong", "$timestamp");
+        AggregationExpression bucket = context -> new Document("$subtract",
+                List.of(millis, new Document("$mod", List.of(millis, size.toMillis()))));
+
+        Aggregation aggregation = Aggregation.newAggregation(
+                Aggregation.match(criteria(franchiseId, branchKey, productKey, from, to).and("stock").ne(null)),
+                Aggregation.sort(Sort.by("timestamp")),
+                Aggregation.project("branchName", "productName", "stock")
+                        .and("meta.productKey").as("productKey")
+                        .and(bucket).as("bucket"),
+                Aggregation.group("bucket", "productKey")
+                        .last("branchName").as("branchName")
+                        .last("productName").as("productName")
+                        .count().as("movements")
+                        .first("stock").as("open")
+                        .last("stock").as("close")
+                        .min("stock").as("min")
+                        .max("stock").as("max"),
+                Aggregation.sort(Sort.by("bucket", "productKey"))
+        ).withOptions(AggregationOptions.builder().allowDiskUse(true).build());
+
+        return template.aggregate(aggregation, StockMovement.class, Document.class)
+                .map(doc -> new StockHistoryBucketDTO(
+                        Instant.ofEpochMilli(doc.get("_id", Document.class).get("bucket", Number.class).longValue()),
+                        doc.getString("branchName"),
+                        doc.getString("productName"),
+                        doc.get("movements", Number.class).intValue(),
+                        doc.getInteger("open"),
+                        doc.getInteger("close"),
+                        doc.getInteger("min"),
+                        doc.getInteger("max")));
+    }
+
+    private static Criteria criteria(String franchiseId, String branchKey, String productKey, Instant from, Instant to) {
+        Criteria criteria = Criteria.where("meta.franchiseId").is(franchiseId).and("meta.branchKey").is(branchKey);
+        if (productKey != null) {
+            criteria = criteria.and("meta.productKey").is(productKey);
+        }
+        return criteria.and("timestamp").gte(from).lt(to);
+    }
+}
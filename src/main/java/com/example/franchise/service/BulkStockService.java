@@ -0,0 +1,136 @@
+package com.example.franchise.service;
+
+import com.example.franchise.config.BulkStockProperties;
+import com.example.franchise.domain.dto.StockEvent;
+import com.example.franchise.domain.dto.StockUpdateRequest;
+import com.example.franchise.domain.dto.StockUpdateResultDTO;
+import com.example.franchise.domain.dto.StockUpdateResultDTO.Status;
+import com.example.franchise.domain.model.Franchise;
+import com.example.franchise.domain.model.NameKey;
+import com.example.franchise.repository.FranchiseStore;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@Service
+@RequiredArgsConstructor
+public class BulkStockService {
+
+    private final FranchiseStore store;
+    private final BulkStockProperties properties;
+    private final FranchiseCache cache;
+    private final StockEventPublisher events;
+    private final StockAlertEvaluator alerts;
+    private final StockHistoryRecorder history;
+
+    public Flux<StockUpdateResultDTO> ingest(Flux<StockUpdateRequest> updates) {
+        return updates
+                .bufferTimeout(properties.batchSize(), properties.window(), true)
+                .concatMap(this::flush)
+                .doOnNext(result -> {
+                    if (result.status() == Status.APPLIED) {
+                        StockEvent event = StockEvent.of(StockEvent.Type.PRODUCT_STOCK,
+                                result.franchiseId(), result.branch(), result.product(), result.stock());
+                        events.publish(event);
+                        history.record(event);
+                        alerts.stockChanged(result.franchiseId(), result.branch(), result.product(), result.stock());
+                    }
+                });
+    }
+
+    private Flux<StockUpdateResultDTO> flush(List<StockUpdateRequest> batch) {
+        Map<String, Integer> latestByProduct = new HashMap<>();
+        for (int i = 0; i < batch.size(); i++) {
+            if (isValid(batch.get(i))) {
+                latestByProduct.put(key(batch.get(i)), i);
+            }
+        }
+
+        List<StockUpdateRequest> writes = latestByProduct.values().stream()
+                .sorted()
+                .map(batch::get)
+                .sorted(Comparator.comparing(StockUpdateRequest::franchiseId))
+                .toList();
+
+        return store.updateProductStocks(writes)
+                .doFinally(signal -> writes.stream()
+                        .map(StockUpdateRequest::franchiseId)
+                        .distinct()
+                        .forEach(cache::invalidate))
+                .flatMap(matched -> matched == writes.size()
+                        ? Mono.just(Map.<StockUpdateRequest, String>of())
+                        : resolveFailures(writes))
+                .flatMapIterable(failures -> {
+                    List<StockUpdateResultDTO> results = new ArrayList<>(batch.size());
+                    for (int i = 0; i < batch.size(); i++) {
+                        results.add(result(batch, i, latestByProduct, failures));
+                    }
+                    return results;
+                });
+    }
+
+    /**
+     * The bulk write only reports how many writes matched. The ones whose product cannot be found afterwards are the
+     * ones that did not; only those are replayed one by one for their error, since replaying an applied {@code $set}
+     * could overwrite a newer update.
+     */
+    private Mono<Map<StockUpdateRequest, String>> resolveFailures(List<StockUpdateRequest> writes) {
+        return Flux.fromStream(writes.stream().map(StockUpdateRequest::franchiseId).distinct())
+                .concatMap(franchiseId -> store.findById(franchiseId))
+                .collectMap(Franchise::getId)
+                .flatMapMany(franchises -> Flux.fromIterable(writes)
+                        .filter(u -> !hasProduct(franchises.get(u.franchiseId()), u)))
+                .concatMap(u -> store.updateProductStock(u.franchiseId(), u.branch(), u.product(), u.stock())
+                        .then(Mono.<Map.Entry<StockUpdateRequest, String>>empty())
+                        .onErrorResume(e -> Mono.just(Map.entry(u, e.getMessage()))))
+                .collectMap(Map.Entry::getKey, Map.Entry::getValue);
+    }
+
+    private static boolean hasProduct(Franchise franchise, StockUpdateRequest update) {
+        return franchise != null && franchise.findBranch(update.branch())
+                .flatMap(branch -> branch.findProduct(update.product()))
+                .isPresent();
+    }
+
+    /**
+     * A coalesced update shares the outcome of the write that replaced it: when that write failed, so did this one.
+     */
+    private static StockUpdateResultDTO result(
+            List<StockUpdateRequest> batch,
+            int index,
+            Map<String, Integer> latestByProduct,
+            Map<StockUpdateRequest, String> failures
+    ) {
+        StockUpdateRequest request = batch.get(index);
+        if (!isValid(request)) {
+            return StockUpdateResultDTO.of(request, Status.FAILED, "Solicitud inválida");
+        }
+        int winner = latestByProduct.get(key(request));
+        String error = failures.get(batch.get(winner));
+        if (error != null) {
+            return StockUpdateResultDTO.of(request, Status.FAILED, error);
+        }
+        return StockUpdateResultDTO.of(request, winner == index ? Status.APPLIED : Status.COALESCED, null);
+    }
+
+    private static boolean isValid(StockUpdateRequest request) {
+        return request.franchiseId() != null
+                && request.branch() != null
+                && request.product() != null
+                && request.stock() != null;
+    }
+
+    private static String key(StockUpdateRequest request) {
+        return String.join("\u0000",
+                request.franchiseId(),
+                NameKey.of(request.branch()),
+                NameKey.of(request.product()));
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.franchise.service;
+
+import com.example.franchise.config.RetryProperties;
+import com.example.franchise.exception.ConflictException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ConflictRetryPolicy {
+
+    public static final String METRIC_PREFIX = "franchise.mutation";
+
+    private final RetryProperties properties;
+    private final MeterRegistry registry;
+
+    /**
+     * Counters are tagged by franchise as well, so contention on a hot franchise shows up on its own; the number of
+     * franchises tracked is capped in {@link com.example.franchise.config.MetricsConfig}.
+     */
+    public <T> Mono<T> withRetry(String operation, String franchiseId, Mono<T> attempt) {
+        Counter conflicts = counter(".conflicts", operation, franchiseId);
+        Counter retries = counter(".retries", operation, franchiseId);
+        Counter exhausted = counter(".retries.exhausted", operation, franchiseId);
+
+        return attempt
+                .doOnError(OptimisticLockingFailureException.class, e -> conflicts.increment())
+                .retryWhen(Retry.backoff(properties.maxAttempts(), properties.minBackoff())
+                        .maxBackoff(properties.maxBackoff())
+                        .jitter(properties.jitter())
+                        .filter(OptimisticLockingFailureException.class::isInstance)
+                        .doBeforeRetry(signal -> retries.increment())
+                        .onRetryExhaustedThrow((spec, signal) -> {
+                            exhausted.increment();
+                            log.warn("Franchise {} kept conflicting on {} after {} retries",
+                                    franchiseId, operation, signal.totalRetries());
+                            return new ConflictException("La franquicia fue modificada concurrentemente, intente de nuevo");
+                        }));
+    }
+
+    private Counter counter(String suffix, String operation, String franchiseId) {
+        return registry.counter(METRIC_PREFIX + suffix, "operation", operation, "franchise", String.valueOf(franchiseId));
+    }
+}
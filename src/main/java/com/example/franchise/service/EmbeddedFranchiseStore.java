@@ -0,0 +1,270 @@
+package com.example.franchise.service;
+
+import com.example.franchise.domain.dto.BranchStockDTO;
+import com.example.franchise.domain.dto.FranchiseSummaryDTO;
+import com.example.franchise.domain.dto.HighestStockProductDTO;
+import com.example.franchise.domain.dto.ProductStockDTO;
+import com.example.franchise.domain.dto.StockAdjustmentDTO;
+import com.example.franchise.domain.dto.StockDelta;
+import com.example.franchise.domain.dto.StockDeltaMode;
+import com.example.franchise.domain.dto.StockUpdateRequest;
+import com.example.franchise.domain.model.Branch;
+import com.example.franchise.domain.model.Franchise;
+import com.example.franchise.domain.model.Product;
+import com.example.franchise.exception.BusinessException;
+import com.example.franchise.exception.PreconditionFailedException;
+import com.example.franchise.exception.ResourceNotFoundException;
+import com.example.franchise.repository.FranchiseRepository;
+import com.example.franchise.repository.FranchiseStore;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Stores each franchise as a single document. Structural changes read the document, apply the change in memory
+ * and save it back under the {@code @Version} check, retrying on conflicts.
+ */
+@Component
+@ConditionalOnProperty(prefix = "franchise.storage", name = "mode", havingValue = "EMBEDDED", matchIfMissing = true)
+@RequiredArgsConstructor
+public class EmbeddedFranchiseStore implements FranchiseStore {
+
+    private final FranchiseRepository repository;
+    private final ConflictRetryPolicy retryPolicy;
+
+    @Override
+    public Mono<Franchise> findById(String franchiseId) {
+        return repository.findById(franchiseId);
+    }
+
+    @Override
+    public Mono<Boolean> existsById(String franchiseId) {
+        return repository.existsById(franchiseId);
+    }
+
+    @Override
+    public Mono<Boolean> existsByName(String name) {
+        return repository.existsByNameIgnoreCase(name);
+    }
+
+    @Override
+    public Mono<Franchise> insert(Franchise franchise) {
+        return repository.save(franchise);
+    }
+
+    @Override
+    public Mono<Franchise> renameFranchise(String franchiseId, String newName, Long expectedVersion) {
+        // The unique name index rejects a name another franchise already has.
+        return mutate("updateFranchiseName", franchiseId, expectedVersion, franchise -> {
+            franchise.setName(newName);
+            return Mono.just(franchise);
+        }).onErrorMap(DuplicateKeyException.class, e -> new BusinessException("La franquicia ya existe"));
+    }
+
+    @Override
+    public Mono<Franchise> addBranch(String franchiseId, Branch branch, Long expectedVersion) {
+        return mutate("addBranch", franchiseId, expectedVersion, franchise -> {
+
+            if (franchise.findBranch(branch.getName()).isPresent()) {
+                return Mono.error(
+                        new BusinessException("La sucursal ya existe")
+                );
+            }
+
+            franchise.addBranch(branch);
+            return Mono.just(franchise);
+        });
+    }
+
+    @Override
+    public Mono<Franchise> renameBranch(String franchiseId, String oldName, String newName, Long expectedVersion) {
+        return mutate("updateBranchName", franchiseId, expectedVersion, franchise -> {
+
+            Branch branch = findBranch(franchise, oldName);
+
+            if (franchise.findBranch(newName).filter(other -> other != branch).isPresent()) {
+                return Mono.error(
+                        new BusinessException("La sucursal ya existe")
+                );
+            }
+
+            franchise.renameBranch(branch, newName);
+            return Mono.just(franchise);
+        });
+    }
+
+    @Override
+    public Mono<Franchise> addProduct(String franchiseId, String branchName, Product product, Long expectedVersion) {
+        return mutate("addProduct", franchiseId, expectedVersion, franchise -> {
+
+            Branch branch = findBranch(franchise, branchName);
+
+            if (branch.findProduct(product.getName()).isPresent()) {
+                return Mono.error(
+                        new BusinessException("El producto ya existe")
+                );
+            }
+
+            branch.addProduct(product);
+            return Mono.just(franchise);
+        });
+    }
+
+    @Override
+    public Mono<Franchise> removeProduct(
+            String franchiseId,
+            String branchName,
+            String productName,
+            Long expectedVersion
+    ) {
+        return mutate("removeProduct", franchiseId, expectedVersion, franchise -> {
+
+            Branch branch = findBranch(franchise, branchName);
+
+            if (!branch.removeProduct(productName)) {
+                return Mono.error(
+                        new ResourceNotFoundException("Producto no encontrado")
+                );
+            }
+
+            return Mono.just(franchise);
+        });
+    }
+
+    @Override
+    public Mono<Franchise> renameProduct(
+            String franchiseId,
+            String branchName,
+            String oldName,
+            String newName,
+            Long expectedVersion
+    ) {
+        return mutate("updateProductName", franchiseId, expectedVersion, franchise -> {
+
+            Branch branch = findBranch(franchise, branchName);
+
+            Product product = branch.findProduct(oldName)
+                    .orElseThrow(() ->
+                            new ResourceNotFoundException("Producto no encontrado")
+                    );
+
+            if (branch.findProduct(newName).filter(other -> other != product).isPresent()) {
+                return Mono.error(
+                        new BusinessException("El producto ya existe")
+                );
+            }
+
+            branch.renameProduct(product, newName);
+            return Mono.just(franchise);
+        });
+    }
+
+    @Override
+    public Mono<ProductStockDTO> updateProductStock(String franchiseId, String branchName, String productName, int stock) {
+        return repository.updateProductStock(franchiseId, branchName, productName, stock);
+    }
+
+    @Override
+    public Mono<Integer> updateProductStocks(List<StockUpdateRequest> updates) {
+        return repository.updateProductStocks(updates);
+    }
+
+    @Override
+    public Mono<Boolean> setProductStocks(String franchiseId, List<StockUpdateRequest> updates) {
+        return repository.setProductStocks(franchiseId, updates);
+    }
+
+    @Override
+    public Mono<ProductStockDTO> incrementProductStock(
+            String franchiseId,
+            String branchName,
+            String productName,
+            int delta,
+            StockDeltaMode mode
+    ) {
+        return repository.incrementProductStock(franchiseId, branchName, productName, delta, mode);
+    }
+
+    @Override
+    public Flux<StockAdjustmentDTO> applyStockDeltas(String franchiseId, List<StockDelta> deltas, StockDeltaMode mode) {
+        return repository.applyStockDeltas(franchiseId, deltas, mode);
+    }
+
+    @Override
+    public Flux<HighestStockProductDTO> findHighestStockProducts(String franchiseId, int limit) {
+        return repository.findHighestStockProducts(franchiseId, limit);
+    }
+
+    @Override
+    public Flux<BranchStockDTO> findBranchStockTotals(String franchiseId) {
+        return repository.findBranchStockTotals(franchiseId);
+    }
+
+    @Override
+    public Flux<ProductStockDTO> findLowStockProducts(String franchiseId, int threshold, int limit) {
+        return repository.findLowStockProducts(franchiseId, threshold, limit);
+    }
+
+    @Override
+    public Flux<ProductStockDTO> findTopStockProducts(String franchiseId, int limit) {
+        return repository.findTopStockProducts(franchiseId, limit);
+    }
+
+    @Override
+    public Mono<Long> findVersion(String franchiseId) {
+        return repository.findVersion(franchiseId);
+    }
+
+    @Override
+    public Mono<Void> advanceVersion(String franchiseId, long version) {
+        return repository.advanceVersion(franchiseId, version);
+    }
+
+    @Override
+    public Flux<Franchise> findPage(String afterId, int limit) {
+        return repository.findPage(afterId, limit);
+    }
+
+    @Override
+    public Flux<FranchiseSummaryDTO> findSummaryPage(String afterId, int limit, boolean withBranchCount) {
+        return repository.findSummaryPage(afterId, limit, withBranchCount);
+    }
+
+    @Override
+    public Mono<Integer> upsertAll(List<Franchise> franchises) {
+        return repository.upsertAll(franchises);
+    }
+
+    private static Branch findBranch(Franchise franchise, String branchName) {
+        return franchise.findBranch(branchName)
+                .orElseThrow(() ->
+                        new ResourceNotFoundException("Sucursal no encontrada")
+                );
+    }
+
+    private Mono<Franchise> mutate(
+            String operation,
+            String franchiseId,
+            Long expectedVersion,
+            Function<Franchise, Mono<Franchise>> mutation
+    ) {
+        // Always reads from Mongo: cached instances are shared with readers and must never be mutated.
+        // A retried attempt re-reads the document, so a concurrent write surfaces as a failed precondition.
+        Mono<Franchise> attempt = Mono.defer(() -> repository.findById(franchiseId))
+                .switchIfEmpty(Mono.error(
+                        new ResourceNotFoundException("Franquicia no encontrada")
+                ))
+                .flatMap(franchise -> expectedVersion == null || expectedVersion.equals(franchise.getVersion())
+                        ? mutation.apply(franchise)
+                        : Mono.error(new PreconditionFailedException("La versión de la franquicia no coincide")))
+                .flatMap(repository::save);
+
+        return retryPolicy.withRetry(operation, franchiseId, attempt);
+    }
+}
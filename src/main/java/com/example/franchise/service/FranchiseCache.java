@@ -0,0 +1,47 @@
+package com.example.franchise.service;
+
+import com.example.franchise.config.FranchiseCacheProperties;
+import com.example.franchise.domain.model.Franchise;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+@Component
+public class FranchiseCache {
+
+    private final AsyncCache<String, Franchise> cache;
+
+    public FranchiseCache(FranchiseCacheProperties properties, MeterRegistry registry) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(properties.maximumSize())
+                .expireAfterWrite(properties.ttl())
+                .recordStats()
+                .buildAsync();
+        CaffeineCacheMetrics.monitor(registry, cache, "franchises");
+    }
+
+    /**
+     * Concurrent misses for the same id share a single in-flight load; empty results are not cached.
+     */
+    public Mono<Franchise> get(String id, Function<String, Mono<Franchise>> loader) {
+        return Mono.fromFuture(() -> cache.get(id, (key, executor) -> loader.apply(key).toFuture()), true);
+    }
+
+    /**
+     * The cached franchise, if it is already loaded; never triggers a load.
+     */
+    public Franchise peek(String id) {
+        CompletableFuture<Franchise> cached = cache.getIfPresent(id);
+        return cached != null && cached.isDone() && !cached.isCompletedExceptionally() ? cached.join() : null;
+    }
+
+    public void invalidate(String id) {
+        cache.synchronous().invalidate(id);
+    }
+}
@@ -1,83 +1,92 @@
 package com.example.franchise.service;
 
+import com.example.franchise.config.StockProperties;
 import com.example.franchise.domain.model.Branch;
 import com.example.franchise.domain.model.Franchise;
+import com.example.franchise.domain.model.NameKey;
 import com.example.franchise.domain.model.Product;
+import com.example.franchise.domain.dto.BranchStockDTO;
+import com.example.franchise.domain.dto.FranchiseSummaryDTO;
 import com.example.franchise.domain.dto.HighestStockProductDTO;
+import com.example.franchise.domain.dto.ProductStockDTO;
+import com.example.franchise.domain.dto.StockAlert;
+import com.example.franchise.domain.dto.StockDelta;
+import com.example.franchise.domain.dto.StockDeltaMode;
+import com.example.franchise.domain.dto.StockEvent;
 import com.example.franchise.exception.BusinessException;
 import com.example.franchise.exception.ResourceNotFoundException;
-import com.example.franchise.repository.FranchiseRepository;
+import com.example.franchise.repository.FranchiseStore;
 import lombok.RequiredArgsConstructor;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
-import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 @Service
 @RequiredArgsConstructor
 public class FranchiseService {
 
-    private final FranchiseRepository repository;
+    static final int MAX_PAGE_SIZE = 1000;
+
+    private final FranchiseStore store;
+    private final FranchiseCache cache;
+    private final StockEventPublisher events;
+    private final StockAlertEvaluator alerts;
+    private final StockHistoryRecorder history;
+    private final StockWriteCoalescer stockWrites;
+    private final StockProperties stockProperties;
 
     public Mono<Franchise> addFranchise(Franchise franchise) {
-        return repository.existsByNameIgnoreCase(franchise.getName())
+        return store.existsByName(franchise.getName())
                 .flatMap(exists -> {
                     if (exists) {
                         return Mono.error(
                                 new BusinessException("La franquicia ya existe")
                         );
                     }
-                    return repository.save(franchise);
-                });
+                    return store.insert(franchise);
+                })
+                // The unique name index settles races between concurrent creations with the same name.
+                .onErrorMap(DuplicateKeyException.class, e -> new BusinessException("La franquicia ya existe"));
     }
 
-    public Mono<Franchise> addBranch(String franchiseId, Branch branch) {
-        return repository.findById(franchiseId)
+    public Mono<Franchise> getFranchise(String id) {
+        return cache.get(id, store::findById)
                 .switchIfEmpty(Mono.error(
                         new ResourceNotFoundException("Franquicia no encontrada")
-                ))
-                .flatMap(franchise -> {
-
-                    boolean exists = franchise.getBranches().stream()
-                            .anyMatch(b -> b.getName().equalsIgnoreCase(branch.getName()));
-
-                    if (exists) {
-                        return Mono.error(
-                                new BusinessException("La sucursal ya existe")
-                        );
-                    }
-
-                    franchise.getBranches().add(branch);
-                    return repository.save(franchise);
-                });
+                ));
     }
 
-    public Mono<Franchise> addProduct(String franchiseId, String branchName, Product product) {
-        return repository.findById(franchiseId)
-                .switchIfEmpty(Mono.error(
-                        new ResourceNotFoundException("Franquicia no encontrada")
-                ))
-                .flatMap(franchise -> {
-
-                    Branch branch = franchise.getBranches().stream()
-                            .filter(b -> b.getName().equalsIgnoreCase(branchName))
-                            .findFirst()
-                            .orElseThrow(() ->
-                                    new ResourceNotFoundException("Sucursal no encontrada")
-                            );
-
-                    boolean exists = branch.getProducts().stream()
-                            .anyMatch(p -> p.getName().equalsIgnoreCase(product.getName()));
+    /**
+     * The version {@link #getFranchise} would serve: taken from the cache when loaded, otherwise read alone from Mongo.
+     */
+    public Mono<Long> getFranchiseVersion(String id) {
+        Franchise cached = cache.peek(id);
+        Mono<Long> version = cached != null ? Mono.justOrEmpty(cached.getVersion()) : store.findVersion(id);
+        return version.switchIfEmpty(Mono.error(
+                new ResourceNotFoundException("Franquicia no encontrada")
+        ));
+    }
 
-                    if (exists) {
-                        return Mono.error(
-                                new BusinessException("El producto ya existe")
-                        );
-                    }
+    public Mono<Franchise> addBranch(String franchiseId, Branch branch, Long expectedVersion) {
+        return store.addBranch(franchiseId, branch, expectedVersion)
+                .doFinally(signal -> cache.invalidate(franchiseId));
+    }
 
-                    branch.getProducts().add(product);
-                    return repository.save(franchise);
+    public Mono<Franchise> addProduct(String franchiseId, String branchName, Product product, Long expectedVersion) {
+        return store.addProduct(franchiseId, branchName, product, expectedVersion)
+                .doFinally(signal -> cache.invalidate(franchiseId))
+                .doOnNext(saved -> {
+                    StockEvent event = StockEvent.of(
+                            StockEvent.Type.PRODUCT_STOCK, franchiseId, branchName, product.getName(), product.getStock()
+                    );
+                    events.publish(event);
+                    history.record(event);
+                    alerts.stockChanged(franchiseId, branchName, product.getName(), product.getStock());
                 });
     }
 
@@ -85,149 +94,187 @@ public class FranchiseService {
     public Mono<Franchise> removeProduct(
             String franchiseId,
             String branchName,
-            String productName
+            String productName,
+            Long expectedVersion
     ) {
-        return repository.findById(franchiseId)
-                .switchIfEmpty(Mono.error(
-                        new ResourceNotFoundException("Franquicia no encontrada")
-                ))
-                .flatMap(franchise -> {
-
-                    Branch branch = franchise.getBranches().stream()
-                            .filter(b -> b.getName().equalsIgnoreCase(branchName))
-                            .findFirst()
-                            .orElseThrow(() ->
-                                    new ResourceNotFoundException("Sucursal no encontrada")
-                            );
-
-                    boolean removed = branch.getProducts()
-                            .removeIf(p -> p.getName().equalsIgnoreCase(productName));
-
-                    if (!removed) {
-                        return Mono.error(
-                                new ResourceNotFoundException("Producto no encontrado")
-                        );
-                    }
-
-                    return repository.save(franchise);
+        return store.removeProduct(franchiseId, branchName, productName, expectedVersion)
+                .doFinally(signal -> cache.invalidate(franchiseId))
+                .doOnNext(saved -> {
+                    StockEvent event = StockEvent.of(
+                            StockEvent.Type.PRODUCT_REMOVED, franchiseId, branchName, productName, null
+                    );
+                    events.publish(event);
+                    history.record(event);
+                    alerts.productRemoved(franchiseId, branchName, productName);
                 });
     }
 
-    public Mono<Franchise> updateProductStock(
+    public Mono<ProductStockDTO> updateProductStock(
             String franchiseId,
             String branchName,
             String productName,
             int newStock
     ) {
-        return repository.findById(franchiseId)
-                .switchIfEmpty(Mono.error(
-                        new ResourceNotFoundException("Franquicia no encontrada")
-                ))
-                .flatMap(franchise -> {
-
-                    Branch branch = franchise.getBranches().stream()
-                            .filter(b -> b.getName().equalsIgnoreCase(branchName))
-                            .findFirst()
-                            .orElseThrow(() ->
-                                    new ResourceNotFoundException("Sucursal no encontrada")
-                            );
-
-                    Product product = branch.getProducts().stream()
-                            .filter(p -> p.getName().equalsIgnoreCase(productName))
-                            .findFirst()
-                            .orElseThrow(() ->
-                                    new ResourceNotFoundException("Producto no encontrado")
-                            );
-
-                    product.setStock(newStock);
-                    return repository.save(franchise);
+        return stockWrites.updateProductStock(franchiseId, branchName, productName, newStock)
+                .doFinally(signal -> cache.invalidate(franchiseId))
+                .doOnNext(updated -> {
+                    StockEvent event = StockEvent.of(
+                            StockEvent.Type.PRODUCT_STOCK, franchiseId, branchName, productName, newStock
+                    );
+                    events.publish(event);
+                    history.record(event);
+                    alerts.stockChanged(franchiseId, branchName, productName, newStock);
                 });
     }
 
-    public Flux<HighestStockProductDTO> getHighestStockProducts(String franchiseId) {
-        return repository.findById(franchiseId)
-                .switchIfEmpty(Mono.error(
-                        new ResourceNotFoundException("Franquicia no encontrada")
-                ))
-                .flatMapMany(franchise -> Flux.fromIterable(franchise.getBranches()))
-                .flatMap(branch ->
-                        Flux.fromStream(
-                                branch.getProducts().stream()
-                                        .max(Comparator.comparingInt(Product::getStock))
-                                        .stream()
-                                        .map(product ->
-                                                new HighestStockProductDTO(
-                                                        branch.getName(),
-                                                        product.getName(),
-                                                        product.getStock()
-                                                )
-                                        )
-                        )
-                );
-    }
-
-    public Mono<Franchise> updateFranchiseName(String id, String newName) {
-        return repository.findById(id)
-                .switchIfEmpty(Mono.error(
-                        new ResourceNotFoundException("Franquicia no encontrada")
-                ))
-                .flatMap(franchise -> {
-                    franchise.setName(newName);
-                    return repository.save(franchise);
+    public Mono<ProductStockDTO> adjustProductStock(
+            String franchiseId,
+            String branchName,
+            String productName,
+            int delta,
+            StockDeltaMode mode
+    ) {
+        return store.incrementProductStock(franchiseId, branchName, productName, delta, modeOrDefault(mode))
+                .doFinally(signal -> cache.invalidate(franchiseId))
+                .doOnNext(updated -> {
+                    StockEvent event = StockEvent.of(
+                            StockEvent.Type.PRODUCT_STOCK, franchiseId, branchName, productName, updated.stock()
+                    );
+                    events.publish(event);
+                    history.record(event);
+                    alerts.stockChanged(franchiseId, branchName, productName, updated.stock());
                 });
     }
 
-    public Mono<Franchise> updateBranchName(String franchiseId, String oldName, String newName) {
-        return repository.findById(franchiseId)
-                .switchIfEmpty(Mono.error(
-                        new ResourceNotFoundException("Franquicia no encontrada")
-                ))
-                .flatMap(franchise -> {
-
-                    Branch branch = franchise.getBranches().stream()
-                            .filter(b -> b.getName().equalsIgnoreCase(oldName))
-                            .findFirst()
-                            .orElseThrow(() ->
-                                    new ResourceNotFoundException("Sucursal no encontrada")
-                            );
-
-                    branch.setName(newName);
-                    return repository.save(franchise);
-                });
+    public Mono<Void> applyStockDeltas(String franchiseId, List<StockDelta> deltas, StockDeltaMode mode) {
+        if (deltas == null || deltas.isEmpty()) {
+            return Mono.error(new BusinessException("Debe indicar al menos un ajuste de stock"));
+        }
+        if (deltas.stream().anyMatch(d -> d == null || d.branch() == null || d.product() == null || d.delta() == null)) {
+            return Mono.error(new BusinessException("Solicitud inválida"));
+        }
+
+        Map<String, StockDelta> coalesced = new LinkedHashMap<>();
+        try {
+            for (StockDelta delta : deltas) {
+                coalesced.merge(NameKey.of(delta.branch()) + "\u0000" + NameKey.of(delta.product()), delta,
+                        (first, next) -> new StockDelta(first.branch(), first.product(),
+                                Math.addExact(first.delta(), next.delta())));
+            }
+        } catch (ArithmeticException e) {
+            return Mono.error(new BusinessException("El ajuste de stock excede el máximo permitido"));
+        }
+        List<StockDelta> writes = List.copyOf(coalesced.values());
+
+        return store.applyStockDeltas(franchiseId, writes, modeOrDefault(mode))
+                .collectList()
+                .doFinally(signal -> cache.invalidate(franchiseId))
+                .doOnNext(adjustments -> adjustments.forEach(adjustment -> {
+                    StockEvent event = StockEvent.adjusted(franchiseId, adjustment.branchName(),
+                            adjustment.productName(), adjustment.delta(), adjustment.stock());
+                    events.publish(event);
+                    history.record(event);
+                    alerts.stockChanged(franchiseId, adjustment.branchName(), adjustment.productName(), adjustment.stock());
+                }))
+                .then();
+    }
+
+    public Flux<HighestStockProductDTO> getHighestStockProducts(String franchiseId, int limit) {
+        if (limit < 1) {
+            return Flux.error(new BusinessException("El límite debe ser mayor a cero"));
+        }
+
+        return store.findHighestStockProducts(franchiseId, limit)
+                .switchIfEmpty(requireFranchise(franchiseId));
+    }
+
+    public Flux<BranchStockDTO> getBranchStockTotals(String franchiseId) {
+        return store.findBranchStockTotals(franchiseId)
+                .switchIfEmpty(requireFranchise(franchiseId));
+    }
+
+    public Flux<ProductStockDTO> getLowStockProducts(String franchiseId, int threshold, int limit) {
+        if (threshold < 0) {
+            return Flux.error(new BusinessException("El umbral no puede ser negativo"));
+        }
+
+        return validatePageSize(limit)
+                .thenMany(store.findLowStockProducts(franchiseId, threshold, limit))
+                .switchIfEmpty(requireFranchise(franchiseId));
+    }
+
+    public Flux<ProductStockDTO> getTopStockProducts(String franchiseId, int limit) {
+        return validatePageSize(limit)
+                .thenMany(store.findTopStockProducts(franchiseId, limit))
+                .switchIfEmpty(requireFranchise(franchiseId));
+    }
+
+    public Flux<StockEvent> streamStockEvents(String franchiseId, StockEventPublisher.OverflowPolicy overflow) {
+        return store.existsById(franchiseId)
+                .flatMapMany(exists -> exists
+                        ? events.subscribe(franchiseId, overflow)
+                        : Flux.error(new ResourceNotFoundException("Franquicia no encontrada")));
+    }
+
+    public Flux<StockAlert> streamStockAlerts(String franchiseId) {
+        return store.existsById(franchiseId)
+                .flatMapMany(exists -> exists
+                        ? alerts.subscribe(franchiseId)
+                        : Flux.error(new ResourceNotFoundException("Franquicia no encontrada")));
+    }
+
+    public Mono<Franchise> updateFranchiseName(String id, String newName, Long expectedVersion) {
+        return store.renameFranchise(id, newName, expectedVersion)
+                .doFinally(signal -> cache.invalidate(id));
+    }
+
+    public Mono<Franchise> updateBranchName(String franchiseId, String oldName, String newName, Long expectedVersion) {
+        return store.renameBranch(franchiseId, oldName, newName, expectedVersion)
+                .doFinally(signal -> cache.invalidate(franchiseId))
+                .flatMap(franchise -> alerts.branchRenamed(franchiseId, oldName, newName).thenReturn(franchise));
     }
 
     public Mono<Franchise> updateProductName(
             String franchiseId,
             String branchName,
             String oldName,
-            String newName
+            String newName,
+            Long expectedVersion
     ) {
-        return repository.findById(franchiseId)
-                .switchIfEmpty(Mono.error(
-                        new ResourceNotFoundException("Franquicia no encontrada")
-                ))
-                .flatMap(franchise -> {
-
-                    Branch branch = franchise.getBranches().stream()
-                            .filter(b -> b.getName().equalsIgnoreCase(branchName))
-                            .findFirst()
-                            .orElseThrow(() ->
-                                    new ResourceNotFoundException("Sucursal no encontrada")
-                            );
-
-                    Product product = branch.getProducts().stream()
-                            .filter(p -> p.getName().equalsIgnoreCase(oldName))
-                            .findFirst()
-                            .orElseThrow(() ->
-                                    new ResourceNotFoundException("Producto no encontrado")
-                            );
-
-                    product.setName(newName);
-                    return repository.save(franchise);
-                });
+        return store.renameProduct(franchiseId, branchName, oldName, newName, expectedVersion)
+                .doFinally(signal -> cache.invalidate(franchiseId))
+                .flatMap(franchise -> alerts.productRenamed(franchiseId, branchName, oldName, newName)
+                        .thenReturn(franchise));
+    }
+
+    public Flux<Franchise> getFranchises(String afterId, int limit) {
+        return validatePageSize(limit)
+                .thenMany(store.findPage(afterId, limit));
+    }
+
+    public Flux<FranchiseSummaryDTO> getFranchiseSummaries(String afterId, int limit, boolean withBranchCount) {
+        return validatePageSize(limit)
+                .thenMany(store.findSummaryPage(afterId, limit, withBranchCount));
+    }
+
+    private <T> Flux<T> requireFranchise(String franchiseId) {
+        if (franchiseId == null) {
+            return Flux.empty();
+        }
+        return Flux.defer(() -> store.existsById(franchiseId)
+                .flatMapMany(exists -> exists
+                        ? Flux.empty()
+                        : Flux.error(new ResourceNotFoundException("Franquicia no encontrada"))));
+    }
+
+    private StockDeltaMode modeOrDefault(StockDeltaMode mode) {
+        return mode != null ? mode : stockProperties.negativePolicy();
     }
 
-    public Flux<Franchise> getAllFranchises() {
-        return repository.findAll();
+    private static Mono<Void> validatePageSize(int limit) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            return Mono.error(new BusinessException("El límite debe estar entre 1 y " + MAX_PAGE_SIZE));
+        }
+        return Mono.empty();
     }
 }
\ No newline at end of file
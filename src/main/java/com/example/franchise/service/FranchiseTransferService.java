@@ -0,0 +1,98 @@
+package com.example.franchise.service;
+
+import com.example.franchise.config.FranchiseTransferProperties;
+import com.example.franchise.domain.dto.ImportProgressDTO;
+import com.example.franchise.domain.model.Franchise;
+import com.example.franchise.exception.BusinessException;
+import com.example.franchise.repository.FranchiseStore;
+import lombok.RequiredArgsConstructor;
+import org.bson.types.ObjectId;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Streams whole franchises in and out for backups and migrations. Export walks the collection by id one page at a
+ * time; import writes {@code franchise.transfer.batch-size} franchises per bulk write with up to
+ * {@code franchise.transfer.parallelism} batches in flight. Neither ever holds more than those batches in memory.
+ */
+@Service
+@RequiredArgsConstructor
+public class FranchiseTransferService {
+
+    private final FranchiseStore store;
+    private final FranchiseCache cache;
+    private final FranchiseTransferProperties properties;
+
+    public Flux<Franchise> exportFranchises(String afterId) {
+        return page(afterId)
+                .expand(page -> page.size() < properties.batchSize()
+                        ? Mono.empty()
+                        : page(page.get(page.size() - 1).getId()))
+                .concatMapIterable(page -> page);
+    }
+
+    /**
+     * Progress is reported once per batch, in input order, so the last checkpoint received is always safe to resume
+     * from. A failure is reported as a final progress element carrying the error.
+     */
+    public Flux<ImportProgressDTO> importFranchises(Flux<Franchise> franchises, long skip) {
+        if (skip < 0) {
+            return Flux.error(new BusinessException("El punto de reanudación no puede ser negativo"));
+        }
+
+        return Flux.defer(() -> {
+            AtomicReference<ImportProgressDTO> progress = new AtomicReference<>(new ImportProgressDTO(skip, 0, null));
+            return franchises
+                    .skip(skip)
+                    .index((index, franchise) -> prepare(franchise, skip + index))
+                    .buffer(properties.batchSize())
+                    // Failures travel as values so that batches already in flight still complete and are reported in order.
+                    .flatMapSequentialDelayError(this::write, properties.parallelism(), 1)
+                    .<ImportProgressDTO>handle((written, sink) -> {
+                        if (written.error() != null) {
+                            sink.error(written.error());
+                        } else {
+                            sink.next(progress.updateAndGet(p -> new ImportProgressDTO(
+                                    p.checkpoint() + written.count(), p.imported() + written.count(), null)));
+                        }
+                    })
+                    .onErrorResume(e -> Mono.just(new ImportProgressDTO(
+                            progress.get().checkpoint(), progress.get().imported(), e.getMessage())));
+        });
+    }
+
+    private Mono<List<Franchise>> page(String afterId) {
+        return store.findPage(afterId, properties.batchSize()).collectList();
+    }
+
+    private Mono<Written> write(List<Franchise> batch) {
+        return store.upsertAll(batch)
+                .doFinally(signal -> batch.forEach(franchise -> cache.invalidate(franchise.getId())))
+                .map(count -> new Written(count, null))
+                .onErrorResume(e -> Mono.just(new Written(0, e)));
+    }
+
+    private static Franchise prepare(Franchise franchise, long position) {
+        if (franchise == null || franchise.getName() == null || franchise.getName().isBlank()) {
+            throw new BusinessException("Franquicia inválida en la posición " + position);
+        }
+        if (franchise.getId() == null) {
+            franchise.setId(ObjectId.get().toHexString());
+        }
+        if (franchise.getVersion() == null) {
+            franchise.setVersion(0L);
+        }
+        if (franchise.getBranches() == null) {
+            franchise.setBranches(new ArrayList<>());
+        }
+        return franchise;
+    }
+
+    private record Written(int count, Throwable error) {
+    }
+}
@@ -0,0 +1,935 @@
+package com.example.franchise.service;
+
+import com.example.franchise.config.InventoryEngineProperties;
+import com.example.franchise.domain.dto.BranchStockDTO;
+import com.example.franchise.domain.dto.HighestStockProductDTO;
+import com.example.franchise.domain.dto.ProductStockDTO;
+import com.example.franchise.domain.dto.StockAdjustmentDTO;
+import com.example.franchise.domain.dto.StockDelta;
+import com.example.franchise.domain.dto.StockDeltaMode;
+import com.example.franchise.domain.dto.StockUpdateRequest;
+import com.example.franchise.domain.model.Branch;
+import com.example.franchise.domain.model.Franchise;
+import com.example.franchise.domain.model.NameKey;
+import com.example.franchise.domain.model.Product;
+import com.example.franchise.exception.BusinessException;
+import com.example.franchise.exception.InsufficientStockException;
+import com.example.franchise.exception.PreconditionFailedException;
+import com.example.franchise.exception.ResourceNotFoundException;
+import com.example.franchise.repository.FranchiseStore;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps the stock of the franchises in {@code franchise.inventory.franchise-ids} (every franchise when empty) in
+ * memory and makes it the source of truth for them. Each branch holds its stock in an {@code int[]} indexed by a slot
+ * per product, guarded by its own lock. Writes are recorded in the {@link InventoryLog}, applied in memory and marked
+ * dirty; dirty slots are written to Mongo in batches every {@code flush-interval}, or as soon as {@code max-dirty}
+ * is reached, in which case writers wait for that flush.
+ * <p>
+ * Every change runs on a single writer thread, the only one that appends to the log, rotates it or changes the held
+ * stock; callers get a {@link Mono} back, so neither the event loop nor any request thread waits on the log or on a
+ * flush. A change is logged before the locks of its branches are taken, and those locks only keep readers from
+ * seeing it half applied.
+ * <p>
+ * Structural changes still go to Mongo first and are mirrored here once they succeed. The engine keeps its own
+ * franchise version, which is what ETags and {@code If-Match} see for these franchises; it is written to Mongo with
+ * each flush and continues from the highest one seen after a restart.
+ * <p>
+ * Only one engine may host a franchise: the {@link InventoryLease} taken at start-up fails it when another instance
+ * already hosts some of the same franchises, and the {@link InventoryLeaseGuard} of every other instance rejects
+ * writes to the franchises it hosts.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "franchise.inventory", name = "enabled", havingValue = "true")
+public class InventoryEngine implements SmartLifecycle {
+
+    private static final int WARM_UP_PAGE_SIZE = 500;
+    private static final Duration STOP_TIMEOUT = Duration.ofSeconds(30);
+
+    private final InventoryEngineProperties properties;
+    private final InventoryLease lease;
+    private final Counter flushed;
+    private final Counter flushFailures;
+    private final Map<String, FranchiseStock> franchises = new ConcurrentHashMap<>();
+    private final AtomicInteger dirty = new AtomicInteger();
+    private final AtomicReference<Mono<Void>> flushing = new AtomicReference<>();
+    private volatile FranchiseStore store;
+    private volatile boolean running;
+    private InventoryLog appendLog;
+    // Appending and rotating on the same thread means a closed segment never holds a record not yet in memory.
+    private Scheduler writer;
+    private Disposable flusher;
+    private Disposable renewer;
+
+    public InventoryEngine(InventoryEngineProperties properties, InventoryLease lease, MeterRegistry registry) {
+        this.properties = properties;
+        this.lease = lease;
+        this.flushed = registry.counter("franchise.inventory.flushed");
+        this.flushFailures = registry.counter("franchise.inventory.flush.failures");
+        registry.gauge("franchise.inventory.dirty", dirty);
+    }
+
+    /**
+     * Wraps the persistence port so that hosted franchises are served from memory. The given store is the one the
+     * engine warms up from and flushes to.
+     */
+    public FranchiseStore decorate(FranchiseStore raw) {
+        this.store = raw;
+        return new InventoryFranchiseStore(raw, this);
+    }
+
+    @Override
+    public void start() {
+        lease.acquire().block();
+        // Renewed from here on, since warming up every franchise may outlast the lease.
+        renewer = Flux.interval(lease.renewInterval())
+                .onBackpressureDrop()
+                .concatMap(tick -> lease.renew().onErrorResume(e -> {
+                    log.warn("Could not renew the inventory lease: {}", e.getMessage());
+                    return Mono.empty();
+                }), 1)
+                .subscribe();
+        if (properties.franchiseIds().isEmpty()) {
+            log.warn("Inventory engine hosting every franchise; set franchise.inventory.franchise-ids to bound the "
+                    + "warm-up and to let other instances host the rest");
+        }
+        // Other instances reject writes to these franchises once their guard has reloaded the leases; two reloads
+        // later none of their writes can land after the warm-up has read the franchises.
+        Mono.delay(InventoryLeaseGuard.refreshInterval(properties).multipliedBy(2)).block();
+
+        writer = Schedulers.newSingle("inventory-writer", true);
+        try {
+            appendLog = new InventoryLog(properties.logDirectory(), properties.logSegmentSize().toBytes(),
+                    properties.logSync());
+            InventoryLog.Replay replay = appendLog.open();
+
+            Flux<Franchise> warmUp = properties.franchiseIds().isEmpty()
+                    ? store.findPage(null, WARM_UP_PAGE_SIZE).collectList()
+                    .expand(page -> page.size() < WARM_UP_PAGE_SIZE
+                            ? Mono.empty()
+                            : store.findPage(page.get(page.size() - 1).getId(), WARM_UP_PAGE_SIZE).collectList())
+                    .flatMapIterable(page -> page)
+                    : Flux.fromIterable(properties.franchiseIds()).concatMap(store::findById);
+            warmUp.doOnNext(franchise -> load(franchise, replay)).blockLast();
+
+            // Values logged for franchises that are no longer hosted are written straight to Mongo.
+            List<StockUpdateRequest> orphans = replay.stock().entrySet().stream()
+                    .filter(entry -> !franchises.containsKey(entry.getKey().franchiseId()))
+                    .map(entry -> new StockUpdateRequest(entry.getKey().franchiseId(), entry.getKey().branchKey(),
+                            entry.getKey().productKey(), entry.getValue()))
+                    .toList();
+            if (!orphans.isEmpty()) {
+                store.updateProductStocks(orphans).block();
+            }
+        } catch (RuntimeException e) {
+            writer.dispose();
+            releaseLease();
+            throw e;
+        }
+
+        log.info("Inventory engine hosting {} franchises, {} stock values replayed", franchises.size(), dirty.get());
+        flusher = Flux.interval(properties.flushInterval())
+                .onBackpressureDrop()
+                .concatMap(tick -> flush().onErrorResume(e -> {
+                    log.warn("Inventory flush failed", e);
+                    return Mono.empty();
+                }), 1)
+                .subscribe();
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        if (flusher != null) {
+            flusher.dispose();
+        }
+        try {
+            flush().block(STOP_TIMEOUT);
+        } finally {
+            try {
+                Mono.fromRunnable(appendLog::close).subscribeOn(writer).block(STOP_TIMEOUT);
+            } finally {
+                writer.dispose();
+                releaseLease();
+            }
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Starts before and stops after the web server, so no request reaches the engine while it is warming up or
+     * after its last flush.
+     */
+    @Override
+    public int getPhase() {
+        return 0;
+    }
+
+    boolean hosts(String franchiseId) {
+        return franchiseId != null && franchises.containsKey(franchiseId);
+    }
+
+    boolean shouldHost(String franchiseId) {
+        return properties.franchiseIds().isEmpty() || properties.franchiseIds().contains(franchiseId);
+    }
+
+    int dirtyCount() {
+        return dirty.get();
+    }
+
+    /**
+     * Runs {@code change} on the writer thread and hands its result over to a parallel thread, so whatever the caller
+     * does next does not hold up the following change.
+     */
+    <T> Mono<T> submit(Supplier<T> change) {
+        return Mono.fromSupplier(change).subscribeOn(writer).publishOn(Schedulers.parallel());
+    }
+
+    /**
+     * Writers call this after applying a change; it only waits when the dirty set is full.
+     */
+    Mono<Void> awaitCapacity() {
+        return Mono.defer(() -> dirty.get() < properties.maxDirty() ? Mono.empty() : flush());
+    }
+
+    /**
+     * Writes every dirty value to Mongo. Concurrent callers share the flush in progress.
+     */
+    public Mono<Void> flush() {
+        Mono<Void> current = flushing.get();
+        if (current != null) {
+            return current;
+        }
+
+        Sinks.Empty<Void> done = Sinks.empty();
+        Mono<Void> mono = done.asMono();
+        if (!flushing.compareAndSet(null, mono)) {
+            return flush();
+        }
+        Mono.defer(this::flushOnce)
+                .subscribeOn(writer)
+                .doOnTerminate(() -> flushing.set(null))
+                .subscribe(null, done::tryEmitError, done::tryEmitEmpty);
+        return mono;
+    }
+
+    // ---------------------------------------------------------------------------------------------- stock writes
+
+    ProductStockDTO setStock(String franchiseId, String branchName, String productName, int stock) {
+        FranchiseStock franchise = require(franchiseId);
+        BranchStock branch = franchise.branch(branchName);
+        write(franchise, List.of(new Change(branch, branch.slot(productName), stock)));
+        return new ProductStockDTO(franchiseId, branchName, productName, stock);
+    }
+
+    ProductStockDTO incrementStock(String franchiseId, String branchName, String productName, int delta,
+                                   StockDeltaMode mode) {
+        FranchiseStock franchise = require(franchiseId);
+        BranchStock branch = franchise.branch(branchName);
+        int slot = branch.slot(productName);
+        int next = add(branch.stock[slot], delta);
+        if (next < 0) {
+            if (mode == StockDeltaMode.REJECT) {
+                throw new InsufficientStockException("Stock insuficiente");
+            }
+            next = 0;
+        }
+        write(franchise, List.of(new Change(branch, slot, next)));
+        return new ProductStockDTO(franchiseId, branchName, productName, next);
+    }
+
+    /**
+     * Applies every delta or none of them, like the single Mongo update it replaces. Under
+     * {@link StockDeltaMode#CLAMP} a decrement larger than the stock takes it to zero.
+     */
+    List<StockAdjustmentDTO> applyStockDeltas(String franchiseId, List<StockDelta> deltas, StockDeltaMode mode) {
+        FranchiseStock franchise = require(franchiseId);
+        List<BranchStock> branches = new ArrayList<>(deltas.size());
+        for (StockDelta delta : deltas) {
+            BranchStock branch = franchise.branches.get(NameKey.of(delta.branch()));
+            if (branch == null) {
+                throw new ResourceNotFoundException("Sucursal no encontrada: " + delta.branch());
+            }
+            branches.add(branch);
+        }
+
+        Map<BranchStock, Map<Integer, Integer>> next = new LinkedHashMap<>();
+        List<StockAdjustmentDTO> adjustments = new ArrayList<>(deltas.size());
+        for (int i = 0; i < deltas.size(); i++) {
+            StockDelta delta = deltas.get(i);
+            BranchStock branch = branches.get(i);
+            Integer slot = branch.slots.get(NameKey.of(delta.product()));
+            if (slot == null) {
+                throw new ResourceNotFoundException("Producto no encontrado: " + delta.product());
+            }
+            Map<Integer, Integer> values = next.computeIfAbsent(branch, b -> new LinkedHashMap<>());
+            int current = values.getOrDefault(slot, branch.stock[slot]);
+            int stock = add(current, delta.delta());
+            if (stock < 0) {
+                if (mode == StockDeltaMode.REJECT) {
+                    throw new InsufficientStockException("Stock insuficiente: " + delta.product());
+                }
+                stock = 0;
+            }
+            values.put(slot, stock);
+            adjustments.add(new StockAdjustmentDTO(delta.branch(), delta.product(), stock - current, stock));
+        }
+
+        List<Change> changes = new ArrayList<>(deltas.size());
+        next.forEach((branch, values) -> values.forEach((slot, stock) -> changes.add(new Change(branch, slot, stock))));
+        write(franchise, changes);
+        return adjustments;
+    }
+
+    /**
+     * Sets several products of one franchise at once. Returns {@code false}, changing nothing, when some product
+     * does not exist.
+     */
+    boolean setStocks(String franchiseId, List<StockUpdateRequest> updates) {
+        FranchiseStock franchise = franchises.get(franchiseId);
+        if (franchise == null) {
+            return false;
+        }
+        List<BranchStock> branches = new ArrayList<>(updates.size());
+        for (StockUpdateRequest update : updates) {
+            BranchStock branch = franchise.branches.get(NameKey.of(update.branch()));
+            if (branch == null) {
+                return false;
+            }
+            branches.add(branch);
+        }
+
+        List<Change> changes = new ArrayList<>(updates.size());
+        for (int i = 0; i < updates.size(); i++) {
+            Integer slot = branches.get(i).slots.get(NameKey.of(updates.get(i).product()));
+            if (slot == null) {
+                return false;
+            }
+            changes.add(new Change(branches.get(i), slot, updates.get(i).stock()));
+        }
+        write(franchise, changes);
+        return true;
+    }
+
+    // ------------------------------------------------------------------------------------------------------ reads
+
+    Franchise snapshot(String franchiseId) {
+        FranchiseStock franchise = franchises.get(franchiseId);
+        if (franchise == null) {
+            return null;
+        }
+        List<Branch> branches = new ArrayList<>(franchise.branches.size());
+        for (BranchStock branch : franchise.branches.values()) {
+            branch.lock.lock();
+            try {
+                List<Product> products = new ArrayList<>(branch.size);
+                for (int slot = 0; slot < branch.size; slot++) {
+                    if (branch.products[slot] != null) {
+                        products.add(new Product(branch.products[slot], branch.stock[slot]));
+                    }
+                }
+                branches.add(new Branch(branch.name, products));
+            } finally {
+                branch.lock.unlock();
+            }
+        }
+        return new Franchise(franchise.id, franchise.name, branches, franchise.version.get());
+    }
+
+    /**
+     * Replaces the stock and version of a franchise read from Mongo with the values held here.
+     */
+    Franchise overlay(Franchise franchise) {
+        FranchiseStock hosted = franchise == null ? null : franchises.get(franchise.getId());
+        if (hosted == null) {
+            return franchise;
+        }
+        for (Branch branch : franchise.getBranches() == null ? List.<Branch>of() : franchise.getBranches()) {
+            BranchStock stock = hosted.branches.get(branch.getNameKey());
+            if (stock == null || branch.getProducts() == null) {
+                continue;
+            }
+            stock.lock.lock();
+            try {
+                for (Product product : branch.getProducts()) {
+                    Integer slot = stock.slots.get(product.getNameKey());
+                    if (slot != null) {
+                        product.setStock(stock.stock[slot]);
+                    }
+                }
+            } finally {
+                stock.lock.unlock();
+            }
+        }
+        franchise.setVersion(hosted.version.get());
+        return franchise;
+    }
+
+    Long version(String franchiseId) {
+        FranchiseStock franchise = franchises.get(franchiseId);
+        return franchise == null ? null : franchise.version.get();
+    }
+
+    List<HighestStockProductDTO> highestStock(String franchiseId, int limit) {
+        List<HighestStockProductDTO> result = new ArrayList<>();
+        for (BranchStock branch : require(franchiseId).branches.values()) {
+            branch.lock.lock();
+            try {
+                List<Integer> slots = branch.liveSlots();
+                // Stable, so ties keep the first product like the Mongo pipeline does.
+                slots.sort(Comparator.comparingInt((Integer slot) -> branch.stock[slot]).reversed());
+                for (int slot : slots.subList(0, Math.min(limit, slots.size()))) {
+                    result.add(new HighestStockProductDTO(branch.name, branch.products[slot], branch.stock[slot]));
+                }
+            } finally {
+                branch.lock.unlock();
+            }
+        }
+        return result;
+    }
+
+    List<BranchStockDTO> branchTotals(String franchiseId) {
+        List<BranchStockDTO> result = new ArrayList<>();
+        for (BranchStock branch : require(franchiseId).branches.values()) {
+            branch.lock.lock();
+            try {
+                List<Integer> slots = branch.liveSlots();
+                long total = 0;
+                for (int slot : slots) {
+                    total += branch.stock[slot];
+                }
+                result.add(new BranchStockDTO(branch.name, slots.size(), total));
+            } finally {
+                branch.lock.unlock();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Products below {@code threshold} (every product when {@code null}), ordered by stock and then by branch and
+     * product key, as the Mongo queries order them.
+     */
+    List<ProductStockDTO> products(String franchiseId, Integer threshold, boolean ascending, int limit) {
+        record Entry(String branchKey, String productKey, ProductStockDTO product) {
+        }
+
+        List<Entry> entries = new ArrayList<>();
+        for (BranchStock branch : require(franchiseId).branches.values()) {
+            branch.lock.lock();
+            try {
+                for (int slot : branch.liveSlots()) {
+                    if (threshold == null || branch.stock[slot] < threshold) {
+                        entries.add(new Entry(branch.nameKey, branch.productKeys[slot],
+                                new ProductStockDTO(franchiseId, branch.name, branch.products[slot], branch.stock[slot])));
+                    }
+                }
+            } finally {
+                branch.lock.unlock();
+            }
+        }
+
+        Comparator<Entry> byStock = Comparator.comparingInt(entry -> entry.product().stock());
+        return entries.stream()
+                .sorted((ascending ? byStock : byStock.reversed())
+                        .thenComparing(Entry::branchKey)
+                        .thenComparing(Entry::productKey))
+                .limit(limit)
+                .map(Entry::product)
+                .toList();
+    }
+
+    // ------------------------------------------------------------------------------------- structural mirrors
+
+    /**
+     * Checks {@code expectedVersion} and moves the franchise to its next version before a structural change is
+     * written to Mongo, so two changes made against the same version cannot both succeed. Returns the version claimed.
+     */
+    long claim(String franchiseId, Long expectedVersion) {
+        FranchiseStock franchise = require(franchiseId);
+        long version;
+        if (expectedVersion == null) {
+            version = franchise.version.incrementAndGet();
+        } else if (franchise.version.compareAndSet(expectedVersion, expectedVersion + 1)) {
+            version = expectedVersion + 1;
+        } else {
+            throw new PreconditionFailedException("La versión de la franquicia no coincide");
+        }
+        appendLog.appendVersion(franchiseId, version);
+        return version;
+    }
+
+    void renameFranchise(String franchiseId, String newName) {
+        FranchiseStock franchise = franchises.get(franchiseId);
+        if (franchise != null) {
+            franchise.name = newName;
+        }
+    }
+
+    void addBranch(String franchiseId, Branch branch) {
+        FranchiseStock franchise = franchises.get(franchiseId);
+        if (franchise == null) {
+            return;
+        }
+        Map<String, BranchStock> branches = new LinkedHashMap<>(franchise.branches);
+        branches.putIfAbsent(branch.getNameKey(), new BranchStock(branch));
+        franchise.branches = Collections.unmodifiableMap(branches);
+    }
+
+    void renameBranch(String franchiseId, String oldName, String newName) {
+        FranchiseStock franchise = franchises.get(franchiseId);
+        BranchStock branch = franchise == null ? null : franchise.branches.get(NameKey.of(oldName));
+        if (branch == null) {
+            return;
+        }
+        String newKey = NameKey.of(newName);
+        appendLog.appendDrop(franchiseId, branch.nameKey, null, franchise.version.get());
+        for (int slot = branch.dirty.nextSetBit(0); slot >= 0; slot = branch.dirty.nextSetBit(slot + 1)) {
+            relog(franchise, newKey, branch.productKeys[slot], branch.stock[slot]);
+        }
+        writing(branch, () -> {
+            branch.name = newName;
+            branch.nameKey = newKey;
+        });
+
+        Map<String, BranchStock> branches = new LinkedHashMap<>();
+        franchise.branches.forEach((key, value) -> branches.put(value == branch ? newKey : key, value));
+        franchise.branches = Collections.unmodifiableMap(branches);
+    }
+
+    void addProduct(String franchiseId, String branchName, Product product) {
+        BranchStock branch = mirrored(franchiseId, branchName);
+        if (branch != null) {
+            branch.lock.lock();
+            try {
+                if (!branch.slots.containsKey(product.getNameKey())) {
+                    branch.add(product.getName(), product.getStock());
+                }
+            } finally {
+                branch.lock.unlock();
+            }
+        }
+    }
+
+    void removeProduct(String franchiseId, String branchName, String productName) {
+        BranchStock branch = mirrored(franchiseId, branchName);
+        if (branch == null) {
+            return;
+        }
+        Integer slot = branch.slots.get(NameKey.of(productName));
+        if (slot == null) {
+            return;
+        }
+        FranchiseStock franchise = franchises.get(franchiseId);
+        appendLog.appendDrop(franchiseId, branch.nameKey, branch.productKeys[slot], franchise.version.get());
+        writing(branch, () -> {
+            branch.slots.remove(NameKey.of(productName));
+            // The slot is left empty rather than compacted, so slots handed out to a flush stay valid.
+            branch.products[slot] = null;
+            branch.productKeys[slot] = null;
+            if (branch.dirty.get(slot)) {
+                branch.dirty.clear(slot);
+                dirty.decrementAndGet();
+            }
+        });
+    }
+
+    void renameProduct(String franchiseId, String branchName, String oldName, String newName) {
+        BranchStock branch = mirrored(franchiseId, branchName);
+        if (branch == null) {
+            return;
+        }
+        Integer slot = branch.slots.get(NameKey.of(oldName));
+        if (slot == null) {
+            return;
+        }
+        FranchiseStock franchise = franchises.get(franchiseId);
+        String newKey = NameKey.of(newName);
+        appendLog.appendDrop(franchiseId, branch.nameKey, branch.productKeys[slot], franchise.version.get());
+        if (branch.dirty.get(slot)) {
+            relog(franchise, branch.nameKey, newKey, branch.stock[slot]);
+        }
+        writing(branch, () -> {
+            branch.slots.remove(NameKey.of(oldName));
+            branch.products[slot] = newName;
+            branch.productKeys[slot] = newKey;
+            branch.slots.put(newKey, slot);
+        });
+    }
+
+    /**
+     * Takes over a franchise as just written to Mongo, dropping whatever was held for it before. Values not yet
+     * flushed are dropped too: the franchise written replaces them.
+     */
+    void load(Franchise franchise) {
+        if (franchise.getId() == null) {
+            return;
+        }
+        FranchiseStock previous = franchises.get(franchise.getId());
+        long version = Math.max(previous == null ? 0 : previous.version.get(),
+                franchise.getVersion() == null ? 0 : franchise.getVersion());
+        appendLog.appendDrop(franchise.getId(), null, null, version + 1);
+
+        FranchiseStock replacement = new FranchiseStock(franchise, version + 1);
+        franchises.put(franchise.getId(), replacement);
+        if (previous != null) {
+            int discarded = 0;
+            for (BranchStock branch : previous.branches.values()) {
+                branch.lock.lock();
+                try {
+                    discarded += branch.dirty.cardinality();
+                    branch.dirty.clear();
+                } finally {
+                    branch.lock.unlock();
+                }
+            }
+            if (discarded > 0) {
+                dirty.addAndGet(-discarded);
+                log.warn("Franchise {} was replaced with {} stock values not yet flushed; the written ones win",
+                        franchise.getId(), discarded);
+            }
+        }
+    }
+
+    // ------------------------------------------------------------------------------------------------- internals
+
+    private void load(Franchise franchise, InventoryLog.Replay replay) {
+        long logged = replay.versions().getOrDefault(franchise.getId(), 0L);
+        long persisted = franchise.getVersion() == null ? 0 : franchise.getVersion();
+        FranchiseStock stock = new FranchiseStock(franchise, Math.max(persisted, logged) + 1);
+
+        var entries = replay.stock().entrySet().iterator();
+        while (entries.hasNext()) {
+            var entry = entries.next();
+            if (!entry.getKey().franchiseId().equals(franchise.getId())) {
+                continue;
+            }
+            entries.remove();
+            // Values of products removed or renamed in Mongo meanwhile are skipped.
+            BranchStock branch = stock.branches.get(entry.getKey().branchKey());
+            Integer slot = branch == null ? null : branch.slots.get(entry.getKey().productKey());
+            if (slot != null) {
+                branch.stock[slot] = entry.getValue();
+                branch.dirty.set(slot);
+                dirty.incrementAndGet();
+            }
+        }
+        franchises.put(franchise.getId(), stock);
+    }
+
+    /**
+     * Stock is an {@code int}; a delta that would overflow it is the client's mistake, not a server error.
+     */
+    private static int add(int stock, int delta) {
+        try {
+            return Math.addExact(stock, delta);
+        } catch (ArithmeticException e) {
+            throw new BusinessException("El stock resultante excede el máximo permitido");
+        }
+    }
+
+    private void releaseLease() {
+        renewer.dispose();
+        lease.release().block(STOP_TIMEOUT);
+    }
+
+    private FranchiseStock require(String franchiseId) {
+        FranchiseStock franchise = franchises.get(franchiseId);
+        if (franchise == null) {
+            throw new ResourceNotFoundException("Franquicia no encontrada");
+        }
+        return franchise;
+    }
+
+    private BranchStock mirrored(String franchiseId, String branchName) {
+        FranchiseStock franchise = franchises.get(franchiseId);
+        return franchise == null ? null : franchise.branches.get(NameKey.of(branchName));
+    }
+
+    /**
+     * Logs the changes under the next version of the franchise and then applies them, holding only the locks of
+     * their branches.
+     */
+    private void write(FranchiseStock franchise, List<Change> changes) {
+        long version = franchise.version.incrementAndGet();
+        for (Change change : changes) {
+            appendLog.appendStock(franchise.id, change.branch().nameKey, change.branch().productKeys[change.slot()],
+                    change.stock(), version);
+        }
+        locked(changes.stream().map(Change::branch).toList(), () -> {
+            for (Change change : changes) {
+                BranchStock branch = change.branch();
+                branch.stock[change.slot()] = change.stock();
+                if (!branch.dirty.get(change.slot())) {
+                    branch.dirty.set(change.slot());
+                    dirty.incrementAndGet();
+                }
+            }
+        });
+    }
+
+    /**
+     * Records a value not yet flushed again under its new name, since the old one was dropped from the log.
+     */
+    private void relog(FranchiseStock franchise, String branchKey, String productKey, int stock) {
+        appendLog.appendStock(franchise.id, branchKey, productKey, stock, franchise.version.get());
+    }
+
+    private void writing(BranchStock branch, Runnable action) {
+        locked(List.of(branch), action);
+    }
+
+    /**
+     * Runs {@code action} holding the locks of every given branch, always taken in the same order.
+     */
+    private void locked(List<BranchStock> branches, Runnable action) {
+        List<BranchStock> ordered = branches.stream()
+                .distinct()
+                .sorted(Comparator.comparingLong(branch -> branch.order))
+                .toList();
+        int held = 0;
+        try {
+            for (BranchStock branch : ordered) {
+                branch.lock.lock();
+                held++;
+            }
+            action.run();
+        } finally {
+            for (int i = held - 1; i >= 0; i--) {
+                ordered.get(i).lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Runs on the writer thread up to the first Mongo write; the segments are released back on it.
+     */
+    private Mono<Void> flushOnce() {
+        List<Path> closed = appendLog.rotate();
+        List<Pending> pending = takeDirty();
+        Map<FranchiseStock, Long> versions = new HashMap<>();
+        franchises.values().forEach(franchise -> versions.put(franchise, franchise.version.get()));
+        AtomicBoolean failed = new AtomicBoolean();
+
+        Map<FranchiseStock, List<Pending>> byFranchise = pending.stream()
+                .collect(Collectors.groupingBy(Pending::franchise, LinkedHashMap::new, Collectors.toList()));
+        List<List<Pending>> batches = new ArrayList<>();
+        byFranchise.values().forEach(writes -> {
+            for (int from = 0; from < writes.size(); from += properties.flushBatchSize()) {
+                batches.add(writes.subList(from, Math.min(writes.size(), from + properties.flushBatchSize())));
+            }
+        });
+
+        return Flux.fromIterable(batches)
+                .concatMap(batch -> write(batch, failed))
+                .thenMany(Flux.fromIterable(versions.entrySet())
+                        .filter(entry -> entry.getValue() > entry.getKey().persistedVersion)
+                        .concatMap(entry -> store.advanceVersion(entry.getKey().id, entry.getValue())
+                                .doOnSuccess(done -> entry.getKey().persistedVersion = entry.getValue())
+                                .onErrorResume(e -> {
+                                    failed.set(true);
+                                    log.warn("Could not persist the version of franchise {}", entry.getKey().id, e);
+                                    return Mono.empty();
+                                })))
+                .then(Mono.<Void>fromRunnable(() -> {
+                    if (!failed.get()) {
+                        appendLog.release(closed);
+                    }
+                }).subscribeOn(writer));
+    }
+
+    private Mono<Void> write(List<Pending> batch, AtomicBoolean failed) {
+        String franchiseId = batch.get(0).franchise().id;
+        List<StockUpdateRequest> updates = batch.stream().map(Pending::update).toList();
+
+        return store.setProductStocks(franchiseId, updates)
+                .flatMap(all -> all
+                        ? Mono.just(updates.size())
+                        // Some product was removed or renamed meanwhile; its slot no longer needs writing.
+                        : Flux.fromIterable(updates)
+                        .concatMap(u -> store.updateProductStock(u.franchiseId(), u.branch(), u.product(), u.stock())
+                                .thenReturn(1)
+                                .onErrorResume(ResourceNotFoundException.class, e -> Mono.just(0)))
+                        .reduce(0, Integer::sum))
+                .doOnNext(flushed::increment)
+                .onErrorResume(e -> {
+                    failed.set(true);
+                    flushFailures.increment();
+                    log.warn("Could not flush {} stock values of franchise {}", batch.size(), franchiseId, e);
+                    return Mono.<Integer>fromRunnable(() -> batch.forEach(this::redirty)).subscribeOn(writer);
+                })
+                .then();
+    }
+
+    private List<Pending> takeDirty() {
+        List<Pending> pending = new ArrayList<>();
+        for (FranchiseStock franchise : franchises.values()) {
+            for (BranchStock branch : franchise.branches.values()) {
+                branch.lock.lock();
+                try {
+                    for (int slot = branch.dirty.nextSetBit(0); slot >= 0; slot = branch.dirty.nextSetBit(slot + 1)) {
+                        pending.add(new Pending(franchise, branch, slot, new StockUpdateRequest(franchise.id,
+                                branch.name, branch.products[slot], branch.stock[slot])));
+                    }
+                    dirty.addAndGet(-branch.dirty.cardinality());
+                    branch.dirty.clear();
+                } finally {
+                    branch.lock.unlock();
+                }
+            }
+        }
+        return pending;
+    }
+
+    private void redirty(Pending pending) {
+        BranchStock branch = pending.branch();
+        branch.lock.lock();
+        try {
+            if (branch.products[pending.slot()] != null && !branch.dirty.get(pending.slot())) {
+                branch.dirty.set(pending.slot());
+                dirty.incrementAndGet();
+            }
+        } finally {
+            branch.lock.unlock();
+        }
+    }
+
+    private record Change(BranchStock branch, int slot, int stock) {
+    }
+
+    private record Pending(FranchiseStock franchise, BranchStock branch, int slot, StockUpdateRequest update) {
+    }
+
+    private static final class FranchiseStock {
+
+        private final String id;
+        private final AtomicLong version;
+        private volatile String name;
+        // Copy-on-write: replaced as a whole when a branch is added or renamed, in insertion order.
+        private volatile Map<String, BranchStock> branches;
+        private volatile long persistedVersion;
+
+        private FranchiseStock(Franchise franchise, long version) {
+            this.id = franchise.getId();
+            this.name = franchise.getName();
+            this.version = new AtomicLong(version);
+            this.persistedVersion = franchise.getVersion() == null ? 0 : franchise.getVersion();
+            Map<String, BranchStock> branches = new LinkedHashMap<>();
+            for (Branch branch : franchise.getBranches() == null ? List.<Branch>of() : franchise.getBranches()) {
+                branches.putIfAbsent(branch.getNameKey(), new BranchStock(branch));
+            }
+            this.branches = Collections.unmodifiableMap(branches);
+        }
+
+        private BranchStock branch(String branchName) {
+            BranchStock branch = branches.get(NameKey.of(branchName));
+            if (branch == null) {
+                throw new ResourceNotFoundException("Sucursal no encontrada");
+            }
+            return branch;
+        }
+    }
+
+    /**
+     * One branch: a slot per product, assigned once and never reused, indexing the parallel name and stock arrays.
+     * Fields change only on the writer thread, holding {@link #lock}; other threads read them holding it too.
+     */
+    private static final class BranchStock {
+
+        private static final AtomicLong ORDER = new AtomicLong();
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private final long order = ORDER.incrementAndGet();
+        private final Map<String, Integer> slots = new HashMap<>();
+        private final BitSet dirty = new BitSet();
+        private String name;
+        private String nameKey;
+        private String[] products;
+        private String[] productKeys;
+        private int[] stock;
+        private int size;
+
+        private BranchStock(Branch branch) {
+            this.name = branch.getName();
+            this.nameKey = branch.getNameKey();
+            List<Product> products = branch.getProducts() == null ? List.of() : branch.getProducts();
+            int capacity = Math.max(4, products.size());
+            this.products = new String[capacity];
+            this.productKeys = new String[capacity];
+            this.stock = new int[capacity];
+            products.forEach(product -> {
+                if (!slots.containsKey(product.getNameKey())) {
+                    add(product.getName(), product.getStock());
+                }
+            });
+        }
+
+        private int slot(String productName) {
+            Integer slot = slots.get(NameKey.of(productName));
+            if (slot == null) {
+                throw new ResourceNotFoundException("Producto no encontrado");
+            }
+            return slot;
+        }
+
+        private void add(String productName, int value) {
+            if (size == stock.length) {
+                products = Arrays.copyOf(products, size * 2);
+                productKeys = Arrays.copyOf(productKeys, size * 2);
+                stock = Arrays.copyOf(stock, size * 2);
+            }
+            products[size] = productName;
+            productKeys[size] = NameKey.of(productName);
+            stock[size] = value;
+            slots.put(productKeys[size], size);
+            size++;
+        }
+
+        private List<Integer> liveSlots() {
+            List<Integer> live = new ArrayList<>(size);
+            for (int slot = 0; slot < size; slot++) {
+                if (products[slot] != null) {
+                    live.add(slot);
+                }
+            }
+            return live;
+        }
+    }
+}
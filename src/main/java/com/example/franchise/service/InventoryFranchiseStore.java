@@ -0,0 +1,271 @@
+package com.example.franchise.service;
+
+import com.example.franchise.domain.dto.BranchStockDTO;
+import com.example.franchise.domain.dto.FranchiseSummaryDTO;
+import com.example.franchise.domain.dto.HighestStockProductDTO;
+import com.example.franchise.domain.dto.ProductStockDTO;
+import com.example.franchise.domain.dto.StockAdjustmentDTO;
+import com.example.franchise.domain.dto.StockDelta;
+import com.example.franchise.domain.dto.StockDeltaMode;
+import com.example.franchise.domain.dto.StockUpdateRequest;
+import com.example.franchise.domain.model.Branch;
+import com.example.franchise.domain.model.Franchise;
+import com.example.franchise.domain.model.Product;
+import com.example.franchise.exception.ResourceNotFoundException;
+import com.example.franchise.repository.FranchiseStore;
+import lombok.RequiredArgsConstructor;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * {@link FranchiseStore} in front of the configured one while the {@link InventoryEngine} is enabled. Franchises the
+ * engine hosts are read and have their stock written in memory; structural changes are written through to Mongo and
+ * then mirrored. Searches across every franchise still run in Mongo and see the stock as of the last flush.
+ * <p>
+ * Every change to the engine goes through {@link InventoryEngine#submit}, off the calling thread.
+ */
+@RequiredArgsConstructor
+final class InventoryFranchiseStore implements FranchiseStore {
+
+    private final FranchiseStore delegate;
+    private final InventoryEngine engine;
+
+    @Override
+    public Mono<Franchise> findById(String franchiseId) {
+        return hosted(franchiseId,
+                () -> Mono.fromSupplier(() -> engine.snapshot(franchiseId)),
+                () -> delegate.findById(franchiseId));
+    }
+
+    @Override
+    public Mono<Boolean> existsById(String franchiseId) {
+        return hosted(franchiseId, () -> Mono.just(true), () -> delegate.existsById(franchiseId));
+    }
+
+    @Override
+    public Mono<Boolean> existsByName(String name) {
+        return delegate.existsByName(name);
+    }
+
+    @Override
+    public Mono<Franchise> insert(Franchise franchise) {
+        return delegate.insert(franchise)
+                .flatMap(saved -> engine.submit(() -> {
+                    if (engine.shouldHost(saved.getId())) {
+                        engine.load(saved);
+                    }
+                    return engine.overlay(saved);
+                }));
+    }
+
+    @Override
+    public Mono<Franchise> renameFranchise(String franchiseId, String newName, Long expectedVersion) {
+        return structural(franchiseId, expectedVersion,
+                version -> delegate.renameFranchise(franchiseId, newName, version),
+                () -> engine.renameFranchise(franchiseId, newName));
+    }
+
+    @Override
+    public Mono<Franchise> addBranch(String franchiseId, Branch branch, Long expectedVersion) {
+        return structural(franchiseId, expectedVersion,
+                version -> delegate.addBranch(franchiseId, branch, version),
+                () -> engine.addBranch(franchiseId, branch));
+    }
+
+    @Override
+    public Mono<Franchise> renameBranch(String franchiseId, String oldName, String newName, Long expectedVersion) {
+        return structural(franchiseId, expectedVersion,
+                version -> delegate.renameBranch(franchiseId, oldName, newName, version),
+                () -> engine.renameBranch(franchiseId, oldName, newName));
+    }
+
+    @Override
+    public Mono<Franchise> addProduct(String franchiseId, String branchName, Product product, Long expectedVersion) {
+        return structural(franchiseId, expectedVersion,
+                version -> delegate.addProduct(franchiseId, branchName, product, version),
+                () -> engine.addProduct(franchiseId, branchName, product));
+    }
+
+    @Override
+    public Mono<Franchise> removeProduct(
+            String franchiseId,
+            String branchName,
+            String productName,
+            Long expectedVersion
+    ) {
+        return structural(franchiseId, expectedVersion,
+                version -> delegate.removeProduct(franchiseId, branchName, productName, version),
+                () -> engine.removeProduct(franchiseId, branchName, productName));
+    }
+
+    @Override
+    public Mono<Franchise> renameProduct(
+            String franchiseId,
+            String branchName,
+            String oldName,
+            String newName,
+            Long expectedVersion
+    ) {
+        return structural(franchiseId, expectedVersion,
+                version -> delegate.renameProduct(franchiseId, branchName, oldName, newName, version),
+                () -> engine.renameProduct(franchiseId, branchName, oldName, newName));
+    }
+
+    @Override
+    public Mono<ProductStockDTO> updateProductStock(String franchiseId, String branchName, String productName, int stock) {
+        return hosted(franchiseId,
+                () -> written(() -> engine.setStock(franchiseId, branchName, productName, stock)),
+                () -> delegate.updateProductStock(franchiseId, branchName, productName, stock));
+    }
+
+    @Override
+    public Mono<Integer> updateProductStocks(List<StockUpdateRequest> updates) {
+        record Split(int matched, List<StockUpdateRequest> remaining) {
+        }
+
+        return engine.submit(() -> {
+                    List<StockUpdateRequest> remaining = new ArrayList<>(updates.size());
+                    int matched = 0;
+                    for (StockUpdateRequest update : updates) {
+                        if (!engine.hosts(update.franchiseId())) {
+                            remaining.add(update);
+                            continue;
+                        }
+                        try {
+                            engine.setStock(update.franchiseId(), update.branch(), update.product(), update.stock());
+                            matched++;
+                        } catch (ResourceNotFoundException e) {
+                            // Not matched, as in the bulk write.
+                        }
+                    }
+                    return new Split(matched, remaining);
+                })
+                .flatMap(split -> engine.awaitCapacity()
+                        .then(delegate.updateProductStocks(split.remaining()))
+                        .map(inMongo -> split.matched() + inMongo));
+    }
+
+    @Override
+    public Mono<Boolean> setProductStocks(String franchiseId, List<StockUpdateRequest> updates) {
+        return hosted(franchiseId,
+                () -> written(() -> engine.setStocks(franchiseId, updates)),
+                () -> delegate.setProductStocks(franchiseId, updates));
+    }
+
+    @Override
+    public Mono<ProductStockDTO> incrementProductStock(
+            String franchiseId,
+            String branchName,
+            String productName,
+            int delta,
+            StockDeltaMode mode
+    ) {
+        return hosted(franchiseId,
+                () -> written(() -> engine.incrementStock(franchiseId, branchName, productName, delta, mode)),
+                () -> delegate.incrementProductStock(franchiseId, branchName, productName, delta, mode));
+    }
+
+    @Override
+    public Flux<StockAdjustmentDTO> applyStockDeltas(String franchiseId, List<StockDelta> deltas, StockDeltaMode mode) {
+        return Flux.defer(() -> engine.hosts(franchiseId)
+                ? written(() -> engine.applyStockDeltas(franchiseId, deltas, mode)).flatMapIterable(adjustments -> adjustments)
+                : delegate.applyStockDeltas(franchiseId, deltas, mode));
+    }
+
+    @Override
+    public Flux<HighestStockProductDTO> findHighestStockProducts(String franchiseId, int limit) {
+        return hostedMany(franchiseId,
+                () -> engine.highestStock(franchiseId, limit),
+                () -> delegate.findHighestStockProducts(franchiseId, limit));
+    }
+
+    @Override
+    public Flux<BranchStockDTO> findBranchStockTotals(String franchiseId) {
+        return hostedMany(franchiseId,
+                () -> engine.branchTotals(franchiseId),
+                () -> delegate.findBranchStockTotals(franchiseId));
+    }
+
+    @Override
+    public Flux<ProductStockDTO> findLowStockProducts(String franchiseId, int threshold, int limit) {
+        return hostedMany(franchiseId,
+                () -> engine.products(franchiseId, threshold, true, limit),
+                () -> delegate.findLowStockProducts(franchiseId, threshold, limit));
+    }
+
+    @Override
+    public Flux<ProductStockDTO> findTopStockProducts(String franchiseId, int limit) {
+        return hostedMany(franchiseId,
+                () -> engine.products(franchiseId, null, false, limit),
+                () -> delegate.findTopStockProducts(franchiseId, limit));
+    }
+
+    @Override
+    public Mono<Long> findVersion(String franchiseId) {
+        return hosted(franchiseId,
+                () -> Mono.fromSupplier(() -> engine.version(franchiseId)),
+                () -> delegate.findVersion(franchiseId));
+    }
+
+    @Override
+    public Mono<Void> advanceVersion(String franchiseId, long version) {
+        return delegate.advanceVersion(franchiseId, version);
+    }
+
+    @Override
+    public Flux<Franchise> findPage(String afterId, int limit) {
+        return delegate.findPage(afterId, limit).map(engine::overlay);
+    }
+
+    @Override
+    public Flux<FranchiseSummaryDTO> findSummaryPage(String afterId, int limit, boolean withBranchCount) {
+        return delegate.findSummaryPage(afterId, limit, withBranchCount);
+    }
+
+    @Override
+    public Mono<Integer> upsertAll(List<Franchise> franchises) {
+        return delegate.upsertAll(franchises)
+                .flatMap(written -> engine.submit(() -> {
+                    franchises.stream()
+                            .filter(franchise -> engine.hosts(franchise.getId()) || engine.shouldHost(franchise.getId()))
+                            .forEach(engine::load);
+                    return written;
+                }));
+    }
+
+    /**
+     * Claims the next engine version, writes the change to Mongo without a version check of its own and mirrors it.
+     */
+    private Mono<Franchise> structural(
+            String franchiseId,
+            Long expectedVersion,
+            Function<Long, Mono<Franchise>> write,
+            Runnable mirror
+    ) {
+        return hosted(franchiseId,
+                () -> engine.submit(() -> engine.claim(franchiseId, expectedVersion))
+                        .then(Mono.defer(() -> write.apply(null)))
+                        .flatMap(franchise -> engine.submit(() -> {
+                            mirror.run();
+                            return engine.overlay(franchise);
+                        })),
+                () -> write.apply(expectedVersion));
+    }
+
+    private <T> Mono<T> written(Supplier<T> write) {
+        return engine.submit(write).flatMap(result -> engine.awaitCapacity().thenReturn(result));
+    }
+
+    private <T> Mono<T> hosted(String franchiseId, Supplier<Mono<T>> inMemory, Supplier<Mono<T>> fallback) {
+        return Mono.defer(() -> engine.hosts(franchiseId) ? inMemory.get() : fallback.get());
+    }
+
+    private <T> Flux<T> hostedMany(String franchiseId, Supplier<List<T>> inMemory, Supplier<Flux<T>> fallback) {
+        return Flux.defer(() -> engine.hosts(franchiseId) ? Flux.fromIterable(inMemory.get()) : fallback.get());
+    }
+}
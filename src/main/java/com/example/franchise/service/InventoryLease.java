@@ -0,0 +1,106 @@
+package com.example.franchise.service;
+
+import com.example.franchise.config.InventoryEngineProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Makes sure a single {@link InventoryEngine} writes the stock of each franchise. The engine holds that stock in
+ * memory and writes it to Mongo behind the requests, so two instances hosting the same franchise would overwrite each
+ * other's values. Each engine registers the franchises it hosts in {@code inventory_leases} and refuses to start when
+ * a live lease of another instance overlaps them. Leases are renewed while the engine runs and expire
+ * {@code franchise.inventory.lease-duration} after the last renewal, so a crashed instance blocks its franchises for
+ * at most that long. The {@link InventoryLeaseGuard} makes every other instance reject writes to those franchises.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "franchise.inventory", name = "enabled", havingValue = "true")
+public class InventoryLease {
+
+    static final String COLLECTION = "inventory_leases";
+
+    private final ReactiveMongoTemplate template;
+    private final InventoryEngineProperties properties;
+    private final String owner;
+
+    public InventoryLease(ReactiveMongoTemplate template, InventoryEngineProperties properties) {
+        this.template = template;
+        this.properties = properties;
+        this.owner = hostName() + "/" + UUID.randomUUID();
+    }
+
+    /**
+     * Registers the lease first and looks for overlapping ones afterwards, so of two instances starting at once at
+     * most one goes on; both may fail, and a retry settles it.
+     */
+    public Mono<Void> acquire() {
+        Instant now = Instant.now();
+        return template.remove(Query.query(Criteria.where("expiresAt").lt(Date.from(now))), COLLECTION)
+                .then(renew())
+                .then(template.findOne(overlapping(now), Document.class, COLLECTION))
+                .flatMap(other -> release().then(Mono.<Void>error(new IllegalStateException(
+                        "Inventory engine %s hosts franchises of %s; each franchise needs a single writer"
+                                .formatted(other.get("_id"), owner)))))
+                .doOnSuccess(done -> log.info("Inventory lease {} acquired", owner));
+    }
+
+    public Mono<Void> renew() {
+        boolean all = properties.franchiseIds().isEmpty();
+        return template.upsert(
+                        Query.query(Criteria.where("_id").is(owner)),
+                        new Update()
+                                .set("all", all)
+                                .set("franchiseIds", List.copyOf(properties.franchiseIds()))
+                                .set("expiresAt", Date.from(Instant.now().plus(properties.leaseDuration()))),
+                        COLLECTION)
+                .then();
+    }
+
+    public Mono<Void> release() {
+        return template.remove(Query.query(Criteria.where("_id").is(owner)), COLLECTION).then();
+    }
+
+    String owner() {
+        return owner;
+    }
+
+    /**
+     * Leases are renewed three times per duration, so one missed renewal does not let the lease lapse.
+     */
+    Duration renewInterval() {
+        return properties.leaseDuration().dividedBy(3);
+    }
+
+    private Query overlapping(Instant now) {
+        Criteria live = Criteria.where("_id").ne(owner).and("expiresAt").gt(Date.from(now));
+        if (!properties.franchiseIds().isEmpty()) {
+            live = live.orOperator(
+                    Criteria.where("all").is(true),
+                    Criteria.where("franchiseIds").in(properties.franchiseIds()));
+        }
+        return Query.query(live);
+    }
+
+    private static String hostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            return "unknown";
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.example.franchise.service;
+
+import com.example.franchise.config.InventoryEngineProperties;
+import com.example.franchise.exception.ConflictException;
+import com.example.franchise.repository.FranchiseStore;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Keeps every instance, whether it runs an {@link InventoryEngine} or not, from writing franchises hosted by the
+ * engine of another instance. That engine flushes its stock over whatever reached Mongo meanwhile, so such a write
+ * would be lost; it fails with a {@link ConflictException} instead and has to go to the instance hosting the
+ * franchise. The live leases of {@code inventory_leases} are mirrored in memory and reloaded every third of
+ * {@code franchise.inventory.lease-duration}, which must therefore be the same on every instance.
+ */
+@Slf4j
+@Component
+public class InventoryLeaseGuard implements InitializingBean, DisposableBean {
+
+    private final ReactiveMongoTemplate template;
+    private final ObjectProvider<InventoryLease> ownLease;
+    private final Duration refreshInterval;
+    private volatile List<Lease> leases = List.of();
+    private String owner;
+    private Disposable refresher;
+
+    public InventoryLeaseGuard(
+            ReactiveMongoTemplate template,
+            InventoryEngineProperties properties,
+            ObjectProvider<InventoryLease> ownLease
+    ) {
+        this.template = template;
+        this.ownLease = ownLease;
+        this.refreshInterval = refreshInterval(properties);
+    }
+
+    /**
+     * An engine waits two of these after taking its lease, so every other instance has reloaded it before the engine
+     * reads its franchises.
+     */
+    static Duration refreshInterval(InventoryEngineProperties properties) {
+        return properties.leaseDuration().dividedBy(3);
+    }
+
+    /**
+     * Loads the leases before any store is handed out, so no write goes unchecked.
+     */
+    @Override
+    public void afterPropertiesSet() {
+        InventoryLease lease = ownLease.getIfAvailable();
+        owner = lease == null ? null : lease.owner();
+        load().block();
+        refresher = Flux.interval(refreshInterval)
+                .onBackpressureDrop()
+                .concatMap(tick -> load().onErrorResume(e -> {
+                    log.warn("Could not refresh the inventory leases: {}", e.getMessage());
+                    return Mono.empty();
+                }), 1)
+                .subscribe();
+    }
+
+    @Override
+    public void destroy() {
+        if (refresher != null) {
+            refresher.dispose();
+        }
+    }
+
+    public Mono<Void> load() {
+        return template.find(Query.query(Criteria.where("expiresAt").gt(new Date())), Document.class,
+                        InventoryLease.COLLECTION)
+                .map(Lease::of)
+                .collectList()
+                .doOnNext(live -> leases = List.copyOf(live))
+                .then();
+    }
+
+    /**
+     * Wraps the persistence port so that its writes are checked against the leases of other instances.
+     */
+    public FranchiseStore guard(FranchiseStore store) {
+        return new LeaseGuardedFranchiseStore(store, this);
+    }
+
+    void check(String franchiseId) {
+        List<Lease> current = leases;
+        if (current.isEmpty() || franchiseId == null) {
+            return;
+        }
+        Instant now = Instant.now();
+        for (Lease lease : current) {
+            if (!lease.owner().equals(owner) && lease.expiresAt().isAfter(now) && lease.covers(franchiseId)) {
+                throw new ConflictException("La franquicia la atiende otra instancia del inventario");
+            }
+        }
+    }
+
+    private record Lease(String owner, boolean all, Set<String> franchiseIds, Instant expiresAt) {
+
+        private static Lease of(Document document) {
+            return new Lease(
+                    document.getString("_id"),
+                    Boolean.TRUE.equals(document.getBoolean("all")),
+                    Set.copyOf(document.getList("franchiseIds", String.class, List.of())),
+                    document.getDate("expiresAt").toInstant());
+        }
+
+        private boolean covers(String franchiseId) {
+            return all || franchiseIds.contains(franchiseId);
+        }
+    }
+}
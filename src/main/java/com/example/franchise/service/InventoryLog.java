@@ -0,0 +1,225 @@
+package com.example.franchise.service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Local append log of the {@link InventoryEngine}. Every stock value is recorded before it is applied, so values not
+ * yet written to Mongo survive a crash. Records hold absolute values and the franchise version reached, which makes
+ * replaying them idempotent. The log is split into segments; closed segments are deleted once a flush that started
+ * after they were closed has written everything.
+ */
+@Slf4j
+final class InventoryLog implements Closeable {
+
+    private static final byte STOCK = 'S';
+    private static final byte VERSION = 'V';
+    private static final byte DROP = 'D';
+    private static final String PREFIX = "inventory-";
+    private static final String SUFFIX = ".log";
+
+    private final Path directory;
+    private final long segmentSize;
+    private final boolean sync;
+    private final List<Path> closed = new ArrayList<>();
+    private FileChannel channel;
+    private Path current;
+    private long sequence;
+    private long size;
+
+    InventoryLog(Path directory, long segmentSize, boolean sync) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.sync = sync;
+    }
+
+    record Key(String franchiseId, String branchKey, String productKey) {
+    }
+
+    /**
+     * Stock values and franchise versions left by a previous run, in the order they were written.
+     */
+    record Replay(Map<Key, Integer> stock, Map<String, Long> versions) {
+    }
+
+    /**
+     * Reads the segments left by a previous run and starts a new one after them. The old segments stay until a flush
+     * releases them.
+     */
+    synchronized Replay open() {
+        try {
+            Files.createDirectories(directory);
+            List<Path> segments;
+            try (Stream<Path> files = Files.list(directory)) {
+                segments = files.filter(path -> path.getFileName().toString().startsWith(PREFIX)
+                                && path.getFileName().toString().endsWith(SUFFIX))
+                        .sorted()
+                        .toList();
+            }
+
+            Replay replay = new Replay(new LinkedHashMap<>(), new HashMap<>());
+            for (Path segment : segments) {
+                read(segment, replay);
+            }
+            closed.addAll(segments);
+            sequence = segments.isEmpty() ? 0 : sequenceOf(segments.get(segments.size() - 1));
+            openNext();
+            return replay;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    synchronized void appendStock(String franchiseId, String branchKey, String productKey, int stock, long version) {
+        write(record -> {
+            record.writeByte(STOCK);
+            record.writeUTF(franchiseId);
+            record.writeLong(version);
+            record.writeUTF(branchKey);
+            record.writeUTF(productKey);
+            record.writeInt(stock);
+        });
+    }
+
+    synchronized void appendVersion(String franchiseId, long version) {
+        write(record -> {
+            record.writeByte(VERSION);
+            record.writeUTF(franchiseId);
+            record.writeLong(version);
+        });
+    }
+
+    /**
+     * Earlier stock records of a product, a branch ({@code productKey} {@code null}) or the whole franchise (both
+     * {@code null}) must not be replayed, because it was removed, renamed or reloaded from Mongo.
+     */
+    synchronized void appendDrop(String franchiseId, String branchKey, String productKey, long version) {
+        write(record -> {
+            record.writeByte(DROP);
+            record.writeUTF(franchiseId);
+            record.writeLong(version);
+            record.writeUTF(branchKey == null ? "" : branchKey);
+            record.writeUTF(productKey == null ? "" : productKey);
+        });
+    }
+
+    /**
+     * Starts a new segment once the current one is full, and returns the closed segments. The caller must make sure
+     * no record is being appended meanwhile.
+     */
+    synchronized List<Path> rotate() {
+        if (size >= segmentSize) {
+            try {
+                channel.close();
+                closed.add(current);
+                openNext();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return List.copyOf(closed);
+    }
+
+    synchronized void release(List<Path> segments) {
+        for (Path segment : segments) {
+            try {
+                Files.deleteIfExists(segment);
+                closed.remove(segment);
+            } catch (IOException e) {
+                log.warn("Could not delete inventory log segment {}", segment, e);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            if (channel != null) {
+                channel.force(false);
+                channel.close();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void write(RecordWriter writer) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+            writer.write(new DataOutputStream(bytes));
+            ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+            while (buffer.hasRemaining()) {
+                size += channel.write(buffer);
+            }
+            if (sync) {
+                channel.force(false);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void openNext() throws IOException {
+        sequence++;
+        current = directory.resolve(PREFIX + String.format("%012d", sequence) + SUFFIX);
+        channel = FileChannel.open(current, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        size = channel.size();
+    }
+
+    private static void read(Path segment, Replay replay) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(segment)))) {
+            while (true) {
+                int type = in.read();
+                if (type < 0) {
+                    return;
+                }
+                String franchiseId = in.readUTF();
+                replay.versions().merge(franchiseId, in.readLong(), Math::max);
+                if (type == STOCK) {
+                    Key key = new Key(franchiseId, in.readUTF(), in.readUTF());
+                    // Re-inserted so the replay order follows the latest write.
+                    replay.stock().remove(key);
+                    replay.stock().put(key, in.readInt());
+                } else if (type == DROP) {
+                    String branchKey = in.readUTF();
+                    String productKey = in.readUTF();
+                    replay.stock().keySet().removeIf(key -> key.franchiseId().equals(franchiseId)
+                            && (branchKey.isEmpty() || key.branchKey().equals(branchKey))
+                            && (productKey.isEmpty() || key.productKey().equals(productKey)));
+                }
+            }
+        } catch (EOFException e) {
+            // A crash while appending leaves a torn last record; everything before it is intact.
+            log.warn("Inventory log segment {} ends with an incomplete record", segment);
+        }
+    }
+
+    private static long sequenceOf(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+
+    @FunctionalInterface
+    private interface RecordWriter {
+        void write(DataOutputStream record) throws IOException;
+    }
+}
@@ -0,0 +1,190 @@
+package com.example.franchise.service;
+
+import com.example.franchise.domain.dto.BranchStockDTO;
+import com.example.franchise.domain.dto.FranchiseSummaryDTO;
+import com.example.franchise.domain.dto.HighestStockProductDTO;
+import com.example.franchise.domain.dto.ProductStockDTO;
+import com.example.franchise.domain.dto.StockAdjustmentDTO;
+import com.example.franchise.domain.dto.StockDelta;
+import com.example.franchise.domain.dto.StockDeltaMode;
+import com.example.franchise.domain.dto.StockUpdateRequest;
+import com.example.franchise.domain.model.Branch;
+import com.example.franchise.domain.model.Franchise;
+import com.example.franchise.domain.model.Product;
+import com.example.franchise.repository.FranchiseStore;
+import lombok.RequiredArgsConstructor;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * {@link FranchiseStore} that lets a write through only when no other instance hosts the franchise, as checked by the
+ * {@link InventoryLeaseGuard}. Reads, and inserts of franchises nobody can host yet, are passed on unchecked.
+ */
+@RequiredArgsConstructor
+final class LeaseGuardedFranchiseStore implements FranchiseStore {
+
+    private final FranchiseStore delegate;
+    private final InventoryLeaseGuard guard;
+
+    @Override
+    public Mono<Franchise> findById(String franchiseId) {
+        return delegate.findById(franchiseId);
+    }
+
+    @Override
+    public Mono<Boolean> existsById(String franchiseId) {
+        return delegate.existsById(franchiseId);
+    }
+
+    @Override
+    public Mono<Boolean> existsByName(String name) {
+        return delegate.existsByName(name);
+    }
+
+    @Override
+    public Mono<Franchise> insert(Franchise franchise) {
+        return delegate.insert(franchise);
+    }
+
+    @Override
+    public Mono<Franchise> renameFranchise(String franchiseId, String newName, Long expectedVersion) {
+        return checked(franchiseId, () -> delegate.renameFranchise(franchiseId, newName, expectedVersion));
+    }
+
+    @Override
+    public Mono<Franchise> addBranch(String franchiseId, Branch branch, Long expectedVersion) {
+        return checked(franchiseId, () -> delegate.addBranch(franchiseId, branch, expectedVersion));
+    }
+
+    @Override
+    public Mono<Franchise> renameBranch(String franchiseId, String oldName, String newName, Long expectedVersion) {
+        return checked(franchiseId, () -> delegate.renameBranch(franchiseId, oldName, newName, expectedVersion));
+    }
+
+    @Override
+    public Mono<Franchise> addProduct(String franchiseId, String branchName, Product product, Long expectedVersion) {
+        return checked(franchiseId, () -> delegate.addProduct(franchiseId, branchName, product, expectedVersion));
+    }
+
+    @Override
+    public Mono<Franchise> removeProduct(
+            String franchiseId,
+            String branchName,
+            String productName,
+            Long expectedVersion
+    ) {
+        return checked(franchiseId,
+                () -> delegate.removeProduct(franchiseId, branchName, productName, expectedVersion));
+    }
+
+    @Override
+    public Mono<Franchise> renameProduct(
+            String franchiseId,
+            String branchName,
+            String oldName,
+            String newName,
+            Long expectedVersion
+    ) {
+        return checked(franchiseId,
+                () -> delegate.renameProduct(franchiseId, branchName, oldName, newName, expectedVersion));
+    }
+
+    @Override
+    public Mono<ProductStockDTO> updateProductStock(String franchiseId, String branchName, String productName, int stock) {
+        return checked(franchiseId, () -> delegate.updateProductStock(franchiseId, branchName, productName, stock));
+    }
+
+    /**
+     * Rejects the whole batch when any of its franchises is hosted elsewhere, as nothing of it has been written yet.
+     */
+    @Override
+    public Mono<Integer> updateProductStocks(List<StockUpdateRequest> updates) {
+        return Mono.defer(() -> {
+            updates.forEach(update -> guard.check(update.franchiseId()));
+            return delegate.updateProductStocks(updates);
+        });
+    }
+
+    @Override
+    public Mono<Boolean> setProductStocks(String franchiseId, List<StockUpdateRequest> updates) {
+        return checked(franchiseId, () -> delegate.setProductStocks(franchiseId, updates));
+    }
+
+    @Override
+    public Mono<ProductStockDTO> incrementProductStock(
+            String franchiseId,
+            String branchName,
+            String productName,
+            int delta,
+            StockDeltaMode mode
+    ) {
+        return checked(franchiseId,
+                () -> delegate.incrementProductStock(franchiseId, branchName, productName, delta, mode));
+    }
+
+    @Override
+    public Flux<StockAdjustmentDTO> applyStockDeltas(String franchiseId, List<StockDelta> deltas, StockDeltaMode mode) {
+        return Flux.defer(() -> {
+            guard.check(franchiseId);
+            return delegate.applyStockDeltas(franchiseId, deltas, mode);
+        });
+    }
+
+    @Override
+    public Flux<HighestStockProductDTO> findHighestStockProducts(String franchiseId, int limit) {
+        return delegate.findHighestStockProducts(franchiseId, limit);
+    }
+
+    @Override
+    public Flux<BranchStockDTO> findBranchStockTotals(String franchiseId) {
+        return delegate.findBranchStockTotals(franchiseId);
+    }
+
+    @Override
+    public Flux<ProductStockDTO> findLowStockProducts(String franchiseId, int threshold, int limit) {
+        return delegate.findLowStockProducts(franchiseId, threshold, limit);
+    }
+
+    @Override
+    public Flux<ProductStockDTO> findTopStockProducts(String franchiseId, int limit) {
+        return delegate.findTopStockProducts(franchiseId, limit);
+    }
+
+    @Override
+    public Mono<Long> findVersion(String franchiseId) {
+        return delegate.findVersion(franchiseId);
+    }
+
+    @Override
+    public Mono<Void> advanceVersion(String franchiseId, long version) {
+        return checked(franchiseId, () -> delegate.advanceVersion(franchiseId, version));
+    }
+
+    @Override
+    public Flux<Franchise> findPage(String afterId, int limit) {
+        return delegate.findPage(afterId, limit);
+    }
+
+    @Override
+    public Flux<FranchiseSummaryDTO> findSummaryPage(String afterId, int limit, boolean withBranchCount) {
+        return delegate.findSummaryPage(afterId, limit, withBranchCount);
+    }
+
+    @Override
+    public Mono<Integer> upsertAll(List<Franchise> franchises) {
+        return Mono.defer(() -> {
+            franchises.forEach(franchise -> guard.check(franchise.getId()));
+            return delegate.upsertAll(franchises);
+        });
+    }
+
+    private <T> Mono<T> checked(String franchiseId, Supplier<Mono<T>> write) {
+        return Mono.defer(() -> {
+            guard.check(franchiseId);
+            return write.get();
+        });
+    }
+}
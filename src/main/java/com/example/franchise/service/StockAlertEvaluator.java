@@ -0,0 +1,158 @@
+package com.example.franchise.service;
+
+import com.example.franchise.config.StockAlertProperties;
+import com.example.franchise.domain.dto.StockAlert;
+import com.example.franchise.domain.model.NameKey;
+import com.example.franchise.service.StockAlertRules.Entry;
+import com.example.franchise.service.StockAlertRules.ProductState;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.BufferOverflowStrategy;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Instant;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Evaluates the alert rules of a single product after each stock mutation. Writers only enqueue the change into a
+ * bounded queue, dropping it when the queue is full; a single worker thread drains it, so rule state needs no locking.
+ * An alert fires when the stock crosses below the threshold, is not repeated while it stays below and fires again at
+ * most once per {@code franchise.stock-alerts.min-interval} for the same rule and product.
+ * <p>
+ * Rules are shared through Mongo, but evaluation is not: each instance only sees the writes it served, keeps its own
+ * alert state and publishes to its own subscribers. A client of {@code /alerts} therefore misses crossings caused by
+ * writes served by other instances, and with several instances the same product may alert once per instance and
+ * interval.
+ */
+@Slf4j
+@Component
+public class StockAlertEvaluator implements DisposableBean {
+
+    private final StockAlertRules rules;
+    private final StockAlertProperties properties;
+    private final BlockingQueue<Change> queue;
+    private final AtomicInteger pending = new AtomicInteger();
+    private final Scheduler worker = Schedulers.newSingle("stock-alerts", true);
+    private final Sinks.Many<StockAlert> alerts = Sinks.many().multicast().directBestEffort();
+    private final Counter emitted;
+    private final Counter suppressed;
+    private final Counter rejected;
+    private final Counter dropped;
+
+    public StockAlertEvaluator(StockAlertRules rules, StockAlertProperties properties, MeterRegistry registry) {
+        this.rules = rules;
+        this.properties = properties;
+        this.queue = new ArrayBlockingQueue<>(properties.queueSize());
+        this.emitted = registry.counter("franchise.stock-alerts.emitted");
+        this.suppressed = registry.counter("franchise.stock-alerts.suppressed");
+        this.rejected = registry.counter("franchise.stock-alerts.rejected");
+        this.dropped = registry.counter("franchise.stock-alerts.dropped");
+        registry.gaugeCollectionSize("franchise.stock-alerts.queue", Tags.empty(), queue);
+    }
+
+    public void stockChanged(String franchiseId, String branchName, String productName, int stock) {
+        submit(franchiseId, branchName, productName, stock);
+    }
+
+    public void productRemoved(String franchiseId, String branchName, String productName) {
+        submit(franchiseId, branchName, productName, null);
+    }
+
+    public Mono<Void> branchRenamed(String franchiseId, String oldName, String newName) {
+        return rules.branchRenamed(franchiseId, oldName, newName);
+    }
+
+    public Mono<Void> productRenamed(String franchiseId, String branchName, String oldName, String newName) {
+        return rules.productRenamed(franchiseId, branchName, oldName, newName);
+    }
+
+    public Flux<StockAlert> subscribe(String franchiseId) {
+        return alerts.asFlux()
+                .filter(alert -> alert.franchiseId().equals(franchiseId))
+                .onBackpressureBuffer(properties.bufferSize(), alert -> dropped.increment(),
+                        BufferOverflowStrategy.DROP_OLDEST);
+    }
+
+    @Override
+    public void destroy() {
+        worker.dispose();
+    }
+
+    private void submit(String franchiseId, String branchName, String productName, Integer stock) {
+        String branchKey = NameKey.of(branchName);
+        if (!rules.hasRules(franchiseId, branchKey)) {
+            return;
+        }
+        if (!queue.offer(new Change(franchiseId, branchKey, branchName, productName, stock))) {
+            rejected.increment();
+            return;
+        }
+        if (pending.getAndIncrement() == 0) {
+            worker.schedule(this::drain);
+        }
+    }
+
+    private void drain() {
+        int missed = 1;
+        do {
+            Change change;
+            while ((change = queue.poll()) != null) {
+                try {
+                    evaluate(change);
+                } catch (RuntimeException e) {
+                    log.warn("Could not evaluate stock alerts for {}: {}", change.franchiseId(), e.getMessage());
+                }
+            }
+            missed = pending.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    private void evaluate(Change change) {
+        String productKey = NameKey.of(change.productName());
+        for (Entry entry : rules.rulesFor(change.franchiseId(), change.branchKey())) {
+            if (!entry.rule.appliesTo(productKey)) {
+                continue;
+            }
+            if (change.stock() == null) {
+                entry.products.remove(productKey);
+                continue;
+            }
+
+            ProductState state = entry.products.get(productKey);
+            boolean below = change.stock() < entry.rule.getThreshold();
+            if (!below) {
+                if (state != null && state.below()) {
+                    entry.products.put(productKey, new ProductState(false, state.lastAlertNanos()));
+                }
+                continue;
+            }
+            if (state != null && state.below()) {
+                continue;
+            }
+
+            long now = System.nanoTime();
+            if (state != null && now - state.lastAlertNanos() < properties.minInterval().toNanos()) {
+                entry.products.put(productKey, new ProductState(true, state.lastAlertNanos()));
+                suppressed.increment();
+                continue;
+            }
+            entry.products.put(productKey, new ProductState(true, now));
+            emitted.increment();
+            alerts.tryEmitNext(new StockAlert(entry.rule.getId(), change.franchiseId(), change.branchName(),
+                    change.productName(), change.stock(), entry.rule.getThreshold(), Instant.now()));
+        }
+    }
+
+    private record Change(String franchiseId, String branchKey, String branchName, String productName, Integer stock) {
+    }
+}
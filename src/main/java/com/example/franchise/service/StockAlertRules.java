@@ -0,0 +1,221 @@
+package com.example.franchise.service;
+
+import com.example.franchise.config.StockAlertProperties;
+import com.example.franchise.domain.dto.StockAlertRuleRequest;
+import com.example.franchise.domain.model.NameKey;
+import com.example.franchise.domain.model.StockAlertRule;
+import com.example.franchise.exception.BusinessException;
+import com.example.franchise.exception.ResourceNotFoundException;
+import com.example.franchise.repository.FranchiseStore;
+import com.example.franchise.repository.StockAlertRuleRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Registry of stock alert rules. MongoDB holds the rules and every instance reads and writes them there; each instance
+ * mirrors them in memory, indexed by franchise and branch, so the evaluator finds the rules of a touched product
+ * without a query. The mirror is reloaded after every change made here and every
+ * {@code franchise.stock-alerts.refresh-interval}, which bounds how long a change made on another instance goes
+ * unseen.
+ */
+@Slf4j
+@Service
+public class StockAlertRules implements ApplicationRunner, DisposableBean {
+
+    private static final List<Entry> NONE = List.of();
+
+    private final StockAlertRuleRepository repository;
+    private final FranchiseStore store;
+    private final Duration refreshInterval;
+    private final AtomicLong loads = new AtomicLong();
+    private volatile Map<String, List<Entry>> byBranch = Map.of();
+    private long loaded;
+    private Disposable refresher;
+
+    public StockAlertRules(StockAlertRuleRepository repository, FranchiseStore store, StockAlertProperties properties) {
+        this.repository = repository;
+        this.store = store;
+        this.refreshInterval = properties.refreshInterval();
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        load().block();
+        refresher = Flux.interval(refreshInterval)
+                .onBackpressureDrop()
+                .concatMap(tick -> load().onErrorResume(e -> {
+                    log.warn("Could not refresh the stock alert rules: {}", e.getMessage());
+                    return Mono.empty();
+                }), 1)
+                .subscribe();
+    }
+
+    @Override
+    public void destroy() {
+        if (refresher != null) {
+            refresher.dispose();
+        }
+    }
+
+    public Mono<Void> load() {
+        return Mono.defer(() -> {
+            long load = loads.incrementAndGet();
+            return repository.findAll()
+                    .collectList()
+                    .doOnNext(rules -> replace(load, rules));
+        }).then();
+    }
+
+    /**
+     * The unique index on franchise, branch and product settles concurrent creations of the same rule.
+     */
+    public Mono<StockAlertRule> create(String franchiseId, StockAlertRuleRequest request) {
+        if (request == null || request.branchName() == null || request.threshold() == null) {
+            return Mono.error(new BusinessException("Solicitud inválida"));
+        }
+        if (request.threshold() < 0) {
+            return Mono.error(new BusinessException("El umbral no puede ser negativo"));
+        }
+
+        StockAlertRule rule = StockAlertRule.builder()
+                .franchiseId(franchiseId)
+                .branchName(request.branchName())
+                .productName(request.productName())
+                .threshold(request.threshold())
+                .build();
+
+        return store.existsById(franchiseId)
+                .flatMap(exists -> exists
+                        ? repository.insert(rule)
+                        : Mono.error(new ResourceNotFoundException("Franquicia no encontrada")))
+                .onErrorMap(DuplicateKeyException.class, e -> new BusinessException("La regla ya existe"))
+                .flatMap(saved -> load().thenReturn(saved));
+    }
+
+    public Flux<StockAlertRule> list(String franchiseId) {
+        return repository.findByFranchiseId(franchiseId);
+    }
+
+    public Mono<Void> delete(String franchiseId, String ruleId) {
+        return repository.findById(ruleId)
+                .filter(rule -> rule.getFranchiseId().equals(franchiseId))
+                .switchIfEmpty(Mono.error(new ResourceNotFoundException("Regla no encontrada")))
+                .flatMap(rule -> repository.delete(rule)
+                        .then(load()));
+    }
+
+    /**
+     * Rules name the branch they watch, so a renamed branch takes its rules along. Rules already on the new name
+     * watched a branch that did not exist and give way to the moved ones.
+     */
+    public Mono<Void> branchRenamed(String franchiseId, String oldName, String newName) {
+        String oldKey = NameKey.of(oldName);
+        String newKey = NameKey.of(newName);
+        return move(
+                oldKey.equals(newKey) ? Mono.just(0L) : repository.deleteByFranchiseIdAndBranchKey(franchiseId, newKey),
+                repository.findByFranchiseIdAndBranchKey(franchiseId, oldKey)
+                        .map(rule -> new StockAlertRule(rule.getId(), franchiseId, newName, rule.getProductName(),
+                                rule.getThreshold())),
+                "branch " + oldName);
+    }
+
+    /**
+     * Same as {@link #branchRenamed} for the rules of a single product.
+     */
+    public Mono<Void> productRenamed(String franchiseId, String branchName, String oldName, String newName) {
+        String branchKey = NameKey.of(branchName);
+        String oldKey = NameKey.of(oldName);
+        String newKey = NameKey.of(newName);
+        return move(
+                oldKey.equals(newKey)
+                        ? Mono.just(0L)
+                        : repository.deleteByFranchiseIdAndBranchKeyAndProductKey(franchiseId, branchKey, newKey),
+                repository.findByFranchiseIdAndBranchKeyAndProductKey(franchiseId, branchKey, oldKey)
+                        .map(rule -> new StockAlertRule(rule.getId(), franchiseId, rule.getBranchName(), newName,
+                                rule.getThreshold())),
+                "product " + oldName);
+    }
+
+    /**
+     * The rename itself has already been written, so a failure here is logged rather than failing the request.
+     */
+    private Mono<Void> move(Mono<Long> replaced, Flux<StockAlertRule> moved, String source) {
+        return replaced
+                .flatMap(removed -> moved.collectList()
+                        .flatMap(rules -> removed == 0 && rules.isEmpty()
+                                ? Mono.empty()
+                                : repository.saveAll(rules).then(load())))
+                .onErrorResume(e -> {
+                    log.warn("Could not move the stock alert rules of {}: {}", source, e.getMessage());
+                    return Mono.empty();
+                });
+    }
+
+    boolean hasRules(String franchiseId, String branchKey) {
+        return byBranch.containsKey(key(franchiseId, branchKey));
+    }
+
+    List<Entry> rulesFor(String franchiseId, String branchKey) {
+        return byBranch.getOrDefault(key(franchiseId, branchKey), NONE);
+    }
+
+    /**
+     * Swaps in the rules read by load number {@code load}, unless a later load has already been applied. A rule that
+     * did not change keeps its entry and with it the alert state of its products.
+     */
+    private synchronized void replace(long load, List<StockAlertRule> rules) {
+        if (load < loaded) {
+            return;
+        }
+        loaded = load;
+
+        Map<String, Entry> current = new HashMap<>();
+        byBranch.values().forEach(entries -> entries.forEach(e -> current.put(e.rule.getId(), e)));
+
+        Map<String, List<Entry>> next = new HashMap<>();
+        for (StockAlertRule rule : rules) {
+            Entry entry = current.get(rule.getId());
+            if (entry == null || !entry.rule.equals(rule)) {
+                entry = new Entry(rule);
+            }
+            next.computeIfAbsent(key(rule.getFranchiseId(), rule.getBranchKey()), k -> new ArrayList<>()).add(entry);
+        }
+        next.replaceAll((k, entries) -> List.copyOf(entries));
+        byBranch = next;
+    }
+
+    private static String key(String franchiseId, String branchKey) {
+        return franchiseId + "\u0000" + branchKey;
+    }
+
+    /**
+     * A registered rule and the alert state of the products it has seen. The state is only touched by the
+     * evaluator thread and goes away with the rule.
+     */
+    static final class Entry {
+
+        final StockAlertRule rule;
+        final Map<String, ProductState> products = new HashMap<>();
+
+        private Entry(StockAlertRule rule) {
+            this.rule = rule;
+        }
+    }
+
+    record ProductState(boolean below, long lastAlertNanos) {
+    }
+}
@@ -0,0 +1,125 @@
+package com.example.franchise.service;
+
+import com.example.franchise.config.StockEventProperties;
+import com.example.franchise.domain.dto.HighestStockProductDTO;
+import com.example.franchise.domain.dto.StockEvent;
+import com.example.franchise.repository.FranchiseStore;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.BufferOverflowStrategy;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+@Component
+public class StockEventPublisher {
+
+    public enum OverflowPolicy {
+        DROP_OLDEST,
+        DROP_LATEST,
+        LATEST
+    }
+
+    private final FranchiseStore store;
+    private final StockEventProperties properties;
+    private final Counter dropped;
+    private final Map<String, Channel> channels = new ConcurrentHashMap<>();
+
+    public StockEventPublisher(FranchiseStore store, StockEventProperties properties, MeterRegistry registry) {
+        this.store = store;
+        this.properties = properties;
+        this.dropped = registry.counter("franchise.stock-events.dropped");
+        registry.gaugeMapSize("franchise.stock-events.channels", Tags.empty(), channels);
+    }
+
+    /**
+     * Called from whichever thread finished the write. Emissions into a channel are serialized by its lock instead
+     * of spinning on {@code FAIL_NON_SERIALIZED}; an event that still cannot be emitted is dropped and counted.
+     */
+    public void publish(StockEvent event) {
+        Channel channel = channels.get(event.franchiseId());
+        if (channel == null) {
+            return;
+        }
+
+        Sinks.EmitResult result;
+        synchronized (channel) {
+            result = channel.sink.tryEmitNext(event);
+        }
+        if (result.isFailure() && result != Sinks.EmitResult.FAIL_ZERO_SUBSCRIBER) {
+            dropped.increment();
+        }
+    }
+
+    public Flux<StockEvent> subscribe(String franchiseId, OverflowPolicy policy) {
+        return Flux.defer(() -> {
+            Channel channel = channels.compute(franchiseId, (id, existing) -> {
+                Channel c = existing != null ? existing : new Channel(id);
+                c.subscribers++;
+                return c;
+            });
+
+            return withOverflowPolicy(channel.events, policy)
+                    .doFinally(signal -> channels.computeIfPresent(franchiseId,
+                            (id, c) -> --c.subscribers == 0 ? null : c));
+        });
+    }
+
+    int activeChannels() {
+        return channels.size();
+    }
+
+    private Flux<StockEvent> withOverflowPolicy(Flux<StockEvent> events, OverflowPolicy policy) {
+        return switch (policy) {
+            case LATEST -> events.onBackpressureLatest();
+            case DROP_OLDEST -> events.onBackpressureBuffer(properties.bufferSize(),
+                    e -> dropped.increment(), BufferOverflowStrategy.DROP_OLDEST);
+            case DROP_LATEST -> events.onBackpressureBuffer(properties.bufferSize(),
+                    e -> dropped.increment(), BufferOverflowStrategy.DROP_LATEST);
+        };
+    }
+
+    /**
+     * One multicast sink per franchise with subscribers. Highest-stock changes are derived once per channel, by
+     * re-running the highest-stock aggregation at most once per interval while stock events keep arriving.
+     */
+    private final class Channel {
+
+        private final Sinks.Many<StockEvent> sink = Sinks.many().multicast().directBestEffort();
+        private final Map<String, HighestStockProductDTO> highestByBranch = new HashMap<>();
+        private final Flux<StockEvent> events;
+        private int subscribers;
+
+        private Channel(String franchiseId) {
+            Flux<StockEvent> stockEvents = sink.asFlux();
+            Flux<StockEvent> highestEvents = stockEvents
+                    .filter(e -> e.type() != StockEvent.Type.HIGHEST_STOCK)
+                    .sample(properties.highestStockInterval())
+                    .concatMap(e -> store.findHighestStockProducts(franchiseId, 1)
+                            .collectMap(HighestStockProductDTO::branchName)
+                            .onErrorResume(error -> Mono.empty()))
+                    .concatMapIterable(this::changedBranches)
+                    .map(top -> StockEvent.of(StockEvent.Type.HIGHEST_STOCK, franchiseId,
+                            top.branchName(), top.productName(), top.stock()));
+
+            this.events = Flux.merge(stockEvents, highestEvents).share();
+        }
+
+        private Iterable<HighestStockProductDTO> changedBranches(Map<String, HighestStockProductDTO> current) {
+            List<HighestStockProductDTO> changed = current.values().stream()
+                    .filter(top -> !Objects.equals(highestByBranch.get(top.branchName()), top))
+                    .toList();
+            highestByBranch.clear();
+            highestByBranch.putAll(current);
+            return changed;
+        }
+    }
+}
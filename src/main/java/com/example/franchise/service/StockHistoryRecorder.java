@@ -0,0 +1,99 @@
+package com.example.franchise.service;
+
+import com.example.franchise.config.StockHistoryProperties;
+import com.example.franchise.domain.dto.StockEvent;
+import com.example.franchise.domain.model.StockMovement;
+import com.example.franchise.repository.StockHistoryRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Appends every stock change to the stock history off the request path. Writers only enqueue the movement into a
+ * bounded queue, dropping it when the queue is full. The first movement after an idle period waits for
+ * {@code franchise.stock-history.window} and the queue is then written in batches of up to {@code batch-size}, one
+ * insert at a time, until it is empty.
+ */
+@Slf4j
+@Component
+public class StockHistoryRecorder implements DisposableBean {
+
+    private static final Duration SHUTDOWN_TIMEOUT = Duration.ofSeconds(5);
+
+    private final StockHistoryRepository repository;
+    private final StockHistoryProperties properties;
+    private final BlockingQueue<StockMovement> queue;
+    private final AtomicInteger pending = new AtomicInteger();
+    private final Counter written;
+    private final Counter failed;
+    private final Counter dropped;
+
+    public StockHistoryRecorder(StockHistoryRepository repository, StockHistoryProperties properties, MeterRegistry registry) {
+        this.repository = repository;
+        this.properties = properties;
+        this.queue = new ArrayBlockingQueue<>(properties.queueSize());
+        this.written = registry.counter("franchise.stock-history.written");
+        this.failed = registry.counter("franchise.stock-history.failed");
+        this.dropped = registry.counter("franchise.stock-history.dropped");
+        registry.gaugeCollectionSize("franchise.stock-history.queue", Tags.empty(), queue);
+    }
+
+    public void record(StockEvent event) {
+        if (!properties.enabled() || event.type() == StockEvent.Type.HIGHEST_STOCK) {
+            return;
+        }
+        if (!queue.offer(StockMovement.of(event))) {
+            dropped.increment();
+            return;
+        }
+        if (pending.getAndIncrement() == 0) {
+            Mono.delay(properties.window()).subscribe(ignored -> drain(1));
+        }
+    }
+
+    @Override
+    public void destroy() {
+        List<StockMovement> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        if (!remaining.isEmpty()) {
+            write(remaining).block(SHUTDOWN_TIMEOUT);
+        }
+    }
+
+    private void drain(int missed) {
+        while (true) {
+            List<StockMovement> batch = new ArrayList<>(properties.batchSize());
+            queue.drainTo(batch, properties.batchSize());
+            if (!batch.isEmpty()) {
+                int seen = missed;
+                write(batch).doFinally(signal -> drain(seen)).subscribe();
+                return;
+            }
+            missed = pending.addAndGet(-missed);
+            if (missed == 0) {
+                return;
+            }
+        }
+    }
+
+    private Mono<Void> write(List<StockMovement> batch) {
+        return repository.insertAll(batch)
+                .doOnSuccess(ignored -> written.increment(batch.size()))
+                .doOnError(e -> {
+                    failed.increment(batch.size());
+                    log.warn("Could not write {} stock movements: {}", batch.size(), e.getMessage());
+                })
+                .onErrorResume(e -> Mono.empty());
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.franchise.service;
+
+import com.example.franchise.domain.dto.StockEvent;
+import com.example.franchise.domain.dto.StockHistoryBucketDTO;
+import com.example.franchise.domain.dto.StockHistoryResolution;
+import com.example.franchise.domain.model.NameKey;
+import com.example.franchise.domain.model.StockMovement;
+import com.example.franchise.exception.BusinessException;
+import com.example.franchise.repository.StockHistoryRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Stock history of a product or of every product of a branch. Without {@code to} the range ends now and without
+ * {@code from} it covers the previous day.
+ */
+@Service
+@RequiredArgsConstructor
+public class StockHistoryService {
+
+    static final Duration DEFAULT_RANGE = Duration.ofDays(1);
+
+    private final StockHistoryRepository repository;
+
+    public Flux<StockEvent> getMovements(
+            String franchiseId, String branchName, String productName, Instant from, Instant to, int limit) {
+        if (limit < 1 || limit > FranchiseService.MAX_PAGE_SIZE) {
+            return Flux.error(new BusinessException("El límite debe estar entre 1 y " + FranchiseService.MAX_PAGE_SIZE));
+        }
+        return Flux.defer(() -> {
+            Range range = Range.of(from, to);
+            return repository.findMovements(franchiseId, NameKey.of(branchName), NameKey.of(productName),
+                    range.start(), range.end(), limit);
+        }).map(StockMovement::toEvent);
+    }
+
+    public Flux<StockHistoryBucketDTO> getBuckets(
+            String franchiseId,
+            String branchName,
+            String productName,
+            Instant from,
+            Instant to,
+            StockHistoryResolution resolution
+    ) {
+        return Flux.defer(() -> {
+            Range range = Range.of(from, to);
+            return repository.findBuckets(franchiseId, NameKey.of(branchName), NameKey.of(productName),
+                    range.start(), range.end(), resolution.bucket());
+        });
+    }
+
+    private record Range(Instant start, Instant end) {
+
+        static Range of(Instant from, Instant to) {
+            Instant end = to != null ? to : Instant.now();
+            Instant start = from != null ? from : end.minus(DEFAULT_RANGE);
+            if (!start.isBefore(end)) {
+                throw new BusinessException("El rango de fechas es inválido");
+            }
+            return new Range(start, end);
+        }
+    }
+}
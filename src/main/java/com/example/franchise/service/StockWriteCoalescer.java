@@ -0,0 +1,206 @@
+package com.example.franchise.service;
+
+import com.example.franchise.config.StockCoalescingProperties;
+import com.example.franchise.domain.dto.ProductStockDTO;
+import com.example.franchise.domain.dto.StockUpdateRequest;
+import com.example.franchise.domain.model.NameKey;
+import com.example.franchise.repository.FranchiseStore;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Combines stock updates for the same franchise into a single write. Each franchise has at most one write in flight:
+ * updates arriving meanwhile wait and go out together as soon as it finishes, and an idle franchise waits
+ * {@code franchise.stock-coalescing.window} before writing, or less once {@code max-batch-size} updates are waiting.
+ * Within a batch the last update of a product wins, which is the state applying them one by one would leave. Every
+ * caller still gets its own result or error.
+ */
+@Component
+public class StockWriteCoalescer {
+
+    private final FranchiseStore store;
+    private final StockCoalescingProperties properties;
+    private final Scheduler timer = Schedulers.parallel();
+    private final Map<String, Lane> lanes = new ConcurrentHashMap<>();
+    private final DistributionSummary batchSize;
+
+    public StockWriteCoalescer(FranchiseStore store, StockCoalescingProperties properties, MeterRegistry registry) {
+        this.store = store;
+        this.properties = properties;
+        this.batchSize = DistributionSummary.builder("franchise.stock-coalescing.batch-size").register(registry);
+    }
+
+    public Mono<ProductStockDTO> updateProductStock(String franchiseId, String branchName, String productName, int stock) {
+        if (!properties.enabled()) {
+            return store.updateProductStock(franchiseId, branchName, productName, stock);
+        }
+
+        return Mono.defer(() -> {
+            Pending pending = new Pending(new StockUpdateRequest(franchiseId, branchName, productName, stock));
+            submit(franchiseId, pending);
+            return pending.result.asMono();
+        });
+    }
+
+    private void submit(String franchiseId, Pending pending) {
+        while (true) {
+            Lane lane = lanes.computeIfAbsent(franchiseId, Lane::new);
+            List<Pending> batch = null;
+            boolean arm = false;
+            synchronized (lane) {
+                if (lane.retired) {
+                    continue;
+                }
+                lane.waiting.add(pending);
+                if (!lane.inFlight) {
+                    if (lane.waiting.size() >= properties.maxBatchSize()) {
+                        batch = lane.take(properties.maxBatchSize());
+                    } else if (!lane.timerArmed) {
+                        lane.timerArmed = true;
+                        arm = true;
+                    }
+                }
+            }
+
+            if (batch != null) {
+                write(lane, batch);
+            } else if (arm) {
+                timer.schedule(() -> onTimer(lane), properties.window().toNanos(), TimeUnit.NANOSECONDS);
+            }
+            return;
+        }
+    }
+
+    private void onTimer(Lane lane) {
+        List<Pending> batch = null;
+        synchronized (lane) {
+            lane.timerArmed = false;
+            if (!lane.inFlight) {
+                batch = lane.waiting.isEmpty() ? null : lane.take(properties.maxBatchSize());
+                if (batch == null) {
+                    retire(lane);
+                }
+            }
+        }
+        if (batch != null) {
+            write(lane, batch);
+        }
+    }
+
+    private void onWritten(Lane lane) {
+        List<Pending> batch = null;
+        synchronized (lane) {
+            lane.inFlight = false;
+            if (!lane.waiting.isEmpty()) {
+                batch = lane.take(properties.maxBatchSize());
+            } else if (!lane.timerArmed) {
+                retire(lane);
+            }
+        }
+        if (batch != null) {
+            write(lane, batch);
+        }
+    }
+
+    private void retire(Lane lane) {
+        lane.retired = true;
+        lanes.remove(lane.franchiseId, lane);
+    }
+
+    private void write(Lane lane, List<Pending> batch) {
+        batchSize.record(batch.size());
+        Map<String, StockUpdateRequest> latest = new LinkedHashMap<>();
+        batch.forEach(p -> latest.put(p.key, p.request));
+        List<StockUpdateRequest> writes = List.copyOf(latest.values());
+
+        Mono<Map<String, Throwable>> failures = writes.size() == 1
+                ? single(writes.get(0))
+                : store.setProductStocks(lane.franchiseId, writes)
+                        .flatMap(applied -> applied ? Mono.just(Map.<String, Throwable>of()) : oneByOne(writes));
+
+        failures.doFinally(signal -> onWritten(lane))
+                .subscribe(
+                        failed -> batch.forEach(p -> {
+                            Throwable error = failed.get(p.key);
+                            if (error != null) {
+                                p.result.tryEmitError(error);
+                            } else {
+                                p.result.tryEmitValue(new ProductStockDTO(p.request.franchiseId(),
+                                        p.request.branch(), p.request.product(), p.request.stock()));
+                            }
+                        }),
+                        error -> batch.forEach(p -> p.result.tryEmitError(error)));
+    }
+
+    private Mono<Map<String, Throwable>> single(StockUpdateRequest u) {
+        return store.updateProductStock(u.franchiseId(), u.branch(), u.product(), u.stock())
+                .map(updated -> Map.<String, Throwable>of())
+                .onErrorResume(e -> Mono.just(Map.of(key(u), e)));
+    }
+
+    private Mono<Map<String, Throwable>> oneByOne(List<StockUpdateRequest> writes) {
+        return Flux.fromIterable(writes)
+                .concatMap(u -> store.updateProductStock(u.franchiseId(), u.branch(), u.product(), u.stock())
+                        .then(Mono.<Map.Entry<String, Throwable>>empty())
+                        .onErrorResume(e -> Mono.just(Map.entry(key(u), e))))
+                .collectMap(Map.Entry::getKey, Map.Entry::getValue);
+    }
+
+    private static String key(StockUpdateRequest request) {
+        return NameKey.of(request.branch()) + "\u0000" + NameKey.of(request.product());
+    }
+
+    private static final class Pending {
+
+        private final StockUpdateRequest request;
+        private final String key;
+        private final Sinks.One<ProductStockDTO> result = Sinks.one();
+
+        private Pending(StockUpdateRequest request) {
+            this.request = request;
+            this.key = key(request);
+        }
+    }
+
+    /**
+     * Updates waiting for one franchise. Guarded by its own monitor; a retired lane has been removed from the map and
+     * takes no more updates.
+     */
+    private static final class Lane {
+
+        private final String franchiseId;
+        private List<Pending> waiting = new ArrayList<>();
+        private boolean inFlight;
+        private boolean timerArmed;
+        private boolean retired;
+
+        private Lane(String franchiseId) {
+            this.franchiseId = franchiseId;
+        }
+
+        private List<Pending> take(int max) {
+            inFlight = true;
+            if (waiting.size() <= max) {
+                List<Pending> batch = waiting;
+                waiting = new ArrayList<>();
+                return batch;
+            }
+            List<Pending> batch = new ArrayList<>(waiting.subList(0, max));
+            waiting = new ArrayList<>(waiting.subList(max, waiting.size()));
+            return batch;
+        }
+    }
+}
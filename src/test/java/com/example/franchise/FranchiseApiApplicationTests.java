@@ -1,17 +1,49 @@
 package com.example.franchise;
 
+import com.example.franchise.config.FranchiseCacheProperties;
+import com.example.franchise.config.RetryProperties;
+import com.example.franchise.config.StockAlertProperties;
+import com.example.franchise.config.StockCoalescingProperties;
+import com.example.franchise.config.StockEventProperties;
+import com.example.franchise.config.StockHistoryProperties;
+import com.example.franchise.config.StockProperties;
+import com.example.franchise.domain.dto.BranchStockDTO;
 import com.example.franchise.domain.dto.HighestStockProductDTO;
+import com.example.franchise.domain.dto.ProductStockDTO;
+import com.example.franchise.domain.dto.StockAdjustmentDTO;
+import com.example.franchise.domain.dto.StockDelta;
+import com.example.franchise.domain.dto.StockDeltaMode;
 import com.example.franchise.domain.model.Branch;
 import com.example.franchise.domain.model.Franchise;
 import com.example.franchise.domain.model.Product;
 import com.example.franchise.repository.FranchiseRepository;
+import com.example.franchise.exception.BusinessException;
+import com.example.franchise.exception.ConflictException;
+import com.example.franchise.exception.InsufficientStockException;
+import com.example.franchise.exception.PreconditionFailedException;
+import com.example.franchise.exception.ResourceNotFoundException;
+import com.example.franchise.repository.FranchiseStore;
+import com.example.franchise.repository.StockAlertRuleRepository;
+import com.example.franchise.repository.StockHistoryRepository;
+import com.example.franchise.service.ConflictRetryPolicy;
+import com.example.franchise.service.EmbeddedFranchiseStore;
+import com.example.franchise.service.FranchiseCache;
 import com.example.franchise.service.FranchiseService;
+import com.example.franchise.service.StockAlertEvaluator;
+import com.example.franchise.service.StockAlertRules;
+import com.example.franchise.service.StockEventPublisher;
+import com.example.franchise.service.StockHistoryRecorder;
+import com.example.franchise.service.StockWriteCoalescer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.OptimisticLockingFailureException;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.test.StepVerifier;
 
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -26,10 +58,72 @@ class FranchiseServiceTest {
 	@BeforeEach
 	void setUp() {
 		repository = mock(FranchiseRepository.class);
-		service = new FranchiseService(repository);
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		FranchiseStore store = new EmbeddedFranchiseStore(
+				repository,
+				new ConflictRetryPolicy(new RetryProperties(3, Duration.ofMillis(1), Duration.ofMillis(5), 0.5), registry)
+		);
+		StockAlertRuleRepository rules = mock(StockAlertRuleRepository.class);
+		when(rules.deleteByFranchiseIdAndBranchKey(anyString(), anyString())).thenReturn(Mono.just(0L));
+		when(rules.deleteByFranchiseIdAndBranchKeyAndProductKey(anyString(), anyString(), anyString()))
+				.thenReturn(Mono.just(0L));
+		when(rules.findByFranchiseIdAndBranchKey(anyString(), anyString())).thenReturn(Flux.empty());
+		when(rules.findByFranchiseIdAndBranchKeyAndProductKey(anyString(), anyString(), anyString()))
+				.thenReturn(Flux.empty());
+		StockAlertProperties alertProperties = new StockAlertProperties(16, Duration.ofMinutes(1), 16, Duration.ofSeconds(10));
+		service = new FranchiseService(
+				store,
+				new FranchiseCache(new FranchiseCacheProperties(100, Duration.ofMinutes(1)), registry),
+				new StockEventPublisher(store, new StockEventProperties(16, Duration.ofMillis(10)), registry),
+				new StockAlertEvaluator(new StockAlertRules(rules, store, alertProperties), alertProperties, registry),
+				new StockHistoryRecorder(mock(StockHistoryRepository.class),
+						new StockHistoryProperties(false, 16, 16, Duration.ofMillis(10), Duration.ofDays(365)), registry),
+				new StockWriteCoalescer(store, new StockCoalescingProperties(false, Duration.ofMillis(2), 100), registry),
+				new StockProperties(StockDeltaMode.REJECT)
+		);
 	}
 
 
+	@Test
+	void shouldServeTheFranchiseVersionWithoutLoadingTheDocument() {
+		Franchise franchise = Franchise.builder().id("1").name("Old").version(3L).branches(new ArrayList<>()).build();
+
+		when(repository.findVersion("1"))
+				.thenReturn(Mono.just(3L));
+		when(repository.findById("1"))
+				.thenReturn(Mono.just(franchise));
+
+		StepVerifier.create(service.getFranchiseVersion("1"))
+				.expectNext(3L)
+				.verifyComplete();
+		verify(repository, never()).findById("1");
+
+		service.getFranchise("1").block();
+		StepVerifier.create(service.getFranchiseVersion("1"))
+				.expectNext(3L)
+				.verifyComplete();
+		verify(repository, times(1)).findVersion("1");
+
+		when(repository.findVersion("2"))
+				.thenReturn(Mono.empty());
+		StepVerifier.create(service.getFranchiseVersion("2"))
+				.expectError(ResourceNotFoundException.class)
+				.verify();
+	}
+
+	@Test
+	void shouldRejectMutationsOfAStaleVersion() {
+		Franchise franchise = Franchise.builder().id("1").name("Old").version(3L).branches(new ArrayList<>()).build();
+
+		when(repository.findById("1"))
+				.thenReturn(Mono.just(franchise));
+
+		StepVerifier.create(service.updateFranchiseName("1", "New", 2L))
+				.expectError(PreconditionFailedException.class)
+				.verify();
+		verify(repository, never()).save(any());
+	}
+
 	@Test
 	void shouldCreateFranchise() {
 		Franchise franchise = Franchise.builder().name("Test").build();
@@ -49,13 +143,45 @@ class FranchiseServiceTest {
 		Franchise f1 = Franchise.builder().name("F1").build();
 		Franchise f2 = Franchise.builder().name("F2").build();
 
-		when(repository.findAll())
+		when(repository.findPage(null, 100))
 				.thenReturn(Flux.just(f1, f2));
 
-		StepVerifier.create(service.getAllFranchises())
+		StepVerifier.create(service.getFranchises(null, 100))
 				.expectNext(f1)
 				.expectNext(f2)
 				.verifyComplete();
+
+		verify(repository, never()).findAll();
+	}
+
+	@Test
+	void shouldRejectOversizedFranchisePages() {
+		StepVerifier.create(service.getFranchises(null, 5000))
+				.expectError(BusinessException.class)
+				.verify();
+	}
+
+	@Test
+	void shouldServeRepeatedReadsFromCacheUntilAMutation() {
+		Franchise franchise = Franchise.builder().id("1").name("Old").build();
+
+		when(repository.findById("1"))
+				.thenAnswer(i -> Mono.just(franchise));
+		when(repository.save(any()))
+				.thenReturn(Mono.just(franchise));
+
+		StepVerifier.create(Flux.merge(service.getFranchise("1"), service.getFranchise("1"), service.getFranchise("1")))
+				.expectNextCount(3)
+				.verifyComplete();
+		verify(repository, times(1)).findById("1");
+
+		StepVerifier.create(service.updateFranchiseName("1", "New", null))
+				.expectNextCount(1)
+				.verifyComplete();
+		StepVerifier.create(service.getFranchise("1"))
+				.expectNextCount(1)
+				.verifyComplete();
+		verify(repository, times(3)).findById("1");
 	}
 
 	@Test
@@ -69,11 +195,23 @@ class FranchiseServiceTest {
 		when(repository.save(any()))
 				.thenReturn(Mono.just(franchise));
 
-		StepVerifier.create(service.updateFranchiseName("123", "New"))
+		StepVerifier.create(service.updateFranchiseName("123", "New", null))
 				.expectNextMatches(f -> f.getName().equals("New"))
 				.verifyComplete();
 	}
 
+	@Test
+	void shouldRejectRenamingToAnExistingFranchiseName() {
+		when(repository.findById("123"))
+				.thenReturn(Mono.just(Franchise.builder().id("123").name("Old").build()));
+		when(repository.save(any()))
+				.thenReturn(Mono.error(new DuplicateKeyException("franchise_name_ci")));
+
+		StepVerifier.create(service.updateFranchiseName("123", "Taken", null))
+				.expectErrorMatches(e -> e instanceof BusinessException && e.getMessage().equals("La franquicia ya existe"))
+				.verify();
+	}
+
 
 	@Test
 	void shouldAddBranch() {
@@ -92,7 +230,7 @@ class FranchiseServiceTest {
 		when(repository.save(any()))
 				.thenReturn(Mono.just(franchise));
 
-		StepVerifier.create(service.addBranch("1", branch))
+		StepVerifier.create(service.addBranch("1", branch, null))
 				.expectNextMatches(f ->
 						f.getBranches().stream()
 								.anyMatch(b -> b.getName().equals("Sucursal 1"))
@@ -100,6 +238,43 @@ class FranchiseServiceTest {
 				.verifyComplete();
 	}
 
+	@Test
+	void shouldRetryMutationAfterVersionConflict() {
+		Franchise franchise = Franchise.builder()
+				.id("1")
+				.branches(new ArrayList<>())
+				.build();
+
+		when(repository.findById("1"))
+				.thenAnswer(i -> Mono.just(Franchise.builder()
+						.id("1")
+						.branches(new ArrayList<>())
+						.build()));
+		when(repository.save(any()))
+				.thenReturn(Mono.error(new OptimisticLockingFailureException("conflict")))
+				.thenReturn(Mono.just(franchise));
+
+		StepVerifier.create(service.addBranch("1", Branch.builder().name("Sucursal").products(new ArrayList<>()).build(), null))
+				.expectNext(franchise)
+				.verifyComplete();
+
+		verify(repository, times(2)).findById("1");
+	}
+
+	@Test
+	void shouldFailWithConflictWhenRetriesAreExhausted() {
+		when(repository.findById("1"))
+				.thenAnswer(i -> Mono.just(Franchise.builder().id("1").name("Old").build()));
+		when(repository.save(any()))
+				.thenAnswer(i -> Mono.error(new OptimisticLockingFailureException("conflict")));
+
+		StepVerifier.create(service.updateFranchiseName("1", "New", null))
+				.expectError(ConflictException.class)
+				.verify();
+
+		verify(repository, times(4)).findById("1");
+	}
+
 	@Test
 	void shouldUpdateBranchName() {
 		Branch branch = Branch.builder().name("Old").build();
@@ -113,7 +288,7 @@ class FranchiseServiceTest {
 		when(repository.save(any()))
 				.thenReturn(Mono.just(franchise));
 
-		StepVerifier.create(service.updateBranchName("1", "Old", "New"))
+		StepVerifier.create(service.updateBranchName("1", "Old", "New", null))
 				.expectNextMatches(f ->
 						f.getBranches().get(0).getName().equals("New")
 				)
@@ -138,7 +313,7 @@ class FranchiseServiceTest {
 		when(repository.save(any()))
 				.thenReturn(Mono.just(franchise));
 
-		StepVerifier.create(service.addProduct("1", "Sucursal", product))
+		StepVerifier.create(service.addProduct("1", "Sucursal", product, null))
 				.expectNextMatches(f ->
 						f.getBranches().get(0).getProducts().contains(product)
 				)
@@ -146,11 +321,10 @@ class FranchiseServiceTest {
 	}
 
 	@Test
-	void shouldRemoveProductFromBranch() {
-		Product product = Product.builder().name("Empanada").stock(10).build();
+	void shouldRejectDuplicateProductIgnoringCase() {
 		Branch branch = Branch.builder()
 				.name("Sucursal")
-				.products(new ArrayList<>(List.of(product)))
+				.products(new ArrayList<>(List.of(new Product("Empanada", 10))))
 				.build();
 
 		Franchise franchise = Franchise.builder()
@@ -160,18 +334,36 @@ class FranchiseServiceTest {
 
 		when(repository.findById("1"))
 				.thenReturn(Mono.just(franchise));
-		when(repository.save(any()))
+
+		StepVerifier.create(service.addProduct("1", "SUCURSAL", new Product("EMPANADA", 1), null))
+				.expectError(BusinessException.class)
+				.verify();
+
+		verify(repository, never()).save(any());
+	}
+
+	@Test
+	void shouldRejectRenamingProductOntoAnExistingName() {
+		Branch branch = Branch.builder()
+				.name("Sucursal")
+				.products(new ArrayList<>(List.of(new Product("Empanada", 10), new Product("Arepa", 5))))
+				.build();
+
+		Franchise franchise = Franchise.builder()
+				.id("1")
+				.branches(new ArrayList<>(List.of(branch)))
+				.build();
+
+		when(repository.findById("1"))
 				.thenReturn(Mono.just(franchise));
 
-		StepVerifier.create(service.removeProduct("1", "Sucursal", "Empanada"))
-				.expectNextMatches(f ->
-						f.getBranches().get(0).getProducts().isEmpty()
-				)
-				.verifyComplete();
+		StepVerifier.create(service.updateProductName("1", "Sucursal", "Empanada", "arepa", null))
+				.expectError(BusinessException.class)
+				.verify();
 	}
 
 	@Test
-	void shouldUpdateProductStock() {
+	void shouldRemoveProductFromBranch() {
 		Product product = Product.builder().name("Empanada").stock(10).build();
 		Branch branch = Branch.builder()
 				.name("Sucursal")
@@ -188,13 +380,68 @@ class FranchiseServiceTest {
 		when(repository.save(any()))
 				.thenReturn(Mono.just(franchise));
 
-		StepVerifier.create(service.updateProductStock("1", "Sucursal", "Empanada", 50))
+		StepVerifier.create(service.removeProduct("1", "Sucursal", "Empanada", null))
 				.expectNextMatches(f ->
-						f.getBranches().get(0).getProducts().get(0).getStock() == 50
+						f.getBranches().get(0).getProducts().isEmpty()
 				)
 				.verifyComplete();
 	}
 
+	@Test
+	void shouldUpdateProductStock() {
+		ProductStockDTO updated = new ProductStockDTO("1", "Sucursal", "Empanada", 50);
+
+		when(repository.updateProductStock("1", "Sucursal", "Empanada", 50))
+				.thenReturn(Mono.just(updated));
+
+		StepVerifier.create(service.updateProductStock("1", "Sucursal", "Empanada", 50))
+				.expectNext(updated)
+				.verifyComplete();
+
+		verify(repository, never()).findById(anyString());
+		verify(repository, never()).save(any());
+	}
+
+	@Test
+	void shouldCoalesceStockDeltasAndClampWhenRequested() {
+		List<StockDelta> coalesced = List.of(
+				new StockDelta("Sucursal", "Empanada", -7),
+				new StockDelta("Sucursal", "Arepa", 2));
+		when(repository.applyStockDeltas("1", coalesced, StockDeltaMode.REJECT))
+				.thenReturn(Flux.error(new InsufficientStockException("Stock insuficiente: Empanada")));
+		when(repository.applyStockDeltas("1", coalesced, StockDeltaMode.CLAMP))
+				.thenReturn(Flux.just(
+						new StockAdjustmentDTO("Sucursal", "Empanada", -3, 0),
+						new StockAdjustmentDTO("Sucursal", "Arepa", 2, 6)));
+
+		StepVerifier.create(service.applyStockDeltas("1", List.of(
+						new StockDelta("Sucursal", "Empanada", -5),
+						new StockDelta("Sucursal", "Arepa", 2),
+						new StockDelta("SUCURSAL", "empanada", -2)), StockDeltaMode.REJECT))
+				.expectError(InsufficientStockException.class)
+				.verify();
+
+		StepVerifier.create(service.applyStockDeltas("1", List.of(
+						new StockDelta("Sucursal", "Empanada", -5),
+						new StockDelta("Sucursal", "Arepa", 2),
+						new StockDelta("SUCURSAL", "empanada", -2)), StockDeltaMode.CLAMP))
+				.verifyComplete();
+
+		verify(repository, never()).incrementProductStock(anyString(), anyString(), anyString(), anyInt(), any());
+	}
+
+	@Test
+	void shouldRejectStockDeltasWhoseSumOverflows() {
+		StepVerifier.create(service.applyStockDeltas("1", List.of(
+						new StockDelta("Sucursal", "Empanada", Integer.MAX_VALUE),
+						new StockDelta("Sucursal", "empanada", 1)), StockDeltaMode.REJECT))
+				.expectErrorMatches(e -> e instanceof BusinessException
+						&& e.getMessage().equals("El ajuste de stock excede el máximo permitido"))
+				.verify();
+
+		verify(repository, never()).applyStockDeltas(anyString(), any(), any());
+	}
+
 	@Test
 	void shouldUpdateProductName() {
 		Product product = Product.builder().name("Empanada").stock(10).build();
@@ -213,7 +460,7 @@ class FranchiseServiceTest {
 		when(repository.save(any()))
 				.thenReturn(Mono.just(franchise));
 
-		StepVerifier.create(service.updateProductName("1", "Sucursal", "Empanada", "Arepa"))
+		StepVerifier.create(service.updateProductName("1", "Sucursal", "Empanada", "Arepa", null))
 				.expectNextMatches(f ->
 						f.getBranches().get(0).getProducts().get(0).getName().equals("Arepa")
 				)
@@ -222,24 +469,71 @@ class FranchiseServiceTest {
 
 	@Test
 	void shouldGetHighestStockProducts() {
-		Product p1 = new Product("Empanada", 10);
-		Product p2 = new Product("Chorizo", 30);
-		Product p3 = new Product("Arepa", 25);
+		HighestStockProductDTO top1 = new HighestStockProductDTO("Sucursal 1", "Chorizo", 30);
+		HighestStockProductDTO top2 = new HighestStockProductDTO("Sucursal 2", "Arepa", 25);
 
-		Branch b1 = new Branch("Sucursal 1", List.of(p1, p2));
-		Branch b2 = new Branch("Sucursal 2", List.of(p3));
+		when(repository.findHighestStockProducts("1", 1))
+				.thenReturn(Flux.just(top1, top2));
 
-		Franchise franchise = Franchise.builder()
-				.id("1")
-				.branches(List.of(b1, b2))
-				.build();
+		StepVerifier.create(service.getHighestStockProducts("1", 1))
+				.expectNext(top1)
+				.expectNext(top2)
+				.verifyComplete();
 
-		when(repository.findById("1"))
-				.thenReturn(Mono.just(franchise));
+		verify(repository, never()).findById(anyString());
+	}
+
+	@Test
+	void shouldFailHighestStockProductsForUnknownFranchise() {
+		when(repository.findHighestStockProducts("1", 1))
+				.thenReturn(Flux.empty());
+		when(repository.existsById("1"))
+				.thenReturn(Mono.just(false));
 
-		StepVerifier.create(service.getHighestStockProducts("1"))
-				.expectNext(new HighestStockProductDTO("Sucursal 1", "Chorizo", 30))
-				.expectNext(new HighestStockProductDTO("Sucursal 2", "Arepa", 25))
+		StepVerifier.create(service.getHighestStockProducts("1", 1))
+				.expectError(ResourceNotFoundException.class)
+				.verify();
+	}
+
+	@Test
+	void shouldGetInventoryAnalytics() {
+		when(repository.findBranchStockTotals("1"))
+				.thenReturn(Flux.just(new BranchStockDTO("Centro", 2, 32)));
+		when(repository.findLowStockProducts(null, 5, 10))
+				.thenReturn(Flux.just(new ProductStockDTO("1", "Centro", "Pan", 2)));
+		when(repository.findTopStockProducts("1", 3))
+				.thenReturn(Flux.empty());
+		when(repository.existsById("1"))
+				.thenReturn(Mono.just(true));
+
+		StepVerifier.create(service.getBranchStockTotals("1"))
+				.expectNext(new BranchStockDTO("Centro", 2, 32))
+				.verifyComplete();
+		StepVerifier.create(service.getLowStockProducts(null, 5, 10))
+				.expectNext(new ProductStockDTO("1", "Centro", "Pan", 2))
 				.verifyComplete();
+		StepVerifier.create(service.getTopStockProducts("1", 3))
+				.verifyComplete();
+
+		verify(repository, never()).findById(anyString());
+		verify(repository, never()).findAll();
+	}
+
+	@Test
+	void shouldValidateInventoryAnalyticsParameters() {
+		when(repository.findBranchStockTotals("1"))
+				.thenReturn(Flux.empty());
+		when(repository.existsById("1"))
+				.thenReturn(Mono.just(false));
+
+		StepVerifier.create(service.getBranchStockTotals("1"))
+				.expectError(ResourceNotFoundException.class)
+				.verify();
+		StepVerifier.create(service.getLowStockProducts("1", -1, 10))
+				.expectErrorMatches(e -> e instanceof BusinessException && e.getMessage().equals("El umbral no puede ser negativo"))
+				.verify();
+		StepVerifier.create(service.getTopStockProducts(null, 0))
+				.expectError(BusinessException.class)
+				.verify();
 	}
 }
@@ -0,0 +1,119 @@
+package com.example.franchise.config;
+
+import com.example.franchise.config.AdmissionControlFilter.FranchiseLimiter;
+import com.example.franchise.controller.FranchiseController;
+import com.example.franchise.domain.model.Franchise;
+import com.example.franchise.exception.GlobalExceptionHandler;
+import com.example.franchise.exception.ResourceNotFoundException;
+import com.example.franchise.repository.FranchiseStore;
+import com.example.franchise.service.BulkStockService;
+import com.example.franchise.service.FranchiseService;
+import com.example.franchise.service.FranchiseTransferService;
+import com.example.franchise.service.StockAlertRules;
+import com.example.franchise.service.StockHistoryService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class AdmissionControlFilterTest {
+
+	private static final long MS = Duration.ofMillis(1).toNanos();
+
+	@Test
+	void shouldRejectAFranchiseOverItsRateBeforeReachingTheController() {
+		FranchiseService service = mock(FranchiseService.class);
+		when(service.getFranchise("1")).thenReturn(Mono.just(Franchise.builder().id("1").name("Uno").version(1L).build()));
+		when(service.getFranchise("2")).thenReturn(Mono.just(Franchise.builder().id("2").name("Dos").version(1L).build()));
+		when(service.getFranchiseVersion("1")).thenReturn(Mono.just(1L));
+		when(service.getFranchiseVersion("2")).thenReturn(Mono.just(1L));
+		when(service.getFranchises(null, 100)).thenReturn(Flux.empty());
+		when(service.getFranchise("x")).thenReturn(Mono.error(new ResourceNotFoundException("Franquicia no encontrada")));
+		when(service.getFranchiseVersion("x")).thenReturn(Mono.error(new ResourceNotFoundException("Franquicia no encontrada")));
+		FranchiseStore store = mock(FranchiseStore.class);
+		when(store.existsById(anyString())).thenAnswer(call -> Mono.just(!call.getArgument(0).equals("x")));
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		WebTestClient client = WebTestClient.bindToController(new FranchiseController(
+						service,
+						mock(BulkStockService.class),
+						mock(StockAlertRules.class),
+						mock(FranchiseTransferService.class),
+						mock(StockHistoryService.class)))
+				.controllerAdvice(new GlobalExceptionHandler())
+				.webFilter(new AdmissionControlFilter(properties(0.01, 2, 4), store, registry,
+						new ObjectMapper().findAndRegisterModules()))
+				.build();
+
+		for (int i = 0; i < 2; i++) {
+			client.get().uri("/api/franchise/1").exchange().expectStatus().isOk();
+		}
+		client.get().uri("/api/franchise/1").exchange()
+				.expectStatus().isEqualTo(HttpStatus.TOO_MANY_REQUESTS)
+				.expectHeader().valueEquals(HttpHeaders.RETRY_AFTER, "100")
+				.expectBody()
+				.jsonPath("$.status").isEqualTo(429)
+				.jsonPath("$.error").isEqualTo("Demasiadas solicitudes para la franquicia, intente más tarde");
+
+		client.get().uri("/api/franchise/2").exchange().expectStatus().isOk();
+		for (int i = 0; i < 3; i++) {
+			client.get().uri("/api/franchise?limit=100").exchange().expectStatus().isOk();
+		}
+		verify(service, times(2)).getFranchiseVersion("1");
+		assertEquals(1, registry.counter(AdmissionControlFilter.REJECTED, "franchise", "1", "reason", "rate").count());
+		assertEquals(4, registry.get("franchise.admission.limit").tag("franchise", "2").gauge().value());
+
+		// Ids that never resolved to a franchise are not used as tags.
+		for (int i = 0; i < 2; i++) {
+			client.get().uri("/api/franchise/x").exchange().expectBody().jsonPath("$.status").isEqualTo(404);
+		}
+		client.get().uri("/api/franchise/x").exchange().expectStatus().isEqualTo(HttpStatus.TOO_MANY_REQUESTS);
+		assertNull(registry.find("franchise.admission.limit").tag("franchise", "x").gauge());
+		assertNull(registry.find(AdmissionControlFilter.REJECTED).tag("franchise", "x").counter());
+		assertEquals(1, registry.counter(AdmissionControlFilter.REJECTED,
+				"franchise", AdmissionControlFilter.UNKNOWN, "reason", "rate").count());
+	}
+
+	@Test
+	void shouldLimitConcurrencyAndAdaptTheLimitToLatency() {
+		FranchiseLimiter limiter = new FranchiseLimiter(properties(1000, 1000, 2), 0);
+
+		assertNull(limiter.tryAcquire(0));
+		assertNull(limiter.tryAcquire(0));
+		assertEquals(new AdmissionControlFilter.Rejection("concurrency", 1), limiter.tryAcquire(0));
+
+		// Both answers are slow, but they belong to the same round: the limit is only halved once.
+		limiter.release(0, 300 * MS);
+		limiter.release(0, 310 * MS);
+		assertEquals(1, limiter.limit());
+		assertNull(limiter.tryAcquire(400 * MS));
+		assertEquals("concurrency", limiter.tryAcquire(400 * MS).reason());
+
+		limiter.release(400 * MS, 410 * MS);
+		assertEquals(2, limiter.limit());
+		List.of(500, 501).forEach(t -> assertNull(limiter.tryAcquire(t * MS)));
+		limiter.release(500 * MS, 510 * MS);
+		limiter.release(501 * MS, 511 * MS);
+		assertEquals(2.5, limiter.limit());
+		assertEquals(0, limiter.inFlight());
+	}
+
+	private static AdmissionControlProperties properties(double rate, int burst, int initialLimit) {
+		return new AdmissionControlProperties(true, rate, burst, initialLimit, 1, 4, Duration.ofMillis(200), 0.5,
+				Duration.ofMinutes(10), 1000);
+	}
+}
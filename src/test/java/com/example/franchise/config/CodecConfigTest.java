@@ -0,0 +1,93 @@
+package com.example.franchise.config;
+
+import com.example.franchise.controller.FranchiseController;
+import com.example.franchise.domain.model.Branch;
+import com.example.franchise.domain.model.Franchise;
+import com.example.franchise.domain.model.Product;
+import com.example.franchise.service.BulkStockService;
+import com.example.franchise.service.FranchiseService;
+import com.example.franchise.service.FranchiseTransferService;
+import com.example.franchise.service.StockAlertRules;
+import com.example.franchise.service.StockHistoryService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class CodecConfigTest {
+
+	private static final MediaType SMILE = MediaType.parseMediaType("application/x-jackson-smile");
+
+	private final Franchise franchise = Franchise.builder()
+			.id("1")
+			.name("Franquicia")
+			.version(2L)
+			.branches(List.of(new Branch("Centro", List.of(new Product("Pizza", 3)))))
+			.build();
+	private WebTestClient client;
+
+	@BeforeEach
+	void setUp() {
+		FranchiseService service = mock(FranchiseService.class);
+		when(service.getFranchiseVersion("1")).thenReturn(Mono.just(2L));
+		when(service.getFranchise("1")).thenReturn(Mono.just(franchise));
+		CodecConfig config = new CodecConfig();
+		client = WebTestClient.bindToController(new FranchiseController(
+						service,
+						mock(BulkStockService.class),
+						mock(StockAlertRules.class),
+						mock(FranchiseTransferService.class),
+						mock(StockHistoryService.class)))
+				.httpMessageCodecs(config.binaryCodecs(Jackson2ObjectMapperBuilder.json())::customize)
+				.contentTypeResolver(config::configureContentTypeResolver)
+				.build();
+	}
+
+	@Test
+	void shouldNegotiateBinaryFormats() throws Exception {
+		byte[] json = body(MediaType.APPLICATION_JSON);
+		byte[] cbor = body(MediaType.APPLICATION_CBOR);
+		byte[] smile = body(SMILE);
+
+		assertEquals(franchise, new ObjectMapper(new CBORFactory()).readValue(cbor, Franchise.class));
+		assertEquals(franchise, new ObjectMapper(new SmileFactory()).readValue(smile, Franchise.class));
+		assertEquals(franchise, new ObjectMapper().readValue(json, Franchise.class));
+		assertTrue(cbor.length < json.length);
+		assertTrue(smile.length < json.length);
+	}
+
+	@Test
+	void shouldKeepJsonAsTheDefaultFormat() {
+		client.get().uri("/api/franchise/1")
+				.exchange()
+				.expectStatus().isOk()
+				.expectHeader().contentType(MediaType.APPLICATION_JSON);
+		client.get().uri("/api/franchise/1")
+				.accept(MediaType.ALL)
+				.exchange()
+				.expectStatus().isOk()
+				.expectHeader().contentType(MediaType.APPLICATION_JSON);
+	}
+
+	private byte[] body(MediaType mediaType) {
+		return client.get().uri("/api/franchise/1")
+				.accept(mediaType)
+				.exchange()
+				.expectStatus().isOk()
+				.expectHeader().contentType(mediaType)
+				.expectBody().returnResult()
+				.getResponseBody();
+	}
+}
@@ -0,0 +1,86 @@
+package com.example.franchise.config;
+
+import com.example.franchise.domain.dto.ImportProgressDTO;
+import com.example.franchise.domain.model.Franchise;
+import com.example.franchise.service.FranchiseTransferService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import reactor.core.publisher.Flux;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class FranchiseTransferRunnerTest {
+
+	@TempDir
+	Path directory;
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+	private FranchiseTransferService service;
+	private FranchiseTransferRunner runner;
+
+	@BeforeEach
+	void setUp() {
+		service = mock(FranchiseTransferService.class);
+		runner = new FranchiseTransferRunner(service, new FranchiseTransferProperties(2, 2), objectMapper, null);
+	}
+
+	@Test
+	void shouldResumeAnExportAfterTheLastCheckpointedFranchise() throws Exception {
+		Path file = directory.resolve("backup.ndjson");
+		when(service.exportFranchises(null)).thenReturn(Flux.just(franchise("a"), franchise("b"), franchise("c")));
+		when(service.exportFranchises("b")).thenReturn(Flux.just(franchise("c")));
+
+		assertEquals(3, runner.exportTo(file));
+		String complete = Files.readString(file);
+		assertFalse(Files.exists(directory.resolve("backup.ndjson.checkpoint")));
+
+		// A run that died after the first batch left a checkpoint and half a line behind.
+		int firstBatch = complete.indexOf('\n', complete.indexOf('\n') + 1) + 1;
+		Files.writeString(file, complete.substring(0, firstBatch) + "{\"id\":\"c\",\"na");
+		Files.writeString(directory.resolve("backup.ndjson.checkpoint"), firstBatch + " b");
+
+		assertEquals(1, runner.exportTo(file));
+		assertEquals(complete, Files.readString(file));
+	}
+
+	@Test
+	void shouldSkipCheckpointedLinesAndKeepTheCheckpointWhenAnImportFails() throws Exception {
+		Path file = directory.resolve("backup.ndjson");
+		for (String id : List.of("a", "b", "c")) {
+			Files.writeString(file, objectMapper.writeValueAsString(franchise(id)) + "\n",
+					StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+		}
+		Path checkpoint = directory.resolve("backup.ndjson.checkpoint");
+		Files.writeString(checkpoint, "1");
+
+		List<String> received = new ArrayList<>();
+		when(service.importFranchises(any(), eq(0L))).thenAnswer(invocation -> {
+			Flux<Franchise> franchises = invocation.getArgument(0);
+			return franchises.map(Franchise::getId)
+					.doOnNext(received::add)
+					.thenMany(Flux.just(new ImportProgressDTO(1, 1, null), new ImportProgressDTO(1, 1, "fallo")));
+		});
+
+		ImportProgressDTO progress = runner.importFrom(file);
+
+		assertEquals(List.of("b", "c"), received);
+		assertEquals(new ImportProgressDTO(2, 1, "fallo"), progress);
+		assertEquals("2", Files.readString(checkpoint));
+	}
+
+	private static Franchise franchise(String id) {
+		return Franchise.builder().id(id).name("Franquicia " + id).branches(new ArrayList<>()).version(0L).build();
+	}
+}
@@ -0,0 +1,114 @@
+package com.example.franchise.config;
+
+import com.example.franchise.domain.model.Franchise;
+import com.mongodb.reactivestreams.client.MongoClient;
+import com.mongodb.reactivestreams.client.MongoClients;
+import de.bwaldvogel.mongo.MongoServer;
+import de.bwaldvogel.mongo.backend.memory.MemoryBackend;
+import org.bson.Document;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.IndexInfo;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MongoIndexManagerTest {
+
+	private MongoServer server;
+	private MongoClient client;
+	private ReactiveMongoTemplate template;
+	private MongoIndexManager manager;
+
+	@BeforeEach
+	void setUp() {
+		server = new MongoServer(new MemoryBackend());
+		client = MongoClients.create(server.bindAndGetConnectionString());
+		template = new ReactiveMongoTemplate(client, "franchise-test");
+		manager = new MongoIndexManager(
+				template, new StorageProperties(StorageProperties.Mode.EMBEDDED, 500), new IndexProperties(true),
+				new StockHistoryProperties(true, 16, 16, Duration.ofMillis(10), Duration.ofDays(365)));
+	}
+
+	@AfterEach
+	void tearDown() {
+		client.close();
+		server.shutdown();
+	}
+
+	@Test
+	void shouldReplaceTheLegacyBranchNameIndexWithCollationAwareIndexes() {
+		template.indexOps(Franchise.class)
+				.createIndex(new Index().on("branches.name", Sort.Direction.ASC).unique().named("branches.name"))
+				.block();
+
+		manager.ensureIndexes().then(manager.explainHotQueries()).block();
+		manager.ensureIndexes().block();
+
+		Map<String, IndexInfo> indexes = template.indexOps(Franchise.class).getIndexInfo()
+				.collectMap(IndexInfo::getName)
+				.block();
+		assertFalse(indexes.containsKey("branches.name"));
+		IndexInfo name = indexes.get("franchise_name_ci");
+		assertTrue(name.isUnique());
+		assertEquals(2, name.getCollation().map(c -> c.getInteger("strength")).orElseThrow());
+
+		List<String> normalized = template.indexOps("products").getIndexInfo()
+				.map(IndexInfo::getName)
+				.collectList()
+				.block();
+		assertTrue(normalized.containsAll(List.of("branch_product_key", "franchise_branch_stock", "franchise_stock", "stock")));
+		assertTrue(template.indexOps("stock_movements").getIndexInfo()
+				.any(info -> info.getName().equals("franchise_branch_product_time"))
+				.block());
+
+		template.save(Franchise.builder().name("Pizza").build()).block();
+		StepVerifier.create(template.save(Franchise.builder().name("Pizza").build()))
+				.expectError(DuplicateKeyException.class)
+				.verify();
+	}
+
+	@Test
+	void shouldFailWhenAUniqueIndexCannotBeCreated() {
+		template.insert(new Document("name", "Pizza"), "franchises").block();
+		template.insert(new Document("name", "Pizza"), "franchises").block();
+
+		StepVerifier.create(manager.ensureIndexes())
+				.expectErrorMatches(e -> e instanceof IllegalStateException
+						&& e.getMessage().startsWith("Could not create required index franchise_name_ci on franchises"))
+				.verify();
+	}
+
+	@Test
+	void shouldStartOverARegularStockHistoryCollection() {
+		template.insert(new Document("meta", new Document("franchiseId", "1")), "stock_movements").block();
+
+		StepVerifier.create(manager.ensureIndexes()).verifyComplete();
+		assertEquals(1L, template.getCollection("stock_movements").flatMap(c -> Mono.from(c.countDocuments())).block());
+	}
+
+	@Test
+	void shouldReadStagesFromTheWinningPlan() {
+		Document explain = Document.parse("""
+				{ queryPlanner: { winningPlan: { queryPlan: {
+				    stage: "FETCH",
+				    inputStage: { stage: "OR", inputStages: [ { stage: "IXSCAN" }, { stage: "COLLSCAN" } ] }
+				} } } }
+				""");
+
+		assertEquals(List.of("FETCH", "OR", "IXSCAN", "COLLSCAN"), MongoIndexManager.planStages(explain));
+		assertEquals(List.of(), MongoIndexManager.planStages(new Document("ok", 1)));
+	}
+}
@@ -0,0 +1,100 @@
+package com.example.franchise.config;
+
+import com.example.franchise.domain.dto.HighestStockProductDTO;
+import com.example.franchise.exception.ResourceNotFoundException;
+import com.example.franchise.repository.FranchiseStore;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.DocumentCodec;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.data.mongodb.core.mapping.event.BeforeSaveEvent;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+
+class ReactiveTimingInterceptorTest {
+
+	private SimpleMeterRegistry registry;
+	private FranchiseStore target;
+	private FranchiseStore store;
+
+	@BeforeEach
+	void setUp() {
+		registry = new SimpleMeterRegistry();
+		target = mock(FranchiseStore.class);
+		ProxyFactory proxy = new ProxyFactory(target);
+		proxy.addInterface(FranchiseStore.class);
+		proxy.addAdvice(new ReactiveTimingInterceptor(registry, "franchise.store", true));
+		store = (FranchiseStore) proxy.getProxy();
+	}
+
+	@Test
+	void shouldTimeOnSubscriptionAndTagTheOutcome() {
+		when(target.existsById("f1")).thenReturn(Mono.just(true));
+		when(target.findHighestStockProducts("f1", 1))
+				.thenReturn(Flux.just(new HighestStockProductDTO("Sucursal", "Pizza", 3)));
+		when(target.findById("missing")).thenReturn(Mono.error(new ResourceNotFoundException("Franquicia no encontrada")));
+
+		Mono<Boolean> exists = store.existsById("f1");
+		assertNull(registry.find("franchise.store").timer());
+
+		StepVerifier.create(exists).expectNext(true).verifyComplete();
+		StepVerifier.create(store.findHighestStockProducts("f1", 1)).expectNextCount(1).verifyComplete();
+		StepVerifier.create(store.findById("missing")).expectError(ResourceNotFoundException.class).verify();
+
+		assertEquals(1, timer("existsById", "success", "none").count());
+		assertEquals(1, timer("findHighestStockProducts", "success", "none").count());
+		assertEquals(1, timer("findById", "error", "ResourceNotFoundException").count());
+		assertEquals(2, registry.find(ReactiveTimingInterceptor.FRANCHISE_REQUESTS).tag("franchise", "f1").counters()
+				.stream().mapToDouble(c -> c.count()).sum());
+	}
+
+	@Test
+	void shouldLeaveNonReactiveResultsAlone() {
+		when(target.toString()).thenReturn("store");
+
+		assertEquals("store", store.toString());
+		assertTrue(registry.getMeters().isEmpty());
+	}
+
+	@Test
+	void shouldRecordDocumentSizePerCollection() {
+		DocumentSizeMetrics metrics = new DocumentSizeMetrics(registry);
+
+		metrics.onBeforeSave(new BeforeSaveEvent<>(new Object(), new Document("name", "Pizza"), "franchises"));
+
+		assertEquals(1, registry.get("mongodb.document.size").tag("collection", "franchises").summary().count());
+		assertTrue(registry.get("mongodb.document.size").summary().totalAmount() > 0);
+
+		Document franchise = new Document("_id", new ObjectId())
+				.append("name", "Pizzería Ñandú 🍕")
+				.append("version", 3L)
+				.append("branches", List.of(new Document("name", "Centro").append("products", List.of(
+						new Document("name", "Pizza").append("stock", 5).append("updatedAt", new Date()),
+						new Document("name", "Arepa").append("stock", 7).append("price", 2.5).append("promo", null)))));
+		assertEquals(new RawBsonDocument(franchise, new DocumentCodec()).getByteBuffer().remaining(),
+				DocumentSizeMetrics.bsonSize(franchise));
+	}
+
+	private Timer timer(String method, String outcome, String exception) {
+		return registry.get("franchise.store")
+				.tags("method", method, "outcome", outcome, "exception", exception)
+				.timer();
+	}
+}
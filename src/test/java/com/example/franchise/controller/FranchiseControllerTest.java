@@ -0,0 +1,163 @@
+package com.example.franchise.controller;
+
+import com.example.franchise.domain.dto.HighestStockProductDTO;
+import com.example.franchise.domain.model.Branch;
+import com.example.franchise.domain.model.Franchise;
+import com.example.franchise.domain.model.Product;
+import com.example.franchise.exception.GlobalExceptionHandler;
+import com.example.franchise.exception.PreconditionFailedException;
+import com.example.franchise.service.BulkStockService;
+import com.example.franchise.service.FranchiseService;
+import com.example.franchise.service.FranchiseTransferService;
+import com.example.franchise.service.StockAlertRules;
+import com.example.franchise.service.StockHistoryService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.json.JsonCompareMode;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class FranchiseControllerTest {
+
+	private FranchiseService service;
+	private WebTestClient client;
+
+	@BeforeEach
+	void setUp() {
+		service = mock(FranchiseService.class);
+		client = WebTestClient.bindToController(new FranchiseController(
+				service,
+				mock(BulkStockService.class),
+				mock(StockAlertRules.class),
+				mock(FranchiseTransferService.class),
+				mock(StockHistoryService.class)
+		)).controllerAdvice(new GlobalExceptionHandler()).build();
+
+		Franchise franchise = Franchise.builder()
+				.id("1")
+				.name("Franquicia")
+				.version(7L)
+				.branches(new ArrayList<>(List.of(
+						new Branch("Centro", new ArrayList<>(List.of(new Product("Pizza", 3), new Product("Arepa", 5)))),
+						new Branch("Norte", new ArrayList<>()))))
+				.build();
+		when(service.addProduct(eq("1"), eq("centro"), any(Product.class), isNull())).thenReturn(Mono.just(franchise));
+		when(service.removeProduct("1", "Centro", "Empanada", null)).thenReturn(Mono.just(franchise));
+		when(service.updateFranchiseName("1", "Franquicia", null)).thenReturn(Mono.just(franchise));
+		when(service.getFranchiseVersion("1")).thenReturn(Mono.just(7L));
+		when(service.getFranchise("1")).thenReturn(Mono.just(franchise));
+		when(service.getHighestStockProducts("1", 1))
+				.thenReturn(Flux.just(new HighestStockProductDTO("Centro", "Arepa", 5)));
+	}
+
+	@Test
+	void shouldReturnTheWholeFranchiseByDefault() {
+		client.post().uri("/api/franchise/1/branch/centro/product")
+				.contentType(MediaType.APPLICATION_JSON)
+				.bodyValue(new Product("PIZZA", 3))
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody()
+				.jsonPath("$.branches.length()").isEqualTo(2)
+				.jsonPath("$.branches[0].products.length()").isEqualTo(2);
+	}
+
+	@Test
+	void shouldReturnOnlyTheAffectedEntityOrAnAcknowledgement() {
+		client.post().uri("/api/franchise/1/branch/centro/product?response=ENTITY")
+				.contentType(MediaType.APPLICATION_JSON)
+				.bodyValue(new Product("PIZZA", 3))
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody().json("{\"name\": \"Pizza\", \"stock\": 3}", JsonCompareMode.STRICT);
+
+		client.delete().uri("/api/franchise/1/branch/Centro/product/Empanada?response=ENTITY")
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody()
+				.jsonPath("$.name").isEqualTo("Centro")
+				.jsonPath("$.products.length()").isEqualTo(2);
+
+		client.put().uri("/api/franchise/1/name?response=ENTITY")
+				.contentType(MediaType.TEXT_PLAIN)
+				.bodyValue("Franquicia")
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody().json("{\"id\": \"1\", \"name\": \"Franquicia\"}", JsonCompareMode.STRICT);
+
+		client.delete().uri("/api/franchise/1/branch/Centro/product/Empanada?response=ACK")
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody().json("{\"id\": \"1\", \"version\": 7}", JsonCompareMode.STRICT);
+	}
+
+	@Test
+	void shouldAnswerUnchangedReadsWithNotModified() {
+		client.get().uri("/api/franchise/1")
+				.exchange()
+				.expectStatus().isOk()
+				.expectHeader().valueEquals(HttpHeaders.ETAG, "\"7\"")
+				.expectBody().jsonPath("$.name").isEqualTo("Franquicia");
+		client.get().uri("/api/franchise/1/highest-stock-products")
+				.exchange()
+				.expectStatus().isOk()
+				.expectHeader().valueEquals(HttpHeaders.ETAG, "\"7\"")
+				.expectBody().jsonPath("$[0].productName").isEqualTo("Arepa");
+
+		when(service.getFranchise("1")).thenReturn(Mono.error(new AssertionError("body must not be loaded")));
+		when(service.getHighestStockProducts(anyString(), eq(1)))
+				.thenReturn(Flux.error(new AssertionError("body must not be loaded")));
+		client.get().uri("/api/franchise/1")
+				.header(HttpHeaders.IF_NONE_MATCH, "\"7\"")
+				.exchange()
+				.expectStatus().isNotModified()
+				.expectBody().isEmpty();
+		client.get().uri("/api/franchise/1/highest-stock-products")
+				.header(HttpHeaders.IF_NONE_MATCH, "\"6\", \"7\"")
+				.exchange()
+				.expectStatus().isNotModified()
+				.expectBody().isEmpty();
+	}
+
+	@Test
+	void shouldPassIfMatchAsTheExpectedVersion() {
+		when(service.removeProduct("1", "Centro", "Empanada", 7L)).thenReturn(Mono.just(franchise(8L)));
+		when(service.removeProduct("1", "Centro", "Empanada", 6L))
+				.thenReturn(Mono.error(new PreconditionFailedException("La versión de la franquicia no coincide")));
+
+		client.delete().uri("/api/franchise/1/branch/Centro/product/Empanada?response=ACK")
+				.header(HttpHeaders.IF_MATCH, "\"7\"")
+				.exchange()
+				.expectStatus().isOk()
+				.expectHeader().valueEquals(HttpHeaders.ETAG, "\"8\"")
+				.expectBody().json("{\"id\": \"1\", \"version\": 8}", JsonCompareMode.STRICT);
+		client.delete().uri("/api/franchise/1/branch/Centro/product/Empanada")
+				.header(HttpHeaders.IF_MATCH, "\"6\"")
+				.exchange()
+				.expectStatus().isEqualTo(412);
+		client.delete().uri("/api/franchise/1/branch/Centro/product/Empanada")
+				.header(HttpHeaders.IF_MATCH, "W/\"7\"")
+				.exchange()
+				.expectStatus().isEqualTo(412);
+		verify(service, times(2)).removeProduct(eq("1"), eq("Centro"), eq("Empanada"), any());
+	}
+
+	private static Franchise franchise(long version) {
+		return Franchise.builder().id("1").name("Franquicia").version(version).branches(new ArrayList<>()).build();
+	}
+}
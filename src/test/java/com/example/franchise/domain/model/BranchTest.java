@@ -0,0 +1,48 @@
+package com.example.franchise.domain.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BranchTest {
+
+	@Test
+	void shouldKeepTheNameIndexInStepWithTheProducts() {
+		Branch branch = new Branch("Centro", new ArrayList<>(List.of(new Product("Pizza", 1))));
+		assertTrue(branch.findProduct("PIZZA").isPresent());
+
+		assertThrows(UnsupportedOperationException.class, () -> branch.getProducts().set(0, new Product("Pan", 2)));
+
+		branch.renameProduct(branch.findProduct("pizza").orElseThrow(), "Pan");
+		assertFalse(branch.findProduct("Pizza").isPresent());
+		assertEquals(1, branch.findProduct("pan").orElseThrow().getStock());
+
+		branch.setProducts(new ArrayList<>(List.of(new Product("Arepa", 3))));
+		assertFalse(branch.findProduct("Pan").isPresent());
+		assertEquals(3, branch.findProduct("arepa").orElseThrow().getStock());
+	}
+
+	@Test
+	void shouldResolveLegacyDuplicateNamesToTheFirstAndThenTheNext() {
+		Branch branch = new Branch("Centro", new ArrayList<>(List.of(
+				new Product("Pizza", 1), new Product("PIZZA", 2), new Product("Pan", 3))));
+		assertEquals(1, branch.findProduct("pizza").orElseThrow().getStock());
+
+		assertTrue(branch.removeProduct("Pizza"));
+		assertEquals(2, branch.findProduct("pizza").orElseThrow().getStock());
+		assertEquals(2, branch.getProducts().size());
+
+		Franchise franchise = Franchise.builder()
+				.branches(new ArrayList<>(List.of(branch, new Branch("CENTRO", new ArrayList<>()))))
+				.build();
+		franchise.renameBranch(franchise.findBranch("centro").orElseThrow(), "Norte");
+		assertEquals(0, franchise.findBranch("centro").orElseThrow().getProducts().size());
+		assertEquals(2, franchise.findBranch("norte").orElseThrow().getProducts().size());
+	}
+}
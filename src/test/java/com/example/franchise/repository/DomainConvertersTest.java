@@ -0,0 +1,67 @@
+package com.example.franchise.repository;
+
+import com.example.franchise.domain.model.Branch;
+import com.example.franchise.domain.model.Franchise;
+import com.example.franchise.domain.model.Product;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class DomainConvertersTest {
+
+	private final MappingMongoConverter reflective = converter(new MongoCustomConversions(List.of()));
+	private final MappingMongoConverter handWritten = converter(new MongoCustomConversions(DomainConverters.converters()));
+
+	@Test
+	void shouldWriteTheSameDocumentsAsTheReflectiveMapping() {
+		Franchise franchise = Franchise.builder()
+				.id("6650f0c2a1b2c3d4e5f60718")
+				.name("Franquicia")
+				.branches(new ArrayList<>(List.of(
+						new Branch("Centro", new ArrayList<>(List.of(new Product("Pizza", 7), new Product("PAN", 0)))),
+						new Branch("Vacia", new ArrayList<>()))))
+				.version(3L)
+				.build();
+
+		Document expected = new Document();
+		reflective.write(franchise, expected);
+		Document actual = new Document();
+		handWritten.write(franchise, actual);
+
+		assertEquals(expected, actual);
+		assertEquals(franchise, handWritten.read(Franchise.class, actual));
+		assertEquals(reflective.read(Franchise.class, expected), handWritten.read(Franchise.class, actual));
+		assertEquals(reflective.convertToMongoType(new Product("Pizza", 1)), handWritten.convertToMongoType(new Product("Pizza", 1)));
+	}
+
+	@Test
+	void shouldReadLegacyDocumentsWithoutKeysOrProducts() {
+		Document stored = new Document("name", "Franquicia").append("branches", List.of(
+				new Document("name", "Centro").append("products", List.of(new Document("name", "Pizza").append("stock", 4L))),
+				new Document("name", "Vacia")));
+
+		Franchise read = handWritten.read(Franchise.class, stored);
+
+		assertEquals(reflective.read(Franchise.class, stored), read);
+		assertEquals("pizza", read.getBranches().get(0).getProducts().get(0).getNameKey());
+		assertEquals(List.of(), read.getBranches().get(1).getProducts());
+	}
+
+	private static MappingMongoConverter converter(MongoCustomConversions conversions) {
+		MongoMappingContext context = new MongoMappingContext();
+		context.setSimpleTypeHolder(conversions.getSimpleTypeHolder());
+		context.afterPropertiesSet();
+		MappingMongoConverter converter = new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, context);
+		converter.setCustomConversions(conversions);
+		converter.afterPropertiesSet();
+		return converter;
+	}
+}
@@ -0,0 +1,358 @@
+package com.example.franchise.repository;
+
+import com.example.franchise.domain.dto.BranchStockDTO;
+import com.example.franchise.domain.dto.FranchiseSummaryDTO;
+import com.example.franchise.domain.dto.HighestStockProductDTO;
+import com.example.franchise.domain.dto.ProductStockDTO;
+import com.example.franchise.domain.dto.StockAdjustmentDTO;
+import com.example.franchise.domain.dto.StockDelta;
+import com.example.franchise.domain.dto.StockDeltaMode;
+import com.example.franchise.domain.dto.StockUpdateRequest;
+import com.example.franchise.domain.model.Branch;
+import com.example.franchise.domain.model.Franchise;
+import com.example.franchise.domain.model.Product;
+import com.example.franchise.exception.InsufficientStockException;
+import com.example.franchise.exception.ResourceNotFoundException;
+import com.example.franchise.config.DocumentBackfillRunner;
+import com.mongodb.ConnectionString;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.reactivestreams.client.MongoClient;
+import com.mongodb.reactivestreams.client.MongoClients;
+import de.bwaldvogel.mongo.MongoServer;
+import de.bwaldvogel.mongo.backend.memory.MemoryBackend;
+import org.bson.Document;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.test.StepVerifier;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FranchiseRepositoryCustomImplTest {
+
+	private MongoServer server;
+	private MongoClient client;
+	private ReactiveMongoTemplate template;
+	private FranchiseRepositoryCustomImpl repository;
+
+	@BeforeEach
+	void setUp() {
+		server = new MongoServer(new MemoryBackend());
+		// mongo-java-server applies updates without locking, so a single connection keeps its writes atomic.
+		client = MongoClients.create(MongoClientSettings.builder()
+				.applyConnectionString(new ConnectionString(server.bindAndGetConnectionString()))
+				.applyToConnectionPoolSettings(pool -> pool.maxSize(1))
+				.build());
+		template = new ReactiveMongoTemplate(client, "franchise-test");
+		repository = new FranchiseRepositoryCustomImpl(template);
+	}
+
+	@AfterEach
+	void tearDown() {
+		client.close();
+		server.shutdown();
+	}
+
+	@Test
+	void shouldUpdateOnlyTheTargetedProduct() {
+		template.save(franchise("1", 2, 3)).block();
+
+		StepVerifier.create(repository.updateProductStock("1", "sucursal 1", "PRODUCTO 2", 99))
+				.expectNext(new ProductStockDTO("1", "sucursal 1", "PRODUCTO 2", 99))
+				.verifyComplete();
+
+		Franchise stored = template.findById("1", Franchise.class).block();
+		assertEquals(99, stored.getBranches().get(1).getProducts().get(2).getStock());
+		assertEquals(0, stored.getBranches().get(0).getProducts().get(2).getStock());
+		assertEquals(0, stored.getBranches().get(1).getProducts().get(1).getStock());
+	}
+
+	@Test
+	void shouldReportWhichTargetIsMissing() {
+		template.save(franchise("1", 1, 1)).block();
+
+		StepVerifier.create(repository.updateProductStock("2", "Sucursal 0", "Producto 0", 1))
+				.expectErrorMatches(e -> e instanceof ResourceNotFoundException
+						&& e.getMessage().equals("Franquicia no encontrada"))
+				.verify();
+		StepVerifier.create(repository.updateProductStock("1", "Sucursal 9", "Producto 0", 1))
+				.expectErrorMatches(e -> e.getMessage().equals("Sucursal no encontrada"))
+				.verify();
+		StepVerifier.create(repository.updateProductStock("1", "Sucursal 0", "Producto 9", 1))
+				.expectErrorMatches(e -> e.getMessage().equals("Producto no encontrado"))
+				.verify();
+	}
+
+	@Test
+	void shouldNotLoseConcurrentUpdatesToDifferentProducts() {
+		int products = 200;
+		template.save(franchise("1", 1, products)).block();
+
+		Flux.range(0, products)
+				.parallel(16)
+				.runOn(Schedulers.parallel())
+				.flatMap(i -> repository.updateProductStock("1", "Sucursal 0", "Producto " + i, i + 1))
+				.sequential()
+				.blockLast();
+
+		Franchise stored = template.findById("1", Franchise.class).block();
+		List<Product> stored0 = stored.getBranches().get(0).getProducts();
+		IntStream.range(0, products)
+				.forEach(i -> assertEquals(i + 1, stored0.get(i).getStock()));
+	}
+
+	@Test
+	void shouldApplyStockUpdatesAsOneBulkWrite() {
+		template.save(franchise("1", 2, 2)).block();
+		template.save(franchise("2", 1, 1)).block();
+
+		StepVerifier.create(repository.updateProductStocks(List.of(
+						new StockUpdateRequest("1", "Sucursal 0", "Producto 1", 11),
+						new StockUpdateRequest("1", "Sucursal 1", "Producto 0", 12),
+						new StockUpdateRequest("2", "Sucursal 0", "Producto 0", 13),
+						new StockUpdateRequest("2", "Sucursal 0", "Producto 9", 14)
+				)))
+				.expectNext(3)
+				.verifyComplete();
+
+		Franchise first = template.findById("1", Franchise.class).block();
+		assertEquals(11, first.getBranches().get(0).getProducts().get(1).getStock());
+		assertEquals(12, first.getBranches().get(1).getProducts().get(0).getStock());
+		assertEquals(13, template.findById("2", Franchise.class).block()
+				.getBranches().get(0).getProducts().get(0).getStock());
+	}
+
+	@Test
+	void shouldSetSeveralStocksOfOneFranchiseInASingleWrite() {
+		template.save(franchise("1", 2, 2)).block();
+
+		StepVerifier.create(repository.setProductStocks("1", List.of(
+						new StockUpdateRequest("1", "Sucursal 0", "Producto 1", 11),
+						new StockUpdateRequest("1", "sucursal 1", "PRODUCTO 0", 12))))
+				.expectNext(true)
+				.verifyComplete();
+		StepVerifier.create(repository.setProductStocks("1", List.of(
+						new StockUpdateRequest("1", "Sucursal 0", "Producto 0", 20),
+						new StockUpdateRequest("1", "Sucursal 0", "Producto 9", 21))))
+				.expectNext(false)
+				.verifyComplete();
+
+		Franchise stored = template.findById("1", Franchise.class).block();
+		assertEquals(0, stored.getBranches().get(0).getProducts().get(0).getStock());
+		assertEquals(11, stored.getBranches().get(0).getProducts().get(1).getStock());
+		assertEquals(12, stored.getBranches().get(1).getProducts().get(0).getStock());
+		assertEquals(1L, stored.getVersion());
+	}
+
+	@Test
+	void shouldIncrementStockAtomicallyWithoutGoingNegative() {
+		template.save(franchise("1", 1, 2)).block();
+
+		StepVerifier.create(repository.incrementProductStock("1", "Sucursal 0", "Producto 1", 5, StockDeltaMode.REJECT))
+				.expectNext(new ProductStockDTO("1", "Sucursal 0", "Producto 1", 5))
+				.verifyComplete();
+		StepVerifier.create(repository.incrementProductStock("1", "Sucursal 0", "Producto 1", -6, StockDeltaMode.REJECT))
+				.expectError(InsufficientStockException.class)
+				.verify();
+		StepVerifier.create(repository.incrementProductStock("1", "Sucursal 0", "Producto 1", -6, StockDeltaMode.CLAMP))
+				.expectNext(new ProductStockDTO("1", "Sucursal 0", "Producto 1", 0))
+				.verifyComplete();
+		StepVerifier.create(repository.incrementProductStock("1", "Sucursal 0", "Producto 9", 1, StockDeltaMode.CLAMP))
+				.expectErrorMatches(e -> e.getMessage().equals("Producto no encontrado"))
+				.verify();
+
+		Flux.range(0, 100)
+				.parallel(16)
+				.runOn(Schedulers.parallel())
+				.flatMap(i -> repository.incrementProductStock("1", "Sucursal 0", "Producto 0", 1, StockDeltaMode.REJECT))
+				.sequential()
+				.blockLast();
+
+		Franchise stored = template.findById("1", Franchise.class).block();
+		assertEquals(100, stored.getBranches().get(0).getProducts().get(0).getStock());
+		assertEquals(0, stored.getBranches().get(0).getProducts().get(1).getStock());
+	}
+
+	@Test
+	void shouldApplyStockDeltasAllOrNothing() {
+		template.save(franchise("1", 2, 2)).block();
+		repository.updateProductStock("1", "Sucursal 0", "Producto 0", 4).block();
+
+		StepVerifier.create(repository.applyStockDeltas("1", List.of(
+						new StockDelta("Sucursal 0", "Producto 0", -3),
+						new StockDelta("Sucursal 0", "Producto 1", 2),
+						new StockDelta("Sucursal 1", "Producto 0", 7)), StockDeltaMode.REJECT))
+				.expectNext(new StockAdjustmentDTO("Sucursal 0", "Producto 0", -3, 1))
+				.expectNext(new StockAdjustmentDTO("Sucursal 0", "Producto 1", 2, 2))
+				.expectNext(new StockAdjustmentDTO("Sucursal 1", "Producto 0", 7, 7))
+				.verifyComplete();
+
+		StepVerifier.create(repository.applyStockDeltas("1", List.of(
+						new StockDelta("Sucursal 1", "Producto 0", 1),
+						new StockDelta("Sucursal 0", "Producto 0", -2)), StockDeltaMode.REJECT))
+				.expectErrorMatches(e -> e instanceof InsufficientStockException
+						&& e.getMessage().equals("Stock insuficiente: Producto 0"))
+				.verify();
+		StepVerifier.create(repository.applyStockDeltas("1", List.of(
+						new StockDelta("Sucursal 9", "Producto 0", 1)), StockDeltaMode.CLAMP))
+				.expectError(ResourceNotFoundException.class)
+				.verify();
+
+		Franchise stored = template.findById("1", Franchise.class).block();
+		assertEquals(1, stored.getBranches().get(0).getProducts().get(0).getStock());
+		assertEquals(2, stored.getBranches().get(0).getProducts().get(1).getStock());
+		assertEquals(7, stored.getBranches().get(1).getProducts().get(0).getStock());
+		assertEquals(0, stored.getBranches().get(1).getProducts().get(1).getStock());
+
+		StepVerifier.create(repository.applyStockDeltas("1", List.of(
+						new StockDelta("Sucursal 1", "Producto 0", 1),
+						new StockDelta("Sucursal 0", "Producto 0", -2),
+						new StockDelta("Sucursal 0", "Producto 1", -1)), StockDeltaMode.CLAMP))
+				.expectNext(new StockAdjustmentDTO("Sucursal 1", "Producto 0", 1, 8))
+				.expectNext(new StockAdjustmentDTO("Sucursal 0", "Producto 0", -1, 0))
+				.expectNext(new StockAdjustmentDTO("Sucursal 0", "Producto 1", -1, 1))
+				.verifyComplete();
+		assertEquals(stored.getVersion() + 1, template.findById("1", Franchise.class).block().getVersion().longValue());
+	}
+
+	@Test
+	void shouldComputeHighestStockProductsOnTheServer() {
+		String id = template.save(Franchise.builder()
+				.branches(List.of(
+						new Branch("Sucursal 1", List.of(
+								new Product("Empanada", 10),
+								new Product("Chorizo", 30),
+								new Product("Pan", 30),
+								new Product("Arepa", 25))),
+						new Branch("Vacia", List.of()),
+						new Branch("Sucursal 2", List.of(new Product("Arepa", 5)))))
+				.build()).block().getId();
+
+		StepVerifier.create(repository.findHighestStockProducts(id, 1))
+				.expectNext(new HighestStockProductDTO("Sucursal 1", "Chorizo", 30))
+				.expectNext(new HighestStockProductDTO("Sucursal 2", "Arepa", 5))
+				.verifyComplete();
+
+		StepVerifier.create(repository.findHighestStockProducts(id, 3))
+				.expectNextMatches(p -> p.branchName().equals("Sucursal 1") && p.stock() == 30)
+				.expectNextMatches(p -> p.branchName().equals("Sucursal 1") && p.stock() == 30)
+				.expectNext(new HighestStockProductDTO("Sucursal 1", "Arepa", 25))
+				.expectNext(new HighestStockProductDTO("Sucursal 2", "Arepa", 5))
+				.verifyComplete();
+	}
+
+	@Test
+	void shouldAggregateInventoryAnalyticsOnTheServer() {
+		String first = template.save(Franchise.builder()
+				.name("Primera")
+				.branches(List.of(
+						new Branch("Centro", List.of(new Product("Pizza", 30), new Product("Pan", 2))),
+						new Branch("Vacia", List.of()),
+						new Branch("Norte", List.of(new Product("Arepa", 0)))))
+				.build()).block().getId();
+		String second = template.save(Franchise.builder()
+				.name("Segunda")
+				.branches(List.of(new Branch("Sur", List.of(new Product("Empanada", 50), new Product("Te", 5)))))
+				.build()).block().getId();
+
+		StepVerifier.create(repository.findBranchStockTotals(first))
+				.expectNext(new BranchStockDTO("Centro", 2, 32))
+				.expectNext(new BranchStockDTO("Vacia", 0, 0))
+				.expectNext(new BranchStockDTO("Norte", 1, 0))
+				.verifyComplete();
+
+		StepVerifier.create(repository.findLowStockProducts(first, 5, 10))
+				.expectNext(new ProductStockDTO(first, "Norte", "Arepa", 0))
+				.expectNext(new ProductStockDTO(first, "Centro", "Pan", 2))
+				.verifyComplete();
+		StepVerifier.create(repository.findLowStockProducts(null, 6, 2))
+				.expectNext(new ProductStockDTO(first, "Norte", "Arepa", 0))
+				.expectNext(new ProductStockDTO(first, "Centro", "Pan", 2))
+				.verifyComplete();
+
+		StepVerifier.create(repository.findTopStockProducts(null, 2))
+				.expectNext(new ProductStockDTO(second, "Sur", "Empanada", 50))
+				.expectNext(new ProductStockDTO(first, "Centro", "Pizza", 30))
+				.verifyComplete();
+		StepVerifier.create(repository.findTopStockProducts(second, 5))
+				.expectNext(new ProductStockDTO(second, "Sur", "Empanada", 50))
+				.expectNext(new ProductStockDTO(second, "Sur", "Te", 5))
+				.verifyComplete();
+	}
+
+	@Test
+	void shouldPageFranchisesByIdWithProjections() {
+		List<String> ids = Flux.range(0, 5)
+				.concatMap(i -> template.save(Franchise.builder()
+						.name("Franquicia " + i)
+						.branches(franchise("x", i, 1).getBranches())
+						.build()))
+				.map(Franchise::getId)
+				.collectList()
+				.block();
+
+		StepVerifier.create(repository.findPage(null, 2).map(Franchise::getId))
+				.expectNext(ids.get(0), ids.get(1))
+				.verifyComplete();
+
+		StepVerifier.create(repository.findSummaryPage(ids.get(1), 2, true))
+				.expectNext(new FranchiseSummaryDTO(ids.get(2), "Franquicia 2", 2))
+				.expectNext(new FranchiseSummaryDTO(ids.get(3), "Franquicia 3", 3))
+				.verifyComplete();
+
+		StepVerifier.create(repository.findSummaryPage(ids.get(3), 10, false))
+				.expectNext(new FranchiseSummaryDTO(ids.get(4), "Franquicia 4", null))
+				.verifyComplete();
+	}
+
+	@Test
+	void shouldRoundTripLegacyDocumentsWithoutNameKeys() {
+		template.getCollection("franchises")
+				.flatMap(c -> Mono.from(c.insertOne(Document.parse("""
+						{ _id: "legacy", name: "Legacy", branches: [
+						    { name: "Centro", products: [ { name: "Pizza", stock: 3 } ] }
+						] }
+						"""))))
+				.block();
+
+		Franchise loaded = template.findById("legacy", Franchise.class).block();
+		assertEquals("centro", loaded.getBranches().get(0).getNameKey());
+		assertTrue(loaded.findBranch("CENTRO").flatMap(b -> b.findProduct("pizza")).isPresent());
+
+		new DocumentBackfillRunner(template).run(null);
+
+		Document raw = template.getCollection("franchises")
+				.flatMap(c -> Mono.from(c.find().first()))
+				.block();
+		Document branch = raw.getList("branches", Document.class).get(0);
+		assertEquals("Centro", branch.getString("name"));
+		assertEquals("centro", branch.getString("nameKey"));
+		assertEquals("pizza", branch.getList("products", Document.class).get(0).getString("nameKey"));
+		assertEquals(1L, raw.getLong("version"));
+
+		StepVerifier.create(repository.updateProductStock("legacy", "CENTRO", "PIZZA", 8))
+				.expectNextCount(1)
+				.verifyComplete();
+	}
+
+	private static Franchise franchise(String id, int branches, int productsPerBranch) {
+		List<Branch> branchList = new ArrayList<>();
+		for (int b = 0; b < branches; b++) {
+			List<Product> products = new ArrayList<>();
+			for (int p = 0; p < productsPerBranch; p++) {
+				products.add(new Product("Producto " + p, 0));
+			}
+			branchList.add(new Branch("Sucursal " + b, products));
+		}
+		return Franchise.builder().id(id).name("Franquicia " + id).branches(branchList).build();
+	}
+}
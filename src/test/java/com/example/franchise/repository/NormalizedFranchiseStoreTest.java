@@ -0,0 +1,300 @@
+package com.example.franchise.repository;
+
+import com.example.franchise.config.IndexProperties;
+import com.example.franchise.config.MongoIndexManager;
+import com.example.franchise.config.StockHistoryProperties;
+import com.example.franchise.config.StorageProperties;
+import com.example.franchise.domain.dto.BranchStockDTO;
+import com.example.franchise.domain.dto.FranchiseSummaryDTO;
+import com.example.franchise.domain.dto.HighestStockProductDTO;
+import com.example.franchise.domain.dto.ProductStockDTO;
+import com.example.franchise.domain.dto.StockAdjustmentDTO;
+import com.example.franchise.domain.dto.StockDelta;
+import com.example.franchise.domain.dto.StockDeltaMode;
+import com.example.franchise.domain.dto.StockUpdateRequest;
+import com.example.franchise.domain.model.Branch;
+import com.example.franchise.domain.model.BranchDocument;
+import com.example.franchise.domain.model.Franchise;
+import com.example.franchise.domain.model.Product;
+import com.example.franchise.domain.model.ProductDocument;
+import com.example.franchise.exception.BusinessException;
+import com.example.franchise.exception.InsufficientStockException;
+import com.example.franchise.exception.PreconditionFailedException;
+import com.example.franchise.exception.ResourceNotFoundException;
+import com.mongodb.ConnectionString;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.reactivestreams.client.MongoClient;
+import com.mongodb.reactivestreams.client.MongoClients;
+import de.bwaldvogel.mongo.MongoServer;
+import de.bwaldvogel.mongo.backend.memory.MemoryBackend;
+import org.bson.Document;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.repository.support.ReactiveMongoRepositoryFactory;
+import org.springframework.data.repository.core.support.RepositoryComposition.RepositoryFragments;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class NormalizedFranchiseStoreTest {
+
+	private MongoServer server;
+	private MongoClient client;
+	private ReactiveMongoTemplate template;
+	private NormalizedFranchiseStore store;
+
+	@BeforeEach
+	void setUp() {
+		server = new MongoServer(new MemoryBackend());
+		// mongo-java-server applies updates without locking, so a single connection keeps its writes atomic.
+		client = MongoClients.create(MongoClientSettings.builder()
+				.applyConnectionString(new ConnectionString(server.bindAndGetConnectionString()))
+				.applyToConnectionPoolSettings(pool -> pool.maxSize(1))
+				.build());
+		template = new ReactiveMongoTemplate(client, "franchise-test");
+		new MongoIndexManager(template, new StorageProperties(StorageProperties.Mode.NORMALIZED, 500), new IndexProperties(false),
+				new StockHistoryProperties(true, 16, 16, Duration.ofMillis(10), Duration.ofDays(365)))
+				.ensureIndexes()
+				.block();
+
+		FranchiseRepository repository = new ReactiveMongoRepositoryFactory(template).getRepository(
+				FranchiseRepository.class,
+				RepositoryFragments.just(new FranchiseRepositoryCustomImpl(template))
+		);
+		store = new NormalizedFranchiseStore(template, repository);
+	}
+
+	@AfterEach
+	void tearDown() {
+		client.close();
+		server.shutdown();
+	}
+
+	@Test
+	void shouldKeepBranchesAndProductsInTheirOwnCollections() {
+		String id = store.insert(franchise("Franquicia", 2, 2)).block().getId();
+
+		Document raw = template.getCollection("franchises")
+				.flatMap(c -> Mono.from(c.find().first()))
+				.block();
+		assertFalse(raw.containsKey("branches"));
+		assertEquals(2L, template.count(new Query(), BranchDocument.class).block());
+		assertEquals(4L, template.count(new Query(), ProductDocument.class).block());
+
+		StepVerifier.create(store.addBranch(id, new Branch("SUCURSAL 0", new ArrayList<>()), null))
+				.expectErrorMatches(e -> e instanceof BusinessException && e.getMessage().equals("La sucursal ya existe"))
+				.verify();
+		StepVerifier.create(store.addProduct(id, "sucursal 1", new Product("PRODUCTO 1", 3), null))
+				.expectErrorMatches(e -> e instanceof BusinessException && e.getMessage().equals("El producto ya existe"))
+				.verify();
+		StepVerifier.create(store.addProduct(id, "Sucursal 9", new Product("Nuevo", 3), null))
+				.expectErrorMatches(e -> e instanceof ResourceNotFoundException && e.getMessage().equals("Sucursal no encontrada"))
+				.verify();
+
+		store.addProduct(id, "Sucursal 1", new Product("Nuevo", 3), null).block();
+		store.renameBranch(id, "Sucursal 0", "Centro", null).block();
+		store.renameProduct(id, "Centro", "Producto 0", "Pizza", null).block();
+		store.removeProduct(id, "Centro", "Producto 1", null).block();
+		StepVerifier.create(store.updateProductStock(id, "centro", "PIZZA", 42))
+				.expectNext(new ProductStockDTO(id, "centro", "PIZZA", 42))
+				.verifyComplete();
+
+		Franchise stored = store.findById(id).block();
+		assertEquals(List.of("Centro", "Sucursal 1"), stored.getBranches().stream().map(Branch::getName).toList());
+		assertEquals(List.of(new Product("Pizza", 42)), stored.getBranches().get(0).getProducts());
+		assertEquals(List.of("Producto 0", "Producto 1", "Nuevo"),
+				stored.getBranches().get(1).getProducts().stream().map(Product::getName).toList());
+		assertEquals(5L, stored.getVersion());
+
+		StepVerifier.create(store.updateProductStock("missing", "Centro", "Pizza", 1))
+				.expectErrorMatches(e -> e.getMessage().equals("Franquicia no encontrada"))
+				.verify();
+	}
+
+	@Test
+	void shouldOnlyApplyMutationsAtTheExpectedVersion() {
+		String id = store.insert(franchise("Franquicia", 1, 1)).block().getId();
+		long version = store.findVersion(id).block();
+
+		StepVerifier.create(store.renameBranch(id, "Sucursal 0", "Centro", version + 1))
+				.expectError(PreconditionFailedException.class)
+				.verify();
+		StepVerifier.create(store.renameBranch(id, "Sucursal 0", "Centro", version))
+				.expectNextMatches(f -> f.getVersion() == version + 1 && f.findBranch("Centro").isPresent())
+				.verifyComplete();
+		StepVerifier.create(store.renameFranchise(id, "Otra", version))
+				.expectError(PreconditionFailedException.class)
+				.verify();
+		store.insert(franchise("Otra", 0, 0)).block();
+		StepVerifier.create(store.renameFranchise(id, "Otra", null))
+				.expectErrorMatches(e -> e instanceof BusinessException && e.getMessage().equals("La franquicia ya existe"))
+				.verify();
+		StepVerifier.create(store.addProduct("missing", "Centro", new Product("Pizza", 1), version))
+				.expectError(ResourceNotFoundException.class)
+				.verify();
+		StepVerifier.create(store.addProduct(id, "Centro", new Product("PRODUCTO 0", 1), version + 1))
+				.expectErrorMatches(e -> e instanceof BusinessException && e.getMessage().equals("El producto ya existe"))
+				.verify();
+		// The failed add keeps the version it claimed, so no later write can reuse it.
+		assertEquals(version + 2, store.findVersion(id).block());
+	}
+
+	@Test
+	void shouldLeaveNothingBehindWhenAnInsertFails() {
+		Franchise franchise = Franchise.builder()
+				.name("Franquicia")
+				.branches(List.of(new Branch("Centro", List.of(new Product("Pizza", 1), new Product("PIZZA", 2)))))
+				.build();
+
+		StepVerifier.create(store.insert(franchise))
+				.expectErrorMatches(e -> e instanceof BusinessException && e.getMessage().equals("El producto ya existe"))
+				.verify();
+
+		assertNull(franchise.getId());
+		assertEquals(1, franchise.getBranches().size());
+		assertEquals(0L, template.count(new Query(), Franchise.class).block());
+		assertEquals(0L, template.count(new Query(), BranchDocument.class).block());
+		assertEquals(0L, template.count(new Query(), ProductDocument.class).block());
+	}
+
+	@Test
+	void shouldAdjustStockWithoutGoingNegative() {
+		String id = store.insert(franchise("Franquicia", 2, 2)).block().getId();
+		store.updateProductStock(id, "Sucursal 0", "Producto 0", 4).block();
+
+		StepVerifier.create(store.incrementProductStock(id, "Sucursal 0", "Producto 0", -5, StockDeltaMode.REJECT))
+				.expectError(InsufficientStockException.class)
+				.verify();
+		StepVerifier.create(store.incrementProductStock(id, "Sucursal 0", "Producto 0", -5, StockDeltaMode.CLAMP))
+				.expectNext(new ProductStockDTO(id, "Sucursal 0", "Producto 0", 0))
+				.verifyComplete();
+		store.incrementProductStock(id, "Sucursal 0", "Producto 0", 4, StockDeltaMode.REJECT).block();
+
+		StepVerifier.create(store.applyStockDeltas(id, List.of(
+						new StockDelta("Sucursal 0", "Producto 0", -3),
+						new StockDelta("Sucursal 1", "Producto 1", 5),
+						new StockDelta("Sucursal 0", "Producto 1", -1)), StockDeltaMode.REJECT))
+				.expectErrorMatches(e -> e instanceof InsufficientStockException
+						&& e.getMessage().equals("Stock insuficiente: Producto 1"))
+				.verify();
+		StepVerifier.create(store.applyStockDeltas(id, List.of(
+						new StockDelta("Sucursal 0", "Producto 0", -3),
+						new StockDelta("Sucursal 1", "Producto 1", 5)), StockDeltaMode.REJECT))
+				.expectNext(new StockAdjustmentDTO("Sucursal 0", "Producto 0", -3, 1))
+				.expectNext(new StockAdjustmentDTO("Sucursal 1", "Producto 1", 5, 5))
+				.verifyComplete();
+		StepVerifier.create(store.applyStockDeltas(id, List.of(
+						new StockDelta("Sucursal 0", "Producto 0", -3),
+						new StockDelta("Sucursal 1", "Producto 1", 1)), StockDeltaMode.CLAMP))
+				.expectNext(new StockAdjustmentDTO("Sucursal 0", "Producto 0", -1, 0))
+				.expectNext(new StockAdjustmentDTO("Sucursal 1", "Producto 1", 1, 6))
+				.verifyComplete();
+
+		Franchise stored = store.findById(id).block();
+		assertEquals(0, stored.getBranches().get(0).getProducts().get(0).getStock());
+		assertEquals(0, stored.getBranches().get(0).getProducts().get(1).getStock());
+		assertEquals(6, stored.getBranches().get(1).getProducts().get(1).getStock());
+
+		StepVerifier.create(store.updateProductStocks(List.of(
+						new StockUpdateRequest(id, "Sucursal 1", "Producto 0", 7),
+						new StockUpdateRequest(id, "Sucursal 9", "Producto 0", 7))))
+				.expectNext(1)
+				.verifyComplete();
+	}
+
+	@Test
+	void shouldComputeHighestStockAndSummariesAcrossCollections() {
+		String id = store.insert(Franchise.builder()
+				.name("Franquicia")
+				.branches(List.of(
+						new Branch("Sucursal 1", List.of(
+								new Product("Empanada", 10),
+								new Product("Chorizo", 30),
+								new Product("Pan", 30),
+								new Product("Arepa", 25))),
+						new Branch("Vacia", List.of()),
+						new Branch("Sucursal 2", List.of(new Product("Arepa", 5)))))
+				.build()).block().getId();
+
+		StepVerifier.create(store.findHighestStockProducts(id, 1))
+				.expectNext(new HighestStockProductDTO("Sucursal 1", "Chorizo", 30))
+				.expectNext(new HighestStockProductDTO("Sucursal 2", "Arepa", 5))
+				.verifyComplete();
+		StepVerifier.create(store.findHighestStockProducts(id, 3))
+				.expectNext(new HighestStockProductDTO("Sucursal 1", "Chorizo", 30))
+				.expectNext(new HighestStockProductDTO("Sucursal 1", "Pan", 30))
+				.expectNext(new HighestStockProductDTO("Sucursal 1", "Arepa", 25))
+				.expectNext(new HighestStockProductDTO("Sucursal 2", "Arepa", 5))
+				.verifyComplete();
+
+		StepVerifier.create(store.findBranchStockTotals(id))
+				.expectNext(new BranchStockDTO("Sucursal 1", 4, 95))
+				.expectNext(new BranchStockDTO("Vacia", 0, 0))
+				.expectNext(new BranchStockDTO("Sucursal 2", 1, 5))
+				.verifyComplete();
+		StepVerifier.create(store.findLowStockProducts(id, 11, 10))
+				.expectNext(new ProductStockDTO(id, "Sucursal 2", "Arepa", 5))
+				.expectNext(new ProductStockDTO(id, "Sucursal 1", "Empanada", 10))
+				.verifyComplete();
+		StepVerifier.create(store.findTopStockProducts(null, 2))
+				.expectNext(new ProductStockDTO(id, "Sucursal 1", "Chorizo", 30))
+				.expectNext(new ProductStockDTO(id, "Sucursal 1", "Pan", 30))
+				.verifyComplete();
+
+		StepVerifier.create(store.findSummaryPage(null, 10, true))
+				.expectNext(new FranchiseSummaryDTO(id, "Franquicia", 3))
+				.verifyComplete();
+		StepVerifier.create(store.findPage(null, 10).map(f -> f.getBranches().size()))
+				.expectNext(3)
+				.verifyComplete();
+	}
+
+	@Test
+	void shouldMigrateEmbeddedFranchisesInBatches() {
+		List<Franchise> embedded = Flux.range(0, 5)
+				.concatMap(i -> template.save(franchise("Franquicia " + i, i, 2)))
+				.collectList()
+				.block();
+		NormalizedStorageMigration migration = new NormalizedStorageMigration(
+				template, new StorageProperties(StorageProperties.Mode.NORMALIZED, 2));
+
+		StepVerifier.create(migration.migrate())
+				.expectNext(5L)
+				.verifyComplete();
+		StepVerifier.create(migration.migrate())
+				.expectNext(0L)
+				.verifyComplete();
+
+		for (Franchise original : embedded) {
+			Franchise migrated = store.findById(original.getId()).block();
+			assertEquals(original.getBranches(), migrated.getBranches());
+		}
+		assertEquals(0L, template.count(
+				Query.query(Criteria.where("branches").exists(true)),
+				Franchise.class).block());
+	}
+
+	private static Franchise franchise(String name, int branches, int productsPerBranch) {
+		List<Branch> branchList = new ArrayList<>();
+		for (int b = 0; b < branches; b++) {
+			List<Product> products = new ArrayList<>();
+			for (int p = 0; p < productsPerBranch; p++) {
+				products.add(new Product("Producto " + p, 0));
+			}
+			branchList.add(new Branch("Sucursal " + b, products));
+		}
+		return Franchise.builder().name(name).branches(branchList).build();
+	}
+}
@@ -0,0 +1,97 @@
+package com.example.franchise.service;
+
+import com.example.franchise.config.BulkStockProperties;
+import com.example.franchise.config.FranchiseCacheProperties;
+import com.example.franchise.config.StockAlertProperties;
+import com.example.franchise.config.StockEventProperties;
+import com.example.franchise.config.StockHistoryProperties;
+import com.example.franchise.domain.dto.StockUpdateRequest;
+import com.example.franchise.domain.dto.StockUpdateResultDTO.Status;
+import com.example.franchise.domain.model.Branch;
+import com.example.franchise.domain.model.Franchise;
+import com.example.franchise.domain.model.Product;
+import com.example.franchise.exception.ResourceNotFoundException;
+import com.example.franchise.repository.FranchiseStore;
+import com.example.franchise.repository.StockAlertRuleRepository;
+import com.example.franchise.repository.StockHistoryRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class BulkStockServiceTest {
+
+	private FranchiseStore store;
+	private BulkStockService service;
+
+	@BeforeEach
+	void setUp() {
+		store = mock(FranchiseStore.class);
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		StockAlertProperties alertProperties = new StockAlertProperties(16, Duration.ofMinutes(1), 16, Duration.ofSeconds(10));
+		service = new BulkStockService(
+				store,
+				new BulkStockProperties(100, Duration.ofMillis(50)),
+				new FranchiseCache(new FranchiseCacheProperties(100, Duration.ofMinutes(1)), registry),
+				new StockEventPublisher(store, new StockEventProperties(16, Duration.ofMillis(10)), registry),
+				new StockAlertEvaluator(new StockAlertRules(mock(StockAlertRuleRepository.class), store, alertProperties),
+						alertProperties, registry),
+				new StockHistoryRecorder(mock(StockHistoryRepository.class),
+						new StockHistoryProperties(false, 16, 16, Duration.ofMillis(10), Duration.ofDays(365)), registry)
+		);
+	}
+
+	@Test
+	void shouldCoalesceRepeatedUpdatesToTheSameProduct() {
+		StockUpdateRequest first = new StockUpdateRequest("1", "Sucursal", "Empanada", 5);
+		StockUpdateRequest other = new StockUpdateRequest("2", "Sucursal", "Arepa", 7);
+		StockUpdateRequest last = new StockUpdateRequest("1", "SUCURSAL", "empanada", 9);
+
+		when(store.updateProductStocks(List.of(last, other)))
+				.thenReturn(Mono.just(2));
+
+		StepVerifier.create(service.ingest(Flux.just(first, other, last)))
+				.expectNextMatches(r -> r.status() == Status.COALESCED && r.stock() == 5)
+				.expectNextMatches(r -> r.status() == Status.APPLIED && r.stock() == 7)
+				.expectNextMatches(r -> r.status() == Status.APPLIED && r.stock() == 9)
+				.verifyComplete();
+	}
+
+	@Test
+	void shouldReportPerItemFailuresWhenTheBatchIsPartiallyApplied() {
+		StockUpdateRequest ok = new StockUpdateRequest("1", "Sucursal", "Empanada", 5);
+		StockUpdateRequest replaced = new StockUpdateRequest("1", "Sucursal", "Pizza", 1);
+		StockUpdateRequest missing = new StockUpdateRequest("1", "Sucursal", "Pizza", 3);
+		StockUpdateRequest invalid = new StockUpdateRequest("1", null, "Pizza", 3);
+
+		when(store.updateProductStocks(anyList()))
+				.thenReturn(Mono.just(1));
+		when(store.findById("1")).thenReturn(Mono.just(Franchise.builder()
+				.id("1")
+				.branches(new ArrayList<>(List.of(Branch.builder()
+						.name("Sucursal")
+						.products(new ArrayList<>(List.of(Product.builder().name("Empanada").stock(5).build())))
+						.build())))
+				.build()));
+		when(store.updateProductStock("1", "Sucursal", "Pizza", 3))
+				.thenReturn(Mono.error(new ResourceNotFoundException("Producto no encontrado")));
+
+		StepVerifier.create(service.ingest(Flux.just(ok, replaced, missing, invalid)))
+				.expectNextMatches(r -> r.status() == Status.APPLIED)
+				.expectNextMatches(r -> r.status() == Status.FAILED && r.error().equals("Producto no encontrado"))
+				.expectNextMatches(r -> r.status() == Status.FAILED && r.error().equals("Producto no encontrado"))
+				.expectNextMatches(r -> r.status() == Status.FAILED && r.error().equals("Solicitud inválida"))
+				.verifyComplete();
+		// The write that matched is not replayed, so it cannot overwrite a newer update.
+		verify(store, never()).updateProductStock("1", "Sucursal", "Empanada", 5);
+	}
+}
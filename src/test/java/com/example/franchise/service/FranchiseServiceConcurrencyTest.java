@@ -0,0 +1,143 @@
+package com.example.franchise.service;
+
+import com.example.franchise.config.FranchiseCacheProperties;
+import com.example.franchise.config.RetryProperties;
+import com.example.franchise.config.StockAlertProperties;
+import com.example.franchise.config.StockCoalescingProperties;
+import com.example.franchise.config.StockEventProperties;
+import com.example.franchise.config.StockHistoryProperties;
+import com.example.franchise.config.StockProperties;
+import com.example.franchise.domain.dto.StockDeltaMode;
+import com.example.franchise.domain.model.Branch;
+import com.example.franchise.domain.model.Franchise;
+import com.example.franchise.domain.model.Product;
+import com.example.franchise.repository.FranchiseRepository;
+import com.example.franchise.repository.FranchiseRepositoryCustomImpl;
+import com.example.franchise.repository.FranchiseStore;
+import com.example.franchise.repository.StockAlertRuleRepository;
+import com.example.franchise.repository.StockHistoryRepository;
+import com.mongodb.ConnectionString;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.reactivestreams.client.MongoClient;
+import com.mongodb.reactivestreams.client.MongoClients;
+import de.bwaldvogel.mongo.MongoServer;
+import de.bwaldvogel.mongo.backend.memory.MemoryBackend;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.repository.support.ReactiveMongoRepositoryFactory;
+import org.springframework.data.repository.core.support.RepositoryComposition.RepositoryFragments;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+class FranchiseServiceConcurrencyTest {
+
+	private MongoServer server;
+	private MongoClient client;
+	private SimpleMeterRegistry registry;
+	private FranchiseRepository repository;
+	private FranchiseService service;
+
+	@BeforeEach
+	void setUp() {
+		server = new MongoServer(new MemoryBackend());
+		// mongo-java-server applies updates without locking, so a single connection keeps its writes atomic.
+		client = MongoClients.create(MongoClientSettings.builder()
+				.applyConnectionString(new ConnectionString(server.bindAndGetConnectionString()))
+				.applyToConnectionPoolSettings(pool -> pool.maxSize(1))
+				.build());
+		ReactiveMongoTemplate template = new ReactiveMongoTemplate(client, "franchise-test");
+		repository = new ReactiveMongoRepositoryFactory(template).getRepository(
+				FranchiseRepository.class,
+				RepositoryFragments.just(new FranchiseRepositoryCustomImpl(template))
+		);
+		registry = new SimpleMeterRegistry();
+		FranchiseStore store = new EmbeddedFranchiseStore(
+				repository,
+				new ConflictRetryPolicy(new RetryProperties(200, Duration.ofMillis(1), Duration.ofMillis(20), 0.5), registry)
+		);
+		StockAlertProperties alertProperties = new StockAlertProperties(16, Duration.ofMinutes(1), 16, Duration.ofSeconds(10));
+		service = new FranchiseService(
+				store,
+				new FranchiseCache(new FranchiseCacheProperties(100, Duration.ofMinutes(1)), registry),
+				new StockEventPublisher(store, new StockEventProperties(16, Duration.ofMillis(10)), registry),
+				new StockAlertEvaluator(new StockAlertRules(mock(StockAlertRuleRepository.class), store, alertProperties),
+						alertProperties, registry),
+				new StockHistoryRecorder(new StockHistoryRepository(template),
+						new StockHistoryProperties(true, 1024, 100, Duration.ofMillis(10), Duration.ofDays(365)), registry),
+				new StockWriteCoalescer(store, new StockCoalescingProperties(true, Duration.ofMillis(2), 100), registry),
+				new StockProperties(StockDeltaMode.REJECT)
+		);
+	}
+
+	@AfterEach
+	void tearDown() {
+		client.close();
+		server.shutdown();
+	}
+
+	@Test
+	void shouldNotLoseProductsAddedConcurrentlyToTheSameFranchise() {
+		int subscribers = 64;
+		Franchise franchise = repository.save(Franchise.builder()
+				.name("Hot")
+				.branches(new ArrayList<>(List.of(new Branch("Sucursal", new ArrayList<>()))))
+				.build()).block();
+
+		Flux.range(0, subscribers)
+				.parallel(subscribers)
+				.runOn(Schedulers.boundedElastic())
+				.flatMap(i -> service.addProduct(franchise.getId(), "Sucursal", new Product("Producto " + i, i), null))
+				.sequential()
+				.blockLast(Duration.ofSeconds(60));
+
+		Franchise stored = repository.findById(franchise.getId()).block();
+		assertEquals(subscribers, stored.getBranches().get(0).getProducts().size());
+		assertEquals(subscribers, stored.getVersion());
+		assertTrue(registry.counter("franchise.mutation.conflicts",
+				"operation", "addProduct", "franchise", franchise.getId()).count() > 0);
+		assertEquals(0, registry.counter("franchise.mutation.retries.exhausted",
+				"operation", "addProduct", "franchise", franchise.getId()).count());
+	}
+
+	@Test
+	void shouldCoalesceConcurrentStockUpdatesToTheSameFranchise() {
+		int subscribers = 200;
+		List<Product> products = new ArrayList<>();
+		for (int i = 0; i < 10; i++) {
+			products.add(new Product("Producto " + i, 0));
+		}
+		Franchise franchise = repository.save(Franchise.builder()
+				.name("Hot")
+				.branches(new ArrayList<>(List.of(new Branch("Sucursal", products))))
+				.build()).block();
+
+		List<Integer> stocks = Flux.range(0, subscribers)
+				.parallel(32)
+				.runOn(Schedulers.boundedElastic())
+				.flatMap(i -> service.updateProductStock(franchise.getId(), "Sucursal", "Producto " + (i % 10), i)
+						.map(updated -> updated.stock()))
+				.sequential()
+				.collectList()
+				.block(Duration.ofSeconds(60));
+
+		assertEquals(subscribers, stocks.size());
+		Franchise stored = repository.findById(franchise.getId()).block();
+		assertTrue(stored.getVersion() < subscribers);
+		assertTrue(registry.summary("franchise.stock-coalescing.batch-size").max() > 1);
+		StepVerifier.create(service.updateProductStock(franchise.getId(), "Sucursal", "Nada", 1))
+				.expectErrorMatches(e -> e.getMessage().equals("Producto no encontrado"))
+				.verify();
+	}
+}
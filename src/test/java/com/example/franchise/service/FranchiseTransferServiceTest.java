@@ -0,0 +1,150 @@
+package com.example.franchise.service;
+
+import com.example.franchise.config.FranchiseCacheProperties;
+import com.example.franchise.config.FranchiseTransferProperties;
+import com.example.franchise.config.IndexProperties;
+import com.example.franchise.config.MongoIndexManager;
+import com.example.franchise.config.RetryProperties;
+import com.example.franchise.config.StockHistoryProperties;
+import com.example.franchise.config.StorageProperties;
+import com.example.franchise.domain.dto.ImportProgressDTO;
+import com.example.franchise.domain.model.Branch;
+import com.example.franchise.domain.model.Franchise;
+import com.example.franchise.domain.model.Product;
+import com.example.franchise.repository.FranchiseRepository;
+import com.example.franchise.repository.FranchiseRepositoryCustomImpl;
+import com.example.franchise.repository.FranchiseStore;
+import com.example.franchise.repository.NormalizedFranchiseStore;
+import com.mongodb.ConnectionString;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.reactivestreams.client.MongoClient;
+import com.mongodb.reactivestreams.client.MongoClients;
+import de.bwaldvogel.mongo.MongoServer;
+import de.bwaldvogel.mongo.backend.memory.MemoryBackend;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.repository.support.ReactiveMongoRepositoryFactory;
+import org.springframework.data.repository.core.support.RepositoryComposition.RepositoryFragments;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class FranchiseTransferServiceTest {
+
+	private MongoServer server;
+	private MongoClient client;
+	private ReactiveMongoTemplate template;
+	private FranchiseRepository repository;
+
+	@BeforeEach
+	void setUp() {
+		server = new MongoServer(new MemoryBackend());
+		// mongo-java-server applies updates without locking, so a single connection keeps its writes atomic.
+		client = MongoClients.create(MongoClientSettings.builder()
+				.applyConnectionString(new ConnectionString(server.bindAndGetConnectionString()))
+				.applyToConnectionPoolSettings(pool -> pool.maxSize(1))
+				.build());
+		template = new ReactiveMongoTemplate(client, "franchise-test");
+		new MongoIndexManager(template, new StorageProperties(StorageProperties.Mode.NORMALIZED, 500), new IndexProperties(false),
+				new StockHistoryProperties(true, 16, 16, Duration.ofMillis(10), Duration.ofDays(365)))
+				.ensureIndexes()
+				.block();
+		repository = new ReactiveMongoRepositoryFactory(template).getRepository(
+				FranchiseRepository.class,
+				RepositoryFragments.just(new FranchiseRepositoryCustomImpl(template))
+		);
+	}
+
+	@AfterEach
+	void tearDown() {
+		client.close();
+		server.shutdown();
+	}
+
+	@Test
+	void shouldImportInBatchesAndExportInIdOrderWithEmbeddedStorage() {
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		shouldRoundTrip(new EmbeddedFranchiseStore(
+				repository,
+				new ConflictRetryPolicy(new RetryProperties(3, Duration.ofMillis(1), Duration.ofMillis(5), 0.5), registry)
+		));
+	}
+
+	@Test
+	void shouldImportInBatchesAndExportInIdOrderWithNormalizedStorage() {
+		shouldRoundTrip(new NormalizedFranchiseStore(template, repository));
+	}
+
+	@Test
+	void shouldReportTheCheckpointOfTheLastWrittenBatchOnFailure() {
+		FranchiseTransferService service = service(new NormalizedFranchiseStore(template, repository));
+		List<Franchise> input = new ArrayList<>(franchises(5));
+		input.set(3, Franchise.builder().name(" ").build());
+
+		StepVerifier.create(service.importFranchises(Flux.fromIterable(input), 0))
+				.expectNext(new ImportProgressDTO(2, 2, null))
+				.expectNext(new ImportProgressDTO(2, 2, "Franquicia inválida en la posición 3"))
+				.verifyComplete();
+
+		input.set(3, franchises(5).get(3));
+		StepVerifier.create(service.importFranchises(Flux.fromIterable(input), 2))
+				.expectNext(new ImportProgressDTO(4, 2, null))
+				.expectNext(new ImportProgressDTO(5, 3, null))
+				.verifyComplete();
+		assertEquals(5L, template.count(new Query(), Franchise.class).block());
+	}
+
+	private void shouldRoundTrip(FranchiseStore store) {
+		FranchiseTransferService service = service(store);
+		List<Franchise> input = franchises(5);
+
+		StepVerifier.create(service.importFranchises(Flux.fromIterable(input), 0))
+				.expectNext(new ImportProgressDTO(2, 2, null))
+				.expectNext(new ImportProgressDTO(4, 4, null))
+				.expectNext(new ImportProgressDTO(5, 5, null))
+				.verifyComplete();
+		// Importing the same documents again replaces them instead of duplicating them.
+		StepVerifier.create(service.importFranchises(Flux.fromIterable(franchises(5)), 0).last())
+				.expectNext(new ImportProgressDTO(5, 5, null))
+				.verifyComplete();
+
+		List<Franchise> exported = service.exportFranchises(null).collectList().block();
+		assertEquals(input.stream().map(Franchise::getId).toList(), exported.stream().map(Franchise::getId).toList());
+		assertEquals(input.get(4).getBranches(), exported.get(4).getBranches());
+		// Both imports carried version 0, but each one moved the stored version forward.
+		assertEquals(List.of(2L, 2L, 2L, 2L, 2L), exported.stream().map(Franchise::getVersion).toList());
+		assertEquals(List.of(input.get(4).getId()), service.exportFranchises(input.get(3).getId())
+				.map(Franchise::getId)
+				.collectList()
+				.block());
+	}
+
+	private FranchiseTransferService service(FranchiseStore store) {
+		return new FranchiseTransferService(
+				store,
+				new FranchiseCache(new FranchiseCacheProperties(100, Duration.ofMinutes(1)), new SimpleMeterRegistry()),
+				new FranchiseTransferProperties(2, 2)
+		);
+	}
+
+	private static List<Franchise> franchises(int count) {
+		return IntStream.range(0, count)
+				.mapToObj(i -> Franchise.builder()
+						.id(String.format("%024x", i + 1))
+						.name("Franquicia " + i)
+						.branches(new ArrayList<>(List.of(new Branch("Sucursal " + i,
+								new ArrayList<>(List.of(new Product("Producto", i)))))))
+						.build())
+				.toList();
+	}
+}
@@ -0,0 +1,301 @@
+package com.example.franchise.service;
+
+import com.example.franchise.config.InventoryEngineProperties;
+import com.example.franchise.config.RetryProperties;
+import com.example.franchise.domain.dto.HighestStockProductDTO;
+import com.example.franchise.domain.dto.ProductStockDTO;
+import com.example.franchise.domain.dto.StockAdjustmentDTO;
+import com.example.franchise.domain.dto.StockDelta;
+import com.example.franchise.domain.dto.StockDeltaMode;
+import com.example.franchise.domain.model.Branch;
+import com.example.franchise.domain.model.Franchise;
+import com.example.franchise.domain.model.Product;
+import com.example.franchise.exception.BusinessException;
+import com.example.franchise.exception.ConflictException;
+import com.example.franchise.exception.InsufficientStockException;
+import com.example.franchise.exception.PreconditionFailedException;
+import com.example.franchise.repository.FranchiseRepository;
+import com.example.franchise.repository.FranchiseRepositoryCustomImpl;
+import com.example.franchise.repository.FranchiseStore;
+import com.mongodb.ConnectionString;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.reactivestreams.client.MongoClient;
+import com.mongodb.reactivestreams.client.MongoClients;
+import de.bwaldvogel.mongo.MongoServer;
+import de.bwaldvogel.mongo.backend.memory.MemoryBackend;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.repository.support.ReactiveMongoRepositoryFactory;
+import org.springframework.data.repository.core.support.RepositoryComposition.RepositoryFragments;
+import org.springframework.util.unit.DataSize;
+import reactor.test.StepVerifier;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class InventoryEngineTest {
+
+	@TempDir
+	Path logDirectory;
+
+	private MongoServer server;
+	private MongoClient client;
+	private ReactiveMongoTemplate template;
+	private FranchiseRepository repository;
+	private EmbeddedFranchiseStore mongoStore;
+	private String franchiseId;
+
+	@BeforeEach
+	void setUp() {
+		server = new MongoServer(new MemoryBackend());
+		// mongo-java-server applies updates without locking, so a single connection keeps its writes atomic.
+		client = MongoClients.create(MongoClientSettings.builder()
+				.applyConnectionString(new ConnectionString(server.bindAndGetConnectionString()))
+				.applyToConnectionPoolSettings(pool -> pool.maxSize(1))
+				.build());
+		template = new ReactiveMongoTemplate(client, "franchise-test");
+		repository = new ReactiveMongoRepositoryFactory(template).getRepository(
+				FranchiseRepository.class,
+				RepositoryFragments.just(new FranchiseRepositoryCustomImpl(template))
+		);
+		mongoStore = new EmbeddedFranchiseStore(repository, new ConflictRetryPolicy(
+				new RetryProperties(3, Duration.ofMillis(1), Duration.ofMillis(5), 0.5), new SimpleMeterRegistry()));
+
+		franchiseId = repository.save(Franchise.builder()
+				.name("Franquicia")
+				.branches(new ArrayList<>(List.of(
+						Branch.builder().name("Centro").products(new ArrayList<>(List.of(
+								Product.builder().name("Pizza").stock(5).build(),
+								Product.builder().name("Arepa").stock(7).build()))).build(),
+						Branch.builder().name("Norte").products(new ArrayList<>(List.of(
+								Product.builder().name("Pizza").stock(2).build()))).build())))
+				.build()).block().getId();
+	}
+
+	@AfterEach
+	void tearDown() {
+		client.close();
+		server.shutdown();
+	}
+
+	@Test
+	void shouldServeStockFromMemoryAndWriteItBehindToMongo() {
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		InventoryEngine engine = engine(100_000, registry);
+		FranchiseStore store = engine.decorate(mongoStore);
+		engine.start();
+
+		StepVerifier.create(store.updateProductStock(franchiseId, "centro", "PIZZA", 9))
+				.expectNext(new ProductStockDTO(franchiseId, "centro", "PIZZA", 9))
+				.verifyComplete();
+		StepVerifier.create(store.incrementProductStock(franchiseId, "Norte", "Pizza", -3, StockDeltaMode.REJECT))
+				.expectError(InsufficientStockException.class)
+				.verify();
+		StepVerifier.create(store.incrementProductStock(franchiseId, "Centro", "Pizza", Integer.MAX_VALUE,
+						StockDeltaMode.REJECT))
+				.expectErrorSatisfies(e -> {
+					assertInstanceOf(BusinessException.class, e);
+					assertEquals("El stock resultante excede el máximo permitido", e.getMessage());
+				})
+				.verify();
+		StepVerifier.create(store.applyStockDeltas(franchiseId, List.of(
+						new StockDelta("Norte", "Pizza", 4), new StockDelta("Centro", "Arepa", -8)), StockDeltaMode.REJECT))
+				.expectErrorMessage("Stock insuficiente: Arepa")
+				.verify();
+		StepVerifier.create(store.applyStockDeltas(franchiseId, List.of(
+						new StockDelta("Norte", "Pizza", 4), new StockDelta("Centro", "Arepa", -8)), StockDeltaMode.CLAMP))
+				.expectNext(new StockAdjustmentDTO("Norte", "Pizza", 4, 6))
+				.expectNext(new StockAdjustmentDTO("Centro", "Arepa", -7, 0))
+				.verifyComplete();
+
+		StepVerifier.create(store.findHighestStockProducts(franchiseId, 1))
+				.expectNext(new HighestStockProductDTO("Centro", "Pizza", 9))
+				.expectNext(new HighestStockProductDTO("Norte", "Pizza", 6))
+				.verifyComplete();
+		assertEquals(List.of(5, 7, 2), stock(repository.findById(franchiseId).block()));
+		assertEquals(3, engine.dirtyCount());
+
+		engine.flush().block();
+
+		Franchise persisted = repository.findById(franchiseId).block();
+		assertEquals(List.of(9, 0, 6), stock(persisted));
+		assertTrue(persisted.getVersion() >= store.findVersion(franchiseId).block());
+		assertEquals(0, engine.dirtyCount());
+		assertEquals(3, registry.counter("franchise.inventory.flushed").count());
+		engine.stop();
+	}
+
+	@Test
+	void shouldApplyChangesOnTheWriterThreadOnly() {
+		InventoryEngine engine = engine(100_000, new SimpleMeterRegistry());
+		FranchiseStore store = engine.decorate(mongoStore);
+		engine.start();
+
+		String caller = Thread.currentThread().getName();
+		assertTrue(engine.submit(() -> Thread.currentThread().getName()).block().startsWith("inventory-writer"));
+		StepVerifier.create(store.updateProductStock(franchiseId, "Centro", "Pizza", 4)
+						.map(updated -> Thread.currentThread().getName()))
+				.assertNext(thread -> assertTrue(!thread.equals(caller) && !thread.startsWith("inventory-writer")))
+				.verifyComplete();
+		engine.stop();
+	}
+
+	@Test
+	void shouldFlushAsSoonAsTheDirtySetIsFull() {
+		InventoryEngine engine = engine(1, new SimpleMeterRegistry());
+		FranchiseStore store = engine.decorate(mongoStore);
+		engine.start();
+
+		store.updateProductStock(franchiseId, "Centro", "Arepa", 1).block();
+
+		assertEquals(List.of(5, 1, 2), stock(repository.findById(franchiseId).block()));
+		engine.stop();
+	}
+
+	@Test
+	void shouldReplayTheLogOfAnEngineThatWasNotStopped() {
+		// Renewed only every ten seconds, so releasing it below stands for its expiry.
+		InventoryLease lease = new InventoryLease(template, new InventoryEngineProperties(true, Set.of(),
+				Duration.ofHours(1), 500, 100_000, logDirectory, DataSize.ofMegabytes(16), false,
+				Duration.ofSeconds(30)));
+		InventoryEngine crashed = engine(100_000, new SimpleMeterRegistry(), lease);
+		FranchiseStore before = crashed.decorate(mongoStore);
+		crashed.start();
+		before.updateProductStock(franchiseId, "Centro", "Pizza", 11).block();
+		before.updateProductStock(franchiseId, "Norte", "Pizza", 12).block();
+		long version = before.findVersion(franchiseId).block();
+		// As if the lease of the crashed instance had expired.
+		lease.release().block();
+
+		InventoryEngine engine = engine(100_000, new SimpleMeterRegistry());
+		FranchiseStore store = engine.decorate(mongoStore);
+		engine.start();
+
+		assertEquals(List.of(11, 7, 12), stock(store.findById(franchiseId).block()));
+		assertTrue(store.findVersion(franchiseId).block() > version);
+		engine.stop();
+		assertEquals(List.of(11, 7, 12), stock(repository.findById(franchiseId).block()));
+	}
+
+	@Test
+	void shouldMirrorStructuralChangesAndRejectThemAtAStaleVersion() {
+		InventoryEngine engine = engine(100_000, new SimpleMeterRegistry());
+		FranchiseStore store = engine.decorate(mongoStore);
+		engine.start();
+		long version = store.findVersion(franchiseId).block();
+		store.updateProductStock(franchiseId, "Centro", "Pizza", 3).block();
+
+		StepVerifier.create(store.addProduct(franchiseId, "Centro",
+						Product.builder().name("Empanada").stock(4).build(), version))
+				.expectError(PreconditionFailedException.class)
+				.verify();
+
+		long current = store.findVersion(franchiseId).block();
+		Franchise updated = store.addProduct(franchiseId, "Centro",
+				Product.builder().name("Empanada").stock(4).build(), current).block();
+		assertEquals(List.of(3, 7, 4, 2), stock(updated));
+		assertEquals(current + 1, updated.getVersion());
+
+		store.renameProduct(franchiseId, "Centro", "Pizza", "Pasta", null).block();
+		store.updateProductStock(franchiseId, "Centro", "Pasta", 8).block();
+		engine.flush().block();
+
+		Franchise persisted = repository.findById(franchiseId).block();
+		assertEquals("Pasta", persisted.getBranches().get(0).getProducts().get(0).getName());
+		assertEquals(List.of(8, 7, 4, 2), stock(persisted));
+		engine.stop();
+	}
+
+	@Test
+	void shouldRefuseToHostAFranchiseAnotherInstanceHosts() {
+		InventoryEngine first = engine(100_000, new SimpleMeterRegistry());
+		first.decorate(mongoStore);
+		first.start();
+
+		InventoryEngineProperties properties = new InventoryEngineProperties(true, Set.of(franchiseId),
+				Duration.ofHours(1), 500, 100_000, logDirectory.resolve("second"), DataSize.ofMegabytes(16), false,
+				Duration.ofMillis(300));
+		InventoryEngine second = new InventoryEngine(properties, new InventoryLease(template, properties),
+				new SimpleMeterRegistry());
+		second.decorate(mongoStore);
+		IllegalStateException error = assertThrows(IllegalStateException.class, second::start);
+		assertTrue(error.getMessage().contains("single writer"));
+
+		first.stop();
+		second.start();
+		assertTrue(second.hosts(franchiseId));
+		second.stop();
+	}
+
+	@Test
+	void shouldRejectWritesOfOtherInstancesToAHostedFranchise() {
+		InventoryLease lease = new InventoryLease(template, properties(100_000));
+		InventoryEngine engine = engine(100_000, new SimpleMeterRegistry(), lease);
+		InventoryLeaseGuard ownGuard = guard(lease);
+		FranchiseStore owner = ownGuard.guard(engine.decorate(mongoStore));
+		engine.start();
+
+		InventoryLeaseGuard guard = guard(null);
+		FranchiseStore other = guard.guard(mongoStore);
+		StepVerifier.create(other.updateProductStock(franchiseId, "Centro", "Pizza", 1))
+				.expectError(ConflictException.class)
+				.verify();
+		StepVerifier.create(other.addProduct(franchiseId, "Centro", Product.builder().name("Pan").stock(1).build(),
+						null))
+				.expectError(ConflictException.class)
+				.verify();
+		assertEquals(List.of(5, 7, 2), stock(other.findById(franchiseId).block()));
+		owner.updateProductStock(franchiseId, "Centro", "Pizza", 3).block();
+
+		engine.stop();
+		guard.load().block();
+		other.updateProductStock(franchiseId, "Centro", "Arepa", 1).block();
+		assertEquals(List.of(3, 1, 2), stock(repository.findById(franchiseId).block()));
+		guard.destroy();
+		ownGuard.destroy();
+	}
+
+	private InventoryLeaseGuard guard(InventoryLease lease) {
+		DefaultListableBeanFactory beans = new DefaultListableBeanFactory();
+		if (lease != null) {
+			beans.registerSingleton("inventoryLease", lease);
+		}
+		InventoryLeaseGuard guard = new InventoryLeaseGuard(template, properties(100_000),
+				beans.getBeanProvider(InventoryLease.class));
+		guard.afterPropertiesSet();
+		return guard;
+	}
+
+	private InventoryEngine engine(int maxDirty, SimpleMeterRegistry registry) {
+		return engine(maxDirty, registry, new InventoryLease(template, properties(maxDirty)));
+	}
+
+	private InventoryEngine engine(int maxDirty, SimpleMeterRegistry registry, InventoryLease lease) {
+		return new InventoryEngine(properties(maxDirty), lease, registry);
+	}
+
+	private InventoryEngineProperties properties(int maxDirty) {
+		return new InventoryEngineProperties(true, Set.of(), Duration.ofHours(1), 500, maxDirty, logDirectory,
+				DataSize.ofMegabytes(16), false, Duration.ofMillis(300));
+	}
+
+	private static List<Integer> stock(Franchise franchise) {
+		return franchise.getBranches().stream()
+				.flatMap(branch -> branch.getProducts().stream())
+				.map(Product::getStock)
+				.toList();
+	}
+}
@@ -0,0 +1,178 @@
+package com.example.franchise.service;
+
+import com.example.franchise.config.IndexProperties;
+import com.example.franchise.config.MongoIndexManager;
+import com.example.franchise.config.StockAlertProperties;
+import com.example.franchise.config.StockHistoryProperties;
+import com.example.franchise.config.StorageProperties;
+import com.example.franchise.domain.dto.StockAlert;
+import com.example.franchise.domain.dto.StockAlertRuleRequest;
+import com.example.franchise.domain.model.StockAlertRule;
+import com.example.franchise.exception.BusinessException;
+import com.example.franchise.exception.ResourceNotFoundException;
+import com.example.franchise.repository.FranchiseStore;
+import com.example.franchise.repository.StockAlertRuleRepository;
+import com.mongodb.reactivestreams.client.MongoClient;
+import com.mongodb.reactivestreams.client.MongoClients;
+import de.bwaldvogel.mongo.MongoServer;
+import de.bwaldvogel.mongo.backend.memory.MemoryBackend;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.repository.support.ReactiveMongoRepositoryFactory;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.*;
+
+class StockAlertEvaluatorTest {
+
+	private static final StockAlertProperties PROPERTIES =
+			new StockAlertProperties(16, Duration.ofHours(1), 16, Duration.ofSeconds(10));
+
+	private MongoServer server;
+	private MongoClient client;
+	private FranchiseStore store;
+	private StockAlertRuleRepository repository;
+	private StockAlertRules rules;
+	private SimpleMeterRegistry registry;
+	private StockAlertEvaluator evaluator;
+
+	@BeforeEach
+	void setUp() {
+		server = new MongoServer(new MemoryBackend());
+		client = MongoClients.create(server.bindAndGetConnectionString());
+		ReactiveMongoTemplate template = new ReactiveMongoTemplate(client, "franchise-test");
+		new MongoIndexManager(template, new StorageProperties(StorageProperties.Mode.EMBEDDED, 500), new IndexProperties(false),
+				new StockHistoryProperties(true, 16, 16, Duration.ofMillis(10), Duration.ofDays(365)))
+				.ensureIndexes()
+				.block();
+		repository = new ReactiveMongoRepositoryFactory(template).getRepository(StockAlertRuleRepository.class);
+
+		store = mock(FranchiseStore.class);
+		when(store.existsById("1")).thenReturn(Mono.just(true));
+		when(store.existsById("missing")).thenReturn(Mono.just(false));
+		rules = new StockAlertRules(repository, store, PROPERTIES);
+		registry = new SimpleMeterRegistry();
+		evaluator = new StockAlertEvaluator(rules, PROPERTIES, registry);
+	}
+
+	@AfterEach
+	void tearDown() {
+		evaluator.destroy();
+		client.close();
+		server.shutdown();
+	}
+
+	@Test
+	void shouldAlertOnceWhenStockCrossesBelowTheThreshold() {
+		StockAlertRule rule = rules.create("1", new StockAlertRuleRequest("Centro", "Pizza", 10)).block();
+
+		StepVerifier.create(evaluator.subscribe("1"))
+				.then(() -> {
+					evaluator.stockChanged("1", "Centro", "Pizza", 20);
+					evaluator.stockChanged("1", "centro", "Arepa", 1);
+					evaluator.stockChanged("2", "Centro", "Pizza", 1);
+					evaluator.stockChanged("1", "CENTRO", "pizza", 5);
+					evaluator.stockChanged("1", "Centro", "Pizza", 3);
+				})
+				.expectNextMatches(alert -> alert.ruleId().equals(rule.getId())
+						&& alert.stock() == 5 && alert.threshold() == 10)
+				.expectNoEvent(Duration.ofMillis(200))
+				.thenCancel()
+				.verify(Duration.ofSeconds(5));
+	}
+
+	@Test
+	void shouldRearmAfterRecoveringAndRateLimitRepeatedAlerts() {
+		rules.create("1", new StockAlertRuleRequest("Centro", null, 10)).block();
+
+		StepVerifier.create(evaluator.subscribe("1"))
+				.then(() -> {
+					evaluator.stockChanged("1", "Centro", "Pizza", 5);
+					evaluator.stockChanged("1", "Centro", "Pizza", 15);
+					evaluator.stockChanged("1", "Centro", "Pizza", 5);
+					evaluator.stockChanged("1", "Centro", "Arepa", 0);
+					evaluator.productRemoved("1", "Centro", "Arepa");
+					evaluator.stockChanged("1", "Centro", "Arepa", 1);
+				})
+				.expectNextMatches(alert -> alert.productName().equals("Pizza") && alert.stock() == 5)
+				.expectNextMatches(alert -> alert.productName().equals("Arepa") && alert.stock() == 0)
+				.expectNextMatches(alert -> alert.productName().equals("Arepa") && alert.stock() == 1)
+				.expectNoEvent(Duration.ofMillis(200))
+				.thenCancel()
+				.verify(Duration.ofSeconds(5));
+
+		assertEquals(1, registry.counter("franchise.stock-alerts.suppressed").count());
+		assertEquals(3, registry.counter("franchise.stock-alerts.emitted").count());
+	}
+
+	@Test
+	void shouldValidateAndRemoveRules() {
+		StepVerifier.create(rules.create("1", new StockAlertRuleRequest("Centro", "Pizza", -1)))
+				.expectErrorMatches(e -> e instanceof BusinessException && e.getMessage().equals("El umbral no puede ser negativo"))
+				.verify();
+		StepVerifier.create(rules.create("missing", new StockAlertRuleRequest("Centro", "Pizza", 1)))
+				.expectError(ResourceNotFoundException.class)
+				.verify();
+
+		StockAlertRule rule = rules.create("1", new StockAlertRuleRequest("Centro", "Pizza", 1)).block();
+		StepVerifier.create(rules.create("1", new StockAlertRuleRequest("CENTRO", "PIZZA", 3)))
+				.expectErrorMatches(e -> e instanceof BusinessException && e.getMessage().equals("La regla ya existe"))
+				.verify();
+		assertEquals(List.of(rule), rules.list("1").collectList().block());
+
+		StepVerifier.create(rules.delete("2", rule.getId()))
+				.expectError(ResourceNotFoundException.class)
+				.verify();
+		StepVerifier.create(rules.delete("1", rule.getId()))
+				.verifyComplete();
+		assertEquals(List.of(), rules.list("1").collectList().block());
+		assertFalse(rules.hasRules("1", "centro"));
+	}
+
+	@Test
+	void shouldSeeRulesCreatedByAnotherInstanceOnceReloaded() {
+		StockAlertRules other = new StockAlertRules(repository, store, PROPERTIES);
+		StockAlertRule rule = other.create("1", new StockAlertRuleRequest("Centro", "Pizza", 10)).block();
+
+		StepVerifier.create(rules.create("1", new StockAlertRuleRequest("centro", "pizza", 5)))
+				.expectErrorMatches(e -> e instanceof BusinessException && e.getMessage().equals("La regla ya existe"))
+				.verify();
+		assertEquals(List.of(rule), rules.list("1").collectList().block());
+		assertFalse(rules.hasRules("1", "centro"));
+		rules.load().block();
+		assertEquals(List.of(rule), rules.rulesFor("1", "centro").stream().map(e -> e.rule).toList());
+
+		other.delete("1", rule.getId()).block();
+		assertTrue(rules.hasRules("1", "centro"));
+		rules.load().block();
+		assertFalse(rules.hasRules("1", "centro"));
+	}
+
+	@Test
+	void shouldMoveRulesWithRenamedBranchesAndProducts() {
+		StockAlertRule branchWide = rules.create("1", new StockAlertRuleRequest("Centro", null, 3)).block();
+		StockAlertRule pizza = rules.create("1", new StockAlertRuleRequest("Centro", "Pizza", 10)).block();
+		rules.create("1", new StockAlertRuleRequest("Norte", "Pan", 1)).block();
+
+		rules.branchRenamed("1", "centro", "Norte").block();
+		rules.productRenamed("1", "NORTE", "pizza", "Pan").block();
+
+		Set<StockAlertRule> expected = Set.of(
+				new StockAlertRule(branchWide.getId(), "1", "Norte", null, 3),
+				new StockAlertRule(pizza.getId(), "1", "Norte", "Pan", 10));
+		assertFalse(rules.hasRules("1", "centro"));
+		assertEquals(expected, Set.copyOf(rules.rulesFor("1", "norte").stream().map(e -> e.rule).toList()));
+		assertEquals(expected, Set.copyOf(rules.list("1").collectList().block()));
+	}
+}
@@ -0,0 +1,96 @@
+package com.example.franchise.service;
+
+import com.example.franchise.config.StockEventProperties;
+import com.example.franchise.domain.dto.HighestStockProductDTO;
+import com.example.franchise.domain.dto.StockEvent;
+import com.example.franchise.domain.dto.StockEvent.Type;
+import com.example.franchise.repository.FranchiseStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.*;
+
+class StockEventPublisherTest {
+
+	private FranchiseStore store;
+	private StockEventPublisher publisher;
+
+	@BeforeEach
+	void setUp() {
+		store = mock(FranchiseStore.class);
+		publisher = new StockEventPublisher(
+				store,
+				new StockEventProperties(4, Duration.ofMillis(20)),
+				new SimpleMeterRegistry()
+		);
+	}
+
+	@Test
+	void shouldPushStockAndHighestStockChangesToSubscribersOfThatFranchiseOnly() {
+		when(store.findHighestStockProducts("1", 1))
+				.thenReturn(Flux.just(new HighestStockProductDTO("Sucursal", "Empanada", 50)));
+
+		StepVerifier.create(publisher.subscribe("1", StockEventPublisher.OverflowPolicy.DROP_OLDEST))
+				.then(() -> {
+					publisher.publish(StockEvent.of(Type.PRODUCT_STOCK, "2", "Sucursal", "Arepa", 9));
+					publisher.publish(StockEvent.of(Type.PRODUCT_STOCK, "1", "Sucursal", "Empanada", 50));
+				})
+				.expectNextMatches(e -> e.type() == Type.PRODUCT_STOCK && e.stock() == 50)
+				.expectNextMatches(e -> e.type() == Type.HIGHEST_STOCK && e.productName().equals("Empanada"))
+				.thenCancel()
+				.verify(Duration.ofSeconds(5));
+
+		assertEquals(0, publisher.activeChannels());
+	}
+
+	@Test
+	void shouldDropOldestEventsForASlowSubscriber() {
+		when(store.findHighestStockProducts("1", 1))
+				.thenReturn(Flux.empty());
+
+		StepVerifier.create(publisher.subscribe("1", StockEventPublisher.OverflowPolicy.DROP_OLDEST), 0)
+				.then(() -> {
+					for (int i = 0; i < 10; i++) {
+						publisher.publish(StockEvent.of(Type.PRODUCT_STOCK, "1", "Sucursal", "Empanada", i));
+					}
+				})
+				.thenRequest(4)
+				.expectNextMatches(e -> e.stock() == 6)
+				.expectNextMatches(e -> e.stock() == 7)
+				.expectNextMatches(e -> e.stock() == 8)
+				.expectNextMatches(e -> e.stock() == 9)
+				.thenCancel()
+				.verify(Duration.ofSeconds(5));
+	}
+
+	@Test
+	void shouldDeliverEveryEventPublishedConcurrentlyToTheSameFranchise() {
+		when(store.findHighestStockProducts("1", 1))
+				.thenReturn(Flux.empty());
+		int writers = 8;
+		int perWriter = 500;
+
+		StepVerifier.create(publisher.subscribe("1", StockEventPublisher.OverflowPolicy.DROP_OLDEST)
+						.filter(e -> e.type() == Type.PRODUCT_STOCK)
+						.take(writers * perWriter))
+				.then(() -> Flux.range(0, writers)
+						.parallel(writers)
+						.runOn(Schedulers.boundedElastic())
+						.doOnNext(w -> {
+							for (int i = 0; i < perWriter; i++) {
+								publisher.publish(StockEvent.of(Type.PRODUCT_STOCK, "1", "Sucursal", "Empanada", i));
+							}
+						})
+						.sequential()
+						.blockLast())
+				.expectNextCount(writers * perWriter)
+				.verifyComplete();
+	}
+}
@@ -0,0 +1,146 @@
+package com.example.franchise.service;
+
+import com.example.franchise.config.StockHistoryProperties;
+import com.example.franchise.domain.dto.StockEvent;
+import com.example.franchise.domain.dto.StockHistoryBucketDTO;
+import com.example.franchise.domain.dto.StockHistoryResolution;
+import com.example.franchise.exception.BusinessException;
+import com.example.franchise.repository.StockHistoryRepository;
+import com.mongodb.reactivestreams.client.MongoClient;
+import com.mongodb.reactivestreams.client.MongoClients;
+import de.bwaldvogel.mongo.MongoServer;
+import de.bwaldvogel.mongo.backend.memory.MemoryBackend;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class StockHistoryServiceTest {
+
+	private static final Instant T = Instant.parse("2026-03-02T10:00:00Z");
+
+	private MongoServer server;
+	private MongoClient client;
+	private SimpleMeterRegistry registry;
+	private StockHistoryRepository repository;
+	private StockHistoryRecorder recorder;
+	private StockHistoryService service;
+
+	@BeforeEach
+	void setUp() {
+		server = new MongoServer(new MemoryBackend());
+		client = MongoClients.create(server.bindAndGetConnectionString());
+		repository = new StockHistoryRepository(new ReactiveMongoTemplate(client, "franchise-test"));
+		registry = new SimpleMeterRegistry();
+		recorder = new StockHistoryRecorder(repository,
+				new StockHistoryProperties(true, 64, 2, Duration.ofMillis(20), Duration.ofDays(365)), registry);
+		service = new StockHistoryService(repository);
+	}
+
+	@AfterEach
+	void tearDown() {
+		client.close();
+		server.shutdown();
+	}
+
+	@Test
+	void shouldRecordMovementsOffTheRequestPathAndQueryThemByProductAndBranch() {
+		recorder.record(stock("Centro", "Pizza", 5, T.plusSeconds(60)));
+		recorder.record(stock("Centro", "Arepa", 7, T.plusSeconds(120)));
+		recorder.record(new StockEvent(StockEvent.Type.PRODUCT_STOCK_ADJUSTED, "1", "CENTRO", "PIZZA", null, -2,
+				T.plusSeconds(180)));
+		recorder.record(new StockEvent(StockEvent.Type.HIGHEST_STOCK, "1", "Centro", "Arepa", 7, null,
+				T.plusSeconds(190)));
+		recorder.record(new StockEvent(StockEvent.Type.PRODUCT_STOCK, "2", "Centro", "Pizza", 1, null,
+				T.plusSeconds(200)));
+		recorder.record(new StockEvent(StockEvent.Type.PRODUCT_REMOVED, "1", "Centro", "Pizza", null, null,
+				T.plusSeconds(240)));
+		awaitWritten(5);
+
+		StepVerifier.create(service.getMovements("1", "centro", "pizza", T, T.plusSeconds(3600), 1000))
+				.expectNext(stock("Centro", "Pizza", 5, T.plusSeconds(60)))
+				.expectNext(new StockEvent(StockEvent.Type.PRODUCT_STOCK_ADJUSTED, "1", "CENTRO", "PIZZA", null, -2,
+						T.plusSeconds(180)))
+				.expectNext(new StockEvent(StockEvent.Type.PRODUCT_REMOVED, "1", "Centro", "Pizza", null, null,
+						T.plusSeconds(240)))
+				.verifyComplete();
+		StepVerifier.create(service.getMovements("1", "Centro", null, T, T.plusSeconds(3600), 2)
+						.map(StockEvent::productName))
+				.expectNext("Pizza", "Arepa")
+				.verifyComplete();
+		StepVerifier.create(service.getMovements("1", "Centro", "Pizza", T.plusSeconds(61), T.plusSeconds(240), 10))
+				.expectNextCount(1)
+				.verifyComplete();
+
+		StepVerifier.create(service.getMovements("1", "Centro", "Pizza", T, T, 10))
+				.expectErrorMatches(e -> e instanceof BusinessException
+						&& e.getMessage().equals("El rango de fechas es inválido"))
+				.verify();
+		StepVerifier.create(service.getMovements("1", "Centro", "Pizza", null, null, 0))
+				.expectError(BusinessException.class)
+				.verify();
+	}
+
+	@Test
+	void shouldDownsampleStockIntoHourlyAndDailyBuckets() {
+		recorder.record(stock("Centro", "Pizza", 5, T.plusSeconds(5 * 60)));
+		recorder.record(stock("Centro", "Arepa", 7, T.plusSeconds(15 * 60)));
+		recorder.record(stock("Centro", "Pizza", 2, T.plusSeconds(20 * 60)));
+		recorder.record(new StockEvent(StockEvent.Type.PRODUCT_STOCK_ADJUSTED, "1", "Centro", "Pizza", 8, 6,
+				T.plusSeconds(30 * 60)));
+		recorder.record(stock("Centro", "Pizza", 8, T.plusSeconds(50 * 60)));
+		recorder.record(stock("Centro", "Pizza", 4, T.plusSeconds(70 * 60)));
+		recorder.record(stock("Centro", "Pizza", 1, T.plus(Duration.ofHours(23))));
+		awaitWritten(7);
+
+		Instant from = Instant.parse("2026-03-02T00:00:00Z");
+		Instant to = Instant.parse("2026-03-04T00:00:00Z");
+		StepVerifier.create(service.getBuckets("1", "Centro", "Pizza", from, to, StockHistoryResolution.HOUR))
+				.expectNext(new StockHistoryBucketDTO(T, "Centro", "Pizza", 4, 5, 8, 2, 8))
+				.expectNext(new StockHistoryBucketDTO(T.plus(Duration.ofHours(1)), "Centro", "Pizza", 1, 4, 4, 4, 4))
+				.expectNext(new StockHistoryBucketDTO(T.plus(Duration.ofHours(23)), "Centro", "Pizza", 1, 1, 1, 1, 1))
+				.verifyComplete();
+		StepVerifier.create(service.getBuckets("1", "centro", null, from, to, StockHistoryResolution.DAY))
+				.expectNext(new StockHistoryBucketDTO(from, "Centro", "Arepa", 1, 7, 7, 7, 7))
+				.expectNext(new StockHistoryBucketDTO(from, "Centro", "Pizza", 5, 5, 4, 2, 8))
+				.expectNext(new StockHistoryBucketDTO(from.plus(Duration.ofDays(1)), "Centro", "Pizza", 1, 1, 1, 1, 1))
+				.verifyComplete();
+	}
+
+	@Test
+	void shouldDropMovementsWhenTheQueueIsFull() {
+		StockHistoryRecorder small = new StockHistoryRecorder(repository,
+				new StockHistoryProperties(true, 2, 10, Duration.ofSeconds(10), Duration.ofDays(365)), registry);
+
+		small.record(stock("Centro", "Pizza", 1, T));
+		small.record(stock("Centro", "Pizza", 2, T.plusSeconds(1)));
+		small.record(stock("Centro", "Pizza", 3, T.plusSeconds(2)));
+		assertEquals(1, registry.counter("franchise.stock-history.dropped").count());
+
+		small.destroy();
+		assertEquals(List.of(1, 2), service.getMovements("1", "Centro", "Pizza", T, T.plusSeconds(60), 10)
+				.map(StockEvent::stock)
+				.collectList()
+				.block());
+	}
+
+	private void awaitWritten(int movements) {
+		Mono.fromCallable(() -> registry.counter("franchise.stock-history.written").count())
+				.filter(count -> count >= movements)
+				.repeatWhenEmpty(repeat -> repeat.delayElements(Duration.ofMillis(10)))
+				.block(Duration.ofSeconds(5));
+	}
+
+	private static StockEvent stock(String branch, String product, int stock, Instant timestamp) {
+		return new StockEvent(StockEvent.Type.PRODUCT_STOCK, "1", branch, product, stock, null, timestamp);
+	}
+}
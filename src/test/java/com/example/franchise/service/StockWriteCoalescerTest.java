@@ -0,0 +1,94 @@
+package com.example.franchise.service;
+
+import com.example.franchise.config.StockCoalescingProperties;
+import com.example.franchise.domain.dto.ProductStockDTO;
+import com.example.franchise.domain.dto.StockUpdateRequest;
+import com.example.franchise.exception.ResourceNotFoundException;
+import com.example.franchise.repository.FranchiseStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class StockWriteCoalescerTest {
+
+	private FranchiseStore store;
+	private SimpleMeterRegistry registry;
+	private StockWriteCoalescer coalescer;
+
+	@BeforeEach
+	void setUp() {
+		store = mock(FranchiseStore.class);
+		registry = new SimpleMeterRegistry();
+		coalescer = new StockWriteCoalescer(store, new StockCoalescingProperties(true, Duration.ofMillis(50), 3), registry);
+	}
+
+	@Test
+	void shouldCombineUpdatesForTheSameFranchiseIntoOneWrite() {
+		when(store.setProductStocks(eq("1"), anyList())).thenReturn(Mono.just(true));
+
+		StepVerifier.create(Flux.merge(
+						coalescer.updateProductStock("1", "Centro", "Pizza", 1),
+						coalescer.updateProductStock("1", "centro", "PIZZA", 2),
+						coalescer.updateProductStock("1", "Centro", "Arepa", 3)).collectList())
+				.expectNext(List.of(
+						new ProductStockDTO("1", "Centro", "Pizza", 1),
+						new ProductStockDTO("1", "centro", "PIZZA", 2),
+						new ProductStockDTO("1", "Centro", "Arepa", 3)))
+				.verifyComplete();
+
+		verify(store).setProductStocks("1", List.of(
+				new StockUpdateRequest("1", "centro", "PIZZA", 2),
+				new StockUpdateRequest("1", "Centro", "Arepa", 3)));
+		verify(store, never()).updateProductStock(anyString(), anyString(), anyString(), anyInt());
+		assertEquals(3, registry.summary("franchise.stock-coalescing.batch-size").max());
+	}
+
+	@Test
+	void shouldFailOnlyTheCallersOfAMissingProduct() {
+		when(store.setProductStocks(eq("1"), anyList())).thenReturn(Mono.just(false));
+		when(store.updateProductStock("1", "Centro", "Pizza", 1))
+				.thenReturn(Mono.just(new ProductStockDTO("1", "Centro", "Pizza", 1)));
+		when(store.updateProductStock("1", "Centro", "Nada", 2))
+				.thenReturn(Mono.error(new ResourceNotFoundException("Producto no encontrado")));
+
+		Mono<ProductStockDTO> found = coalescer.updateProductStock("1", "Centro", "Pizza", 1);
+		Mono<ProductStockDTO> missing = coalescer.updateProductStock("1", "Centro", "Nada", 2);
+
+		StepVerifier.create(Flux.merge(
+						found.map(ProductStockDTO::stock),
+						missing.map(ProductStockDTO::stock).onErrorReturn(ResourceNotFoundException.class, -1))
+						.collectList())
+				.expectNextMatches(results -> results.size() == 2 && results.containsAll(List.of(1, -1)))
+				.verifyComplete();
+	}
+
+	@Test
+	void shouldQueueUpdatesWhileAWriteIsInFlight() {
+		when(store.updateProductStock("1", "Centro", "Pizza", 1))
+				.thenReturn(Mono.delay(Duration.ofMillis(200)).thenReturn(new ProductStockDTO("1", "Centro", "Pizza", 1)));
+		when(store.setProductStocks(eq("1"), anyList())).thenReturn(Mono.just(true));
+
+		// The second and third updates arrive after the window, while the first one is still being written.
+		Flux<ProductStockDTO> later = Mono.delay(Duration.ofMillis(100)).thenMany(Flux.merge(
+				coalescer.updateProductStock("1", "Centro", "Arepa", 2),
+				coalescer.updateProductStock("1", "Centro", "Pan", 3)));
+
+		StepVerifier.create(Flux.merge(coalescer.updateProductStock("1", "Centro", "Pizza", 1), later).count())
+				.expectNext(3L)
+				.verifyComplete();
+
+		verify(store).setProductStocks("1", List.of(
+				new StockUpdateRequest("1", "Centro", "Arepa", 2),
+				new StockUpdateRequest("1", "Centro", "Pan", 3)));
+	}
+}